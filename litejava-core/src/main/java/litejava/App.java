@@ -1,10 +1,17 @@
 package litejava;
 
 import litejava.exception.*;
+import litejava.jfr.Jfr;
 import litejava.plugin.*;
 
 import java.io.*;
+import java.net.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.*;
 
 /**
@@ -145,6 +152,29 @@ public class App {
     /** 运行环境：dev/test/prod */
     public String env = "dev";
     
+    /** 优雅停机等待进行中请求完成的最长时间（毫秒），可通过配置文件 server.shutdownTimeout 覆盖 */
+    public int shutdownTimeout = 30000;
+    
+    /**
+     * 是否采用调用方 X-Request-Timeout 请求头中的剩余时间，可通过配置文件 server.deadlineHeader 覆盖
+     * 
+     * <p>只在服务之间互相调用时开启：请求头只对 {@link #deadlineTrusted} 中的调用方生效，
+     * 外部客户端不能借此让请求直接返回 504。
+     */
+    public boolean deadlineHeader = false;
+    
+    /**
+     * 信任截止时间请求头的调用方地址前缀（如 "10.0."、"192.168.1.7"），可通过配置文件 server.deadlineTrusted
+     * 覆盖（逗号分隔）；为空时只信任本机和内网地址（127/8、10/8、172.16/12、192.168/16、fc00::/7 等）
+     */
+    public List<String> deadlineTrusted = new ArrayList<>();
+    
+    /** 是否记录请求各阶段耗时（{@link ServerTiming}），可通过配置文件 server.timing 覆盖 */
+    public boolean timing = false;
+    
+    /** 是否在响应中附带 Server-Timing 头（开启时同时记录各阶段耗时），可通过配置文件 server.timingHeader 覆盖 */
+    public boolean timingHeader = false;
+    
     // ==================== 核心组件 ====================
     
     /** 路由插件，管理所有路由规则 */
@@ -159,6 +189,15 @@ public class App {
     /** 自定义错误处理器 */
     public BiConsumer<Context, Throwable> errorHandler;
     
+    /**
+     * 并发任务线程池（{@link Context#parallel}），为 null 时首次使用创建守护线程池，
+     * 虚拟线程服务器插件（litejava-plugins-vt）默认设为每任务一个虚拟线程
+     */
+    public ExecutorService executor;
+    
+    /** 各阶段耗时汇总（开启 timing 时由服务器插件在请求结束后记录） */
+    public final ServerTiming.Stats timingStats = new ServerTiming.Stats();
+    
     // ==================== 内置插件引用 ====================
     
     /** 服务器插件（必须注册一个） */
@@ -184,6 +223,9 @@ public class App {
     /** 插件列表（保持注册顺序） */
     private final List<Plugin> pluginList = new ArrayList<>();
     
+    /** executor 由 App 创建，stop() 时关闭 */
+    private boolean ownsExecutor;
+    
     /** 启动前回调列表 */
     private final List<Runnable> onReadyCallbacks = new ArrayList<>();
     
@@ -362,16 +404,18 @@ public class App {
     
     /**
      * 注册异步 GET 路由（返回 CompletableFuture）
+     * 
+     * <p>handler 返回后工作线程即被释放，服务器插件在 future 完成后发送响应（见 {@link Context#defer}）。
      */
     public Route getAsync(String path, AsyncHandler handler) {
-        return get(path, ctx -> handler.handle(ctx).join());
+        return get(path, ctx -> ctx.defer(handler.handle(ctx)));
     }
     
     /**
      * 注册异步 POST 路由
      */
     public Route postAsync(String path, AsyncHandler handler) {
-        return post(path, ctx -> handler.handle(ctx).join());
+        return post(path, ctx -> ctx.defer(handler.handle(ctx)));
     }
     
     /**
@@ -468,10 +512,23 @@ public class App {
     public void run(int port) {
         // 从配置加载 devMode 和 charset
         devMode = conf.getBool("server", "devMode", devMode);
+        shutdownTimeout = conf.getInt("server", "shutdownTimeout", shutdownTimeout);
+        deadlineHeader = conf.getBool("server", "deadlineHeader", deadlineHeader);
+        String trusted = conf.getString("server", "deadlineTrusted", null);
+        if (trusted != null) {
+            deadlineTrusted = new ArrayList<>();
+            for (String prefix : trusted.split(",")) {
+                if (!prefix.trim().isEmpty()) deadlineTrusted.add(prefix.trim());
+            }
+        }
+        timingHeader = conf.getBool("server", "timingHeader", timingHeader);
+        timing = conf.getBool("server", "timing", timing);
         String charset = conf.getString("server", "charset", null);
         if (charset != null) {
             Context.setCharset(charset);
         }
+        Context.multipartThreshold = conf.getInt("server", "multipartThreshold", Context.multipartThreshold);
+        Context.multipartTempDir = conf.getString("server", "multipartTempDir", Context.multipartTempDir);
         
         this.port = port;
         
@@ -496,6 +553,13 @@ public class App {
         // 冻结中间件列表，避免运行时修改
         middlewares = Collections.unmodifiableList(new ArrayList<>(middlewares));
         
+        // 预编译每个路由的中间件链：全局 → 分组 → 路由 → handler
+        for (Route route : router.getAllRoutes()) {
+            route.chain = MiddlewareChain.compile(middlewares, route.middlewares, route.handler);
+        }
+        noRouteChain = new MiddlewareChain(middlewares, router.noRouteHandler != null ? router.noRouteHandler : default404Handler);
+        noMethodChain = new MiddlewareChain(middlewares, router.noMethodHandler != null ? router.noMethodHandler : default405Handler);
+        
         // 执行 onReady 回调（在服务器启动前）
         for (Runnable callback : onReadyCallbacks) {
             callback.run();
@@ -526,18 +590,34 @@ public class App {
                 System.err.println("Error uninstalling plugin: " + e.getMessage());
             }
         }
+        synchronized (this) {
+            if (ownsExecutor) {
+                executor.shutdownNow();
+                executor = null;
+                ownsExecutor = false;
+            }
+        }
     }
     
     /**
      * 优雅停机（等待请求处理完成）
+     * 
+     * <p>停机流程：
+     * <ol>
+     *   <li>服务器停止接受新连接（{@link ServerPlugin#stopAccepting()}），已建立的连接继续处理</li>
+     *   <li>等待进行中的请求（包括异步响应）发送完毕，最多等待 {@link #shutdownTimeout} 毫秒</li>
+     *   <li>停止服务器，逆序卸载插件</li>
+     * </ol>
      */
     public void gracefulStop() {
+        if (stopping) return;  // 已经停止或正在停机（例如先调用了 stop()，shutdown hook 再次触发）
         log.info("Shutting down gracefully...");
         stopping = true;
-        try {
-            Thread.sleep(500);  // 等待进行中的请求完成
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        if (server != null) {
+            server.stopAccepting();
+            if (!server.awaitInFlight(shutdownTimeout)) {
+                log.warn("Shutdown timeout after " + shutdownTimeout + "ms, " + server.inFlight() + " request(s) still in flight");
+            }
         }
         stop();
         log.info("Server stopped");
@@ -555,11 +635,20 @@ public class App {
     // 预创建的 404/405 handler，避免每次请求创建 lambda
     private final Handler default404Handler = c -> c.status(404).json(Map.of("error", "Not Found", "path", c.path));
     private final Handler default405Handler = c -> {
+        c.header("Allow", router.allow(c.path));
+        if ("OPTIONS".equals(c.method)) {
+            // 未注册 OPTIONS 的路径直接返回可用方法
+            c.status(204);
+            return;
+        }
         c.status(405);
-        c.header("Allow", String.join(", ", router.getAllowedMethods(c.path)));
         c.json(Map.of("error", "Method Not Allowed", "method", c.method, "path", c.path));
     };
     
+    // run() 时编译的 404/405 中间件链（只含全局中间件）
+    private MiddlewareChain noRouteChain;
+    private MiddlewareChain noMethodChain;
+    
     /**
      * 处理 HTTP 请求（由服务器插件调用）
      * 
@@ -567,41 +656,151 @@ public class App {
      * <ol>
      *   <li>路由匹配</li>
      *   <li>提取路径参数</li>
+     *   <li>确定截止时间（路由时限、受信任调用方的 {@value Context#DEADLINE_HEADER} 请求头），已过期时返回 504</li>
      *   <li>执行中间件链（洋葱模型）</li>
      *   <li>执行 handler</li>
      * </ol>
      * 
+     * <p>开启 {@link #timing} 时记录各阶段耗时，开启 {@link #timingHeader} 时附带 Server-Timing 响应头
+     * （异步响应在 future 完成时由服务器插件附带）。
+     * 
+     * <p>JFR 录制开启时记录 {@code litejava.Request} / {@code litejava.Middleware} 事件（见 {@link Jfr}）。
+     * 
      * @param ctx 请求上下文
      * @throws Exception 处理异常
      */
     public void handle(Context ctx) throws Exception {
-        RouterPlugin.RouteMatch match = router.match(ctx.method, ctx.path);
-        
-        Handler finalHandler;
-        if (match != null) {
-            // 直接赋值，避免 putAll
-            if (match.params != null && !match.params.isEmpty()) {
-                ctx.params = match.params;
-            }
-            if (match.wildcardName != null) {
-                ctx.wildcardPath = match.wildcardValue;
-                ctx.params.put(match.wildcardName, match.wildcardValue);
+        if (Jfr.AVAILABLE) {
+            Jfr.beginRequest(ctx);
+        }
+        if (!timing && !timingHeader) {
+            execute(ctx);
+            return;
+        }
+        ServerTiming t = ctx.timing;
+        t.begin();
+        try {
+            execute(ctx);
+        } finally {
+            if (!ctx.isDeferred()) {
+                t.handled();
+                if (timingHeader) {
+                    ctx.header("Server-Timing", t.header());
+                }
             }
-            finalHandler = match.handler;
+        }
+    }
+    
+    private void execute(Context ctx) throws Exception {
+        Route route = match(ctx);
+        if (ctx.timing.active) {
+            ctx.timing.routed();
+        }
+        
+        // 从请求到达时算起，排队时间也计入截止时间
+        long start = ctx.receivedAt != 0 ? ctx.receivedAt : System.currentTimeMillis();
+        if (route != null && route.timeout > 0) {
+            ctx.deadline(start, route.timeout);
+        }
+        if (deadlineHeader) {
+            applyDeadlineHeader(ctx, start);
+        }
+        if (ctx.isExpired()) {
+            // 排队期间已超过截止时间，调用方已经放弃，不再执行 handler
+            throw new LiteJavaException("Deadline exceeded", 504);
+        }
+        
+        MiddlewareChain chain;
+        if (route != null) {
+            // run() 之后注册的路由（或自定义路由返回的临时 Route）没有预编译的链
+            chain = route.chain != null ? route.chain
+                : MiddlewareChain.compile(middlewares, route.middlewares, route.handler);
         } else if (router.hasPath(ctx.path)) {
-            finalHandler = router.noMethodHandler != null ? router.noMethodHandler : default405Handler;
+            chain = noMethodChain != null ? noMethodChain
+                : new MiddlewareChain(middlewares, router.noMethodHandler != null ? router.noMethodHandler : default405Handler);
         } else {
-            finalHandler = router.noRouteHandler != null ? router.noRouteHandler : default404Handler;
+            chain = noRouteChain != null ? noRouteChain
+                : new MiddlewareChain(middlewares, router.noRouteHandler != null ? router.noRouteHandler : default404Handler);
         }
         
-        // 无中间件时直接执行 handler，避免创建 MiddlewareChain
-        if (middlewares.isEmpty()) {
-            finalHandler.handle(ctx);
-        } else {
-            new MiddlewareChain(middlewares, finalHandler).execute(ctx);
+        if (ctx.deadline == 0) {
+            chain.execute(ctx);
+            return;
+        }
+        long outer = Context.bindDeadline(ctx.deadline);
+        try {
+            chain.execute(ctx);
+        } finally {
+            Context.bindDeadline(outer);
+        }
+        if (ctx.isDeferred()) {
+            // 异步响应超过截止时间时以 TimeoutException 结束，服务器插件返回 504；
+            // 超时加在副本上，handler 返回的 future 可能被其他请求共享（缓存、合并的下游调用）
+            CompletableFuture<?> future = ctx.getResponseFuture();
+            ctx.defer(future.copy().orTimeout(Math.max(ctx.remainingMillis(), 0), TimeUnit.MILLISECONDS));
+            ctx.handlerFuture = future;
+        }
+        // 同步 handler 超时才完成时照常返回结果：它的副作用（如已提交的写入）已经发生，
+        // 改成 504 只会让调用方重试一个已经成功的请求
+    }
+    
+    /**
+     * 读取受信任调用方传来的剩余时间（毫秒），换算成本机的截止时间；格式非法或调用方不受信任时忽略
+     */
+    private void applyDeadlineHeader(Context ctx, long start) {
+        // 只查这一个原始请求头，不触发请求头的完整加载
+        String value = ctx.headers.peek(Context.DEADLINE_HEADER);
+        if (value == null || !isTrustedCaller(ctx.remoteAddr)) return;
+        try {
+            ctx.deadline(start, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            // ignore
+        }
+    }
+    
+    /**
+     * 调用方地址是否在 {@link #deadlineTrusted} 中（未配置时为本机或内网地址）
+     */
+    private boolean isTrustedCaller(String address) {
+        if (address == null || address.isEmpty()) return false;
+        if (!deadlineTrusted.isEmpty()) {
+            for (String prefix : deadlineTrusted) {
+                if (address.startsWith(prefix)) return true;
+            }
+            return false;
+        }
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (Character.digit(c, 16) < 0 && c != '.' && c != ':' && c != '%') {
+                // 只接受 IP 字面量，避免触发 DNS 解析
+                return false;
+            }
+        }
+        try {
+            InetAddress ip = InetAddress.getByName(address);
+            return ip.isLoopbackAddress() || ip.isSiteLocalAddress() || ip.isLinkLocalAddress()
+                || (ip instanceof Inet6Address && (ip.getAddress()[0] & 0xfe) == 0xfc);
+        } catch (UnknownHostException e) {
+            return false;
         }
     }
     
+    /**
+     * 路由匹配，结果保存在 ctx.route，同一请求只匹配一次
+     * 
+     * <p>服务器插件可以在 handle 之前调用，按路由决定请求的处理方式（如 {@link Route#priority()}）。
+     * 
+     * @param ctx 请求上下文（method、path 已解析）
+     * @return 匹配到的路由，未匹配时返回 null
+     */
+    public Route match(Context ctx) {
+        if (!ctx.routed) {
+            ctx.route = router.match(ctx);
+            ctx.routed = true;
+        }
+        return ctx.route;
+    }
+    
     /**
      * 处理请求异常
      * 
@@ -655,4 +854,34 @@ public class App {
     public <T> T getPlugin(Class<T> clazz) {
         return (T) plugins.get(clazz.getSimpleName());
     }
+    
+    /**
+     * 获取并发任务线程池，未设置 {@link #executor} 时创建缓存线程池（守护线程，stop() 时关闭）
+     */
+    public ExecutorService executor() {
+        return executor(() -> {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "litejava-task-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        });
+    }
+    
+    /**
+     * 获取并发任务线程池，未设置 {@link #executor} 时用 factory 创建（由 App 持有，stop() 时关闭）
+     * 
+     * <p>虚拟线程服务器插件在 config() 中调用，让 handler 中的并发任务（ctx.parallel）同样每任务一个虚拟线程：
+     * <pre>{@code
+     * app.executor(Executors::newVirtualThreadPerTaskExecutor);
+     * }</pre>
+     */
+    public synchronized ExecutorService executor(Supplier<ExecutorService> factory) {
+        if (executor == null) {
+            executor = factory.get();
+            ownsExecutor = true;
+        }
+        return executor;
+    }
 }
@@ -4,6 +4,9 @@ import java.util.concurrent.CompletableFuture;
 
 /**
  * 异步处理器 - 支持 CompletableFuture
+ * 
+ * <p>通过 {@link App#getAsync}/{@link App#postAsync} 注册，future 完成后服务器插件才发送响应，
+ * 等待期间不占用工作线程（见 {@link Context#defer}）。
  */
 @FunctionalInterface
 public interface AsyncHandler {
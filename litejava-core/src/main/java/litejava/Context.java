@@ -1,10 +1,29 @@
 package litejava;
 
+import litejava.exception.LiteJavaException;
+import litejava.jfr.Jfr;
+import litejava.jfr.RequestEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * HTTP 请求/响应上下文 - 统一的请求处理对象
@@ -30,10 +49,15 @@ import java.util.*;
  * Map<String, Object> data = ctx.bindJSON();
  * User user = ctx.bindJSON(User.class);
  * 
- * // 原始数据
+ * // 原始数据（首次调用时才读取请求体）
  * byte[] raw = ctx.getRawData();
  * String str = ctx.getString();
  * 
+ * // 流式读取（大文件上传直接写盘，不在堆上缓存）
+ * try (InputStream in = ctx.bodyStream()) {
+ *     Files.copy(in, target);
+ * }
+ * 
  * // 表单/文件
  * Map<String, String> form = ctx.getForm();
  * Map<String, UploadedFile> files = ctx.getFiles();
@@ -46,8 +70,10 @@ import java.util.*;
  * ctx.html("<h1>Hello</h1>");        // HTML
  * ctx.data(bytes, "image/png");      // 二进制
  * ctx.file(bytes, "report.pdf");     // 文件下载
+ * ctx.sendFile(file, "video/mp4");   // 文件响应（零拷贝，不读入堆）
  * ctx.redirect("/login");            // 重定向
  * ctx.render("user.html", data);     // 模板渲染
+ * ctx.stream("text/csv", out -> ...); // 流式输出（chunked，不缓存响应体）
  * 
  * // 统一响应格式
  * ctx.ok(data);           // {"code": 0, "data": data, "msg": "success"}
@@ -61,6 +87,11 @@ import java.util.*;
  * 
  * // 在 handler 中获取
  * User user = (User) ctx.state.get("user");
+ * 
+ * // 类型化状态：数组访问，无哈希、无强制转换
+ * static final StateKey<User> USER = StateKey.of("user");
+ * ctx.set(USER, currentUser);
+ * User user = ctx.get(USER);
  * }</pre>
  * 
  * <h2>请求中断（Gin-style Abort）</h2>
@@ -102,6 +133,21 @@ public class Context {
         }
     }
     
+    /** multipart 上传文件在内存中保存的最大字节数，超出时转存到临时文件，可通过 server.multipartThreshold 修改 */
+    public static int multipartThreshold = 64 * 1024;
+    
+    /**
+     * 截止时间请求头：调用方剩余的时间预算（毫秒，类似 grpc-timeout），收到后换算成本机的截止时间，
+     * 下游调用传递届时的剩余时间，服务之间的时钟偏差不影响截止时间
+     */
+    public static final String DEADLINE_HEADER = "X-Request-Timeout";
+    
+    /** 当前线程正在执行的请求的截止时间（App.handle 执行中间件和 handler 期间设置） */
+    private static final ThreadLocal<long[]> CURRENT_DEADLINE = ThreadLocal.withInitial(() -> new long[1]);
+    
+    /** multipart 临时文件目录，null 表示 java.io.tmpdir，可通过 server.multipartTempDir 修改 */
+    public static String multipartTempDir;
+    
     // ==================== 请求信息 ====================
     
     /** 应用实例引用 */
@@ -119,25 +165,40 @@ public class Context {
     /** 客户端 IP 地址 */
     public String remoteAddr;
     
-    /** 请求头 Map */
-    public Map<String, String> headers = new HashMap<>(8);
+    /** 请求头（不区分大小写，首次访问时由服务器插件登记的加载器填充，见 {@link #setHeaderLoader}） */
+    public Headers headers = new Headers(16);
     
-    /** 路径参数 Map，如 /users/:id 中的 id */
-    public Map<String, String> params = new HashMap<>(4);
+    /** 路径参数，如 /users/:id 中的 id（路由匹配时写入，随 Context 复用） */
+    public PathParams params = new PathParams(4);
     
-    /** 查询参数 Map，解析自 query string */
-    public Map<String, String> queryParams = new HashMap<>(8);
+    /** 查询参数 Map，首次访问时才解析 {@link #query} */
+    public LazyMap<String, String> queryParams = new LazyMap<>(8);
+    
+    /** query string 解析器，每次复用时重新登记到 queryParams */
+    private final Consumer<Map<String, String>> queryLoader = map -> parseQuery(query, map);
     
     /** 通配符路径，如 /files/*path 匹配的剩余路径 */
     public String wildcardPath;
     
+    /** 匹配到的路由，未匹配时为 null（见 {@link App#match(Context)}） */
+    public Route route;
+    
+    /** 是否已做过路由匹配，服务器插件提前匹配后 App.handle 不再重复匹配 */
+    boolean routed;
+    
+    /** 请求截止时间（System.currentTimeMillis() 时间戳），0 表示不限制，见 {@link #deadline(long)} */
+    public long deadline;
+    
+    /** 请求到达时间（System.currentTimeMillis() 时间戳，含排队时间），服务器插件取出 Context 时设置，0 表示未知 */
+    public long receivedAt;
+    
     // ==================== 响应状态 ====================
     
     /** HTTP 响应状态码，默认 200 */
     private int responseStatus = 200;
     
-    /** 响应头 Map */
-    private Map<String, String> responseHeaders = new HashMap<>();
+    /** 响应头（不区分大小写，同名多值） */
+    private Headers responseHeaders = new Headers(8);
     
     /** 响应体字节数组 */
     private byte[] responseBody;
@@ -145,20 +206,90 @@ public class Context {
     /** 响应 Content-Type */
     private String responseContentType;
     
+    /** 流式响应写入器，非 null 时服务器插件以 chunked 方式输出 */
+    private StreamWriter responseStream;
+    
+    /** 文件响应，非 null 时服务器插件以零拷贝方式（sendfile/FileRegion）发送 */
+    private File responseFile;
+    
+    /** 文件响应起始偏移 */
+    private long responseFilePosition;
+    
+    /** 文件响应字节数 */
+    private long responseFileLength;
+    
+    /** 异步响应，非 null 时服务器插件在 future 完成后才发送响应（见 {@link #defer}） */
+    private CompletableFuture<?> responseFuture;
+    
+    /**
+     * handler 返回的原始 future（截止时间加在 responseFuture 副本上时设置）：超时后响应已发出，
+     * 但 handler 的回调链仍可能写入本 Context，{@link ContextPool} 等它结束后才回收
+     */
+    CompletableFuture<?> handlerFuture;
+    
     // ==================== 请求体 ====================
     
-    /** 原始请求体字节数组 */
+    /** 原始请求体字节数组（首次 getRawData() 时从 requestBodyStream 读取） */
     private byte[] requestBody;
     
+    /** 请求体输入流（延迟读取，由服务器插件设置） */
+    private InputStream requestBodyStream;
+    
+    /** 请求体声明长度（Content-Length），未知时为 -1 */
+    private long requestContentLength = -1;
+    
+    /** 请求体最大字节数，超出时返回 413，&lt;= 0 表示不限制 */
+    private int requestMaxSize;
+    
+    /** 请求体输入流是否已交给调用方 */
+    private boolean requestBodyConsumed;
+    
+    /** multipart 文件 part（首次 getFiles()/getForm() 时解析） */
+    private Map<String, UploadedFile> multipartFiles;
+    
+    /** multipart 普通字段 part */
+    private Map<String, String> multipartFields;
+    
+    /** 本次请求是否已解析 multipart（两个 Map 随 Context 复用，只在首次解析时创建） */
+    private boolean multipartParsed;
+    
     // ==================== 请求级状态 ====================
     
-    /** 请求级状态存储，用于中间件间传递数据 */
-    public Map<String, Object> state = new HashMap<>();
+    /**
+     * 请求级状态存储，用于中间件间传递数据
+     * 
+     * <p>名称对应已创建的 {@link StateKey} 时读写的是类型化状态数组（与 {@link #get(StateKey)} 相同的位置），
+     * 其他名称存放在首次写入时创建的 HashMap 中。频繁访问的状态应使用 StateKey。
+     */
+    public Map<String, Object> state = new StateMap();
+    
+    /** 类型化状态，按 {@link StateKey} 序号存放，随 Context 复用 */
+    private Object[] slots = new Object[Math.max(8, StateKey.count())];
+    
+    /** 本次请求写过的最大序号 + 1，reset() 只清空这一段 */
+    private int slotsUsed;
+    
+    /** 请求阶段计时（{@link App#timing} 开启时记录，见 {@link ServerTiming}），随 Context 复用 */
+    public final ServerTiming timing = new ServerTiming();
+    
+    /** JFR 请求事件（录制开启时由 App.handle() 创建，服务器插件归还 Context 时提交，见 {@link Jfr}） */
+    public RequestEvent jfr;
     
     /** 中断标志（Gin-style），true 表示中间件链已中断 */
     private boolean aborted = false;
     
-    public Context() {}
+    /** 当前执行的中间件链（{@link MiddlewareChain#execute}） */
+    MiddlewareChain chain;
+    
+    /** 借出此 Context 的登记（仅 {@link ContextPool} 开启泄漏检测时使用，reset() 不清除） */
+    ContextPool.Lease lease;
+    
+    /** 各阶段的 next()，随 Context 复用，执行中间件链时不再分配 */
+    private Next[] chainNexts = new Next[0];
+    
+    public Context() {
+        queryParams.load(queryLoader);
+    }
     
     // ==================== 请求体设置（服务器插件调用）====================
     
@@ -170,14 +301,167 @@ public class Context {
         this.requestBody = body;
     }
     
+    /**
+     * 设置延迟读取的请求体（由服务器插件调用）
+     * 
+     * <p>路由和中间件执行前不读取请求体：未访问请求体的 handler、
+     * 被认证中间件拒绝的请求以及 404 请求都不会为请求体分配内存。
+     * 读取时按 maxSize 限制大小，超出时抛出 413 异常。
+     * 
+     * @param in 请求体输入流（由服务器管理，Context 不负责关闭）
+     * @param contentLength Content-Length，未知时传 -1
+     * @param maxSize 最大字节数，&lt;= 0 表示不限制
+     */
+    public void setRequestBody(InputStream in, long contentLength, int maxSize) {
+        this.requestBody = null;
+        this.requestBodyStream = in;
+        this.requestContentLength = contentLength;
+        this.requestMaxSize = maxSize;
+        this.requestBodyConsumed = false;
+    }
+
+    /**
+     * 登记请求头加载器（由服务器插件调用）
+     *
+     * <p>请求头在首次访问 {@link #headers} 或 {@link #header(String)} 时才从原始请求复制，
+     * 不读取请求头的 handler 不会为此分配任何内存。加载器持有的原始请求对象
+     * 必须在 handler 执行期间保持有效。
+     *
+     * @param loader 通过 {@link Headers#add(String, String)} 写入原始请求头的加载器
+     */
+    public void setHeaderLoader(Consumer<Headers> loader) {
+        headers.load(loader);
+    }
+
+    /**
+     * 登记请求头加载器和单个请求头的查找函数（由服务器插件调用）
+     *
+     * <p>框架在 handler 之前需要的个别请求头（见 {@link Headers#peek(String)}）通过 lookup
+     * 直接从原始请求读取，不触发完整加载。
+     *
+     * @param loader 通过 {@link Headers#add(String, String)} 写入原始请求头的加载器
+     * @param lookup 按名称（不区分大小写）从原始请求取第一个值
+     */
+    public void setHeaderLoader(Consumer<Headers> loader, Function<String, String> lookup) {
+        headers.load(loader, lookup);
+    }
+
     // ==================== 请求体读取 (Gin-style) ====================
     
     /**
      * 获取原始请求体字节数组 (Gin: GetRawData)
+     * 
+     * <p>首次调用时读取整个请求体并缓存，后续调用返回同一数组。
+     * 
      * @return 请求体字节数组，无内容时返回空数组
+     * @throws LiteJavaException 请求体超过 server.maxRequestSize 时（413）
+     * @throws IllegalStateException 请求体已通过 {@link #bodyStream()} 流式消费
      */
     public byte[] getRawData() {
-        return requestBody != null ? requestBody : new byte[0];
+        if (requestBody == null && requestBodyStream != null) {
+            requestBody = readRequestBody();
+        }
+        return requestBody != null ? requestBody : EMPTY_BODY;
+    }
+    
+    /**
+     * 获取请求体输入流，用于流式处理大请求体（如上传文件直接写盘）
+     * 
+     * <p>读取时同样受 server.maxRequestSize 限制。流只能获取一次，
+     * 之后不能再调用 {@link #getRawData()}；已通过 getRawData() 读取时返回缓存内容的流。
+     * 
+     * @return 请求体输入流，无内容时返回空流
+     * @throws LiteJavaException Content-Length 超过 server.maxRequestSize 时（413）
+     */
+    public InputStream bodyStream() {
+        if (requestBody != null) {
+            return new ByteArrayInputStream(requestBody);
+        }
+        if (requestBodyStream == null) {
+            return new ByteArrayInputStream(EMPTY_BODY);
+        }
+        if (requestBodyConsumed) {
+            throw new IllegalStateException("Request body has already been consumed by bodyStream()");
+        }
+        if (requestMaxSize > 0 && requestContentLength > requestMaxSize) {
+            throw new LiteJavaException("Request body too large", 413);
+        }
+        requestBodyConsumed = true;
+        return requestMaxSize > 0 ? new LimitedInputStream(requestBodyStream, requestMaxSize) : requestBodyStream;
+    }
+    
+    private byte[] readRequestBody() {
+        InputStream in = bodyStream();
+        try {
+            if (requestContentLength == 0) {
+                return EMPTY_BODY;
+            }
+            if (requestContentLength > 0 && requestContentLength <= Integer.MAX_VALUE) {
+                byte[] body = new byte[(int) requestContentLength];
+                int offset = 0;
+                while (offset < body.length) {
+                    int read = in.read(body, offset, body.length - offset);
+                    if (read == -1) break;
+                    offset += read;
+                }
+                return offset == body.length ? body : Arrays.copyOf(body, offset);
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                baos.write(buffer, 0, len);
+            }
+            return baos.toByteArray();
+        } catch (IOException e) {
+            throw new LiteJavaException("Failed to read request body: " + e.getMessage(), 400);
+        }
+    }
+    
+    /**
+     * 限制读取字节数的输入流，超出 maxSize 时抛出 413
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long maxSize;
+        private long count;
+        
+        LimitedInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count(1);
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count(n);
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+        
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+        
+        private void count(long n) {
+            count += n;
+            if (count > maxSize) {
+                throw new LiteJavaException("Request body too large", 413);
+            }
+        }
     }
     
     /**
@@ -227,8 +511,7 @@ public class Context {
      * @return 绑定后的对象
      */
     public <T> T bind(Class<T> clazz) {
-        String contentType = headers.getOrDefault("Content-Type", 
-                            headers.getOrDefault("content-type", ""));
+        String contentType = headers.getOrDefault(Headers.CONTENT_TYPE, "");
         
         if (contentType.contains("application/json")) {
             return bindJSON(clazz);
@@ -251,8 +534,7 @@ public class Context {
      * 绑定到 Map
      */
     public Map<String, Object> bind() {
-        String contentType = headers.getOrDefault("Content-Type", 
-                            headers.getOrDefault("content-type", ""));
+        String contentType = headers.getOrDefault(Headers.CONTENT_TYPE, "");
         
         if (contentType.contains("application/json")) {
             return bindJSON();
@@ -270,10 +552,15 @@ public class Context {
     }
     
     /**
-     * 解析 URL 编码的表单数据
+     * 解析表单数据（application/x-www-form-urlencoded 或 multipart/form-data 的普通字段）
      * @return 表单字段 Map
      */
     public Map<String, String> getForm() {
+        parseMultipart();
+        if (multipartParsed) {
+            return new LinkedHashMap<>(multipartFields);
+        }
+        
         Map<String, String> result = new LinkedHashMap<>();
         String body = getString();
         if (body == null || body.isEmpty()) return result;
@@ -292,77 +579,48 @@ public class Context {
     
     /**
      * 解析 multipart/form-data 文件上传
+     * 
+     * <p>请求体按字节流式解析，超过 {@link #multipartThreshold} 的文件转存到临时文件
+     * （通过 {@link UploadedFile#path()} / {@link UploadedFile#saveTo(String)} 访问），
+     * 堆内存占用与上传大小无关。临时文件在请求结束时删除，除非已调用 saveTo() 保存。
+     * 
      * @return 文件 Map，key 为表单字段名
+     * @throws LiteJavaException 请求体格式错误（400）或超过 server.maxRequestSize（413）
      */
     public Map<String, UploadedFile> getFiles() {
-        Map<String, UploadedFile> result = new LinkedHashMap<>();
-        String contentType = headers.get("Content-Type");
-        if (contentType == null) contentType = headers.get("content-type");
-        if (contentType == null || !contentType.startsWith("multipart/form-data")) {
-            return result;
-        }
-        
-        int boundaryIdx = contentType.indexOf("boundary=");
-        if (boundaryIdx < 0) return result;
+        parseMultipart();
+        return multipartParsed ? multipartFiles : new LinkedHashMap<>();
+    }
+    
+    private void parseMultipart() {
+        if (multipartParsed) return;
+        String boundary = MultipartParser.boundary(headers.get(Headers.CONTENT_TYPE));
+        if (boundary == null) return;
         
-        String boundary = contentType.substring(boundaryIdx + 9);
-        if (boundary.startsWith("\"") && boundary.endsWith("\"")) {
-            boundary = boundary.substring(1, boundary.length() - 1);
+        if (multipartFiles == null) {
+            multipartFiles = new LinkedHashMap<>();
+            multipartFields = new LinkedHashMap<>();
         }
+        multipartParsed = true;
         
-        String bodyStr = getString();
-        for (String part : bodyStr.split("--" + boundary)) {
-            if (part.trim().isEmpty() || part.equals("--")) continue;
-            parseMultipartPart(part, result);
+        File tempDir = multipartTempDir != null ? new File(multipartTempDir) : null;
+        try (InputStream in = bodyStream()) {
+            new MultipartParser(in, boundary, charset, multipartThreshold, tempDir).parse(multipartFiles, multipartFields);
+        } catch (IOException e) {
+            deleteUploadedFiles();
+            throw new LiteJavaException("Failed to read request body: " + e.getMessage(), 400);
+        } catch (RuntimeException e) {
+            deleteUploadedFiles();
+            throw e;
         }
-        
-        return result;
     }
     
-    private void parseMultipartPart(String part, Map<String, UploadedFile> result) {
-        int headerEnd = part.indexOf("\r\n\r\n");
-        if (headerEnd < 0) headerEnd = part.indexOf("\n\n");
-        if (headerEnd < 0) return;
-        
-        String headerSection = part.substring(0, headerEnd);
-        String content = part.substring(headerEnd + (part.contains("\r\n\r\n") ? 4 : 2));
-        
-        if (content.endsWith("--\r\n") || content.endsWith("--\n")) {
-            content = content.substring(0, content.lastIndexOf("--"));
-        }
-        if (content.endsWith("\r\n")) {
-            content = content.substring(0, content.length() - 2);
-        } else if (content.endsWith("\n")) {
-            content = content.substring(0, content.length() - 1);
-        }
-        
-        String name = null, filename = null;
-        String fileContentType = "application/octet-stream";
-        
-        for (String line : headerSection.split("\r?\n")) {
-            if (line.toLowerCase().startsWith("content-disposition:")) {
-                int nameIdx = line.indexOf("name=\"");
-                if (nameIdx >= 0) {
-                    int nameEnd = line.indexOf("\"", nameIdx + 6);
-                    if (nameEnd > nameIdx) name = line.substring(nameIdx + 6, nameEnd);
-                }
-                int filenameIdx = line.indexOf("filename=\"");
-                if (filenameIdx >= 0) {
-                    int filenameEnd = line.indexOf("\"", filenameIdx + 10);
-                    if (filenameEnd > filenameIdx) filename = line.substring(filenameIdx + 10, filenameEnd);
-                }
-            } else if (line.toLowerCase().startsWith("content-type:")) {
-                fileContentType = line.substring(13).trim();
+    private void deleteUploadedFiles() {
+        if (multipartFiles != null) {
+            for (UploadedFile file : multipartFiles.values()) {
+                file.delete();
             }
-        }
-        
-        if (name != null && filename != null) {
-            UploadedFile file = new UploadedFile();
-            file.name = filename;
-            file.contentType = fileContentType;
-            file.content = content.getBytes(charset);
-            file.size = file.content.length;
-            result.put(name, file);
+            multipartFiles.clear();
         }
     }
 
@@ -379,7 +637,7 @@ public class Context {
     }
     
     /**
-     * 设置响应头
+     * 设置响应头（替换同名的已有值）
      * @param name 头名称
      * @param value 头值
      * @return this
@@ -389,12 +647,24 @@ public class Context {
         return this;
     }
     
+    /**
+     * 追加响应头（保留同名的已有值，如多个 Set-Cookie）
+     * @param name 头名称
+     * @param value 头值
+     * @return this
+     */
+    public Context addHeader(String name, String value) {
+        this.responseHeaders.add(name, value);
+        return this;
+    }
+    
     /**
      * 发送文本响应 (Gin: c.String)
      * @param content 文本内容
      * @return this
      */
     public Context text(String content) {
+        clearResponseBody();
         this.responseBody = content.getBytes(charset);
         if (responseContentType == null && !responseHeaders.containsKey("Content-Type")) {
             this.responseHeaders.put("Content-Type", CT_TEXT);
@@ -409,6 +679,7 @@ public class Context {
      * @return this
      */
     public Context data(byte[] content, String contentType) {
+        clearResponseBody();
         this.responseBody = content;
         this.responseHeaders.put("Content-Type", contentType);
         return this;
@@ -435,7 +706,14 @@ public class Context {
      * @return this
      */
     public Context json(Object obj) {
-        this.responseBody = app.json.stringifyBytes(obj);
+        clearResponseBody();
+        if (timing.active) {
+            long begin = System.nanoTime();
+            this.responseBody = app.json.stringifyBytes(obj);
+            timing.json(System.nanoTime() - begin);
+        } else {
+            this.responseBody = app.json.stringifyBytes(obj);
+        }
         this.responseHeaders.put("Content-Type", CT_JSON);
         this.responseContentType = null;
         return this;
@@ -447,6 +725,7 @@ public class Context {
      * @return this
      */
     public Context html(String content) {
+        clearResponseBody();
         this.responseBody = content.getBytes(charset);
         this.responseHeaders.put("Content-Type", CT_HTML);
         this.responseContentType = null;
@@ -479,14 +758,428 @@ public class Context {
      * 文件下载
      */
     public Context file(byte[] content, String filename) {
+        clearResponseBody();
         this.responseBody = content;
         this.responseContentType = "application/octet-stream";
         this.responseHeaders.put("Content-Disposition", "attachment; filename=\"" + filename + "\"");
         return this;
     }
     
-    public Context file(java.io.File file) throws java.io.IOException {
-        return file(java.nio.file.Files.readAllBytes(file.toPath()), file.getName());
+    /**
+     * 文件下载（零拷贝发送，不读入堆内存）
+     */
+    public Context file(File file) throws java.io.IOException {
+        sendFile(file, CT_BINARY);
+        this.responseHeaders.put("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"");
+        return this;
+    }
+    
+    /**
+     * 文件响应
+     * 
+     * <p>文件内容不读入堆内存，由服务器插件直接从磁盘发送：
+     * Netty 使用 FileRegion，Undertow 使用 sendfile，JDK HttpServer/Jetty 使用
+     * FileChannel 分块传输，内存占用与文件大小无关。
+     * 
+     * <pre>{@code
+     * ctx.sendFile(new File("/data/release.iso"), "application/x-iso9660-image");
+     * }</pre>
+     * 
+     * @param file 文件
+     * @param contentType Content-Type
+     * @return this
+     * @throws LiteJavaException 文件不存在或不可读时（404）
+     */
+    public Context sendFile(File file, String contentType) {
+        return sendFile(file, 0, file.length(), contentType);
+    }
+    
+    /**
+     * 文件片段响应（用于 Range 请求等场景）
+     * 
+     * @param file 文件
+     * @param position 起始偏移
+     * @param length 字节数
+     * @param contentType Content-Type
+     * @return this
+     * @throws LiteJavaException 文件不存在或不可读时（404）
+     */
+    public Context sendFile(File file, long position, long length, String contentType) {
+        if (!file.isFile() || !file.canRead()) {
+            throw new LiteJavaException("File not found: " + file.getName(), 404);
+        }
+        if (position < 0 || length < 0 || position + length > file.length()) {
+            throw new IllegalArgumentException("Invalid file range: " + position + "+" + length);
+        }
+        clearResponseBody();
+        this.responseFile = file;
+        this.responseFilePosition = position;
+        this.responseFileLength = length;
+        this.responseHeaders.put("Content-Type", contentType);
+        this.responseContentType = null;
+        return this;
+    }
+    
+    /**
+     * 流式响应（chunked 传输编码）
+     * 
+     * <p>响应体由 writer 边生成边写出，不在堆上缓存，适合大文件导出、
+     * 长列表、代理转发等场景。writer 在 handler 和中间件全部返回后、
+     * 由服务器插件在发送响应头之后调用。
+     * 
+     * <pre>{@code
+     * ctx.stream("text/csv; charset=utf-8", out -> {
+     *     for (Order o : orders) {
+     *         out.write(toCsvLine(o));
+     *     }
+     * });
+     * }</pre>
+     * 
+     * @param contentType Content-Type
+     * @param writer 响应体写入器
+     * @return this
+     */
+    public Context stream(String contentType, StreamWriter writer) {
+        clearResponseBody();
+        this.responseStream = writer;
+        this.responseHeaders.put("Content-Type", contentType);
+        this.responseContentType = null;
+        return this;
+    }
+    
+    /**
+     * 流式响应（默认 application/octet-stream）
+     * @param writer 响应体写入器
+     * @return this
+     */
+    public Context stream(StreamWriter writer) {
+        return stream(CT_BINARY, writer);
+    }
+    
+    /**
+     * 异步响应：handler 返回后不立即发送响应，由服务器插件在 future 完成后发送
+     * 
+     * <p>处理线程在 handler 返回后即被释放，等待下游调用期间不占用工作线程。
+     * future 完成前仍可通过本 Context 设置响应；异常完成时交给 {@link App#handleError}。
+     * 中间件 next() 之后的代码在 handler 返回时执行，早于 future 完成。
+     * 
+     * <pre>{@code
+     * app.get("/users/:id", ctx -> ctx.defer(
+     *     userClient.fetch(ctx.pathParam("id")).thenAccept(ctx::json)
+     * ));
+     * }</pre>
+     * 
+     * @param future 完成时发送响应，null 表示同步响应
+     * @return this
+     */
+    public Context defer(CompletableFuture<?> future) {
+        this.responseFuture = future;
+        return this;
+    }
+    
+    // ==================== 类型化状态 ====================
+    
+    /**
+     * 读取类型化状态
+     * 
+     * <pre>{@code
+     * static final StateKey<User> USER = StateKey.of("user");
+     * 
+     * User user = ctx.get(USER);
+     * }</pre>
+     * 
+     * @param key 启动时创建的键
+     * @return 值，未设置时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(StateKey<T> key) {
+        int index = key.index;
+        return index < slots.length ? (T) slots[index] : null;
+    }
+    
+    /**
+     * 写入类型化状态（等价于 {@code ctx.state.put(key.name, value)}，但没有哈希和 Map 节点分配）
+     * 
+     * @param key 启动时创建的键
+     * @param value 值，null 表示移除
+     * @return this
+     */
+    public <T> Context set(StateKey<T> key, T value) {
+        int index = key.index;
+        if (index >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(index + 1, slots.length * 2));
+        }
+        slots[index] = value;
+        if (index >= slotsUsed) {
+            slotsUsed = index + 1;
+        }
+        return this;
+    }
+    
+    /**
+     * {@link #state} 的实现：已创建的 StateKey 名称映射到类型化状态数组，其他名称存放在按需创建的 HashMap
+     */
+    private final class StateMap extends AbstractMap<String, Object> {
+        
+        private Map<String, Object> others;
+        
+        @Override
+        public Object get(Object name) {
+            StateKey<?> key = StateKey.lookup(name);
+            if (key != null) {
+                return Context.this.get(key);
+            }
+            return others == null ? null : others.get(name);
+        }
+        
+        @Override
+        public boolean containsKey(Object name) {
+            StateKey<?> key = StateKey.lookup(name);
+            if (key != null) {
+                return Context.this.get(key) != null;
+            }
+            return others != null && others.containsKey(name);
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object put(String name, Object value) {
+            StateKey<Object> key = (StateKey<Object>) StateKey.lookup(name);
+            if (key != null) {
+                Object old = Context.this.get(key);
+                set(key, value);
+                return old;
+            }
+            if (others == null) {
+                others = new HashMap<>();
+            }
+            return others.put(name, value);
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object remove(Object name) {
+            StateKey<Object> key = (StateKey<Object>) StateKey.lookup(name);
+            if (key != null) {
+                Object old = Context.this.get(key);
+                set(key, null);
+                return old;
+            }
+            return others == null ? null : others.remove(name);
+        }
+        
+        @Override
+        public void clear() {
+            Arrays.fill(slots, 0, slotsUsed, null);
+            slotsUsed = 0;
+            if (others != null) {
+                others.clear();
+            }
+        }
+        
+        @Override
+        public int size() {
+            int size = others == null ? 0 : others.size();
+            for (int i = 0; i < slotsUsed; i++) {
+                if (slots[i] != null) size++;
+            }
+            return size;
+        }
+        
+        /**
+         * 当前状态的快照（遍历期间的修改不会反映到快照中）
+         */
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            for (int i = 0; i < slotsUsed; i++) {
+                if (slots[i] != null) snapshot.put(StateKey.at(i).name, slots[i]);
+            }
+            if (others != null) {
+                snapshot.putAll(others);
+            }
+            return Collections.unmodifiableMap(snapshot).entrySet();
+        }
+    }
+    
+    // ==================== 截止时间 ====================
+    
+    /**
+     * 收紧请求截止时间：从现在起 timeoutMillis 毫秒，已有更早的截止时间时保持不变
+     * 
+     * <p>截止时间来自路由（{@link Route#timeout(long)}）或受信任调用方的 {@value #DEADLINE_HEADER} 请求头
+     * （见 {@link App#deadlineHeader}）。
+     * 开始处理前已过期的请求直接返回 504；handler 或异步响应超过截止时间也返回 504；
+     * RpcClient、HttpClient、JdbcPlugin 按剩余时间收紧自己的超时（见 {@link #capTimeout(int)}）。
+     * 
+     * @param timeoutMillis 剩余时间（毫秒）
+     * @return this
+     */
+    public Context deadline(long timeoutMillis) {
+        return deadline(System.currentTimeMillis(), timeoutMillis);
+    }
+    
+    /**
+     * 收紧请求截止时间：从 startMillis 起 timeoutMillis 毫秒
+     * 
+     * <p>路由超时和 {@value #DEADLINE_HEADER} 从请求到达时（{@link #receivedAt}）算起，排队时间也计入。
+     * 超出 long 范围时按不限时处理（截止时间取 Long.MAX_VALUE），不会回绕成已过期。
+     * 
+     * @param startMillis 起算时间（System.currentTimeMillis() 时间戳）
+     * @param timeoutMillis 剩余时间（毫秒）
+     * @return this
+     */
+    public Context deadline(long startMillis, long timeoutMillis) {
+        long at;
+        try {
+            at = Math.addExact(startMillis, timeoutMillis);
+        } catch (ArithmeticException e) {
+            at = timeoutMillis > 0 ? Long.MAX_VALUE : 1;
+        }
+        if (deadline == 0 || at < deadline) {
+            deadline = at;
+        }
+        return this;
+    }
+    
+    /**
+     * 距截止时间的剩余毫秒数，没有截止时间时返回 Long.MAX_VALUE，已过期时 &lt;= 0
+     */
+    public long remainingMillis() {
+        return deadline == 0 ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+    }
+    
+    /**
+     * 是否已超过截止时间
+     */
+    public boolean isExpired() {
+        return deadline != 0 && System.currentTimeMillis() >= deadline;
+    }
+    
+    /**
+     * 当前线程正在处理的请求的截止时间，0 表示没有
+     * 
+     * <p>只在 handler 同步执行期间有效；异步 handler 的回调线程请直接使用 ctx.deadline。
+     */
+    public static long currentDeadline() {
+        return CURRENT_DEADLINE.get()[0];
+    }
+    
+    /**
+     * 按当前请求的剩余时间收紧下游调用的超时
+     * 
+     * @param timeoutMillis 调用方配置的超时（毫秒），&lt;= 0 表示不限制
+     * @return 配置的超时与剩余时间中较小的一个；当前线程没有截止时间时原样返回
+     * @throws LiteJavaException 504，截止时间已过
+     */
+    public static int capTimeout(int timeoutMillis) {
+        long deadline = currentDeadline();
+        if (deadline == 0) return timeoutMillis;
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new LiteJavaException("Deadline exceeded", 504);
+        }
+        return timeoutMillis > 0 && timeoutMillis < remaining ? timeoutMillis : (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * 设置当前线程的请求截止时间
+     * @return 之前的值，执行完后用它恢复
+     */
+    static long bindDeadline(long deadline) {
+        long[] slot = CURRENT_DEADLINE.get();
+        long outer = slot[0];
+        slot[0] = deadline;
+        return outer;
+    }
+    
+    // ==================== 并发任务 ====================
+    
+    /**
+     * 并发执行多个任务，全部完成后按参数顺序返回结果
+     * 
+     * <p>handler 需要调用多个互不依赖的后端时，总耗时从各调用之和变为其中最慢的一个：
+     * <pre>{@code
+     * List<Object> r = ctx.parallel(
+     *     () -> orderItemMapper.findByOrderId(id),
+     *     () -> UserClient.getUser(userId));
+     * List<OrderItem> items = (List<OrderItem>) r.get(0);
+     * Map<String, Object> user = (Map<String, Object>) r.get(1);
+     * }</pre>
+     * 
+     * <p>任务在 {@link App#executor()} 上执行（litejava-plugins-vt 的服务器插件默认使用虚拟线程），
+     * 并继承请求的截止时间（RpcClient、HttpClient、JdbcPlugin 照常收紧超时）。
+     * 任一任务失败时立即取消（中断）其余任务并抛出该任务的异常，不等待其他任务结束。
+     * 
+     * @param tasks 要并发执行的任务
+     * @return 各任务的结果，顺序与参数一致
+     * @throws LiteJavaException 504，请求截止时间已到而任务未全部完成
+     * @throws Exception 第一个失败任务抛出的异常
+     */
+    public List<Object> parallel(Callable<?>... tasks) throws Exception {
+        return parallel(0, tasks);
+    }
+    
+    /**
+     * 并发执行多个任务，限定总时长
+     * 
+     * @param timeoutMillis 总时长上限（毫秒），&lt;= 0 表示只受请求截止时间限制
+     * @param tasks 要并发执行的任务
+     * @return 各任务的结果，顺序与参数一致
+     * @throws LiteJavaException 504，超过总时长或请求截止时间而任务未全部完成（其余任务被取消）
+     * @throws Exception 第一个失败任务抛出的异常
+     * @see #parallel(Callable[])
+     */
+    public List<Object> parallel(long timeoutMillis, Callable<?>... tasks) throws Exception {
+        long remaining = remainingMillis();
+        long limit = timeoutMillis > 0 ? Math.min(timeoutMillis, remaining) : remaining;
+        if (limit <= 0) {
+            throw new LiteJavaException("Deadline exceeded", 504);
+        }
+        boolean bounded = limit != Long.MAX_VALUE;
+        long until = bounded ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(limit) : 0;
+        
+        CompletionService<Object> completion = new ExecutorCompletionService<>(app.executor());
+        List<Future<Object>> futures = new ArrayList<>(tasks.length);
+        long taskDeadline = deadline;
+        try {
+            for (Callable<?> task : tasks) {
+                futures.add(completion.submit(() -> {
+                    long outer = bindDeadline(taskDeadline);
+                    try {
+                        return task.call();
+                    } finally {
+                        bindDeadline(outer);
+                    }
+                }));
+            }
+            for (int i = 0; i < tasks.length; i++) {
+                Future<Object> done = bounded
+                    ? completion.poll(until - System.nanoTime(), TimeUnit.NANOSECONDS)
+                    : completion.take();
+                if (done == null) {
+                    throw new LiteJavaException(limit == remaining ? "Deadline exceeded" : "Parallel tasks timed out", 504);
+                }
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) throw (Exception) cause;
+                    if (cause instanceof Error) throw (Error) cause;
+                    throw e;
+                }
+            }
+            List<Object> results = new ArrayList<>(tasks.length);
+            for (Future<Object> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            // 已完成的任务不受影响；失败、超时或调用线程被中断时取消其余任务
+            for (Future<Object> future : futures) {
+                future.cancel(true);
+            }
+        }
     }
     
     // ==================== 统一响应格式 ====================
@@ -845,10 +1538,10 @@ public class Context {
         return responseStatus;
     }
     
-    public Map<String, String> getResponseHeaders() {
+    public Headers getResponseHeaders() {
         // 直接在 responseHeaders 中设置 Content-Type，避免创建新 Map
-        if (responseContentType != null && !responseHeaders.containsKey("Content-Type")) {
-            responseHeaders.put("Content-Type", responseContentType);
+        if (responseContentType != null && !responseHeaders.containsKey(Headers.CONTENT_TYPE)) {
+            responseHeaders.put(Headers.CONTENT_TYPE, responseContentType);
         }
         return responseHeaders;
     }
@@ -857,6 +1550,48 @@ public class Context {
         return responseBody != null ? responseBody : EMPTY_BODY;
     }
     
+    /** 是否为流式响应（服务器插件据此选择 chunked 输出） */
+    public boolean isStreaming() {
+        return responseStream != null;
+    }
+    
+    public StreamWriter getResponseStream() {
+        return responseStream;
+    }
+    
+    /** 是否为异步响应（服务器插件在 {@link #getResponseFuture()} 完成后发送响应） */
+    public boolean isDeferred() {
+        return responseFuture != null;
+    }
+    
+    public CompletableFuture<?> getResponseFuture() {
+        return responseFuture;
+    }
+    
+    /** 是否为文件响应（服务器插件据此选择零拷贝发送） */
+    public boolean isFileResponse() {
+        return responseFile != null;
+    }
+    
+    public File getResponseFile() {
+        return responseFile;
+    }
+    
+    public long getResponseFilePosition() {
+        return responseFilePosition;
+    }
+    
+    public long getResponseFileLength() {
+        return responseFileLength;
+    }
+    
+    /** 清除已设置的响应体（字节数组/流式写入器/文件），新的响应方法覆盖旧的 */
+    private void clearResponseBody() {
+        this.responseBody = null;
+        this.responseStream = null;
+        this.responseFile = null;
+    }
+    
     private static final byte[] EMPTY_BODY = new byte[0];
     
     // ==================== Abort 机制（Gin-style）====================
@@ -913,7 +1648,6 @@ public class Context {
      */
     public String cookie(String name) {
         String cookieHeader = header("Cookie");
-        if (cookieHeader == null) cookieHeader = header("cookie");
         if (cookieHeader == null) return null;
         
         for (String part : cookieHeader.split(";")) {
@@ -968,7 +1702,7 @@ public class Context {
             sb.append("; HttpOnly");
         }
         
-        header("Set-Cookie", sb.toString());
+        addHeader(Headers.SET_COOKIE, sb.toString());
         return this;
     }
     
@@ -1025,16 +1759,7 @@ public class Context {
      * @return 头值，不存在返回 null
      */
     public String header(String name) {
-        String value = headers.get(name);
-        if (value != null) return value;
-        
-        // 尝试不区分大小写
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
-            if (entry.getKey().equalsIgnoreCase(name)) {
-                return entry.getValue();
-            }
-        }
-        return null;
+        return headers.get(name);
     }
     
     /**
@@ -1051,6 +1776,42 @@ public class Context {
         return header("User-Agent");
     }
     
+    /**
+     * 解析 query string（queryParams 首次访问时调用），同名参数取第一个值
+     */
+    private static void parseQuery(String query, Map<String, String> params) {
+        if (query == null || query.isEmpty()) return;
+
+        int start = 0;
+        int len = query.length();
+        while (start < len) {
+            int end = query.indexOf('&', start);
+            if (end < 0) end = len;
+            int eq = query.indexOf('=', start);
+            if (eq < 0 || eq > end) eq = end;
+            if (eq > start) {
+                String key = decodeComponent(query, start, eq);
+                String value = eq < end ? decodeComponent(query, eq + 1, end) : "";
+                params.putIfAbsent(key, value);
+            }
+            start = end + 1;
+        }
+    }
+
+    private static String decodeComponent(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == '%' || c == '+') {
+                try {
+                    return URLDecoder.decode(s.substring(from, to), charset);
+                } catch (IllegalArgumentException e) {
+                    return s.substring(from, to);
+                }
+            }
+        }
+        return s.substring(from, to);
+    }
+
     // ==================== Query/URI 绑定（Gin-style）====================
     
     /**
@@ -1080,6 +1841,7 @@ public class Context {
      * 
      * <p>服务器插件使用对象池时，在请求处理完成后调用此方法
      * 清理状态，以便 Context 对象可以被下一个请求复用。
+     * 请求头、参数、state 等容器原地清空，不重新分配（见 {@link ContextPool}）。
      */
     public void reset() {
         app = null;
@@ -1088,15 +1850,50 @@ public class Context {
         query = null;
         remoteAddr = null;
         wildcardPath = null;
+        route = null;
+        routed = false;
+        deadline = 0;
+        receivedAt = 0;
+        timing.reset();
+        jfr = null;
         headers.clear();
         params.clear();
-        queryParams.clear();
+        queryParams.load(queryLoader);
         state.clear();
         responseStatus = 200;
         responseHeaders.clear();
         responseBody = null;
         responseContentType = null;
+        responseStream = null;
+        responseFile = null;
+        responseFilePosition = 0;
+        responseFileLength = 0;
+        responseFuture = null;
+        handlerFuture = null;
         requestBody = null;
+        requestBodyStream = null;
+        requestContentLength = -1;
+        requestMaxSize = 0;
+        requestBodyConsumed = false;
+        deleteUploadedFiles();
+        if (multipartFields != null) multipartFields.clear();
+        multipartParsed = false;
         aborted = false;
+        chain = null;
+    }
+    
+    /**
+     * 中间件链第 index 阶段的 next()，首次使用时创建并缓存
+     */
+    Next chainNext(int index) {
+        if (index >= chainNexts.length) {
+            chainNexts = Arrays.copyOf(chainNexts, Math.max(index + 1, chainNexts.length * 2));
+        }
+        Next next = chainNexts[index];
+        if (next == null) {
+            next = () -> chain.executeAt(this, index);
+            chainNexts[index] = next;
+        }
+        return next;
     }
 }
@@ -0,0 +1,221 @@
+package litejava;
+
+import litejava.plugin.LogPlugin;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Context 对象池 - 所有服务器插件共用（见 {@link litejava.plugin.ServerPlugin#contextPool}）
+ *
+ * <p>池按线程 id 分成若干条带，每个条带是一段固定长度（最多 {@link #MAX_STRIPE_SIZE}）的槽位，借出和归还都用 CAS 操作槽位，
+ * 不加锁。同一线程总是从自己的条带的低位槽位开始借还，刚归还的 Context 最先被复用；
+ * 自己的条带借不到（归还）时再探测相邻的 {@link #NEIGHBOR_STRIPES} 个条带，借出和归还不在同一线程
+ * （如异步响应、Netty 的 IO 线程与工作线程）时池中的 Context 仍能被复用，每次借还最多检查固定数量的槽位。
+ * 池中对象数由原子计数维护，池空时不扫描槽位直接新建；探测范围内借不到时新建，放不下时丢弃交给 GC。
+ *
+ * <p>开启 {@link #leakDetection}（默认关闭，server.leakDetection=true 开启）时，每次借出都会记录调用位置：
+ * 借出后没有归还就被 GC 回收的 Context 在下次借出时以 warn 日志报告，重复归还的 Context 被忽略并报告。
+ *
+ * <pre>{@code
+ * Context ctx = app.server.contextPool.acquire();
+ * try {
+ *     // 解析请求、app.handle(ctx)、发送响应...
+ * } finally {
+ *     app.server.contextPool.release(ctx);
+ * }
+ * }</pre>
+ */
+public class ContextPool {
+
+    /** 默认容量，可通过 server.contextPoolSize 修改 */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** 单个条带的最大槽位数，容量更大时增加条带数 */
+    static final int MAX_STRIPE_SIZE = 64;
+
+    /** 自己的条带借不到（放不下）时额外探测的相邻条带数 */
+    static final int NEIGHBOR_STRIPES = 2;
+
+    /** 开启泄漏检测（记录借出位置，报告未归还和重复归还的 Context） */
+    public volatile boolean leakDetection;
+
+    /** 泄漏报告输出，null 时输出到 System.err */
+    public LogPlugin log;
+
+    private final AtomicReferenceArray<Context> slots;
+    private final int stripeSize;
+    private final int stripeMask;
+    private final int probeStripes;
+    private final int capacity;
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<Context> collected = new ReferenceQueue<>();
+
+    public ContextPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 池中最多保留的 Context 数，&lt;= 0 表示不缓存
+     */
+    public ContextPool(int capacity) {
+        int stripes = 1;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        while ((stripes < cpus || capacity / stripes > MAX_STRIPE_SIZE) && stripes * 2 <= capacity) stripes *= 2;
+        this.stripeSize = Math.max(capacity, 0) / stripes;
+        this.stripeMask = stripes - 1;
+        this.probeStripes = Math.min(stripes, 1 + NEIGHBOR_STRIPES);
+        this.capacity = stripeSize * stripes;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * 借出一个 Context，池空时新建
+     */
+    public Context acquire() {
+        Context ctx = size.get() > 0 ? poll() : null;
+        if (ctx == null) {
+            ctx = new Context();
+        }
+        if (leakDetection) {
+            track(ctx);
+        }
+        return ctx;
+    }
+
+    /**
+     * 重置并归还 Context，池满时丢弃
+     * 
+     * <p>异步响应因截止时间先行结束时，handler 的回调链（如 {@code thenAccept(ctx::json)}）仍可能写入
+     * Context，等它结束后才重置归还，迟到的写入不会落到下一个请求上。
+     */
+    public void release(Context ctx) {
+        if (ctx == null) return;
+        CompletableFuture<?> pending = ctx.handlerFuture;
+        if (pending != null && !pending.isDone()) {
+            pending.whenComplete((result, error) -> release(ctx));
+            return;
+        }
+        if (ctx.lease != null || leakDetection) {
+            if (!untrack(ctx)) return;
+        }
+        ctx.reset();
+        if (size.get() >= capacity) return;
+        int base = stripe();
+        for (int n = 0, end = probeStripes * stripeSize; n < end; n++) {
+            int i = base + n < capacity ? base + n : base + n - capacity;
+            if (slots.get(i) == null && slots.compareAndSet(i, null, ctx)) {
+                size.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 池中空闲的 Context 数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 池的最大容量（按条带数取整后）
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 条带数
+     */
+    int stripes() {
+        return stripeMask + 1;
+    }
+
+    /**
+     * 已借出未归还的 Context 数（仅泄漏检测开启时统计）
+     */
+    public int outstanding() {
+        return leases.size();
+    }
+
+    // ==================== 内部实现 ====================
+
+    private Context poll() {
+        int base = stripe();
+        // 从自己的条带开始，借不到时继续探测相邻条带
+        for (int n = 0, end = probeStripes * stripeSize; n < end; n++) {
+            int i = base + n < capacity ? base + n : base + n - capacity;
+            Context ctx = slots.get(i);
+            if (ctx != null && slots.compareAndSet(i, ctx, null)) {
+                size.decrementAndGet();
+                return ctx;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("deprecation")
+    private int stripe() {
+        return ((int) Thread.currentThread().getId() & stripeMask) * stripeSize;
+    }
+
+    private void track(Context ctx) {
+        reportLeaks();
+        Lease lease = new Lease(ctx, collected);
+        leases.add(lease);
+        ctx.lease = lease;
+    }
+
+    private boolean untrack(Context ctx) {
+        Lease lease = ctx.lease;
+        if (lease == null || !leases.remove(lease)) {
+            warn("Context released twice or not acquired from this pool", new Throwable("Released here"));
+            return false;
+        }
+        lease.clear();
+        ctx.lease = null;
+        return true;
+    }
+
+    private void reportLeaks() {
+        Reference<? extends Context> ref;
+        while ((ref = collected.poll()) != null) {
+            if (leases.remove(ref)) {
+                warn("Context leaked: acquired but never released to the pool", ((Lease) ref).site);
+            }
+        }
+    }
+
+    private void warn(String message, Throwable site) {
+        StringWriter trace = new StringWriter();
+        site.printStackTrace(new PrintWriter(trace));
+        String text = message + "\n" + trace;
+        if (log != null) {
+            log.warn(text);
+        } else {
+            System.err.println("[WARN] " + text);
+        }
+    }
+
+    /**
+     * 借出登记：弱引用 Context，Context 未归还就被回收时进入引用队列
+     */
+    static final class Lease extends WeakReference<Context> {
+        final Throwable site = new Throwable("Acquired here");
+
+        Lease(Context ctx, ReferenceQueue<Context> queue) {
+            super(ctx, queue);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package litejava;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * HTTP 头容器 - 名称不区分大小写，支持同名多值
+ *
+ * <p>用于 {@link Context#headers}（请求头）和 {@link Context#getResponseHeaders()}（响应头）。
+ * 按插入顺序保存在数组中，每个条目预先计算大小写无关的哈希，查找时先比较哈希再
+ * equalsIgnoreCase，请求头通常只有十几个，线性扫描比 HashMap 更快且没有节点分配。
+ * 用下面的常量（如 {@link #CONTENT_TYPE}）作为名称时直接取类加载时算好的哈希，不再逐字符计算。
+ *
+ * <pre>{@code
+ * ctx.headers.get("content-type");          // 不区分大小写
+ * ctx.headers.getAll("Accept");             // 同名多值
+ *
+ * Headers headers = ctx.getResponseHeaders();
+ * headers.put("Cache-Control", "no-cache"); // 替换同名的所有值
+ * headers.add("Set-Cookie", "a=1");         // 追加，不覆盖已有的 Set-Cookie
+ * }</pre>
+ *
+ * <p>作为 Map 使用时，{@link #get(Object)} 返回第一个值，{@link #entrySet()} 和
+ * {@link #forEach(BiConsumer)} 按插入顺序列出每个名称/值对（同名多值会出现多次），
+ * 服务器插件据此逐个写出响应头。
+ *
+ * <p>请求头支持延迟加载：服务器插件通过 {@link #load(Consumer, Function)} 登记加载器，
+ * 首次访问时才从原始请求复制；框架内部只需要个别请求头时用 {@link #peek(String)}
+ * 直接查原始请求，不触发加载。非线程安全，与 Context 相同。
+ */
+public class Headers extends AbstractMap<String, String> {
+
+    public static final String ACCEPT = "Accept";
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String AUTHORIZATION = "Authorization";
+    public static final String CACHE_CONTROL = "Cache-Control";
+    public static final String CONTENT_DISPOSITION = "Content-Disposition";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String CONTENT_LENGTH = "Content-Length";
+    public static final String CONTENT_TYPE = "Content-Type";
+    public static final String COOKIE = "Cookie";
+    public static final String LOCATION = "Location";
+    public static final String SET_COOKIE = "Set-Cookie";
+    public static final String USER_AGENT = "User-Agent";
+
+    /** 常用名称及其预先计算的哈希，按引用匹配（同一字面量在 JVM 中只有一个实例） */
+    private static final String[] COMMON = {
+        ACCEPT, ACCEPT_ENCODING, AUTHORIZATION, CACHE_CONTROL, CONTENT_DISPOSITION, CONTENT_ENCODING,
+        CONTENT_LENGTH, CONTENT_TYPE, COOKIE, LOCATION, SET_COOKIE, USER_AGENT
+    };
+    private static final int[] COMMON_HASHES = new int[COMMON.length];
+
+    static {
+        for (int i = 0; i < COMMON.length; i++) {
+            COMMON_HASHES[i] = fold(COMMON[i]);
+        }
+    }
+
+    private String[] names;
+    private String[] values;
+    private int[] hashes;
+    private int size;
+    private Consumer<Headers> loader;
+    private Function<String, String> lookup;
+
+    public Headers() {
+        this(8);
+    }
+
+    public Headers(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        names = new String[capacity];
+        values = new String[capacity];
+        hashes = new int[capacity];
+    }
+
+    /**
+     * 清空内容并登记加载器，下次访问时执行（由服务器插件调用）
+     *
+     * @param loader 通过 {@link #add(String, String)} 写入原始请求头的加载器
+     */
+    public void load(Consumer<Headers> loader) {
+        load(loader, null);
+    }
+
+    /**
+     * 清空内容并登记加载器和单个请求头的查找函数（由服务器插件调用）
+     *
+     * @param loader 通过 {@link #add(String, String)} 写入原始请求头的加载器
+     * @param lookup 按名称（不区分大小写）从原始请求取第一个值，供 {@link #peek(String)} 在加载前使用
+     */
+    public void load(Consumer<Headers> loader, Function<String, String> lookup) {
+        clear();
+        this.loader = loader;
+        this.lookup = lookup;
+    }
+
+    /**
+     * 获取第一个值，尚未加载时直接查原始请求而不复制全部请求头
+     *
+     * <p>用于框架在 handler 之前读取个别请求头（如截止时间），不抵消延迟加载的收益。
+     * 服务器插件没有登记查找函数时与 {@link #get(Object)} 相同。
+     *
+     * @return 头值，不存在返回 null
+     */
+    public String peek(String name) {
+        if (loader != null && lookup != null) {
+            return lookup.apply(name);
+        }
+        return get(name);
+    }
+
+    /**
+     * 是否已加载（或不存在待执行的加载器）
+     */
+    public boolean isLoaded() {
+        return loader == null;
+    }
+
+    private void ensureLoaded() {
+        if (loader != null) {
+            Consumer<Headers> l = loader;
+            loader = null;
+            l.accept(this);
+        }
+    }
+
+    /**
+     * 获取第一个值（不区分大小写）
+     *
+     * @return 头值，不存在返回 null
+     */
+    @Override
+    public String get(Object name) {
+        ensureLoaded();
+        int i = indexOf(name, 0);
+        return i >= 0 ? values[i] : null;
+    }
+
+    /**
+     * 获取同名的所有值（不区分大小写），按添加顺序
+     *
+     * @return 值列表，不存在返回空列表
+     */
+    public List<String> getAll(String name) {
+        ensureLoaded();
+        int i = indexOf(name, 0);
+        if (i < 0) return Collections.emptyList();
+        List<String> result = new ArrayList<>(2);
+        for (; i >= 0; i = indexOf(name, i + 1)) {
+            result.add(values[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        ensureLoaded();
+        return indexOf(name, 0) >= 0;
+    }
+
+    /**
+     * 设置头，替换同名的所有值
+     *
+     * @return 原来的第一个值
+     */
+    @Override
+    public String put(String name, String value) {
+        ensureLoaded();
+        int hash = hash(name);
+        int i = indexOf(name, hash, 0);
+        if (i < 0) {
+            append(name, hash, value);
+            return null;
+        }
+        String old = values[i];
+        names[i] = name;
+        values[i] = value;
+        removeFrom(name, hash, i + 1);
+        return old;
+    }
+
+    /**
+     * 追加头，保留同名的已有值（如多个 Set-Cookie）
+     */
+    public void add(String name, String value) {
+        ensureLoaded();
+        append(name, hash(name), value);
+    }
+
+    /**
+     * 删除同名的所有值
+     *
+     * @return 原来的第一个值
+     */
+    @Override
+    public String remove(Object name) {
+        ensureLoaded();
+        if (!(name instanceof String)) return null;
+        int hash = hash((String) name);
+        int i = indexOf(name, hash, 0);
+        if (i < 0) return null;
+        String old = values[i];
+        removeFrom((String) name, hash, i);
+        return old;
+    }
+
+    /**
+     * 名称/值对的数量（同名多值分别计数）
+     */
+    @Override
+    public int size() {
+        ensureLoaded();
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 清空内容，同时丢弃尚未执行的加载器
+     */
+    @Override
+    public void clear() {
+        loader = null;
+        lookup = null;
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * 按插入顺序遍历每个名称/值对，不分配 Entry 对象
+     */
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        ensureLoaded();
+        for (int i = 0; i < size; i++) {
+            action.accept(names[i], values[i]);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        ensureLoaded();
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    // ==================== 内部实现 ====================
+
+    private void append(String name, int hash, String value) {
+        if (size == names.length) {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        names[size] = name;
+        values[size] = value;
+        hashes[size] = hash;
+        size++;
+    }
+
+    private void removeAt(int index) {
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(names, index + 1, names, index, moved);
+            System.arraycopy(values, index + 1, values, index, moved);
+            System.arraycopy(hashes, index + 1, hashes, index, moved);
+        }
+        size--;
+        names[size] = null;
+        values[size] = null;
+    }
+
+    private void removeFrom(String name, int hash, int from) {
+        for (int i = indexOf(name, hash, from); i >= 0; i = indexOf(name, hash, i)) {
+            removeAt(i);
+        }
+    }
+
+    private int indexOf(Object name, int from) {
+        if (!(name instanceof String)) return -1;
+        return indexOf(name, hash((String) name), from);
+    }
+
+    private int indexOf(Object name, int hash, int from) {
+        for (int i = from; i < size; i++) {
+            if (hashes[i] == hash) {
+                String n = names[i];
+                if (n == name || n.equalsIgnoreCase((String) name)) return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 大小写无关的哈希，常用名称的常量直接返回预先计算的值
+     */
+    private static int hash(String name) {
+        for (int i = 0; i < COMMON.length; i++) {
+            if (COMMON[i] == name) return COMMON_HASHES[i];
+        }
+        return fold(name);
+    }
+
+    /**
+     * 逐字符计算大小写无关的哈希：equalsIgnoreCase 相等的名称哈希一定相等
+     */
+    private static int fold(String name) {
+        int h = 0;
+        for (int i = 0, n = name.length(); i < n; i++) {
+            char c = name.charAt(i);
+            if (c < 128) {
+                c = (c >= 'A' && c <= 'Z') ? (char) (c + 32) : c;
+            } else {
+                c = Character.toLowerCase(Character.toUpperCase(c));
+            }
+            h = 31 * h + c;
+        }
+        return h;
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, String>> {
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (next >= size) throw new NoSuchElementException();
+            last = next++;
+            final int index = last;
+            return new SimpleEntry<String, String>(names[index], values[index]) {
+                @Override
+                public String setValue(String value) {
+                    values[index] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) throw new IllegalStateException();
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package litejava;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 延迟填充的 Map - 首次访问时才调用加载器填充内容
+ *
+ * <p>用于 {@link Context#queryParams}：query string 在 handler 首次访问时才解析，
+ * 不读取查询参数的接口（健康检查、纯文本等热点接口）不会产生任何 HashMap 分配。
+ *
+ * <p>任何读写操作都会先触发加载，因此行为与普通 HashMap 一致。非线程安全，与 Context 相同。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class LazyMap<K, V> extends AbstractMap<K, V> {
+
+    private final int initialCapacity;
+    private HashMap<K, V> map;
+    private Consumer<Map<K, V>> loader;
+
+    public LazyMap(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+    }
+
+    /**
+     * 清空内容并登记新的加载器，下次访问时执行
+     *
+     * @param loader 加载器，null 表示没有待加载的内容
+     */
+    public void load(Consumer<Map<K, V>> loader) {
+        if (map != null) map.clear();
+        this.loader = loader;
+    }
+
+    /**
+     * 是否已加载（或不存在待执行的加载器）
+     */
+    public boolean isLoaded() {
+        return loader == null;
+    }
+
+    private HashMap<K, V> map() {
+        if (map == null) map = new HashMap<>(initialCapacity);
+        if (loader != null) {
+            Consumer<Map<K, V>> l = loader;
+            loader = null;
+            l.accept(map);
+        }
+        return map;
+    }
+
+    @Override
+    public V get(Object key) {
+        return map().get(key);
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        return map().getOrDefault(key, defaultValue);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map().containsKey(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return map().put(key, value);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return map().putIfAbsent(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        map().putAll(m);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return map().remove(key);
+    }
+
+    @Override
+    public int size() {
+        return map().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map().isEmpty();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return map().entrySet();
+    }
+
+    /**
+     * 清空内容，同时丢弃尚未执行的加载器
+     */
+    @Override
+    public void clear() {
+        loader = null;
+        if (map != null) map.clear();
+    }
+}
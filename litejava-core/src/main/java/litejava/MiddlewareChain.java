@@ -1,52 +1,107 @@
 package litejava;
 
+import litejava.jfr.Jfr;
+import litejava.jfr.MiddlewareEvent;
+
 import java.util.*;
 
 /**
  * Executes middleware chain in onion model (Koa-style).
  * Each middleware can execute code before and after calling next().
  * Supports abort() to stop the chain.
+ *
+ * <p>A chain is compiled once per route (global + group + route middlewares, then the handler)
+ * into a flat array and shared by all requests. The {@link Next} passed to each middleware is
+ * cached per Context and stage, so executing a chain allocates nothing per request.
  */
 class MiddlewareChain {
-    
-    private final List<MiddlewarePlugin> middlewares;
+
+    private static final MiddlewarePlugin[] NONE = new MiddlewarePlugin[0];
+
+    private final MiddlewarePlugin[] middlewares;
     private final Handler finalHandler;
-    private final int size;
-    
+
     MiddlewareChain(List<MiddlewarePlugin> middlewares, Handler finalHandler) {
-        // 直接引用，不复制
-        this.middlewares = middlewares;
+        this.middlewares = middlewares.isEmpty() ? NONE : middlewares.toArray(NONE);
         this.finalHandler = finalHandler;
-        this.size = middlewares.size();
     }
-    
+
+    /**
+     * Compile global, group and route middlewares (in that order) in front of the handler.
+     */
+    static MiddlewareChain compile(List<MiddlewarePlugin> global, List<MiddlewarePlugin> route, Handler handler) {
+        if (route == null || route.isEmpty()) {
+            return new MiddlewareChain(global, handler);
+        }
+        List<MiddlewarePlugin> combined = new ArrayList<>(global.size() + route.size());
+        combined.addAll(global);
+        combined.addAll(route);
+        return new MiddlewareChain(combined, handler);
+    }
+
     /**
      * Execute the middleware chain with the given context.
      */
     void execute(Context ctx) throws Exception {
-        executeAt(ctx, 0);
+        if (middlewares.length == 0) {
+            // 无中间件时直接执行 handler
+            executeAt(ctx, 0);
+            return;
+        }
+        // 嵌套执行（中间件内再执行另一条链）结束后恢复外层链
+        MiddlewareChain outer = ctx.chain;
+        ctx.chain = this;
+        try {
+            executeAt(ctx, 0);
+        } finally {
+            ctx.chain = outer;
+        }
     }
-    
-    private void executeAt(Context ctx, int index) throws Exception {
+
+    void executeAt(Context ctx, int index) throws Exception {
         // 检查是否已中断
         if (ctx.isAborted()) {
             return;
         }
-        
-        if (index < size) {
-            middlewares.get(index).handle(ctx, () -> executeAt(ctx, index + 1));
+
+        ServerTiming timing = ctx.timing;
+        if (!timing.active && ctx.jfr == null) {
+            run(ctx, index);
+            return;
+        }
+        long begin = System.nanoTime();
+        MiddlewareEvent event = index < middlewares.length ? Jfr.beginMiddleware(ctx) : null;
+        try {
+            run(ctx, index);
+        } finally {
+            if (timing.active) {
+                timing.stage(this, index, System.nanoTime() - begin);
+            }
+            if (event != null) {
+                Jfr.endMiddleware(event, ctx, middlewares[index], index);
+            }
+        }
+    }
+
+    private void run(Context ctx, int index) throws Exception {
+        if (index < middlewares.length) {
+            middlewares[index].handle(ctx, ctx.chainNext(index + 1));
         } else if (finalHandler != null) {
             finalHandler.handle(ctx);
         }
     }
-    
+
+    /**
+     * Number of middlewares in front of the handler.
+     */
+    int size() {
+        return middlewares.length;
+    }
+
     /**
-     * Create a chain with additional middlewares prepended.
+     * Simple class name of the middleware at index (empty for anonymous classes).
      */
-    MiddlewareChain prepend(List<MiddlewarePlugin> additional) {
-        List<MiddlewarePlugin> combined = new ArrayList<>(additional.size() + size);
-        combined.addAll(additional);
-        combined.addAll(middlewares);
-        return new MiddlewareChain(combined, finalHandler);
+    String middlewareName(int index) {
+        return middlewares[index].getClass().getSimpleName();
     }
 }
@@ -0,0 +1,362 @@
+package litejava;
+
+import litejava.exception.LiteJavaException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * multipart/form-data 流式解析器 - {@link Context#getFiles()} 的底层实现
+ *
+ * <p>按字节扫描请求体，边读边把每个 part 写入目标：
+ * <ul>
+ *   <li>普通字段按字符集解码为字符串</li>
+ *   <li>文件不超过 memoryThreshold 时保存在内存（{@link UploadedFile#content}）</li>
+ *   <li>超过阈值的文件转存到临时文件（{@link UploadedFile#path()}），堆内存占用与上传大小无关</li>
+ * </ul>
+ *
+ * <p>文件内容全程按字节处理，二进制上传不会因字符集转换而损坏。
+ * 边界查找使用 Boyer-Moore-Horspool 算法，整个请求体只扫描一遍。
+ *
+ * <pre>{@code
+ * String boundary = MultipartParser.boundary(ctx.contentType());
+ * new MultipartParser(in, boundary, StandardCharsets.UTF_8, 64 * 1024, null).parse(files, fields);
+ * }</pre>
+ */
+public class MultipartParser {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HEADER_SIZE = 16 * 1024;
+
+    private final InputStream in;
+    private final Charset charset;
+    private final int memoryThreshold;
+    private final File tempDir;
+
+    /** 首个边界 "--boundary" */
+    private final byte[] dashBoundary;
+    /** part 内容之后的分隔符 "\r\n--boundary" */
+    private final byte[] delimiter;
+    /** Horspool 跳转表 */
+    private final int[] shift = new int[256];
+
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    /**
+     * @param in 请求体输入流
+     * @param boundary Content-Type 中的 boundary 参数
+     * @param charset 字段值、文件名使用的字符集
+     * @param memoryThreshold 文件在内存中保存的最大字节数，超出时转存到临时文件
+     * @param tempDir 临时文件目录，null 表示 java.io.tmpdir
+     */
+    public MultipartParser(InputStream in, String boundary, Charset charset, int memoryThreshold, File tempDir) {
+        this.in = in;
+        this.charset = charset;
+        this.memoryThreshold = memoryThreshold;
+        this.tempDir = tempDir;
+        this.dashBoundary = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+
+        Arrays.fill(shift, delimiter.length);
+        for (int i = 0; i < delimiter.length - 1; i++) {
+            shift[delimiter[i] & 0xff] = delimiter.length - 1 - i;
+        }
+    }
+
+    /**
+     * 从 Content-Type 中提取 boundary
+     *
+     * @return boundary，不是 multipart/form-data 或缺少 boundary 时返回 null
+     */
+    public static String boundary(String contentType) {
+        if (contentType == null || !contentType.regionMatches(true, 0, "multipart/form-data", 0, 19)) {
+            return null;
+        }
+        String boundary = param(contentType, "boundary");
+        // RFC 2046 限制 boundary 最长 70 字符
+        return boundary == null || boundary.isEmpty() || boundary.length() > 200 ? null : boundary;
+    }
+
+    /**
+     * 解析整个请求体
+     *
+     * <p>解析失败时已放入 files 的临时文件由调用方负责删除（{@link UploadedFile#delete()}）。
+     *
+     * @param files 文件 part，key 为表单字段名
+     * @param fields 普通字段 part，key 为表单字段名
+     * @throws LiteJavaException 请求体格式错误（400）
+     * @throws IOException 读取请求体或写临时文件失败
+     */
+    public void parse(Map<String, UploadedFile> files, Map<String, String> fields) throws IOException {
+        skipPreamble();
+        while (true) {
+            // 边界之后是 "--"（结束）或 CRLF（下一个 part）
+            if (!fill(2)) throw malformed("unexpected end of body");
+            if (buf[pos] == '-' && buf[pos + 1] == '-') return;
+            skipLine();
+
+            String disposition = null;
+            String contentType = null;
+            int headerBytes = 0;
+            String line;
+            while (!(line = readHeaderLine()).isEmpty()) {
+                headerBytes += line.length();
+                if (headerBytes > MAX_HEADER_SIZE) throw malformed("part headers too large");
+                int colon = line.indexOf(':');
+                if (colon <= 0) continue;
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase(Headers.CONTENT_DISPOSITION)) {
+                    disposition = value;
+                } else if (name.equalsIgnoreCase(Headers.CONTENT_TYPE)) {
+                    contentType = value;
+                }
+            }
+
+            String fieldName = disposition != null ? param(disposition, "name") : null;
+            String filename = disposition != null ? param(disposition, "filename") : null;
+
+            if (filename != null) {
+                UploadedFile file = readFile(filename, contentType);
+                if (fieldName != null) {
+                    UploadedFile old = files.put(fieldName, file);
+                    if (old != null) old.delete();
+                } else {
+                    file.delete();
+                }
+            } else {
+                ByteArrayOutputStream value = new ByteArrayOutputStream();
+                readPart(value);
+                if (fieldName != null) {
+                    fields.put(fieldName, new String(value.toByteArray(), charset));
+                }
+            }
+        }
+    }
+
+    private UploadedFile readFile(String filename, String contentType) throws IOException {
+        UploadedFile file = new UploadedFile();
+        file.name = filename;
+        file.contentType = contentType != null ? contentType : Context.CT_BINARY;
+
+        SpoolingOutputStream out = new SpoolingOutputStream();
+        try {
+            readPart(out);
+            out.close();
+        } catch (IOException | RuntimeException e) {
+            out.discard();
+            throw e;
+        }
+        file.size = out.size;
+        if (out.file != null) {
+            file.tempFile = out.file;
+        } else {
+            file.content = out.memory.toByteArray();
+        }
+        return file;
+    }
+
+    // ==================== 字节扫描 ====================
+
+    /**
+     * 跳过首个边界之前的内容（preamble）
+     */
+    private void skipPreamble() throws IOException {
+        // 请求体通常直接以 "--boundary" 开头
+        if (fill(dashBoundary.length) && startsWith(dashBoundary)) {
+            pos += dashBoundary.length;
+            return;
+        }
+        readPart(null);
+    }
+
+    /**
+     * 读取 part 内容直到下一个分隔符，分隔符本身被消费
+     *
+     * @param out 内容输出，null 表示丢弃
+     */
+    private void readPart(OutputStream out) throws IOException {
+        int n = delimiter.length;
+        while (true) {
+            if (!fill(n)) throw malformed("missing closing boundary");
+            int i = pos;
+            int last = limit - n;
+            while (i <= last) {
+                int j = n - 1;
+                while (j >= 0 && buf[i + j] == delimiter[j]) j--;
+                if (j < 0) {
+                    if (out != null) out.write(buf, pos, i - pos);
+                    pos = i + n;
+                    return;
+                }
+                i += shift[buf[i + n - 1] & 0xff];
+            }
+            // 未找到：末尾 n-1 字节可能是分隔符的前缀，保留到下一轮
+            int safe = Math.min(i, limit - n + 1);
+            if (out != null) out.write(buf, pos, safe - pos);
+            pos = safe;
+            if (eof) throw malformed("missing closing boundary");
+            compactAndRead();
+        }
+    }
+
+    /**
+     * 读取一行 part 头（不含行尾 CRLF），整行必须能放入缓冲区
+     */
+    private String readHeaderLine() throws IOException {
+        int scanned = 0;
+        while (true) {
+            for (int i = pos + scanned; i < limit; i++) {
+                if (buf[i] == '\n') {
+                    int start = pos;
+                    int end = i > start && buf[i - 1] == '\r' ? i - 1 : i;
+                    pos = i + 1;
+                    return new String(buf, start, end - start, charset);
+                }
+            }
+            scanned = limit - pos;
+            if (scanned >= buf.length) throw malformed("part header line too long");
+            if (eof) throw malformed("unexpected end of part headers");
+            compactAndRead();
+        }
+    }
+
+    private void skipLine() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                if (buf[pos++] == '\n') return;
+            }
+            if (!fill(1)) throw malformed("unexpected end of body");
+        }
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf[pos + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 确保缓冲区至少有 n 个可读字节
+     *
+     * @return 流结束前无法凑够 n 字节时返回 false
+     */
+    private boolean fill(int n) throws IOException {
+        while (limit - pos < n) {
+            if (eof) return false;
+            compactAndRead();
+        }
+        return true;
+    }
+
+    private void compactAndRead() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        int read = in.read(buf, limit, buf.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    // ==================== 工具方法 ====================
+
+    /**
+     * 读取头部参数，如 {@code form-data; name="file"; filename="a.png"} 中的 name
+     */
+    static String param(String header, String key) {
+        int i = header.indexOf(';');
+        while (i >= 0 && i < header.length()) {
+            int start = i + 1;
+            while (start < header.length() && header.charAt(start) == ' ') start++;
+            int eq = header.indexOf('=', start);
+            if (eq < 0) return null;
+            String name = header.substring(start, eq).trim();
+            String value;
+            int next;
+            if (eq + 1 < header.length() && header.charAt(eq + 1) == '"') {
+                StringBuilder sb = new StringBuilder();
+                int j = eq + 2;
+                for (; j < header.length() && header.charAt(j) != '"'; j++) {
+                    char c = header.charAt(j);
+                    if (c == '\\' && j + 1 < header.length()) c = header.charAt(++j);
+                    sb.append(c);
+                }
+                value = sb.toString();
+                next = header.indexOf(';', j);
+            } else {
+                next = header.indexOf(';', eq);
+                value = header.substring(eq + 1, next < 0 ? header.length() : next).trim();
+            }
+            if (name.equalsIgnoreCase(key)) return value;
+            i = next;
+        }
+        return null;
+    }
+
+    private static LiteJavaException malformed(String reason) {
+        return new LiteJavaException("Malformed multipart body: " + reason, 400);
+    }
+
+    /**
+     * 先写内存，超过阈值后转存到临时文件的输出流
+     */
+    private class SpoolingOutputStream extends OutputStream {
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        File file;
+        OutputStream fileOut;
+        long size;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            if (fileOut == null && size + len > memoryThreshold) {
+                file = File.createTempFile("litejava-upload-", ".tmp", tempDir);
+                fileOut = new FileOutputStream(file);
+                memory.writeTo(fileOut);
+                memory = null;
+            }
+            if (fileOut != null) {
+                fileOut.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+            size += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOut != null) fileOut.close();
+        }
+
+        void discard() {
+            try {
+                close();
+            } catch (IOException ignored) {
+                // 删除即可
+            }
+            if (file != null) file.delete();
+        }
+    }
+}
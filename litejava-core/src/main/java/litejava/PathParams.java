@@ -0,0 +1,235 @@
+package litejava;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * 路径参数容器 - {@link Context#params} 的实现
+ *
+ * <p>路由匹配时按参数在路由中的位置写入槽位（{@link #set}），只记录参数名和值在请求路径中的
+ * 起止位置，值在首次读取时才截取字符串。数组随 Context 复用，匹配过程不分配任何对象；
+ * 回溯时通过 {@link #truncate(int)} 丢弃失败分支写入的参数。
+ *
+ * <p>路径参数通常只有一两个，按插入顺序线性查找。非线程安全，与 Context 相同。
+ *
+ * <pre>{@code
+ * // 路由 /users/:id 匹配 /users/42
+ * ctx.params.get("id");   // "42"
+ * }</pre>
+ */
+public class PathParams extends AbstractMap<String, String> {
+
+    private String[] names;
+    private String[] values;
+    private int[] starts;
+    private int[] ends;
+    private String[] sources;
+    private int size;
+
+    public PathParams() {
+        this(4);
+    }
+
+    public PathParams(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        names = new String[capacity];
+        values = new String[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        sources = new String[capacity];
+    }
+
+    // ==================== 路由匹配（路由插件调用）====================
+
+    /**
+     * 写入第 slot 个参数，值为 source 的 [start, end) 区间，之后的参数被丢弃
+     *
+     * @param slot 参数位置，不能大于当前 {@link #size()}
+     * @param name 参数名（注册路由时确定）
+     * @param source 请求路径
+     * @param start 值的起始位置
+     * @param end 值的结束位置（不含）
+     */
+    public void set(int slot, String name, String source, int start, int end) {
+        if (slot == names.length) grow();
+        sources[slot] = source;
+        names[slot] = name;
+        values[slot] = null;
+        starts[slot] = start;
+        ends[slot] = end;
+        size = slot + 1;
+    }
+
+    /**
+     * 只保留前 size 个参数（回溯时使用）
+     */
+    public void truncate(int size) {
+        for (int i = size; i < this.size; i++) {
+            names[i] = null;
+            values[i] = null;
+            sources[i] = null;
+        }
+        if (size < this.size) this.size = size;
+    }
+
+    /**
+     * 第 index 个参数名
+     */
+    public String nameAt(int index) {
+        return names[index];
+    }
+
+    /**
+     * 第 index 个参数值
+     */
+    public String valueAt(int index) {
+        String value = values[index];
+        if (value == null && starts[index] >= 0) {
+            value = sources[index].substring(starts[index], ends[index]);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    // ==================== Map 接口 ====================
+
+    @Override
+    public String get(Object key) {
+        int i = indexOf(key);
+        return i >= 0 ? valueAt(i) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            String old = valueAt(i);
+            values[i] = value;
+            starts[i] = -1;
+            return old;
+        }
+        if (size == names.length) grow();
+        names[size] = key;
+        values[size] = value;
+        starts[size] = -1;
+        size++;
+        return null;
+    }
+
+    @Override
+    public String remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) return null;
+        String old = valueAt(i);
+        removeAt(i);
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        truncate(0);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(names[i], valueAt(i));
+        }
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    // ==================== 内部实现 ====================
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        names = Arrays.copyOf(names, capacity);
+        values = Arrays.copyOf(values, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        sources = Arrays.copyOf(sources, capacity);
+    }
+
+    private void removeAt(int index) {
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(names, index + 1, names, index, moved);
+            System.arraycopy(values, index + 1, values, index, moved);
+            System.arraycopy(starts, index + 1, starts, index, moved);
+            System.arraycopy(ends, index + 1, ends, index, moved);
+            System.arraycopy(sources, index + 1, sources, index, moved);
+        }
+        size--;
+        names[size] = null;
+        values[size] = null;
+        sources[size] = null;
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, String>> {
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (next >= size) throw new NoSuchElementException();
+            last = next++;
+            final int index = last;
+            return new SimpleEntry<String, String>(names[index], valueAt(index)) {
+                @Override
+                public String setValue(String value) {
+                    values[index] = value;
+                    starts[index] = -1;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) throw new IllegalStateException();
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+}
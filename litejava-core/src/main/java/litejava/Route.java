@@ -1,14 +1,16 @@
 package litejava;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
- * 路由定义 - 支持链式 API 添加文档元数据
+ * 路由定义 - 支持链式 API 添加文档元数据和路由级中间件
  * 
  * <h2>使用示例</h2>
  * <pre>{@code
  * app.post("/users", handler)
+ *    .use(new AuthMiddleware())
  *    .summary("创建用户")
  *    .param("name", String.class, true, "用户名")
  *    .param("age", Integer.class, false, "年龄")
@@ -22,6 +24,9 @@ public class Route {
     public final String path;
     public final Handler handler;
     
+    /** 路径是否以通配符结尾（如 /files/*filepath），匹配值为最后一个路径参数 */
+    public final boolean wildcard;
+    
     // 文档元数据
     public String summary;
     public String description;
@@ -31,10 +36,52 @@ public class Route {
     public Class<?> requestBody;
     public String requestBodyDesc;
     
+    /** 优先路由（健康检查、指标采集等控制面接口），见 {@link #priority()} */
+    public boolean priority;
+    
+    /** 处理时限（毫秒），0 表示不限制，见 {@link #timeout(long)} */
+    public long timeout;
+    
+    /** 路由级中间件（含注册时所在分组的中间件），在全局中间件之后执行 */
+    public List<MiddlewarePlugin> middlewares = new ArrayList<>();
+    
+    /** 编译后的中间件链（App 启动时生成） */
+    MiddlewareChain chain;
+    
     public Route(String method, String path, Handler handler) {
         this.method = method;
         this.path = path;
         this.handler = handler;
+        this.wildcard = path != null && path.indexOf('*') >= 0;
+    }
+    
+    /**
+     * 添加路由级中间件
+     */
+    public Route use(MiddlewarePlugin... middlewares) {
+        this.middlewares.addAll(Arrays.asList(middlewares));
+        return this;
+    }
+    
+    /**
+     * 标记为优先路由：工作线程池满载时不排在业务请求之后，由服务器的接收线程直接处理
+     * 
+     * <p>用于健康检查、指标采集等必须及时响应的接口，handler 应快速返回、不做阻塞 IO。
+     */
+    public Route priority() {
+        this.priority = true;
+        return this;
+    }
+    
+    /**
+     * 设置处理时限：请求的截止时间为开始处理后 timeoutMillis 毫秒（调用方传来的截止时间更早时以调用方为准）
+     * 
+     * <p>开始处理前已超时的请求和超时未完成的异步响应返回 504，同步 handler 超时后才完成时仍返回它的结果；
+     * 下游 RPC/HTTP/JDBC 调用的超时不超过剩余时间，见 {@link Context#deadline(long)}。
+     */
+    public Route timeout(long timeoutMillis) {
+        this.timeout = timeoutMillis;
+        return this;
     }
     
     /**
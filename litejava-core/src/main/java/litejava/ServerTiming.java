@@ -0,0 +1,280 @@
+package litejava;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求阶段计时 - 每个 Context 一份（随 Context 复用，不按请求分配）
+ *
+ * <p>开启 {@link App#timing}（配置 server.timing=true）后，用 System.nanoTime() 记录：
+ * <ul>
+ *   <li>{@code route} - 路由匹配</li>
+ *   <li>{@code mw} - 中间件自身耗时（不含 next() 之后的部分），Server-Timing 中按中间件分别列出</li>
+ *   <li>{@code handler} - handler 耗时（不含 JSON 序列化；异步 handler 计到 future 完成）</li>
+ *   <li>{@code json} - {@link Context#json(Object)} 序列化</li>
+ *   <li>{@code write} - 服务器插件发送响应（handler 结束到 Context 归还）</li>
+ * </ul>
+ *
+ * <p>开启 {@link App#timingHeader}（server.timingHeader=true）时响应附带 Server-Timing 头，
+ * 浏览器开发者工具可直接查看（写出阶段发生在响应头之后，只计入直方图）：
+ * <pre>
+ * Server-Timing: route;dur=0.004, mw.CorsPlugin;dur=0.010, mw.AuthPlugin;dur=0.210, handler;dur=3.120, json;dur=0.180, total;dur=3.530
+ * </pre>
+ *
+ * <p>每个请求结束时各阶段耗时汇总到 {@link App#timingStats}（{@link Stats}，对数分桶直方图），
+ * MetricsPlugin 把它导出为 Prometheus 指标，用于区分 p99 变慢来自中间件、JSON 还是服务器插件。
+ */
+public final class ServerTiming {
+
+    public static final int ROUTE = 0;
+    public static final int MIDDLEWARE = 1;
+    public static final int HANDLER = 2;
+    public static final int JSON = 3;
+    public static final int WRITE = 4;
+
+    /** 阶段名称，下标与阶段常量一致 */
+    public static final String[] PHASES = {"route", "mw", "handler", "json", "write"};
+
+    /** 本次请求是否在计时（App 开启 timing 时由 handle() 设置） */
+    boolean active;
+
+    private long start;
+    private long handled;
+    private final long[] phases = new long[PHASES.length];
+
+    /** 中间件链各阶段的耗时（含之后的链），下标 = 中间件序号，中间件数对应的一项为 handler */
+    private long[] stages = new long[8];
+    private int stageCount;
+    private MiddlewareChain chain;
+
+    /**
+     * 本次请求是否在计时
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 指定阶段的耗时（纳秒）
+     */
+    public long nanos(int phase) {
+        return phases[phase];
+    }
+
+    /**
+     * 第 index 个中间件的自身耗时（纳秒），不含 next() 之后的中间件和 handler
+     */
+    public long middlewareNanos(int index) {
+        if (index >= middlewareCount()) return 0;
+        return Math.max(0, stages[index] - stages[index + 1]);
+    }
+
+    /**
+     * 本次请求的中间件链上的中间件数（被中断时后面的中间件耗时为 0）
+     */
+    public int middlewareCount() {
+        return chain != null ? chain.size() : 0;
+    }
+
+    /**
+     * 从开始处理到 handler 结束（或异步响应完成）的总耗时（纳秒）
+     */
+    public long totalNanos() {
+        return handled - start;
+    }
+
+    // ==================== 记录（App / MiddlewareChain / 服务器插件调用）====================
+
+    /**
+     * 开始计时
+     */
+    void begin() {
+        reset();
+        active = true;
+        start = System.nanoTime();
+    }
+
+    /**
+     * 路由匹配完成
+     */
+    void routed() {
+        phases[ROUTE] = System.nanoTime() - start;
+    }
+
+    /**
+     * 累加 JSON 序列化耗时
+     */
+    void json(long nanos) {
+        phases[JSON] += nanos;
+    }
+
+    /**
+     * 记录中间件链第 index 阶段的耗时（嵌套执行的其他链不计入）
+     */
+    void stage(MiddlewareChain owner, int index, long nanos) {
+        if (chain == null) {
+            chain = owner;
+            if (owner.size() >= stages.length) {
+                stages = new long[Math.max(owner.size() + 1, stages.length * 2)];
+            }
+        } else if (chain != owner) {
+            return;
+        }
+        stages[index] += nanos;
+        if (index >= stageCount) {
+            stageCount = index + 1;
+        }
+    }
+
+    /**
+     * handler 结束（同步 handler 返回，或异步响应的 future 完成），计算中间件和 handler 耗时
+     *
+     * <p>同步响应由 App.handle() 调用，异步响应由服务器插件在 future 完成时调用。
+     */
+    public void handled() {
+        handled = System.nanoTime();
+        int count = middlewareCount();
+        long middleware = count > 0 ? Math.max(0, stages[0] - stages[count]) : 0;
+        phases[MIDDLEWARE] = middleware;
+        phases[HANDLER] = Math.max(0, handled - start - phases[ROUTE] - middleware - phases[JSON]);
+    }
+
+    /**
+     * 响应写出完成（服务器插件归还 Context 时调用）
+     */
+    public void written() {
+        phases[WRITE] = System.nanoTime() - handled;
+    }
+
+    void reset() {
+        active = false;
+        start = 0;
+        handled = 0;
+        Arrays.fill(phases, 0);
+        Arrays.fill(stages, 0, stageCount, 0);
+        stageCount = 0;
+        chain = null;
+    }
+
+    /**
+     * 生成 Server-Timing 响应头的值（毫秒，保留三位小数）
+     */
+    public String header() {
+        StringBuilder sb = new StringBuilder(128);
+        append(sb, PHASES[ROUTE], phases[ROUTE]);
+        int count = middlewareCount();
+        for (int i = 0; i < count; i++) {
+            String name = chain != null ? chain.middlewareName(i) : null;
+            append(sb, "mw." + (name == null || name.isEmpty() ? String.valueOf(i) : name), middlewareNanos(i));
+        }
+        append(sb, PHASES[HANDLER], phases[HANDLER]);
+        if (phases[JSON] > 0) {
+            append(sb, PHASES[JSON], phases[JSON]);
+        }
+        append(sb, "total", totalNanos());
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, long nanos) {
+        if (sb.length() > 0) sb.append(", ");
+        long micros = nanos / 1000;
+        long fraction = micros % 1000;
+        sb.append(name).append(";dur=").append(micros / 1000).append('.');
+        if (fraction < 100) sb.append('0');
+        if (fraction < 10) sb.append('0');
+        sb.append(fraction);
+    }
+
+    /**
+     * 各阶段耗时的汇总直方图（线程安全，无锁）
+     *
+     * <p>按微秒对数分桶：第 i 个桶统计 [2^(i-1), 2^i) 微秒的请求，分位数返回所在桶的上界，
+     * 误差不超过 2 倍，足以定位是哪个阶段变慢。
+     */
+    public static final class Stats {
+
+        /** 桶数：最大约 2^39 微秒（6 天），更慢的计入最后一个桶 */
+        public static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(PHASES.length * BUCKETS);
+        private final LongAdder[] counts = new LongAdder[PHASES.length];
+        private final LongAdder[] totals = new LongAdder[PHASES.length];
+
+        public Stats() {
+            for (int i = 0; i < PHASES.length; i++) {
+                counts[i] = new LongAdder();
+                totals[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * 汇总一个请求的各阶段耗时
+         */
+        public void record(ServerTiming timing) {
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                if (phase == JSON && timing.phases[JSON] == 0) continue;
+                record(phase, timing.phases[phase]);
+            }
+        }
+
+        /**
+         * 记录一次指定阶段的耗时
+         */
+        public void record(int phase, long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            buckets.incrementAndGet(phase * BUCKETS + bucket);
+            counts[phase].increment();
+            totals[phase].add(nanos);
+        }
+
+        /**
+         * 指定阶段的记录次数
+         */
+        public long count(int phase) {
+            return counts[phase].sum();
+        }
+
+        /**
+         * 指定阶段的累计耗时（纳秒）
+         */
+        public long totalNanos(int phase) {
+            return totals[phase].sum();
+        }
+
+        /**
+         * 指定阶段耗时的分位数（纳秒，所在桶的上界），没有记录时返回 0
+         *
+         * <p>桶从不清零，结果是自启动以来的分位数，不适合作为监控指标（导出 {@link #buckets} 由监控系统按时间窗口计算）。
+         *
+         * @param quantile 0~1，如 0.99
+         */
+        public long percentileNanos(int phase, double quantile) {
+            long[] snapshot = buckets(phase);
+            long total = 0;
+            for (long n : snapshot) total += n;
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return (1L << i) * 1000;
+                }
+            }
+            return (1L << (BUCKETS - 1)) * 1000;
+        }
+
+        /**
+         * 指定阶段各桶的计数快照
+         */
+        public long[] buckets(int phase) {
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(phase * BUCKETS + i);
+            }
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package litejava;
+
+import java.util.Arrays;
+
+/**
+ * 请求级状态的类型化键 - 配合 {@link Context#get(StateKey)} / {@link Context#set(StateKey, Object)} 使用
+ *
+ * <p>每个键在创建时分配一个全局序号，Context 按序号把值存放在随 Context 复用的数组中：
+ * 读写是一次数组访问，没有哈希计算、装箱和 Map 节点分配，取值也不需要强制类型转换。
+ * 键应当在启动时创建并保存在 static final 字段中；同名的键是同一个实例。
+ *
+ * <pre>{@code
+ * public static final StateKey<User> USER = StateKey.of("user");
+ *
+ * // 认证中间件
+ * ctx.set(USER, currentUser);
+ *
+ * // handler
+ * User user = ctx.get(USER);
+ * }</pre>
+ *
+ * <p>{@link Context#state} 仍然可用：按名称访问已创建的键时读写的是同一个数组位置，
+ * {@code ctx.state.get("user")} 与 {@code ctx.get(USER)} 得到同一个值。
+ *
+ * @param <T> 值类型
+ */
+public final class StateKey<T> {
+
+    /** 已创建的键，按序号排列 */
+    private static volatile StateKey<?>[] keys = new StateKey<?>[0];
+
+    /** 键名 */
+    public final String name;
+
+    /** 在 Context 状态数组中的位置 */
+    final int index;
+
+    private StateKey(String name, int index) {
+        this.name = name;
+        this.index = index;
+    }
+
+    /**
+     * 获取（首次调用时创建）指定名称的键
+     *
+     * @param name 键名，同时是在 {@link Context#state} 中的名称
+     * @return 该名称唯一的键
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> StateKey<T> of(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("StateKey name must not be null");
+        }
+        StateKey<?> key = lookup(name);
+        if (key != null) {
+            return (StateKey<T>) key;
+        }
+        synchronized (StateKey.class) {
+            key = lookup(name);
+            if (key == null) {
+                StateKey<?>[] current = keys;
+                key = new StateKey<>(name, current.length);
+                StateKey<?>[] next = Arrays.copyOf(current, current.length + 1);
+                next[key.index] = key;
+                keys = next;
+            }
+            return (StateKey<T>) key;
+        }
+    }
+
+    /**
+     * 按名称查找已创建的键，不存在时返回 null
+     */
+    static StateKey<?> lookup(Object name) {
+        for (StateKey<?> key : keys) {
+            if (key.name.equals(name)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按序号取键
+     */
+    static StateKey<?> at(int index) {
+        return keys[index];
+    }
+
+    /**
+     * 已创建的键数
+     */
+    static int count() {
+        return keys.length;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
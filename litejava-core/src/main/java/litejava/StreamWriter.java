@@ -0,0 +1,35 @@
+package litejava;
+
+import java.io.OutputStream;
+
+/**
+ * 流式响应写入器 - 配合 {@link Context#stream(String, StreamWriter)} 使用
+ *
+ * <p>响应头由服务器插件先行发送（chunked 传输编码），随后调用 {@link #write(OutputStream)}
+ * 边生成边输出，响应体不会在堆上完整缓存。调用 {@code out.flush()} 可立即把已写入的数据
+ * 作为一个 chunk 推送给客户端。
+ *
+ * <pre>{@code
+ * app.get("/export.csv", ctx -> ctx.stream("text/csv; charset=utf-8", out -> {
+ *     for (Order o : orderService.scanAll()) {
+ *         out.write((o.id + "," + o.amount + "\n").getBytes(StandardCharsets.UTF_8));
+ *     }
+ * }));
+ * }</pre>
+ *
+ * <p>注意：写入器执行时响应头已发送，抛出的异常无法再转换为错误响应，
+ * 服务器插件只能记录日志并中断连接。
+ *
+ * @see Context#stream(String, StreamWriter)
+ */
+@FunctionalInterface
+public interface StreamWriter {
+
+    /**
+     * 写出响应体
+     *
+     * @param out 响应输出流，flush() 立即发送已写入的数据，无需手动 close()
+     * @throws Exception 写出异常
+     */
+    void write(OutputStream out) throws Exception;
+}
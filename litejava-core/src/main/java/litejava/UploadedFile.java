@@ -5,36 +5,97 @@ import java.nio.file.*;
 
 /**
  * Represents an uploaded file from multipart form data.
+ *
+ * <p>Small files are kept in memory ({@link #content}). Files larger than
+ * {@code server.multipartThreshold} are spooled to a temporary file while the request
+ * is parsed, so {@link #content} is null and the data is available through
+ * {@link #path()}, {@link #asInputStream()} or {@link #saveTo(String)}.
+ * Temporary files are deleted when the request completes unless they were saved.
  */
 public class UploadedFile {
-    
+
     public String name;
     public String contentType;
     public long size;
     public byte[] content;
-    
+
+    /** Temporary file holding the content when it exceeded the memory threshold. */
+    File tempFile;
+
+    /** Whether the temporary file has been moved by {@link #saveTo(String)}. */
+    private boolean saved;
+
+    /**
+     * Whether the content is held in memory (otherwise it is spooled to disk).
+     */
+    public boolean isInMemory() {
+        return tempFile == null;
+    }
+
+    /**
+     * Path of the spooled (or saved) file on disk, or null when the content is in memory.
+     */
+    public Path path() {
+        return tempFile != null ? tempFile.toPath() : null;
+    }
+
     /**
      * Save the uploaded file to the specified path.
+     *
+     * <p>A spooled file is moved (renamed when on the same file system), so saving
+     * a large upload does not copy it through the heap.
      */
     public void saveTo(String path) throws IOException {
-        Files.write(Paths.get(path), content);
+        Path target = Paths.get(path);
+        if (tempFile == null) {
+            Files.write(target, content);
+        } else if (saved) {
+            Files.copy(tempFile.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.move(tempFile.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+            tempFile = target.toFile();
+            saved = true;
+        }
     }
-    
+
+    /**
+     * Get the file content as bytes, reading it from disk if it was spooled.
+     */
+    public byte[] getBytes() throws IOException {
+        return content != null ? content : Files.readAllBytes(tempFile.toPath());
+    }
+
     /**
      * Get the file content as a string (UTF-8).
      */
     public String asString() {
         try {
-            return new String(content, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            return new String(content);
+            return new String(getBytes(), "UTF-8");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
-    
+
     /**
      * Get an input stream for reading the file content.
      */
     public InputStream asInputStream() {
-        return new ByteArrayInputStream(content);
+        if (content != null) {
+            return new ByteArrayInputStream(content);
+        }
+        try {
+            return new BufferedInputStream(Files.newInputStream(tempFile.toPath()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Delete the temporary file, if any. Saved files are left untouched.
+     */
+    public void delete() {
+        if (tempFile != null && !saved) {
+            tempFile.delete();
+        }
     }
 }
@@ -0,0 +1,143 @@
+package litejava.jfr;
+
+import litejava.Context;
+import litejava.MiddlewarePlugin;
+
+/**
+ * JFR（JDK Flight Recorder）自定义事件 - 在持续录制中把请求延迟与 GC、安全点、锁竞争放在同一时间轴上分析
+ *
+ * <p>事件：
+ * <ul>
+ *   <li>{@code litejava.Request} - 请求（方法、路径、路由模板、状态码、响应字节数），见 {@link RequestEvent}</li>
+ *   <li>{@code litejava.Middleware} - 中间件执行，见 {@link MiddlewareEvent}</li>
+ *   <li>{@code litejava.PluginCall} - CachePlugin / JdbcPlugin 等插件调用，见 {@link PluginCallEvent}</li>
+ * </ul>
+ *
+ * <p>没有录制（或录制中关闭了对应事件）时 begin 方法返回 null，不创建事件对象，调用方只多一次判断：
+ * <pre>{@code
+ * PluginCallEvent event = Jfr.beginCall();
+ * try {
+ *     return doCall(key);
+ * } finally {
+ *     Jfr.endCall(event, this, "get", key);
+ * }
+ * }</pre>
+ *
+ * <p>录制示例：
+ * <pre>
+ * java -XX:StartFlightRecording=filename=app.jfr,settings=profile -jar app.jar
+ * jfr print --events litejava.Request app.jfr
+ * </pre>
+ *
+ * <p>运行在不带 jdk.jfr 模块的 JVM 上时 {@link #AVAILABLE} 为 false，所有方法都不做任何事。
+ */
+public final class Jfr {
+
+    /** 当前 JVM 是否支持 JFR */
+    public static final boolean AVAILABLE = detect();
+
+    private Jfr() {}
+
+    private static boolean detect() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    // ==================== 请求 ====================
+
+    /**
+     * 开始请求事件（App.handle() 调用），结果保存在 {@link Context#jfr}
+     */
+    public static void beginRequest(Context ctx) {
+        if (!AVAILABLE || !RequestEvent.TYPE.isEnabled()) {
+            ctx.jfr = null;
+            return;
+        }
+        RequestEvent event = new RequestEvent();
+        event.begin();
+        ctx.jfr = event;
+    }
+
+    /**
+     * 提交请求事件（服务器插件发送完响应、归还 Context 时调用）
+     */
+    public static void endRequest(Context ctx) {
+        RequestEvent event = ctx.jfr;
+        if (event == null) return;
+        ctx.jfr = null;
+        event.end();
+        if (event.shouldCommit()) {
+            event.method = ctx.method;
+            event.path = ctx.path;
+            event.route = ctx.route != null ? ctx.route.path : null;
+            event.status = ctx.getResponseStatus();
+            event.bytes = ctx.isFileResponse() ? ctx.getResponseFileLength()
+                : ctx.isStreaming() ? -1 : ctx.getResponseBody().length;
+            event.remoteAddr = ctx.remoteAddr;
+            event.commit();
+        }
+    }
+
+    // ==================== 中间件 ====================
+
+    /**
+     * 开始中间件事件，只在本次请求记录了请求事件时创建
+     */
+    public static MiddlewareEvent beginMiddleware(Context ctx) {
+        if (ctx.jfr == null || !MiddlewareEvent.TYPE.isEnabled()) return null;
+        MiddlewareEvent event = new MiddlewareEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * 提交中间件事件
+     *
+     * @param event {@link #beginMiddleware} 的返回值，为 null 时不做任何事
+     */
+    public static void endMiddleware(MiddlewareEvent event, Context ctx, MiddlewarePlugin middleware, int index) {
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.middleware = middleware.getClass().getName();
+            event.index = index;
+            event.path = ctx.path;
+            event.commit();
+        }
+    }
+
+    // ==================== 插件调用 ====================
+
+    /**
+     * 开始插件调用事件
+     */
+    public static PluginCallEvent beginCall() {
+        if (!AVAILABLE || !PluginCallEvent.TYPE.isEnabled()) return null;
+        PluginCallEvent event = new PluginCallEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * 提交插件调用事件
+     *
+     * @param event {@link #beginCall} 的返回值，为 null 时不做任何事
+     * @param plugin 发起调用的插件（记录类名）
+     * @param operation 操作，如 get、set、SELECT
+     * @param target 缓存 key 或 SQL
+     */
+    public static void endCall(PluginCallEvent event, Object plugin, String operation, String target) {
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.plugin = plugin.getClass().getSimpleName();
+            event.operation = operation;
+            event.target = target;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package litejava.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR 中间件事件 - 一个中间件从被调用到返回（含 next() 之后的中间件和 handler，按嵌套关系查看自身耗时）
+ *
+ * <p>只在本次请求记录了 {@link RequestEvent} 时产生。
+ */
+@Name("litejava.Middleware")
+@Label("Middleware")
+@Category({"LiteJava", "HTTP"})
+@Description("Middleware execution, including the rest of the chain it wraps")
+@StackTrace(false)
+public final class MiddlewareEvent extends Event {
+
+    static final EventType TYPE = EventType.getEventType(MiddlewareEvent.class);
+
+    @Label("Middleware")
+    public String middleware;
+
+    @Label("Index")
+    @Description("Position in the middleware chain")
+    public int index;
+
+    @Label("Path")
+    public String path;
+}
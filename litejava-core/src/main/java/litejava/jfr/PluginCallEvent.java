@@ -0,0 +1,32 @@
+package litejava.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR 插件调用事件 - 缓存、数据库等外部调用的耗时（如 CachePlugin 的 get/set，JdbcPlugin 执行的 SQL）
+ */
+@Name("litejava.PluginCall")
+@Label("Plugin Call")
+@Category({"LiteJava", "Plugin"})
+@Description("Call made through a LiteJava plugin, such as a cache operation or a SQL statement")
+@StackTrace(false)
+public final class PluginCallEvent extends Event {
+
+    static final EventType TYPE = EventType.getEventType(PluginCallEvent.class);
+
+    @Label("Plugin")
+    public String plugin;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Target")
+    @Description("Cache key or SQL statement")
+    public String target;
+}
@@ -0,0 +1,46 @@
+package litejava.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR 请求事件 - 从 App.handle() 开始到服务器插件发送完响应、归还 Context 为止
+ *
+ * <p>由 {@link Jfr#beginRequest} / {@link Jfr#endRequest} 创建和提交，业务代码不直接使用。
+ */
+@Name("litejava.Request")
+@Label("HTTP Request")
+@Category({"LiteJava", "HTTP"})
+@Description("HTTP request handled by LiteJava, from App.handle() until the response is written")
+@StackTrace(false)
+public final class RequestEvent extends Event {
+
+    static final EventType TYPE = EventType.getEventType(RequestEvent.class);
+
+    @Label("Method")
+    public String method;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Route")
+    @Description("Matched route template, e.g. /users/:id")
+    public String route;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Response Size")
+    @Description("Response body size, -1 for streaming responses")
+    @DataAmount
+    public long bytes;
+
+    @Label("Remote Address")
+    public String remoteAddr;
+}
@@ -0,0 +1,435 @@
+package litejava.plugin;
+
+import litejava.*;
+import litejava.exception.LiteJavaException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量请求插件 - 一个 HTTP 请求携带多个子请求，在进程内分发后合并返回
+ *
+ * <p>移动端首屏常要发出十几个小 GET，高延迟网络下连接和请求头的开销远大于业务处理。
+ * 批量请求把它们合并为一次往返：每个子请求借用对象池中的 Context，经
+ * {@link App#handle(Context)}（路由匹配 + 全局/路由中间件 + handler）处理，不经过网络和服务器插件。
+ *
+ * <h2>使用示例</h2>
+ * <pre>{@code
+ * app.use(new BatchPlugin());          // POST /batch
+ * app.use(new BatchPlugin("/multi"));  // POST /multi
+ * }</pre>
+ *
+ * <h2>请求与响应</h2>
+ * <pre>{@code
+ * POST /batch
+ * [
+ *   {"path": "/users/1"},
+ *   {"path": "/orders?page=1", "headers": {"Accept-Language": "en"}},
+ *   {"method": "POST", "path": "/events", "body": {"type": "open"}}
+ * ]
+ *
+ * 200 OK
+ * [
+ *   {"status": 200, "headers": {"Content-Type": "application/json; charset=utf-8"}, "body": {"id": 1}},
+ *   {"status": 200, "headers": {...}, "body": [...]},
+ *   {"status": 201, "headers": {...}, "body": null}
+ * ]
+ * }</pre>
+ *
+ * <ul>
+ *   <li>子请求继承外层请求的请求头（认证、Cookie 等）、客户端地址和截止时间，子请求自己的 headers 覆盖同名头</li>
+ *   <li>body 为字符串时原样作为请求体，其他值序列化为 JSON（默认 Content-Type: application/json）</li>
+ *   <li>JSON 响应体原样嵌入，其他文本响应体为字符串，二进制响应体为 Base64 字符串并带 "encoding": "base64"</li>
+ *   <li>子请求失败只影响自己的结果（状态码和错误响应），不影响其他子请求和外层响应</li>
+ * </ul>
+ *
+ * <h2>并发执行</h2>
+ * <p>相邻的安全方法（GET/HEAD/OPTIONS）子请求彼此独立，在 {@link #executor} 上并发执行；
+ * 其他方法的子请求按顺序单独执行，前面的读请求全部完成后才开始，之后的请求在它完成后才开始，
+ * 保证"先写后读"的顺序语义。异步 handler 的子请求在执行线程上等待其 future 完成。
+ * 线程池最多 {@link #threads} 个线程，线程用完时子请求在外层请求的线程上直接执行。
+ *
+ * <h2>配置</h2>
+ * <pre>
+ * batch.path=/batch          # 批量请求路径
+ * batch.maxRequests=20       # 单个批量请求最多子请求数，超出返回 400
+ * batch.threads=64           # 并发执行子请求的最大线程数（所有批量请求共享）
+ * </pre>
+ */
+public class BatchPlugin extends Plugin {
+
+    public String path = "/batch";
+
+    /** 单个批量请求最多子请求数 */
+    public int maxRequests = 20;
+
+    /** 并发执行子请求的最大线程数 */
+    public int threads = 64;
+
+    /** 并发执行子请求的线程池，为 null 时 config() 创建最多 {@link #threads} 个线程的守护线程池（uninstall() 时关闭） */
+    public ExecutorService executor;
+
+    private boolean ownsExecutor;
+
+    /** 批量请求自己的路由，用于拒绝嵌套的批量请求 */
+    private Route route;
+
+    /** 子请求任务状态：未开始 / 执行中 / 已完成 / 被外层放弃（由任务自己归还 Context） */
+    private static final int PENDING = 0, RUNNING = 1, DONE = 2, ABANDONED = 3;
+
+    /** 不复制到子请求的外层请求头（由子请求自己的请求体决定） */
+    private static final String[] BODY_HEADERS = {
+        Headers.CONTENT_TYPE, Headers.CONTENT_LENGTH, Headers.CONTENT_ENCODING, "Transfer-Encoding"
+    };
+
+    public BatchPlugin() {}
+
+    public BatchPlugin(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public void config() {
+        path = app.conf.getString("batch", "path", path);
+        maxRequests = app.conf.getInt("batch", "maxRequests", maxRequests);
+        threads = app.conf.getInt("batch", "threads", threads);
+
+        if (executor == null) {
+            AtomicInteger count = new AtomicInteger();
+            // 不排队：线程用完时 submit() 被拒绝，子请求在调用线程上执行
+            executor = new ThreadPoolExecutor(0, Math.max(1, threads), 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                Thread t = new Thread(r, "litejava-batch-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            ownsExecutor = true;
+        }
+
+        route = app.post(path, this::handle);
+    }
+
+    @Override
+    public void uninstall() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 批量请求 handler：解析子请求、分发、合并响应
+     */
+    protected void handle(Context ctx) throws Exception {
+        Object parsed;
+        try {
+            parsed = ctx.getRawData().length == 0 ? null : ctx.bindJSON(Object.class);
+        } catch (LiteJavaException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new LiteJavaException("Invalid batch request: " + e.getMessage(), 400);
+        }
+        if (!(parsed instanceof List)) {
+            throw new LiteJavaException("Batch request body must be a JSON array", 400);
+        }
+        List<?> requests = (List<?>) parsed;
+        if (requests.size() > maxRequests) {
+            throw new LiteJavaException("Too many batch requests (max " + maxRequests + ")", 400);
+        }
+
+        Context[] subs = dispatch(ctx, requests);
+        try {
+            ctx.data(render(subs), Context.CT_JSON);
+        } finally {
+            for (Context sub : subs) {
+                release(sub);
+            }
+        }
+    }
+
+    /**
+     * 分发子请求，返回与 requests 一一对应的已完成的 Context
+     *
+     * <p>返回的 Context 借自对象池，调用方读取响应后必须逐个 {@link #release(Context)}。
+     *
+     * @param parent 外层请求
+     * @param requests 子请求描述（method / path / headers / body）
+     */
+    protected Context[] dispatch(Context parent, List<?> requests) throws Exception {
+        List<String[]> inherited = new ArrayList<>();
+        parent.headers.forEach((name, value) -> {
+            if (!isBodyHeader(name)) inherited.add(new String[]{name, value});
+        });
+
+        Context[] subs = new Context[requests.size()];
+        AtomicInteger[] states = new AtomicInteger[subs.length];
+        List<Future<?>> group = new ArrayList<>();
+        try {
+            for (int i = 0; i < subs.length; i++) {
+                Context sub = acquire();
+                subs[i] = sub;
+                if (!prepare(parent, sub, requests.get(i), inherited)) {
+                    continue;
+                }
+                if (isSafe(sub.method)) {
+                    states[i] = new AtomicInteger(PENDING);
+                    group.add(submit(sub, states[i]));
+                } else {
+                    // 写请求是一道屏障：等前面的读请求完成，自己单独执行完再继续
+                    awaitAll(group);
+                    execute(sub);
+                }
+            }
+            awaitAll(group);
+        } catch (Exception e) {
+            for (Future<?> future : group) {
+                if (future != null) future.cancel(true);
+            }
+            // cancel 不等待任务结束：仍在执行的子请求由任务结束时自己归还，这里只归还不会再被使用的
+            for (int i = 0; i < subs.length; i++) {
+                if (subs[i] != null && (states[i] == null || abandon(states[i]))) {
+                    release(subs[i]);
+                }
+            }
+            throw e;
+        }
+        return subs;
+    }
+
+    /**
+     * 放弃子请求任务
+     * @return true 表示任务没有开始或已经结束，调用方归还 Context；false 表示任务仍在执行，结束时自己归还
+     */
+    private static boolean abandon(AtomicInteger state) {
+        return state.compareAndSet(PENDING, ABANDONED)
+            || !state.compareAndSet(RUNNING, ABANDONED);
+    }
+
+    /**
+     * 归还子请求 Context
+     */
+    protected void release(Context sub) {
+        if (app.server != null) {
+            app.server.releaseContext(sub);
+        }
+    }
+
+    private Context acquire() {
+        if (app.server != null) {
+            return app.server.acquireContext();
+        }
+        Context ctx = new Context();
+        ctx.app = app;
+        return ctx;
+    }
+
+    /**
+     * 按描述填充子请求，描述无效时直接写入 400 响应并返回 false
+     */
+    private boolean prepare(Context parent, Context sub, Object request, List<String[]> inherited) {
+        Object target = request instanceof Map ? ((Map<?, ?>) request).get("path") : null;
+        if (!(target instanceof String) || !((String) target).startsWith("/")) {
+            sub.status(400).text("Invalid batch request: path is required");
+            return false;
+        }
+        Map<?, ?> spec = (Map<?, ?>) request;
+        String uri = (String) target;
+        int q = uri.indexOf('?');
+        sub.path = q < 0 ? uri : uri.substring(0, q);
+        sub.query = q < 0 ? null : uri.substring(q + 1);
+        Object method = spec.get("method");
+        sub.method = method instanceof String ? ((String) method).toUpperCase(Locale.ROOT) : "GET";
+        sub.remoteAddr = parent.remoteAddr;
+        sub.deadline = parent.deadline;
+
+        for (String[] header : inherited) {
+            sub.headers.add(header[0], header[1]);
+        }
+        Object body = spec.get("body");
+        if (body != null) {
+            if (body instanceof String) {
+                sub.setRequestBody(((String) body).getBytes(StandardCharsets.UTF_8));
+            } else {
+                sub.setRequestBody(app.json.stringifyBytes(body));
+                sub.headers.put(Headers.CONTENT_TYPE, Context.CT_JSON);
+            }
+        }
+        Object headers = spec.get("headers");
+        if (headers instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) headers).entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    sub.headers.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+                }
+            }
+        }
+
+        // 按路由判断而不是比较路径：尾部斜杠、大小写等写法不同但命中同一路由的也算嵌套
+        if (route != null && app.match(sub) == route) {
+            sub.status(400).text("Nested batch requests are not allowed");
+            return false;
+        }
+        return true;
+    }
+
+    private Future<?> submit(Context sub, AtomicInteger state) {
+        try {
+            return executor.submit(() -> {
+                if (!state.compareAndSet(PENDING, RUNNING)) return;
+                try {
+                    execute(sub);
+                } finally {
+                    if (!state.compareAndSet(RUNNING, DONE)) {
+                        release(sub);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            execute(sub);
+            state.set(DONE);
+            return null;
+        }
+    }
+
+    /**
+     * 执行子请求，异常转换为子请求自己的错误响应
+     */
+    private void execute(Context sub) {
+        try {
+            app.handle(sub);
+            if (sub.isDeferred()) {
+                sub.getResponseFuture().get();
+            }
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException || e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof TimeoutException && sub.deadline != 0) {
+                cause = new LiteJavaException("Deadline exceeded", 504);
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                app.handleError(sub, cause instanceof Exception ? (Exception) cause
+                    : new LiteJavaException(String.valueOf(cause), cause));
+            } catch (RuntimeException handlerError) {
+                // 错误处理本身失败时只保留状态码，不影响其他子请求
+                if (sub.getResponseStatus() < 400) sub.status(500);
+            }
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> group) throws Exception {
+        for (Future<?> future : group) {
+            if (future != null) {
+                future.get();
+            }
+        }
+        group.clear();
+    }
+
+    // ==================== 合并响应 ====================
+
+    /**
+     * 把子请求的响应合并为 JSON 数组
+     */
+    protected byte[] render(Context[] subs) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 * subs.length + 2);
+        out.write('[');
+        for (int i = 0; i < subs.length; i++) {
+            Context sub = subs[i];
+            if (i > 0) out.write(',');
+
+            Map<String, String> headers = new LinkedHashMap<>();
+            sub.getResponseHeaders().forEach((name, value) -> headers.merge(name, value, (a, b) -> a + ", " + b));
+            String contentType = sub.getResponseHeaders().get(Headers.CONTENT_TYPE);
+            byte[] body = responseBody(sub);
+
+            write(out, "{\"status\":" + sub.getResponseStatus() + ",\"headers\":");
+            out.write(app.json.stringifyBytes(headers));
+            write(out, ",\"body\":");
+            if (body.length == 0) {
+                write(out, "null");
+            } else if (contentType != null && contentType.contains("json")) {
+                out.write(body);
+            } else if (isText(contentType)) {
+                out.write(app.json.stringifyBytes(new String(body, StandardCharsets.UTF_8)));
+            } else {
+                out.write(app.json.stringifyBytes(Base64.getEncoder().encodeToString(body)));
+                write(out, ",\"encoding\":\"base64\"");
+            }
+            out.write('}');
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    /**
+     * 读取子请求的响应体（流式和文件响应在内存中展开）
+     */
+    private static byte[] responseBody(Context sub) throws IOException {
+        if (sub.isStreaming()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                sub.getResponseStream().write(out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Stream writer failed: " + e.getMessage(), e);
+            }
+            return out.toByteArray();
+        }
+        if (sub.isFileResponse()) {
+            long length = sub.getResponseFileLength();
+            if (length > Integer.MAX_VALUE) {
+                throw new LiteJavaException("Batch response too large", 500);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            try (FileChannel file = FileChannel.open(sub.getResponseFile().toPath(), StandardOpenOption.READ)) {
+                long position = sub.getResponseFilePosition();
+                while (buffer.hasRemaining() && file.read(buffer, position + buffer.position()) > 0) {
+                    // 读满为止
+                }
+            }
+            return buffer.array();
+        }
+        return sub.getResponseBody();
+    }
+
+    private static void write(ByteArrayOutputStream out, String ascii) {
+        byte[] bytes = ascii.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static boolean isText(String contentType) {
+        return contentType == null || contentType.startsWith("text/") || contentType.contains("xml")
+            || contentType.contains("javascript") || contentType.contains("x-www-form-urlencoded");
+    }
+
+    private static boolean isSafe(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+
+    private static boolean isBodyHeader(String name) {
+        for (String header : BODY_HEADERS) {
+            if (header.equalsIgnoreCase(name)) return true;
+        }
+        return false;
+    }
+}
@@ -27,6 +27,8 @@ import java.util.concurrent.*;
  * server.host=0.0.0.0        # 绑定地址
  * server.threads.min=8       # 最小线程数
  * server.threads.max=200     # 最大线程数
+ * server.threads.io=0        # 常驻接收线程数（注册了优先路由时启用，0 = CPU 核数）
+ * server.threads.ioMax=0     # 最大接收线程数（0 = server.threads.max），都在读取请求时返回 503
  * server.backlog=1024        # 连接队列大小
  * server.idleTimeout=60      # 空闲超时（秒）
  * </pre>
@@ -70,52 +72,73 @@ public class HttpServerPlugin extends ServerPlugin {
     /** 请求处理线程池 */
     public ExecutorService executor;
     
-    // ==================== Context 对象池 ====================
+    /**
+     * 接收线程池（注册了优先路由时启用）：只解析请求行和请求头，优先路由就地处理，
+     * 其余请求交给 {@link #executor} 排队，健康检查等控制面请求不会排在业务请求之后
+     * 
+     * <p>读取请求头是阻塞 IO，慢客户端或空闲连接会一直占住线程，所以接收线程池不排队：
+     * 每个连接直接交给一个线程（不够时新建，最多 {@link #maxIoThreads} 个），全部占满时返回 503。
+     */
+    public ExecutorService dispatcher;
     
-    /** 对象池，减少 GC 压力 */
-    private final ConcurrentLinkedQueue<Context> contextPool = new ConcurrentLinkedQueue<>();
+    /** 常驻接收线程数，0 表示 CPU 核数（至少 2） */
+    public int ioThreads = 0;
     
-    /** 对象池最大容量 */
-    private static final int POOL_MAX_SIZE = 1024;
+    /** 最大接收线程数，0 表示与 {@link #maxThreads} 相同 */
+    public int maxIoThreads = 0;
     
     /**
-     * 从对象池获取 Context
-     * @return Context 实例
+     * 返回 503 的线程池：队列满时被拒绝的请求仍要读取请求行和请求头再写回 503（阻塞 IO），
+     * 不能放在 HttpServer 唯一的派发线程上执行，否则一个慢客户端就会卡住所有连接的接收
      */
-    protected Context acquireContext() {
-        Context ctx = contextPool.poll();
-        if (ctx == null) {
-            ctx = new Context();
-        }
-        ctx.app = app;
-        return ctx;
-    }
+    private ThreadPoolExecutor rejections;
     
-    /**
-     * 归还 Context 到对象池
-     * @param ctx Context 实例
-     */
-    protected void releaseContext(Context ctx) {
-        if (ctx == null || contextPool.size() >= POOL_MAX_SIZE) return;
-        ctx.reset();
-        contextPool.offer(ctx);
-    }
+    /** 返回 503 的线程数和排队上限，都占满时直接关闭连接 */
+    private static final int REJECT_THREADS = 2;
+    private static final int REJECT_QUEUE = 256;
     
     // ==================== 生命周期 ====================
     
+    @Override
+    public void config() {
+        super.config();
+        ioThreads = app.conf.getInt("server.threads", "io", ioThreads);
+        maxIoThreads = app.conf.getInt("server.threads", "ioMax", maxIoThreads);
+    }
+    
     @Override
     public void start() {
         try {
             server = HttpServer.create(new InetSocketAddress(host, app.port), backlog);
             server.createContext("/", this::handleRequest);
             
-            // 使用配置的线程池
-            executor = new ThreadPoolExecutor(
+            // 使用配置的线程池：有界队列，队列满时返回 503，排队超时的请求由 shed() 拒绝
+            rejections = new ThreadPoolExecutor(REJECT_THREADS, REJECT_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REJECT_QUEUE), r -> {
+                    Thread t = new Thread(r, "litejava-reject");
+                    t.setDaemon(true);
+                    return t;
+                });
+            rejections.allowCoreThreadTimeOut(true);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
                 minThreads, maxThreads,
                 idleTimeout, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>()
+                createWorkQueue(),
+                rejectWithServiceUnavailable(rejections)
             );
-            server.setExecutor(executor);
+            executor = pool;
+            if (hasPriorityRoutes()) {
+                int core = ioThreads > 0 ? ioThreads : Math.max(2, Runtime.getRuntime().availableProcessors());
+                int max = Math.max(core, maxIoThreads > 0 ? maxIoThreads : maxThreads);
+                // 不排队：慢客户端占住的线程再多，新连接（包括健康检查）也立即有线程读取；超过上限返回 503
+                ThreadPoolExecutor io = new ThreadPoolExecutor(core, max, idleTimeout, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), rejectWithServiceUnavailable(rejections));
+                dispatcher = io;
+                // 交给接收线程时记录到达时间，排队超时和截止时间从这里算起
+                server.setExecutor(task -> io.execute(timed(task)));
+            } else {
+                server.setExecutor(task -> pool.execute(timed(task)));
+            }
             server.start();
         } catch (IOException e) {
             throw new LiteJavaException("Failed to start server on port " + app.port, e);
@@ -130,6 +153,25 @@ public class HttpServerPlugin extends ServerPlugin {
         if (executor != null) {
             executor.shutdown();
         }
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        if (rejections != null) {
+            rejections.shutdown();
+        }
+    }
+    
+    /**
+     * 关闭监听端口：JDK HttpServer 只有 stop(delay) 能停止接受连接，它会阻塞到已有的交换完成，
+     * 因此放在后台线程执行，随后的 {@link #stop()} 关闭剩余连接
+     */
+    @Override
+    public void stopAccepting() {
+        HttpServer current = server;
+        if (current == null) return;
+        Thread drain = new Thread(() -> current.stop(Math.max(1, app.shutdownTimeout / 1000)), "litejava-server-drain");
+        drain.setDaemon(true);
+        drain.start();
     }
     
     // ==================== 请求处理 ====================
@@ -142,11 +184,55 @@ public class HttpServerPlugin extends ServerPlugin {
         
         try {
             parseRequest(exchange, ctx);
-            app.handle(ctx);
         } catch (Exception e) {
-            app.handleError(ctx, e);
+            handleError(ctx, e);
+            complete(exchange, ctx);
+            return;
+        }
+        
+        if (dispatcher == null) {
+            process(exchange, ctx, true);
+            return;
+        }
+        // 在接收线程上：接收线程池已满时（enqueuedAt 为 REJECTED）由 shed() 返回 503
+        long arrivedAt = enqueuedAt();
+        if (arrivedAt == REJECTED) {
+            process(exchange, ctx, true);
+        } else if (isPriority(ctx)) {
+            process(exchange, ctx, false);
+        } else {
+            // 普通请求进入工作线程池排队，队列满时由拒绝策略返回 503；排队时间从到达时算起
+            executor.execute(timed(() -> process(exchange, ctx, true), arrivedAt));
+        }
+    }
+    
+    /**
+     * 执行 app.handle 并发送响应
+     * 
+     * @param admit 是否做准入检查（优先路由不做排队超时检查）
+     */
+    private void process(HttpExchange exchange, Context ctx, boolean admit) {
+        try {
+            if (!admit || !shed(ctx, 0)) {
+                app.handle(ctx);
+            }
+        } catch (Exception e) {
+            handleError(ctx, e);
         } finally {
+            // 异步响应：工作线程立即返回，exchange 保持打开，future 完成后再发送响应并关闭
+            if (!deferResponse(ctx, () -> complete(exchange, ctx))) {
+                complete(exchange, ctx);
+            }
+        }
+    }
+    
+    /**
+     * 发送响应并归还 Context
+     */
+    private void complete(HttpExchange exchange, Context ctx) {
+        try {
             sendResponse(exchange, ctx);
+        } finally {
             releaseContext(ctx);
         }
     }
@@ -159,38 +245,22 @@ public class HttpServerPlugin extends ServerPlugin {
         
         URI uri = exchange.getRequestURI();
         ctx.path = uri.getPath();
-        ctx.query = uri.getQuery();
-        
-        for (Map.Entry<String, List<String>> entry : exchange.getRequestHeaders().entrySet()) {
-            if (!entry.getValue().isEmpty()) {
-                ctx.headers.put(entry.getKey(), entry.getValue().get(0));
-            }
-        }
+        ctx.query = uri.getRawQuery();
+        ctx.remoteAddr = hostAddress(exchange.getRemoteAddress());
         
-        if (ctx.query != null && !ctx.query.isEmpty()) {
-            for (String pair : ctx.query.split("&")) {
-                int idx = pair.indexOf('=');
-                if (idx > 0) {
-                    try {
-                        String key = URLDecoder.decode(pair.substring(0, idx), "UTF-8");
-                        String value = idx < pair.length() - 1 ? 
-                            URLDecoder.decode(pair.substring(idx + 1), "UTF-8") : "";
-                        ctx.queryParams.put(key, value);
-                    } catch (UnsupportedEncodingException e) {
-                        // UTF-8 always supported
-                    }
+        // 请求头和查询参数在 handler 首次访问时才解析
+        Headers requestHeaders = exchange.getRequestHeaders();
+        ctx.setHeaderLoader(map -> {
+            for (Map.Entry<String, List<String>> entry : requestHeaders.entrySet()) {
+                for (String value : entry.getValue()) {
+                    map.add(entry.getKey(), value);
                 }
             }
-        }
+        }, requestHeaders::getFirst);
         
-        InputStream is = exchange.getRequestBody();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] buffer = new byte[4096];
-        int len;
-        while ((len = is.read(buffer)) != -1) {
-            baos.write(buffer, 0, len);
-        }
-        ctx.setRequestBody(baos.toByteArray());
+        // 请求体延迟读取，未读取的部分由 exchange.close() 丢弃
+        long contentLength = parseContentLength(requestHeaders.getFirst("Content-Length"));
+        ctx.setRequestBody(exchange.getRequestBody(), contentLength, maxRequestSize);
     }
     
     /**
@@ -200,17 +270,91 @@ public class HttpServerPlugin extends ServerPlugin {
         try {
             Headers responseHeaders = exchange.getResponseHeaders();
             for (Map.Entry<String, String> entry : ctx.getResponseHeaders().entrySet()) {
-                responseHeaders.set(entry.getKey(), entry.getValue());
+                responseHeaders.add(entry.getKey(), entry.getValue());
+            }
+            
+            if (ctx.isFileResponse()) {
+                // 长度 -1 表示无响应体（0 会被当作 chunked）
+                long length = ctx.getResponseFileLength();
+                exchange.sendResponseHeaders(ctx.getResponseStatus(), length > 0 ? length : -1);
+                OutputStream os = exchange.getResponseBody();
+                transferFile(ctx, os);
+                os.close();
+                return;
+            }
+            
+            if (ctx.isStreaming()) {
+                StreamBody os = StreamBody.install(exchange);
+                // 长度 0 表示 chunked 传输编码
+                exchange.sendResponseHeaders(ctx.getResponseStatus(), 0);
+                try {
+                    writeStream(ctx, os);
+                } catch (IOException e) {
+                    os.abort();
+                    throw e;
+                }
+                os.close();
+                return;
             }
             
             byte[] body = ctx.getResponseBody();
-            exchange.sendResponseHeaders(ctx.getResponseStatus(), body.length);
+            // 空响应体（204/304 等）长度传 -1，0 会被当作 chunked（304 时 JDK 还会记录警告）
+            exchange.sendResponseHeaders(ctx.getResponseStatus(), body.length > 0 ? body.length : -1);
             
             OutputStream os = exchange.getResponseBody();
             os.write(body);
             os.close();
         } catch (IOException e) {
-            System.err.println("Error sending response: " + e.getMessage());
+            app.log.error("Error sending response: " + e.getMessage());
+            // 确保 exchange 被释放；流式写入中途失败时 StreamBody 已中断，这里直接断开连接
+            exchange.close();
+        }
+    }
+    
+    /**
+     * 流式响应的输出流 - 写入器失败时 {@link #abort()}，随后的 exchange.close() 直接断开连接
+     * 
+     * <p>JDK HttpServer 没有中断交换的公开接口：正常关闭 chunked 响应会写出结束块，
+     * 客户端会把截断的响应当作完整响应。exchange.close() 关闭响应流失败时会关闭底层连接，
+     * 中断后的 close() 因此抛出 IOException 而不写结束块。
+     */
+    public static final class StreamBody extends FilterOutputStream {
+        
+        private boolean aborted;
+        
+        private StreamBody(OutputStream out) {
+            super(out);
+        }
+        
+        /**
+         * 替换 exchange 的响应流（在 sendResponseHeaders 之前调用）
+         */
+        public static StreamBody install(HttpExchange exchange) {
+            // 先建立请求体和响应体的原始流，exchange.close() 据此判断是否正常结束
+            exchange.getRequestBody();
+            StreamBody body = new StreamBody(exchange.getResponseBody());
+            exchange.setStreams(null, body);
+            return body;
+        }
+        
+        /**
+         * 标记响应已中断，之后的 close() 不再结束 chunked 响应
+         */
+        public void abort() {
+            aborted = true;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (aborted) {
+                throw new IOException("Response aborted");
+            }
+            out.close();
         }
     }
 }
@@ -1,6 +1,7 @@
 package litejava.plugin;
 
 import litejava.*;
+import litejava.exception.LiteJavaException;
 
 import java.util.*;
 import java.util.function.Consumer;
@@ -13,6 +14,7 @@ import java.util.function.Consumer;
  *   <li>路径参数：{@code /users/:id}</li>
  *   <li>通配符路由：{@code /files/*filepath}</li>
  *   <li>路由分组：{@code router.group("/api")}</li>
+ *   <li>分组级、路由级中间件：{@code group.use(auth)}、{@code router.get(...).use(auth)}</li>
  *   <li>ANY 方法匹配</li>
  * </ul>
  * 
@@ -45,6 +47,12 @@ public class RouterPlugin extends Plugin {
     /** 路由列表（用于调试） */
     private final List<Route> routes = new ArrayList<>();
     
+    /** 分组级中间件，作用于之后在本分组（及子分组）注册的路由 */
+    public List<MiddlewarePlugin> middlewares = new ArrayList<>();
+    
+    /** 子类是否重写了 match(String, String)，是则 {@link #match(Context)} 通过它适配 */
+    private final boolean customMatch = overridesMatch(getClass());
+    
     /** 404 处理器 */
     public Handler noRouteHandler;
     
@@ -99,17 +107,40 @@ public class RouterPlugin extends Plugin {
     
     public Route route(String method, String path, Handler handler) {
         String fullPath = normalizePath(prefix + path);
+        Route route = createRoute(method, fullPath, handler);
         
         // 添加到树（如果是子路由，添加到根路由的树）
         RouterPlugin root = getRoot();
-        root.tree.add(fullPath, handler, method);
-        
-        Route route = new Route(method, fullPath, handler);
+        root.tree.add(fullPath, route, method);
         root.routes.add(route);
         
         return route;
     }
     
+    /**
+     * 添加分组级中间件
+     * 
+     * <pre>{@code
+     * app.group("/admin", admin -> {
+     *     admin.use(new AuthMiddleware());
+     *     admin.get("/users", UserController::list);
+     * });
+     * }</pre>
+     */
+    public RouterPlugin use(MiddlewarePlugin... middlewares) {
+        this.middlewares.addAll(Arrays.asList(middlewares));
+        return this;
+    }
+    
+    /**
+     * 创建路由对象并带上当前分组的中间件（子类注册路由时使用）
+     */
+    protected Route createRoute(String method, String fullPath, Handler handler) {
+        Route route = new Route(method, fullPath, handler);
+        route.middlewares.addAll(middlewares);
+        return route;
+    }
+    
     // ==================== 特殊处理器 ====================
     
     public RouterPlugin noRoute(Handler handler) {
@@ -125,13 +156,15 @@ public class RouterPlugin extends Plugin {
     // ==================== 路由分组 ====================
     
     public RouterPlugin group(String groupPrefix, Consumer<RouterPlugin> configure) {
-        RouterPlugin subRouter = createSubRouter(normalizePath(prefix + groupPrefix));
-        configure.accept(subRouter);
+        configure.accept(group(groupPrefix));
         return this;
     }
     
     public RouterPlugin group(String groupPrefix) {
-        return createSubRouter(normalizePath(prefix + groupPrefix));
+        RouterPlugin subRouter = createSubRouter(normalizePath(prefix + groupPrefix));
+        // 子分组继承当前分组的中间件
+        subRouter.middlewares.addAll(middlewares);
+        return subRouter;
     }
     
     /** 创建子路由（子类可重写） */
@@ -141,26 +174,84 @@ public class RouterPlugin extends Plugin {
     
     // ==================== 路由匹配 ====================
     
+    /**
+     * 匹配请求，路径参数写入 {@code ctx.params}，通配符值写入 {@code ctx.wildcardPath}（App 处理请求时调用）
+     * 
+     * <p>默认实现直接在 Radix Tree 上匹配，参数按位置写入 Context 复用的槽位，不分配对象。
+     * 重写了 {@link #match(String, String)} 的子类自动通过它适配。
+     * 
+     * @return 匹配的路由，未匹配返回 null
+     */
+    public Route match(Context ctx) {
+        if (customMatch) {
+            return adapt(ctx, match(ctx.method, ctx.path));
+        }
+        Route route = tree.find(ctx.path, ctx.method, ctx.params);
+        if (route != null && route.wildcard) {
+            ctx.wildcardPath = ctx.params.valueAt(ctx.params.size() - 1);
+        }
+        return route;
+    }
+    
     public RouteMatch match(String method, String path) {
-        RadixTree.MatchResult result = tree.find(path, method);
-        if (result == null) return null;
+        PathParams params = new PathParams(4);
+        Route route = tree.find(path, method, params);
+        if (route == null) return null;
         
         RouteMatch match = new RouteMatch();
-        match.handler = result.handler;
-        match.params = result.params;
-        match.wildcardName = result.wildcardName;
-        match.wildcardValue = result.wildcardValue;
+        match.route = route;
+        match.handler = route.handler;
+        int count = params.size();
+        if (route.wildcard) {
+            count--;
+            match.wildcardName = params.nameAt(count);
+            match.wildcardValue = params.valueAt(count);
+        }
+        if (count > 0) {
+            match.params = new HashMap<>(4);
+            for (int i = 0; i < count; i++) {
+                match.params.put(params.nameAt(i), params.valueAt(i));
+            }
+        }
         return match;
     }
     
+    /**
+     * 把 {@link #match(String, String)} 的结果写入 Context（自定义匹配逻辑的子类使用）
+     */
+    protected Route adapt(Context ctx, RouteMatch match) {
+        if (match == null) return null;
+        if (match.params != null) {
+            ctx.params.putAll(match.params);
+        }
+        if (match.wildcardName != null) {
+            ctx.wildcardPath = match.wildcardValue;
+            ctx.params.put(match.wildcardName, match.wildcardValue);
+        }
+        return match.route != null ? match.route : new Route(ctx.method, ctx.path, match.handler);
+    }
+    
     public boolean hasPath(String path) {
-        return tree.hasPath(path);
+        return tree.allow(path) != null;
     }
     
     public Set<String> getAllowedMethods(String path) {
         return tree.getAllowedMethods(path);
     }
     
+    /**
+     * 路径可用方法的 Allow 头（如 {@code "GET, POST"}），路径不存在时返回 null
+     * 
+     * <p>用于 405/OPTIONS 响应。默认实现使用节点上的方法位掩码和预先生成的头部值，
+     * 不分配对象；自定义匹配逻辑的子类由 {@link #hasPath} 和 {@link #getAllowedMethods} 组装。
+     */
+    public String allow(String path) {
+        if (customMatch) {
+            return hasPath(path) ? String.join(", ", getAllowedMethods(path)) : null;
+        }
+        return tree.allow(path);
+    }
+    
     // ==================== 调试 ====================
     
     public List<Route> getAllRoutes() {
@@ -185,11 +276,10 @@ public class RouterPlugin extends Plugin {
         if (!routes.routes.isEmpty()) {
             for (Route r : routes.routes) {
                 String fullPath = normalizePath(prefix + r.path);
-                RouterPlugin root = getRoot();
-                root.tree.add(fullPath, r.handler, r.method);
                 
                 // 复制路由并更新路径
-                Route newRoute = new Route(r.method, fullPath, r.handler);
+                Route newRoute = createRoute(r.method, fullPath, r.handler);
+                newRoute.middlewares.addAll(r.middlewares);
                 newRoute.summary = r.summary;
                 newRoute.description = r.description;
                 newRoute.tags = r.tags;
@@ -197,6 +287,8 @@ public class RouterPlugin extends Plugin {
                 newRoute.responses = r.responses;
                 newRoute.requestBody = r.requestBody;
                 newRoute.requestBodyDesc = r.requestBodyDesc;
+                RouterPlugin root = getRoot();
+                root.tree.add(fullPath, newRoute, r.method);
                 root.routes.add(newRoute);
             }
         } else {
@@ -214,6 +306,14 @@ public class RouterPlugin extends Plugin {
         return parent != null ? parent.getRoot() : this;
     }
     
+    private static boolean overridesMatch(Class<?> type) {
+        try {
+            return type.getMethod("match", String.class, String.class).getDeclaringClass() != RouterPlugin.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+    
     protected String normalizePath(String path) {
         if (path == null || path.isEmpty()) return "/";
         if (!path.startsWith("/")) path = "/" + path;
@@ -226,6 +326,8 @@ public class RouterPlugin extends Plugin {
      * 路由匹配结果
      */
     public static class RouteMatch {
+        /** 匹配到的路由（自定义路由可不设置，此时只使用 handler） */
+        public Route route;
         public Handler handler;
         public Map<String, String> params;
         public String wildcardName;
@@ -237,321 +339,322 @@ public class RouterPlugin extends Plugin {
     /**
      * Radix Tree (压缩前缀树) - Gin 风格高性能路由
      * 时间复杂度: O(k)，k 为路径长度
+     * 
+     * <p>匹配过程不分配对象：
+     * <ul>
+     *   <li>纯静态路由先查精确匹配表，一次 HashMap 查找即可命中</li>
+     *   <li>子节点按首字符索引（同一节点下子节点首字符互不相同），无需遍历比较</li>
+     *   <li>路径参数按位置写入 {@link PathParams} 槽位，只记录起止位置</li>
+     * </ul>
      */
     private static class RadixTree {
         
+        /** 标准方法及其在处理器数组中的固定下标，ANY 紧随其后，扩展方法（如 PURGE）从 ANY + 1 开始 */
+        static final String[] STANDARD_METHODS = {"GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS"};
+        static final int ANY = STANDARD_METHODS.length;
+        static final long STANDARD_MASK = (1L << ANY) - 1;
+        
+        /** 标准方法组合（位掩码）→ Allow 头，405/OPTIONS 响应直接取用 */
+        private static final String[] ALLOW_HEADERS = new String[1 << ANY];
+        
+        static {
+            for (int mask = 1; mask < ALLOW_HEADERS.length; mask++) {
+                StringBuilder sb = new StringBuilder();
+                for (int m = 0; m < ANY; m++) {
+                    if ((mask & (1 << m)) == 0) continue;
+                    if (sb.length() > 0) sb.append(", ");
+                    sb.append(STANDARD_METHODS[m]);
+                }
+                ALLOW_HEADERS[mask] = sb.toString();
+            }
+        }
+        
         private final Node root = new Node();
         
-        void add(String path, Handler handler, String method) {
+        /** 纯静态路由（无参数、无通配符）的完整路径 → 节点 */
+        private final Map<String, Node> statics = new HashMap<>();
+        
+        /** 扩展方法名 → 下标 */
+        private final Map<String, Integer> extraMethods = new HashMap<>();
+        
+        /** 下标 → 方法名（含标准方法、ANY 和扩展方法） */
+        private final List<String> methodNames = new ArrayList<>(Arrays.asList(STANDARD_METHODS));
+        
+        RadixTree() {
+            methodNames.add("ANY");
+        }
+        
+        void add(String path, Route route, String method) {
             if (path == null || path.isEmpty()) path = "/";
-            root.insert(path, handler, method, new ArrayList<>(), null);
+            int m = methodIndex(method);
+            if (m < 0) {
+                m = methodNames.size();
+                if (m >= Long.SIZE) {
+                    throw new LiteJavaException("Too many distinct HTTP methods, cannot register " + method);
+                }
+                extraMethods.put(method, m);
+                methodNames.add(method);
+            }
+            Node node = root.insert(path, 0, route, m);
+            if (path.indexOf(':') < 0 && path.indexOf('*') < 0) {
+                statics.put(path, node);
+            }
         }
         
-        MatchResult find(String path, String method) {
+        /**
+         * 方法名 → 处理器数组下标，未注册过的扩展方法返回 -1（只能匹配 ANY）
+         */
+        int methodIndex(String method) {
+            if (method == null) return -1;
+            switch (method) {
+                case "GET": return 0;
+                case "POST": return 1;
+                case "PUT": return 2;
+                case "DELETE": return 3;
+                case "PATCH": return 4;
+                case "HEAD": return 5;
+                case "OPTIONS": return 6;
+                case "ANY": return ANY;
+                default:
+                    Integer m = extraMethods.get(method);
+                    return m != null ? m : -1;
+            }
+        }
+        
+        /**
+         * 匹配路由，参数从 params 当前末尾开始写入，未匹配时不留下任何参数
+         */
+        Route find(String path, String method, PathParams params) {
             if (path == null || path.isEmpty()) path = "/";
-            Map<String, String> params = new HashMap<>(4);
-            String[] wildcardHolder = new String[2];
-            Handler handler = root.search(path, 0, method, params, wildcardHolder);
-            
-            if (handler == null) return null;
+            int m = methodIndex(method);
             
-            MatchResult result = new MatchResult();
-            result.handler = handler;
-            result.params = params.isEmpty() ? null : params;
-            if (wildcardHolder[0] != null) {
-                result.wildcardName = wildcardHolder[0];
-                result.wildcardValue = wildcardHolder[1];
+            // 静态路由快速路径：静态子节点优先于参数节点，精确命中的结果与树搜索一致
+            Node node = statics.get(path);
+            if (node != null) {
+                Route route = node.getHandler(m);
+                if (route != null) return route;
             }
-            return result;
+            
+            int base = params.size();
+            Route route = root.search(path, 0, m, params, base);
+            if (route == null) params.truncate(base);
+            return route;
         }
         
-        boolean hasPath(String path) {
+        /**
+         * 路径可用方法的 Allow 头，路径不存在时返回 null
+         */
+        String allow(String path) {
             if (path == null || path.isEmpty()) path = "/";
-            return root.hasPath(path, 0);
+            long mask = root.allowed(path, 0);
+            if (mask == 0) return null;
+            if ((mask & ~STANDARD_MASK) == 0) return ALLOW_HEADERS[(int) mask];
+            return String.join(", ", methods(mask));
         }
         
         Set<String> getAllowedMethods(String path) {
             if (path == null || path.isEmpty()) path = "/";
-            Set<String> methods = new LinkedHashSet<>();
-            root.collectMethods(path, 0, methods);
-            return methods;
+            return methods(root.allowed(path, 0));
         }
         
-        static class MatchResult {
-            Handler handler;
-            Map<String, String> params;
-            String wildcardName;
-            String wildcardValue;
+        private Set<String> methods(long mask) {
+            Set<String> methods = new LinkedHashSet<>();
+            for (int m = 0; m < methodNames.size(); m++) {
+                if ((mask & (1L << m)) != 0) methods.add(methodNames.get(m));
+            }
+            return methods;
         }
         
         private static class Node {
+            private static final char[] NO_INDICES = new char[0];
+            private static final Node[] NO_CHILDREN = new Node[0];
+            
             String path = "";
-            Map<String, Handler> handlers;
-            List<Node> children;
+            /** 按方法下标存放的路由，ANY 路由位于下标 ANY */
+            Route[] handlers;
+            /** handlers 中可用方法的位掩码（ANY 展开为全部标准方法） */
+            long allowed;
+            /** 子节点首字符，与 children 一一对应 */
+            char[] indices = NO_INDICES;
+            Node[] children = NO_CHILDREN;
             String paramName;
             Node paramChild;
             String wildcardName;
-            Map<String, Handler> wildcardHandlers;
+            Route[] wildcardHandlers;
+            long wildcardAllowed;
             
-            void insert(String fullPath, Handler handler, String method, 
-                       List<String> paramNames, String wildcard) {
-                insert(fullPath, 0, handler, method, paramNames, wildcard);
-            }
-            
-            private void insert(String fullPath, int start, Handler handler, String method,
-                               List<String> paramNames, String wildcard) {
-                if (start >= fullPath.length()) {
-                    if (wildcard != null) {
-                        if (wildcardHandlers == null) wildcardHandlers = new HashMap<>();
-                        wildcardHandlers.put(method, handler);
-                        wildcardName = wildcard;
-                    } else {
-                        if (handlers == null) handlers = new HashMap<>();
-                        handlers.put(method, handler);
-                    }
-                    return;
+            /**
+             * 插入 fullPath[start..] 对应的路由
+             * 
+             * @param m 方法下标
+             * @return 持有该路由的节点
+             */
+            Node insert(String fullPath, int start, Route route, int m) {
+                int len = fullPath.length();
+                while (start < len && fullPath.charAt(start) == '/') start++;
+                
+                if (start >= len) {
+                    handlers = put(handlers, m, route);
+                    allowed |= bit(m);
+                    return this;
                 }
                 
                 char c = fullPath.charAt(start);
                 
-                if (c == '/') {
-                    insert(fullPath, start + 1, handler, method, paramNames, wildcard);
-                    return;
-                }
-                
                 if (c == ':') {
                     int end = findSegmentEnd(fullPath, start + 1);
-                    String pName = fullPath.substring(start + 1, end);
-                    paramNames.add(pName);
-                    
                     if (paramChild == null) {
                         paramChild = new Node();
-                        paramChild.paramName = pName;
+                        paramChild.paramName = fullPath.substring(start + 1, end);
                     }
-                    paramChild.insert(fullPath, end, handler, method, paramNames, wildcard);
-                    return;
+                    return paramChild.insert(fullPath, end, route, m);
                 }
                 
                 if (c == '*') {
                     String wName = fullPath.substring(start + 1);
                     if (wName.isEmpty()) wName = "wildcard";
-                    if (wildcardHandlers == null) wildcardHandlers = new HashMap<>();
-                    wildcardHandlers.put(method, handler);
+                    wildcardHandlers = put(wildcardHandlers, m, route);
+                    wildcardAllowed |= bit(m);
                     wildcardName = wName;
-                    return;
-                }
-                
-                int end = findSegmentEnd(fullPath, start);
-                String segment = fullPath.substring(start, end);
-                
-                if (segment.isEmpty()) {
-                    insert(fullPath, end, handler, method, paramNames, wildcard);
-                    return;
+                    return this;
                 }
                 
-                Node child = findChild(segment.charAt(0));
+                return insertStatic(fullPath, start, findSegmentEnd(fullPath, start), route, m);
+            }
+            
+            /**
+             * 插入静态片段 fullPath[start, end)，再继续插入其后的部分
+             */
+            private Node insertStatic(String fullPath, int start, int end, Route route, int m) {
+                Node child = findChild(fullPath.charAt(start));
                 if (child == null) {
                     child = new Node();
-                    child.path = segment;
+                    child.path = fullPath.substring(start, end);
                     addChild(child);
-                    child.insert(fullPath, end, handler, method, paramNames, wildcard);
-                } else {
-                    int common = commonPrefix(child.path, segment);
-                    if (common < child.path.length()) {
-                        Node split = new Node();
-                        split.path = child.path.substring(common);
-                        split.handlers = child.handlers;
-                        split.children = child.children;
-                        split.paramChild = child.paramChild;
-                        split.wildcardName = child.wildcardName;
-                        split.wildcardHandlers = child.wildcardHandlers;
-                        
-                        child.path = child.path.substring(0, common);
-                        child.handlers = null;
-                        child.children = null;
-                        child.paramChild = null;
-                        child.wildcardName = null;
-                        child.wildcardHandlers = null;
-                        child.addChild(split);
-                    }
-                    
-                    if (common < segment.length()) {
-                        String remaining = segment.substring(common);
-                        Node next = child.findChild(remaining.charAt(0));
-                        if (next == null) {
-                            next = new Node();
-                            next.path = remaining;
-                            child.addChild(next);
-                            next.insert(fullPath, end, handler, method, paramNames, wildcard);
-                        } else {
-                            // 递归处理：remaining 和 next.path 可能有共同前缀
-                            int nextCommon = commonPrefix(next.path, remaining);
-                            if (nextCommon < next.path.length()) {
-                                // 需要分裂 next 节点
-                                Node split = new Node();
-                                split.path = next.path.substring(nextCommon);
-                                split.handlers = next.handlers;
-                                split.children = next.children;
-                                split.paramChild = next.paramChild;
-                                split.wildcardName = next.wildcardName;
-                                split.wildcardHandlers = next.wildcardHandlers;
-                                
-                                next.path = next.path.substring(0, nextCommon);
-                                next.handlers = null;
-                                next.children = null;
-                                next.paramChild = null;
-                                next.wildcardName = null;
-                                next.wildcardHandlers = null;
-                                next.addChild(split);
-                            }
-                            
-                            if (nextCommon < remaining.length()) {
-                                String nextRemaining = remaining.substring(nextCommon);
-                                Node newNode = next.findChild(nextRemaining.charAt(0));
-                                if (newNode == null) {
-                                    newNode = new Node();
-                                    newNode.path = nextRemaining;
-                                    next.addChild(newNode);
-                                }
-                                newNode.insert(fullPath, start + common + nextCommon + nextRemaining.length(), 
-                                              handler, method, paramNames, wildcard);
-                            } else {
-                                next.insert(fullPath, start + common + remaining.length(), 
-                                           handler, method, paramNames, wildcard);
-                            }
-                        }
-                    } else {
-                        child.insert(fullPath, end, handler, method, paramNames, wildcard);
-                    }
+                    return child.insert(fullPath, end, route, m);
+                }
+                
+                int common = commonPrefix(child.path, fullPath, start, end);
+                if (common < child.path.length()) {
+                    child = splitChild(child, common);
+                }
+                if (start + common < end) {
+                    return child.insertStatic(fullPath, start + common, end, route, m);
                 }
+                return child.insert(fullPath, end, route, m);
             }
             
-            Handler search(String path, int start, String method, 
-                          Map<String, String> params, String[] wildcardHolder) {
-                if (start >= path.length()) return getHandler(method);
-                
-                char c = path.charAt(start);
-                if (c == '/') return search(path, start + 1, method, params, wildcardHolder);
+            /**
+             * 在 common 处拆分子节点：新建前缀节点顶替原节点，原节点只缩短路径，
+             * 其上的路由和子树保持不变（静态精确匹配表中的节点引用依然有效）
+             */
+            private Node splitChild(Node child, int common) {
+                Node prefix = new Node();
+                prefix.path = child.path.substring(0, common);
+                child.path = child.path.substring(common);
+                prefix.addChild(child);
+                for (int i = 0; i < children.length; i++) {
+                    if (children[i] == child) children[i] = prefix;
+                }
+                return prefix;
+            }
+            
+            Route search(String path, int start, int m, PathParams params, int slot) {
+                int len = path.length();
+                while (start < len && path.charAt(start) == '/') start++;
+                if (start >= len) return getHandler(m);
                 
-                if (children != null) {
-                    for (Node child : children) {
-                        if (child.path.isEmpty()) continue;
-                        int len = child.path.length();
-                        if (child.path.charAt(0) == c && path.regionMatches(start, child.path, 0, len)) {
-                            Handler h = child.search(path, start + len, method, params, wildcardHolder);
-                            if (h != null) return h;
-                        }
-                    }
+                Node child = findChild(path.charAt(start));
+                if (child != null && path.regionMatches(start, child.path, 0, child.path.length())) {
+                    Route route = child.search(path, start + child.path.length(), m, params, slot);
+                    if (route != null) return route;
                 }
                 
                 if (paramChild != null) {
                     int end = path.indexOf('/', start);
-                    if (end == -1) end = path.length();
-                    String value = path.substring(start, end);
-                    if (!value.isEmpty()) {
-                        params.put(paramChild.paramName, value);
-                        Handler h = paramChild.search(path, end, method, params, wildcardHolder);
-                        if (h != null) return h;
-                        params.remove(paramChild.paramName);
+                    if (end == -1) end = len;
+                    if (end > start) {
+                        params.set(slot, paramChild.paramName, path, start, end);
+                        Route route = paramChild.search(path, end, m, params, slot + 1);
+                        if (route != null) return route;
+                        params.truncate(slot);
                     }
                 }
                 
                 if (wildcardHandlers != null) {
-                    Handler h = wildcardHandlers.get(method);
-                    if (h == null) h = wildcardHandlers.get("ANY");
-                    if (h != null) {
-                        wildcardHolder[0] = wildcardName;
-                        wildcardHolder[1] = path.substring(start);
-                        return h;
+                    Route route = get(wildcardHandlers, m);
+                    if (route != null) {
+                        params.set(slot, wildcardName, path, start, len);
+                        return route;
                     }
                 }
                 
                 return null;
             }
             
-            boolean hasPath(String path, int start) {
-                if (start >= path.length()) return handlers != null || wildcardHandlers != null;
-                char c = path.charAt(start);
+            /**
+             * 路径在所有匹配分支上可用方法的位掩码，匹配规则与 {@link #search} 相同
+             */
+            long allowed(String path, int start) {
+                int len = path.length();
+                while (start < len && path.charAt(start) == '/') start++;
+                if (start >= len) return allowed;
                 
-                if (children != null) {
-                    for (Node child : children) {
-                        if (child.path.isEmpty()) continue;
-                        int len = child.path.length();
-                        if (child.path.charAt(0) == c && path.regionMatches(start, child.path, 0, len)) {
-                            if (child.hasPath(path, start + len)) return true;
-                        }
-                    }
+                long mask = wildcardAllowed;
+                Node child = findChild(path.charAt(start));
+                if (child != null && path.regionMatches(start, child.path, 0, child.path.length())) {
+                    mask |= child.allowed(path, start + child.path.length());
                 }
                 
                 if (paramChild != null) {
                     int end = path.indexOf('/', start);
-                    if (end == -1) end = path.length();
-                    if (end > start && paramChild.hasPath(path, end)) return true;
+                    if (end == -1) end = len;
+                    if (end > start) mask |= paramChild.allowed(path, end);
                 }
                 
-                return wildcardHandlers != null;
+                return mask;
             }
             
-            void collectMethods(String path, int start, Set<String> methods) {
-                if (start >= path.length()) {
-                    collectHandlerMethods(handlers, methods);
-                    collectHandlerMethods(wildcardHandlers, methods);
-                    return;
-                }
-                
-                char c = path.charAt(start);
-                
-                if (children != null) {
-                    for (Node child : children) {
-                        if (child.path.isEmpty()) continue;
-                        int len = child.path.length();
-                        if (child.path.charAt(0) == c && path.regionMatches(start, child.path, 0, len)) {
-                            child.collectMethods(path, start + len, methods);
-                        }
-                    }
-                }
-                
-                if (paramChild != null) {
-                    int end = path.indexOf('/', start);
-                    if (end == -1) end = path.length();
-                    if (end > start) paramChild.collectMethods(path, end, methods);
-                }
-                
-                collectHandlerMethods(wildcardHandlers, methods);
+            private Route getHandler(int m) {
+                return handlers != null ? get(handlers, m) : null;
             }
             
-            private void collectHandlerMethods(Map<String, Handler> h, Set<String> methods) {
-                if (h == null) return;
-                for (String m : h.keySet()) {
-                    if ("ANY".equals(m)) {
-                        methods.addAll(Arrays.asList("GET","POST","PUT","DELETE","PATCH","HEAD","OPTIONS"));
-                    } else {
-                        methods.add(m);
-                    }
+            private static Route get(Route[] handlers, int m) {
+                Route route = m >= 0 && m < handlers.length ? handlers[m] : null;
+                return route != null ? route : handlers[ANY];
+            }
+            
+            private static Route[] put(Route[] handlers, int m, Route route) {
+                if (handlers == null) {
+                    handlers = new Route[Math.max(ANY, m) + 1];
+                } else if (m >= handlers.length) {
+                    handlers = Arrays.copyOf(handlers, m + 1);
                 }
+                handlers[m] = route;
+                return handlers;
             }
             
-            private Handler getHandler(String method) {
-                if (handlers == null) return null;
-                Handler h = handlers.get(method);
-                if (h == null) h = handlers.get("ANY");
-                return h;
+            private static long bit(int m) {
+                return m == ANY ? STANDARD_MASK : 1L << m;
             }
             
             private Node findChild(char c) {
-                if (children == null) return null;
-                for (Node child : children) {
-                    if (child.path.length() > 0 && child.path.charAt(0) == c) return child;
+                char[] indices = this.indices;
+                for (int i = 0; i < indices.length; i++) {
+                    if (indices[i] == c) return children[i];
                 }
                 return null;
             }
             
             private void addChild(Node child) {
-                if (children == null) children = new ArrayList<>(4);
-                children.add(child);
+                int n = children.length;
+                indices = Arrays.copyOf(indices, n + 1);
+                children = Arrays.copyOf(children, n + 1);
+                indices[n] = child.path.charAt(0);
+                children[n] = child;
             }
             
-            private int findSegmentEnd(String path, int start) {
+            private static int findSegmentEnd(String path, int start) {
                 for (int i = start; i < path.length(); i++) {
                     char c = path.charAt(i);
                     if (c == '/' || c == ':' || c == '*') return i;
@@ -559,10 +662,10 @@ public class RouterPlugin extends Plugin {
                 return path.length();
             }
             
-            private int commonPrefix(String a, String b) {
-                int max = Math.min(a.length(), b.length());
+            private static int commonPrefix(String a, String b, int start, int end) {
+                int max = Math.min(a.length(), end - start);
                 int i = 0;
-                while (i < max && a.charAt(i) == b.charAt(i)) i++;
+                while (i < max && a.charAt(i) == b.charAt(start + i)) i++;
                 return i;
             }
         }
@@ -1,6 +1,33 @@
 package litejava.plugin;
 
+import litejava.Context;
+import litejava.ContextPool;
 import litejava.Plugin;
+import litejava.Route;
+import litejava.ServerTiming;
+import litejava.StateKey;
+import litejava.exception.LiteJavaException;
+import litejava.jfr.Jfr;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 服务器插件基类 - 所有 HTTP 服务器插件的父类
@@ -9,6 +36,7 @@ import litejava.Plugin;
  * <ul>
  *   <li>{@link #start()} - 启动服务器</li>
  *   <li>{@link #stop()} - 停止服务器</li>
+ *   <li>{@link #stopAccepting()} - 停止接受新连接（优雅停机）</li>
  * </ul>
  * 
  * <h2>通用配置项</h2>
@@ -21,6 +49,20 @@ import litejava.Plugin;
  * server.threads.idle=60        # 空闲线程超时（秒）
  * server.backlog=1024           # TCP 连接队列大小
  * server.maxRequestSize=10485760  # 最大请求体大小（字节，默认 10MB）
+ * server.multipartThreshold=65536 # 上传文件超过此大小时转存临时文件（字节，默认 64KB）
+ * server.multipartTempDir=/data/tmp # 上传临时文件目录（默认 java.io.tmpdir）
+ * server.contextPoolSize=1024   # Context 对象池容量（0 表示不复用）
+ * server.leakDetection=false    # Context 泄漏检测（记录每次借出的调用栈，排查时开启）
+ * server.shutdownTimeout=30000  # 优雅停机等待进行中请求的最长时间（毫秒）
+ * server.deadlineHeader=false   # 采用调用方 X-Request-Timeout 请求头中的剩余时间（超时返回 504）
+ * server.deadlineTrusted=10.0.,10.1.  # 信任该请求头的调用方地址前缀（默认只信任内网和本机地址）
+ * server.timing=false           # 记录请求各阶段耗时（路由/中间件/handler/JSON/写出），见 ServerTiming
+ * server.timingHeader=false     # 响应附带 Server-Timing 头（浏览器开发者工具可查看）
+ * server.queue.capacity=1024    # 等待工作线程的请求数上限，超出返回 503（0 表示不限制）；
+ *                               # Netty 和虚拟线程服务器没有等待队列，限制的是处理中的请求数
+ * server.queue.timeout=0        # 请求排队超过此毫秒数后不再处理，返回 503（0 表示不限制；
+ *                               # Netty 和 Jetty 虚拟线程版不适用，配置时启动日志给出警告）
+ * server.queue.retryAfter=1     # 503 响应的 Retry-After（秒）
  * </pre>
  * 
  * <h2>内置服务器实现</h2>
@@ -42,11 +84,14 @@ import litejava.Plugin;
  *     public void start() {
  *         server = new MyServer(host, app.port);
  *         server.setHandler(exchange -> {
- *             Context ctx = new Context();
- *             ctx.app = app;
- *             // 解析请求...
- *             app.handle(ctx);
- *             // 发送响应...
+ *             Context ctx = acquireContext();
+ *             try {
+ *                 // 解析请求...
+ *                 app.handle(ctx);
+ *                 // 发送响应...
+ *             } finally {
+ *                 releaseContext(ctx);
+ *             }
  *         });
  *         server.start();
  *     }
@@ -86,6 +131,44 @@ public class ServerPlugin extends Plugin {
     /** 最大请求体大小（字节），默认 10MB */
     public int maxRequestSize = 10 * 1024 * 1024;
     
+    /** Context 对象池，所有服务器插件共用同一实现（server.leakDetection=true 时开启泄漏检测） */
+    public ContextPool contextPool = new ContextPool();
+    
+    // ==================== 准入控制 ====================
+    
+    /** 等待工作线程的请求数上限，超出时直接返回 503（&lt;= 0 表示不限制） */
+    public int queueCapacity = 1024;
+    
+    /** 请求排队时间上限（毫秒），超过后不再执行 handler，直接返回 503（&lt;= 0 表示不限制） */
+    public int queueTimeout = 0;
+    
+    /** 503 响应的 Retry-After（秒） */
+    public int retryAfter = 1;
+    
+    /** 已派发、尚未开始处理的请求数（没有自己的任务队列的服务器使用，见 {@link #enqueue()}） */
+    private final AtomicInteger queued = new AtomicInteger();
+    
+    /** 通过 {@link #admit} 的请求，归还 Context 时从 {@link #queued} 中减去 */
+    private static final StateKey<Boolean> ADMITTED = StateKey.of("litejava.admitted");
+    
+    /** 当前线程正在处理的请求的入队时间（{@link #timed} 设置） */
+    private static final ThreadLocal<long[]> ENQUEUED_AT = ThreadLocal.withInitial(() -> new long[1]);
+    
+    /** 入队时间标记：队列已满，请求被拒绝 */
+    protected static final long REJECTED = Long.MIN_VALUE;
+    
+    /**
+     * 进行中的请求数：从派发到工作线程（{@link #timed}）或借出 Context 开始，到发送完响应、归还 Context 为止
+     * （异步响应在 future 完成并发送后才结束）。仍在任务队列中等待的请求也计入，优雅停机不会漏掉它们
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    
+    /** 优雅停机中，最后一个请求结束时唤醒 {@link #awaitInFlight} */
+    private volatile boolean draining;
+    
+    private static final byte[] SERVICE_UNAVAILABLE = "{\"error\":\"Service Unavailable\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] INTERNAL_SERVER_ERROR = "{\"error\":\"Internal Server Error\"}".getBytes(StandardCharsets.UTF_8);
+    
     @Override
     public void config() {
         host = app.conf.getString("server", "host", host);
@@ -94,6 +177,338 @@ public class ServerPlugin extends Plugin {
         idleTimeout = app.conf.getInt("server.threads", "idle", idleTimeout);
         backlog = app.conf.getInt("server", "backlog", backlog);
         maxRequestSize = app.conf.getInt("server", "maxRequestSize", maxRequestSize);
+        
+        int poolSize = app.conf.getInt("server", "contextPoolSize", ContextPool.DEFAULT_CAPACITY);
+        boolean leakDetection = app.conf.getBool("server", "leakDetection", contextPool.leakDetection);
+        if (poolSize != contextPool.capacity()) {
+            contextPool = new ContextPool(poolSize);
+        }
+        contextPool.leakDetection = leakDetection;
+        contextPool.log = app.log;
+        
+        queueCapacity = app.conf.getInt("server.queue", "capacity", queueCapacity);
+        queueTimeout = app.conf.getInt("server.queue", "timeout", queueTimeout);
+        retryAfter = app.conf.getInt("server.queue", "retryAfter", retryAfter);
+    }
+    
+    /**
+     * 工作线程池的任务队列：容量为 {@link #queueCapacity}，不限制时为无界队列
+     */
+    protected BlockingQueue<Runnable> createWorkQueue() {
+        return queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new LinkedBlockingQueue<>();
+    }
+    
+    /**
+     * 包装派发到工作线程的任务，记录入队时间供 {@link #shed} 判断排队超时
+     */
+    protected Runnable timed(Runnable task) {
+        return timed(task, System.nanoTime());
+    }
+    
+    /**
+     * 同 {@link #timed(Runnable)}，沿用请求更早的入队时间（请求经过多级队列时，排队时间从第一级算起）
+     * 
+     * @param enqueuedAt 入队时间（System.nanoTime()），见 {@link #enqueuedAt()}
+     */
+    protected Runnable timed(Runnable task, long enqueuedAt) {
+        inFlight.incrementAndGet();
+        return new TimedTask(task, enqueuedAt);
+    }
+    
+    /**
+     * 当前线程正在处理的请求的入队时间（{@link #timed} 记录），0 表示未经过队列，{@link #REJECTED} 表示已被拒绝
+     */
+    protected static long enqueuedAt() {
+        return ENQUEUED_AT.get()[0];
+    }
+    
+    /**
+     * 任务队列已满时的拒绝策略：在派发线程上执行任务，请求处理时 {@link #shed} 直接返回 503，
+     * 不执行 handler（配合 {@link #timed} 使用）
+     */
+    protected RejectedExecutionHandler rejectWithServiceUnavailable() {
+        return (task, executor) -> {
+            if (task instanceof TimedTask) {
+                ((TimedTask) task).runAt(REJECTED);
+            } else {
+                runAt(task, REJECTED);
+            }
+        };
+    }
+    
+    /**
+     * 任务队列已满时的拒绝策略（派发线程不能做阻塞 IO 的服务器使用）：被拒绝的任务交给 rejections 执行，
+     * 在那里读取请求并返回 503；rejections 也已饱和时抛出 RejectedExecutionException，由服务器直接关闭连接
+     * 
+     * @param rejections 执行被拒绝请求的小线程池（应使用有界队列）
+     */
+    protected RejectedExecutionHandler rejectWithServiceUnavailable(Executor rejections) {
+        RejectedExecutionHandler inline = rejectWithServiceUnavailable();
+        return (task, executor) -> {
+            try {
+                rejections.execute(() -> inline.rejectedExecution(task, executor));
+            } catch (RejectedExecutionException e) {
+                if (task instanceof TimedTask) {
+                    finished();
+                }
+                throw e;
+            }
+        };
+    }
+    
+    /**
+     * 请求进入等待队列（没有自己的任务队列的服务器在派发前调用）
+     * @return false 表示已达到 {@link #queueCapacity}，应直接返回 503
+     */
+    protected boolean enqueue() {
+        if (queued.incrementAndGet() > queueCapacity && queueCapacity > 0) {
+            queued.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * 请求离开等待队列，开始处理（与 {@link #enqueue()} 成对调用）
+     */
+    protected void dequeue() {
+        queued.decrementAndGet();
+    }
+    
+    /**
+     * 准入检查（没有等待队列的服务器在执行 app.handle 之前调用：在 EventLoop 上或每个请求一个虚拟线程直接处理）
+     * 
+     * <p>这类服务器过载时表现为同时处理的请求过多，{@link #queueCapacity} 限制处理中的请求数，
+     * 从通过检查到 {@link #releaseContext} 为止（包括尚未发出的异步、流式响应）。
+     * 
+     * @return false 表示已达上限（已设置 503 响应），不要再执行 app.handle
+     */
+    protected boolean admit(Context ctx) {
+        if (!enqueue()) {
+            reject(ctx);
+            return false;
+        }
+        ctx.set(ADMITTED, Boolean.TRUE);
+        return true;
+    }
+    
+    /**
+     * 服务器没有等待队列、不支持 server.queue.timeout 时在 config() 中调用，配置了该项时给出警告
+     */
+    protected void warnQueueTimeoutIgnored() {
+        if (queueTimeout > 0) {
+            app.log.warn("server.queue.timeout is ignored by " + getClass().getSimpleName()
+                + ": requests are handled without a queue, use server.queue.capacity to limit them");
+        }
+    }
+    
+    /**
+     * 准入检查，在工作线程开始处理请求、执行 app.handle 之前调用
+     * 
+     * <p>按排队时间而不是队列长度丢弃（CoDel 式）：过载时排队已久的请求客户端多半已经超时，
+     * 直接返回 503 + Retry-After，把线程留给还来得及响应的请求。
+     * 
+     * @param ctx 请求上下文
+     * @param enqueuedAt 请求入队时间（System.nanoTime()），0 表示使用 {@link #timed} 记录的时间
+     * @return true 表示请求被拒绝（已设置 503 响应），不要再执行 app.handle
+     */
+    protected boolean shed(Context ctx, long enqueuedAt) {
+        if (enqueuedAt == 0) {
+            enqueuedAt = ENQUEUED_AT.get()[0];
+        }
+        if (enqueuedAt == REJECTED
+                || (queueTimeout > 0 && enqueuedAt != 0 && System.nanoTime() - enqueuedAt > queueTimeout * 1_000_000L)) {
+            reject(ctx);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * 设置过载响应：503 + Retry-After
+     */
+    protected void reject(Context ctx) {
+        // 固定响应体，过载时不经过 JSON 序列化
+        ctx.status(503)
+            .header("Retry-After", String.valueOf(retryAfter))
+            .data(SERVICE_UNAVAILABLE, "application/json");
+    }
+    
+    /**
+     * 交给 app.handleError 生成错误响应；错误处理本身失败时（如未注册 JsonPlugin）按异常的状态码返回固定响应
+     * （默认 500），调用方照常发送响应并归还 Context
+     */
+    protected void handleError(Context ctx, Exception e) {
+        try {
+            app.handleError(ctx, e);
+        } catch (RuntimeException fatal) {
+            app.log.error("Error handler failed: " + fatal.getMessage());
+            int status = e instanceof LiteJavaException ? ((LiteJavaException) e).statusCode : 500;
+            ctx.status(status).data(status == 500 ? INTERNAL_SERVER_ERROR : new byte[0], "application/json");
+        }
+    }
+    
+    private static void runAt(Runnable task, long enqueuedAt) {
+        long[] slot = ENQUEUED_AT.get();
+        long outer = slot[0];
+        slot[0] = enqueuedAt;
+        try {
+            task.run();
+        } finally {
+            slot[0] = outer;
+        }
+    }
+    
+    /** 带入队时间的任务，执行完（或被拒绝后就地执行完）才从进行中的请求数里减去 */
+    private final class TimedTask implements Runnable {
+        final Runnable task;
+        final long enqueuedAt;
+        
+        TimedTask(Runnable task, long enqueuedAt) {
+            this.task = task;
+            this.enqueuedAt = enqueuedAt;
+        }
+        
+        @Override
+        public void run() {
+            runAt(enqueuedAt);
+        }
+        
+        void runAt(long at) {
+            try {
+                ServerPlugin.runAt(task, at);
+            } finally {
+                finished();
+            }
+        }
+    }
+    
+    /**
+     * 是否注册了优先路由（{@link Route#priority()}），服务器启动时据此决定是否分开接收线程和工作线程
+     */
+    protected boolean hasPriorityRoutes() {
+        for (Route route : app.router.getAllRoutes()) {
+            if (route.priority) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * 请求是否命中优先路由：命中时在接收线程直接处理，不进入工作线程队列，也不做排队超时检查
+     */
+    protected boolean isPriority(Context ctx) {
+        Route route = app.match(ctx);
+        return route != null && route.priority;
+    }
+    
+    /**
+     * 从对象池获取 Context
+     * @return Context 实例
+     */
+    protected Context acquireContext() {
+        inFlight.incrementAndGet();
+        Context ctx = contextPool.acquire();
+        ctx.app = app;
+        // 在工作线程上取出时减去排队时间，路由超时从请求到达时算起
+        long enqueuedAt = ENQUEUED_AT.get()[0];
+        long now = System.currentTimeMillis();
+        ctx.receivedAt = enqueuedAt == 0 || enqueuedAt == REJECTED
+            ? now : now - (System.nanoTime() - enqueuedAt) / 1_000_000;
+        return ctx;
+    }
+    
+    /**
+     * 重置并归还 Context 到对象池
+     * @param ctx Context 实例
+     */
+    protected void releaseContext(Context ctx) {
+        ServerTiming timing = ctx.timing;
+        if (timing.isActive()) {
+            timing.written();
+            app.timingStats.record(timing);
+        }
+        if (ctx.jfr != null) {
+            Jfr.endRequest(ctx);
+        }
+        if (ctx.get(ADMITTED) != null) {
+            dequeue();
+        }
+        contextPool.release(ctx);
+        finished();
+    }
+    
+    private void finished() {
+        if (inFlight.decrementAndGet() == 0 && draining) {
+            synchronized (inFlight) {
+                inFlight.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * 进行中的请求数（已派发或已借出 Context、响应尚未发送完毕）
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+    
+    /**
+     * 等待进行中的请求全部完成（优雅停机时在 {@link #stopAccepting()} 之后调用）
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return false 表示超时时仍有请求未完成
+     */
+    public boolean awaitInFlight(long timeoutMillis) {
+        draining = true;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (inFlight) {
+            while (inFlight.get() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                try {
+                    inFlight.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 异步响应（{@link Context#isDeferred()}）：future 完成后执行 complete 发送响应并归还 Context
+     * 
+     * <p>future 异常完成时先交给 app.handleError 生成错误响应，超过请求截止时间的返回 504。complete 在完成 future 的线程上执行，
+     * 需要阻塞 IO 的服务器应在 complete 中切回自己的工作线程。
+     * 
+     * @param ctx 请求上下文
+     * @param complete 发送响应并归还 Context
+     * @return false 表示不是异步响应，调用方应立即发送响应
+     */
+    protected boolean deferResponse(Context ctx, Runnable complete) {
+        if (!ctx.isDeferred()) return false;
+        ctx.getResponseFuture().whenComplete((result, error) -> {
+            try {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    if (cause instanceof TimeoutException && ctx.deadline != 0) {
+                        cause = new LiteJavaException("Deadline exceeded", 504);
+                    }
+                    handleError(ctx, cause instanceof Exception ? (Exception) cause
+                        : new LiteJavaException(String.valueOf(cause), cause));
+                }
+            } finally {
+                ServerTiming timing = ctx.timing;
+                if (timing.isActive()) {
+                    timing.handled();
+                    if (app.timingHeader) {
+                        ctx.header("Server-Timing", timing.header());
+                    }
+                }
+                complete.run();
+            }
+        });
+        return true;
     }
     
     /**
@@ -106,8 +521,80 @@ public class ServerPlugin extends Plugin {
      */
     public void stop() {}
     
+    /**
+     * 停止接受新连接，已建立的连接上的请求继续处理（子类实现，优雅停机时先于 {@link #stop()} 调用）
+     * 
+     * <p>之后 {@link litejava.App#gracefulStop()} 通过 {@link #awaitInFlight} 等待进行中的请求完成，再调用 {@link #stop()}。
+     */
+    public void stopAccepting() {}
+    
+    /**
+     * 客户端 IP（{@link Context#remoteAddr}），不是 IP 地址时返回 null
+     */
+    protected static String hostAddress(SocketAddress address) {
+        return address instanceof InetSocketAddress ? ((InetSocketAddress) address).getAddress().getHostAddress() : null;
+    }
+    
+    /**
+     * 解析 Content-Length 请求头
+     * @return 请求体长度，缺失或非法时返回 -1
+     */
+    protected static long parseContentLength(String value) {
+        if (value == null || value.isEmpty()) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * 执行流式响应写入（子类在发送响应头之后调用）
+     * 
+     * <p>此时响应头已提交，写入器抛出的异常统一包装为 IOException，
+     * 由子类记录日志并中断连接，避免客户端把截断的响应当作完整响应。
+     * 
+     * @param ctx 请求上下文（{@link Context#isStreaming()} 为 true）
+     * @param out 服务器响应输出流
+     */
+    protected void writeStream(Context ctx, OutputStream out) throws IOException {
+        try {
+            ctx.getResponseStream().write(out);
+            out.flush();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Stream writer failed: " + e.getMessage(), e);
+        }
+    }
+    
     @Override
     public void uninstall() {
         stop();
     }
+    
+    /**
+     * 把文件响应写入输出流（服务器没有原生 sendfile 时使用）
+     * 
+     * <p>使用 FileChannel.transferTo 分块传输，内存占用与文件大小无关。
+     * 
+     * @param ctx 请求上下文（{@link Context#isFileResponse()} 为 true）
+     * @param out 服务器响应输出流
+     */
+    protected void transferFile(Context ctx, OutputStream out) throws IOException {
+        try (FileChannel file = FileChannel.open(ctx.getResponseFile().toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = ctx.getResponseFilePosition();
+            long remaining = ctx.getResponseFileLength();
+            while (remaining > 0) {
+                long n = file.transferTo(position, remaining, target);
+                if (n <= 0) {
+                    throw new EOFException("File truncated while sending: " + ctx.getResponseFile());
+                }
+                position += n;
+                remaining -= n;
+            }
+        }
+        out.flush();
+    }
 }
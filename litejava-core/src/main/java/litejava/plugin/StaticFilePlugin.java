@@ -3,8 +3,21 @@ package litejava.plugin;
 import litejava.*;
 
 import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * 静态文件目录插件 - Gin-style 路由方式提供静态资源
@@ -31,6 +44,34 @@ import java.util.*;
  * app.use(new MyStaticPlugin());
  * }</pre>
  * 
+ * <h2>缓存与条件请求</h2>
+ * <p>不超过 cacheMaxFileSize 的文件缓存在内存中（总量不超过 cacheMaxBytes，LRU 淘汰），
+ * 命中时只做一次 Map 查找；文件系统资源每隔 cacheCheckInterval 毫秒按 mtime/大小校验一次。
+ * 响应携带 ETag 和 Last-Modified，请求带 If-None-Match / If-Modified-Since 且未变化时返回 304。
+ * <pre>
+ * static.cacheMaxBytes=33554432      # 缓存总大小，0 表示不缓存
+ * static.cacheMaxFileSize=1048576    # 单文件上限，更大的文件以文件响应发送
+ * static.cacheCheckInterval=1000     # mtime 校验间隔（毫秒）
+ * </pre>
+ * 
+ * <h2>预压缩资源</h2>
+ * <p>构建产物旁存在 app.js.br / app.js.gz 时，按 Accept-Encoding 直接返回压缩版本
+ * （Content-Encoding + Vary: Accept-Encoding），不再逐请求压缩。
+ * 开启 static.compress 后，没有预压缩文件的文本类资源在首次请求时 gzip 一次并随缓存保存。
+ * <pre>
+ * static.precompressed=br,gzip       # 按优先级查找的预压缩编码，留空关闭
+ * static.compress=false              # 首次请求时压缩并缓存
+ * static.compressMinSize=1024        # 小于该大小的资源不压缩
+ * </pre>
+ * 
+ * <h2>Range 请求</h2>
+ * <p>未编码的响应支持 Range（视频拖动、断点续传）：单个区间返回 206 + Content-Range，
+ * 大文件直接以文件片段发送；多个区间返回 multipart/byteranges，按区间从 FileChannel 定位读取，
+ * 不会把整个文件读入内存。无法满足的区间返回 416，If-Range 不匹配时返回完整内容。
+ * <pre>
+ * static.maxRanges=16                # 单个请求最多区间数，超出时返回完整内容
+ * </pre>
+ * 
  * @see SingleFilePlugin 单文件插件
  */
 public class StaticFilePlugin extends Plugin {
@@ -41,6 +82,45 @@ public class StaticFilePlugin extends Plugin {
     public int cacheMaxAge = 3600;
     public boolean useFileSystem = false;
     
+    /** 内存缓存总字节数上限，&lt;= 0 表示不缓存 */
+    public long cacheMaxBytes = 32 * 1024 * 1024;
+    
+    /** 可缓存的单文件字节数上限 */
+    public long cacheMaxFileSize = 1024 * 1024;
+    
+    /** 文件系统资源 mtime 校验间隔（毫秒） */
+    public long cacheCheckInterval = 1000;
+    
+    /** 按优先级查找的预压缩编码（br → .br，gzip → .gz，zstd → .zst） */
+    public String[] precompressed = {"br", "gzip"};
+    
+    /** 没有预压缩文件时，首次请求 gzip 一次并缓存（仅限已缓存的文本类资源） */
+    public boolean compress = false;
+    
+    /** 小于该字节数的资源不压缩 */
+    public int compressMinSize = 1024;
+    
+    /** 单个 Range 请求最多区间数，超出时忽略 Range 返回完整内容 */
+    public int maxRanges = 16;
+    
+    /** 资源缓存（access-order，按总字节数淘汰最久未用的条目） */
+    private final LinkedHashMap<String, Asset> cache = new LinkedHashMap<>(64, 0.75f, true);
+    
+    /** 当前缓存的总字节数 */
+    private long cachedBytes;
+    
+    /** 不存在的预压缩文件（路径 → 上次探测时间），避免每次请求都访问文件系统 */
+    private final Map<String, Long> missingVariants = new ConcurrentHashMap<>();
+    
+    private static final Map<String, String> ENCODING_SUFFIXES = new HashMap<>();
+    static {
+        ENCODING_SUFFIXES.put("br", ".br");
+        ENCODING_SUFFIXES.put("gzip", ".gz");
+        ENCODING_SUFFIXES.put("zstd", ".zst");
+    }
+    
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    
     private static final Map<String, String> MIME_TYPES = new HashMap<>();
     static {
         MIME_TYPES.put("html", "text/html; charset=utf-8");
@@ -93,6 +173,14 @@ public class StaticFilePlugin extends Plugin {
     public void config() {
         cacheMaxAge = app.conf.getInt("static", "cacheMaxAge", cacheMaxAge);
         indexFile = app.conf.getString("static", "indexFile", indexFile);
+        cacheMaxBytes = app.conf.getLong("static", "cacheMaxBytes", cacheMaxBytes);
+        cacheMaxFileSize = app.conf.getLong("static", "cacheMaxFileSize", cacheMaxFileSize);
+        cacheCheckInterval = app.conf.getLong("static", "cacheCheckInterval", cacheCheckInterval);
+        String encodings = app.conf.getString("static", "precompressed", String.join(",", precompressed));
+        precompressed = encodings.trim().isEmpty() ? new String[0] : encodings.trim().split("\\s*,\\s*");
+        compress = app.conf.getBool("static", "compress", compress);
+        compressMinSize = app.conf.getInt("static", "compressMinSize", compressMinSize);
+        maxRanges = app.conf.getInt("static", "maxRanges", maxRanges);
         
         // 注册通配符路由（Gin-style）
         String routePath = urlPrefix.endsWith("/") 
@@ -137,27 +225,368 @@ public class StaticFilePlugin extends Plugin {
             return;
         }
         
-        byte[] content;
-        if (useFileSystem) {
-            content = readFromFileSystem(filepath);
+        Asset asset = lookup(filepath);
+        if (asset == null) {
+            ctx.status(404).text("Not Found");
+            return;
+        }
+        
+        String mimeType = MIME_TYPES.getOrDefault(getExtension(filepath), "application/octet-stream");
+        
+        // 按 Accept-Encoding 选择预压缩/已压缩版本
+        String encoding = null;
+        if (precompressed.length > 0 || compress) {
+            ctx.header("Vary", "Accept-Encoding");
+            String acceptEncoding = ctx.header("Accept-Encoding");
+            if (acceptEncoding != null) {
+                for (String enc : precompressed) {
+                    if (!acceptsEncoding(acceptEncoding, enc)) continue;
+                    Asset variant = lookupVariant(filepath, enc);
+                    if (variant != null) {
+                        asset = variant;
+                        encoding = enc;
+                        break;
+                    }
+                }
+                if (encoding == null && compress && acceptsEncoding(acceptEncoding, "gzip")
+                        && asset.content != null && asset.length >= compressMinSize && isCompressible(mimeType)) {
+                    asset = asset.gzipped();
+                    encoding = "gzip";
+                }
+            }
+        }
+        
+        ctx.header("Cache-Control", "public, max-age=" + cacheMaxAge)
+           .header("ETag", asset.etag);
+        if (asset.lastModified > 0) {
+            ctx.header("Last-Modified", HTTP_DATE.format(Instant.ofEpochMilli(asset.lastModified)));
+        }
+        
+        if (isNotModified(ctx, asset)) {
+            ctx.status(304);
+            return;
+        }
+        
+        if (encoding != null) {
+            ctx.header("Content-Encoding", encoding);
         } else {
-            content = readFromClasspath(filepath);
+            ctx.header("Accept-Ranges", "bytes");
+            String range = ctx.header("Range");
+            if (range != null && ifRangeMatches(ctx, asset)) {
+                List<long[]> ranges = parseRanges(range, asset.length);
+                if (ranges != null) {
+                    serveRanges(ctx, asset, ranges, mimeType);
+                    return;
+                }
+            }
         }
         
-        if (content == null) {
-            ctx.status(404).text("Not Found");
+        ctx.status(200);
+        if (asset.content != null) {
+            ctx.data(asset.content, mimeType);
+        } else {
+            // 未缓存的大文件以文件响应发送（零拷贝，不读入堆）
+            ctx.sendFile(asset.file, mimeType);
+        }
+    }
+    
+    // ==================== Range 请求 ====================
+    
+    /**
+     * 发送区间响应：单区间 206，多区间 multipart/byteranges，无可满足区间 416
+     */
+    private void serveRanges(Context ctx, Asset asset, List<long[]> ranges, String mimeType) {
+        long size = asset.length;
+        if (ranges.isEmpty()) {
+            ctx.status(416).header("Content-Range", "bytes */" + size).text("Range Not Satisfiable");
+            return;
+        }
+        
+        ctx.status(206);
+        if (ranges.size() == 1) {
+            long start = ranges.get(0)[0];
+            long length = ranges.get(0)[1] - start + 1;
+            ctx.header("Content-Range", "bytes " + start + "-" + (start + length - 1) + "/" + size);
+            if (asset.content != null) {
+                ctx.data(Arrays.copyOfRange(asset.content, (int) start, (int) (start + length)), mimeType);
+            } else {
+                ctx.sendFile(asset.file, start, length, mimeType);
+            }
             return;
         }
         
-        String ext = getExtension(filepath);
-        String mimeType = MIME_TYPES.getOrDefault(ext, "application/octet-stream");
+        String boundary = Long.toHexString(System.nanoTime()) + Long.toHexString(Double.doubleToLongBits(Math.random()));
+        ctx.stream("multipart/byteranges; boundary=" + boundary, out -> {
+            FileChannel channel = asset.content == null
+                ? FileChannel.open(asset.file.toPath(), StandardOpenOption.READ) : null;
+            try {
+                WritableByteChannel target = channel != null ? Channels.newChannel(out) : null;
+                for (long[] range : ranges) {
+                    long start = range[0];
+                    long length = range[1] - start + 1;
+                    String partHeader = "--" + boundary + "\r\n"
+                        + "Content-Type: " + mimeType + "\r\n"
+                        + "Content-Range: bytes " + start + "-" + range[1] + "/" + size + "\r\n\r\n";
+                    out.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+                    if (channel == null) {
+                        out.write(asset.content, (int) start, (int) length);
+                    } else {
+                        // 按区间定位读取，不加载整个文件
+                        long position = start;
+                        long end = start + length;
+                        while (position < end) {
+                            long n = channel.transferTo(position, end - position, target);
+                            if (n <= 0) throw new EOFException("File truncated: " + asset.file);
+                            position += n;
+                        }
+                    }
+                    out.write(CRLF);
+                }
+                out.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+            } finally {
+                if (channel != null) channel.close();
+            }
+        });
+    }
+    
+    private static final byte[] CRLF = {'\r', '\n'};
+    
+    /**
+     * 解析 Range 头（bytes=0-99,200-,-500）
+     * 
+     * @return 可满足的区间列表 [start, end]（含 end）；空列表表示不可满足（416）；
+     *         null 表示忽略 Range（格式非法、非 bytes 单位或区间过多）
+     */
+    protected List<long[]> parseRanges(String header, long size) {
+        header = header.trim();
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > maxRanges) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) return null;
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.isEmpty()) {
+                    // 后缀区间：最后 N 个字节
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0) continue;
+                    start = Math.max(0, size - suffix);
+                    end = size - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                    if (!last.isEmpty() && Long.parseLong(last) < start) return null;
+                }
+                if (start < 0) return null;
+                if (start < size && start <= end) {
+                    ranges.add(new long[] {start, end});
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return ranges;
+    }
+    
+    /**
+     * If-Range 校验：ETag 强比较或与 Last-Modified 相同时才按区间返回
+     */
+    private boolean ifRangeMatches(Context ctx, Asset asset) {
+        String ifRange = ctx.header("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(asset.etag);
+        }
+        return asset.lastModified > 0
+            && ifRange.equals(HTTP_DATE.format(Instant.ofEpochMilli(asset.lastModified)));
+    }
+    
+    // ==================== 资源缓存 ====================
+    
+    /**
+     * 静态资源：缓存的内容或大文件的元数据
+     */
+    protected static class Asset {
+        /** 文件系统文件，classpath 资源为 null */
+        final File file;
+        /** 文件内容，大文件不缓存内容时为 null */
+        final byte[] content;
+        final String etag;
+        /** 最后修改时间（毫秒），未知时为 0 */
+        final long lastModified;
+        final long length;
+        /** 上次校验 mtime 的时间 */
+        volatile long checkedAt;
+        /** 首次请求时生成的 gzip 版本（static.compress） */
+        private volatile Asset gzipped;
+        
+        Asset(File file, byte[] content, String etag, long lastModified, long length) {
+            this.file = file;
+            this.content = content;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.checkedAt = System.currentTimeMillis();
+        }
+        
+        /**
+         * 获取 gzip 版本，首次调用时压缩（并发时可能重复压缩，结果相同）
+         */
+        Asset gzipped() throws IOException {
+            Asset result = gzipped;
+            if (result == null) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(content.length / 2);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(bos)) {
+                    gzip.write(content);
+                }
+                byte[] compressed = bos.toByteArray();
+                String tag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+                result = new Asset(file, compressed, tag, lastModified, compressed.length);
+                gzipped = result;
+            }
+            return result;
+        }
+    }
+    
+    /**
+     * 查找资源：缓存命中且未过校验间隔时不访问文件系统
+     */
+    protected Asset lookup(String filepath) throws IOException {
+        Asset asset;
+        synchronized (cache) {
+            asset = cache.get(filepath);
+        }
+        if (asset != null) {
+            long now = System.currentTimeMillis();
+            // classpath 资源不可变，文件系统资源按间隔校验 mtime 和大小
+            if (asset.file == null || now - asset.checkedAt < cacheCheckInterval) {
+                return asset;
+            }
+            if (asset.file.lastModified() == asset.lastModified && asset.file.length() == asset.length) {
+                asset.checkedAt = now;
+                return asset;
+            }
+            evict(filepath);
+        }
+        
+        asset = useFileSystem ? loadFromFileSystem(filepath) : loadFromClasspath(filepath);
+        if (asset != null && asset.content != null && cacheable(asset.length)) {
+            put(filepath, asset);
+        }
+        return asset;
+    }
+    
+    /**
+     * 查找预压缩版本（如 app.js.gz），不存在的结果按 cacheCheckInterval 缓存
+     */
+    private Asset lookupVariant(String filepath, String encoding) throws IOException {
+        String suffix = ENCODING_SUFFIXES.get(encoding);
+        if (suffix == null) return null;
+        String variantPath = filepath + suffix;
         
-        ctx.status(200)
-           .header("Cache-Control", "public, max-age=" + cacheMaxAge)
-           .data(content, mimeType);
+        Long checkedAt = missingVariants.get(variantPath);
+        long now = System.currentTimeMillis();
+        if (checkedAt != null && now - checkedAt < Math.max(cacheCheckInterval, 1)) {
+            return null;
+        }
+        Asset variant = lookup(variantPath);
+        if (variant == null) {
+            missingVariants.put(variantPath, now);
+        } else if (checkedAt != null) {
+            missingVariants.remove(variantPath);
+        }
+        return variant;
+    }
+    
+    /**
+     * 清空缓存
+     */
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+            cachedBytes = 0;
+        }
+        missingVariants.clear();
     }
     
-    private byte[] readFromFileSystem(String relativePath) {
+    private void put(String filepath, Asset asset) {
+        synchronized (cache) {
+            Asset old = cache.put(filepath, asset);
+            if (old != null) {
+                cachedBytes -= old.content.length;
+            }
+            cachedBytes += asset.content.length;
+            Iterator<Asset> it = cache.values().iterator();
+            while (cachedBytes > cacheMaxBytes && it.hasNext()) {
+                cachedBytes -= it.next().content.length;
+                it.remove();
+            }
+        }
+    }
+    
+    private void evict(String filepath) {
+        synchronized (cache) {
+            Asset old = cache.remove(filepath);
+            if (old != null) {
+                cachedBytes -= old.content.length;
+            }
+        }
+    }
+    
+    private boolean cacheable(long length) {
+        return cacheMaxBytes > 0 && length <= cacheMaxFileSize && length <= cacheMaxBytes;
+    }
+    
+    private Asset loadFromFileSystem(String relativePath) throws IOException {
+        File file = resolveFile(relativePath);
+        if (file == null) {
+            return null;
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if (cacheable(length)) {
+            byte[] content = Files.readAllBytes(file.toPath());
+            return new Asset(file, content, contentEtag(content), lastModified, content.length);
+        }
+        // 大文件不读内容，ETag 由大小和修改时间生成
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+        return new Asset(file, null, etag, lastModified, length);
+    }
+    
+    private Asset loadFromClasspath(String relativePath) throws IOException {
+        URL url = getClass().getClassLoader().getResource(directory + relativePath);
+        if (url == null) {
+            return null;
+        }
+        URLConnection conn = url.openConnection();
+        long lastModified = conn.getLastModified();
+        byte[] content;
+        try (InputStream is = conn.getInputStream()) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                bos.write(buffer, 0, len);
+            }
+            content = bos.toByteArray();
+        }
+        return new Asset(null, content, contentEtag(content), lastModified, content.length);
+    }
+    
+    private File resolveFile(String relativePath) {
         try {
             Path filePath = Paths.get(directory, relativePath).normalize();
             // 确保路径在目录内
@@ -165,8 +594,8 @@ public class StaticFilePlugin extends Plugin {
                 return null;
             }
             File file = filePath.toFile();
-            if (file.exists() && file.isFile()) {
-                return Files.readAllBytes(file.toPath());
+            if (file.isFile() && file.canRead()) {
+                return file;
             }
         } catch (Exception e) {
             // ignore
@@ -174,22 +603,85 @@ public class StaticFilePlugin extends Plugin {
         return null;
     }
     
-    private byte[] readFromClasspath(String relativePath) {
-        String resourcePath = directory + relativePath;
-        try (InputStream is = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
-            if (is == null) return null;
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            byte[] buffer = new byte[4096];
-            int len;
-            while ((len = is.read(buffer)) != -1) {
-                bos.write(buffer, 0, len);
+    /**
+     * 强 ETag：内容 SHA-256 摘要的前 16 字节
+     */
+    private static String contentEtag(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder sb = new StringBuilder(34).append('"');
+            for (int i = 0; i < 16; i++) {
+                sb.append(Character.forDigit((digest[i] >> 4) & 0xF, 16))
+                  .append(Character.forDigit(digest[i] & 0xF, 16));
             }
-            return bos.toByteArray();
+            return sb.append('"').toString();
         } catch (Exception e) {
-            return null;
+            return "\"" + Integer.toHexString(Arrays.hashCode(content)) + "-" + Integer.toHexString(content.length) + "\"";
+        }
+    }
+    
+    // ==================== 条件请求 ====================
+    
+    /**
+     * 判断是否返回 304：If-None-Match 优先，其次 If-Modified-Since
+     */
+    protected boolean isNotModified(Context ctx, Asset asset) {
+        String ifNoneMatch = ctx.header("If-None-Match");
+        if (ifNoneMatch != null) {
+            return etagMatches(ifNoneMatch, asset.etag);
+        }
+        String ifModifiedSince = ctx.header("If-Modified-Since");
+        if (ifModifiedSince != null && asset.lastModified > 0) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, HTTP_DATE).toInstant().toEpochMilli();
+                // HTTP 日期精度为秒
+                return asset.lastModified / 1000 <= since / 1000;
+            } catch (Exception e) {
+                return false;
+            }
         }
+        return false;
     }
     
+    /**
+     * 判断客户端是否接受指定编码（q=0 表示拒绝）
+     */
+    private static boolean acceptsEncoding(String header, String encoding) {
+        for (String part : header.split(",")) {
+            String token = part.trim();
+            int semi = token.indexOf(';');
+            String name = semi >= 0 ? token.substring(0, semi).trim() : token;
+            if (!name.equalsIgnoreCase(encoding) && !name.equals("*")) continue;
+            if (semi >= 0) {
+                String params = token.substring(semi + 1).replace(" ", "");
+                if (params.startsWith("q=") && params.substring(2).matches("0(\\.0*)?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    private static boolean isCompressible(String mimeType) {
+        return mimeType.startsWith("text/") || mimeType.contains("javascript")
+            || mimeType.contains("json") || mimeType.contains("xml") || mimeType.contains("svg");
+    }
+    
+    /**
+     * If-None-Match 使用弱比较（忽略 W/ 前缀），支持逗号分隔的多个 ETag 和 *
+     */
+    private static boolean etagMatches(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) return true;
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag)) return true;
+        }
+        return false;
+    }
+    
+    
     private String getExtension(String filename) {
         int dot = filename.lastIndexOf('.');
         return dot > 0 ? filename.substring(dot + 1).toLowerCase() : "";
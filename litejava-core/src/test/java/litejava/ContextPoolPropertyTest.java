@@ -0,0 +1,167 @@
+package litejava;
+
+import net.jqwik.api.*;
+import net.jqwik.api.constraints.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Property-based tests for ContextPool (Context 对象池).
+ */
+class ContextPoolPropertyTest {
+
+    /**
+     * **Feature: lite-java-framework, Property: Context Pool**
+     *
+     * For any sequence of acquires and releases, a Context is never handed out twice while
+     * outstanding, the pool never holds more than its capacity, and a non-empty pool is always
+     * reused before a new Context is created.
+     */
+    @Property(tries = 100)
+    void poolNeverHandsOutOutstandingContext(@ForAll @IntRange(min = 0, max = 64) int capacity,
+                                             @ForAll @Size(max = 200) List<Boolean> acquires,
+                                             @ForAll boolean leakDetection) {
+        ContextPool pool = new ContextPool(capacity);
+        pool.leakDetection = leakDetection;
+        Set<Context> outstanding = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Context> order = new ArrayList<>();
+
+        for (boolean acquire : acquires) {
+            int before = pool.size();
+            if (acquire || order.isEmpty()) {
+                Context ctx = pool.acquire();
+                assertTrue(outstanding.add(ctx), "context handed out twice");
+                order.add(ctx);
+                // 池非空时一定复用
+                assertEquals(Math.max(before - 1, 0), pool.size());
+            } else {
+                Context ctx = order.remove(order.size() - 1);
+                outstanding.remove(ctx);
+                pool.release(ctx);
+                assertTrue(pool.size() == before || pool.size() == before + 1);
+            }
+            assertTrue(pool.size() <= pool.capacity());
+            assertTrue(pool.capacity() <= capacity);
+            if (leakDetection) {
+                assertEquals(outstanding.size(), pool.outstanding());
+            }
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Context Pool**
+     *
+     * A releasing thread fills only its own stripe and a fixed number of neighbours, acquires on
+     * other threads take pooled Contexts when they can and allocate otherwise, and the pool size
+     * stays exact. When every stripe is within probe range, nothing is allocated while the pool
+     * still holds Contexts.
+     */
+    @Property(tries = 30)
+    void contextsAreReusedAcrossThreadsWithinProbeRange(@ForAll @IntRange(min = 1, max = 512) int capacity,
+                                                        @ForAll @IntRange(min = 1, max = 4) int threads) throws Exception {
+        ContextPool pool = new ContextPool(capacity);
+        int stripeSize = pool.capacity() / pool.stripes();
+        int reachable = Math.min(pool.stripes(), 1 + ContextPool.NEIGHBOR_STRIPES) * stripeSize;
+        List<Context> released = new ArrayList<>();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < pool.capacity() * 2; i++) {
+                released.add(new Context());
+            }
+            released.forEach(pool::release);
+        });
+        producer.start();
+        producer.join();
+        assertTrue(stripeSize <= ContextPool.MAX_STRIPE_SIZE);
+        assertEquals(reachable, pool.size());
+
+        Set<Context> acquired = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        List<Thread> consumers = new ArrayList<>();
+        int each = reachable / threads;
+        for (int t = 0; t < threads; t++) {
+            consumers.add(new Thread(() -> {
+                for (int i = 0; i < each; i++) {
+                    acquired.add(pool.acquire());
+                }
+            }));
+        }
+        for (Thread consumer : consumers) consumer.start();
+        for (Thread consumer : consumers) consumer.join();
+
+        assertEquals(each * threads, acquired.size());
+        Set<Context> pooled = Collections.newSetFromMap(new IdentityHashMap<>());
+        pooled.addAll(released);
+        long reused = acquired.stream().filter(pooled::contains).count();
+        assertEquals(reachable - reused, pool.size());
+        if (pool.stripes() <= 1 + ContextPool.NEIGHBOR_STRIPES) {
+            assertEquals(acquired.size(), reused, "acquire created a new Context while the pool was not empty");
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Context Pool**
+     *
+     * A released Context comes back reset, with the same request containers cleared in place.
+     */
+    @Property(tries = 50)
+    void releasedContextIsResetInPlace(@ForAll @AlphaChars @StringLength(min = 1, max = 10) String key,
+                                       @ForAll @AlphaChars @StringLength(min = 1, max = 10) String value) {
+        ContextPool pool = new ContextPool(1);
+        Context ctx = pool.acquire();
+        Headers headers = ctx.headers;
+        PathParams params = ctx.params;
+        Map<String, Object> state = ctx.state;
+
+        ctx.method = "POST";
+        ctx.headers.put(key, value);
+        ctx.params.put(key, value);
+        ctx.state.put(key, value);
+        ctx.status(500).text(value);
+        pool.release(ctx);
+
+        Context reused = pool.acquire();
+        assertSame(ctx, reused);
+        assertNull(reused.method);
+        assertSame(headers, reused.headers);
+        assertSame(params, reused.params);
+        assertSame(state, reused.state);
+        assertEquals(0, reused.headers.size());
+        assertTrue(reused.params.isEmpty());
+        assertTrue(reused.state.isEmpty());
+        assertEquals(200, reused.getResponseStatus());
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Context Pool**
+     *
+     * With leak detection on, releasing the same Context twice pools it only once.
+     */
+    @Property(tries = 20)
+    void doubleReleaseIsIgnoredWithLeakDetection(@ForAll @IntRange(min = 2, max = 8) int releases) {
+        ContextPool pool = new ContextPool(16);
+        pool.leakDetection = true;
+        pool.log = null;
+        Context ctx = pool.acquire();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            for (int i = 0; i < releases; i++) {
+                pool.release(ctx);
+            }
+        } finally {
+            System.setErr(err);
+        }
+        assertEquals(1, pool.size());
+        assertEquals(0, pool.outstanding());
+        assertSame(ctx, pool.acquire());
+        assertNotSame(ctx, pool.acquire());
+    }
+}
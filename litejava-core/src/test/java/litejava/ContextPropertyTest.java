@@ -0,0 +1,396 @@
+package litejava;
+
+import litejava.exception.LiteJavaException;
+import net.jqwik.api.*;
+import net.jqwik.api.constraints.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Property-based tests for Context (请求/响应上下文).
+ */
+class ContextPropertyTest {
+
+    /**
+     * **Feature: lite-java-framework, Property: Lazy Request Body**
+     *
+     * For any body and size limit, getRawData() returns the full body when it fits the limit
+     * and fails with 413 otherwise, whether or not Content-Length is declared.
+     */
+    @Property(tries = 100)
+    void lazyBodyRespectsMaxSize(@ForAll @Size(max = 2000) byte[] body,
+                                 @ForAll @IntRange(min = 1, max = 2000) int maxSize,
+                                 @ForAll boolean declareLength) {
+        Context ctx = new Context();
+        ctx.setRequestBody(new ByteArrayInputStream(body), declareLength ? body.length : -1, maxSize);
+
+        if (body.length <= maxSize) {
+            assertArrayEquals(body, ctx.getRawData());
+            assertSame(ctx.getRawData(), ctx.getRawData());
+        } else {
+            LiteJavaException e = assertThrows(LiteJavaException.class, ctx::getRawData);
+            assertEquals(413, e.statusCode);
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Lazy Request Body**
+     *
+     * The body stream is never read until requested, and can be consumed only once.
+     */
+    @Property(tries = 50)
+    void bodyStreamIsLazyAndSingleUse(@ForAll @Size(min = 1, max = 500) byte[] body) throws Exception {
+        ByteArrayInputStream source = new ByteArrayInputStream(body);
+        Context ctx = new Context();
+        ctx.setRequestBody(source, body.length, 0);
+        assertEquals(body.length, source.available());
+
+        InputStream in = ctx.bodyStream();
+        byte[] read = new byte[body.length];
+        int offset = 0;
+        int n;
+        while (offset < read.length && (n = in.read(read, offset, read.length - offset)) > 0) {
+            offset += n;
+        }
+        assertArrayEquals(body, read);
+        assertThrows(IllegalStateException.class, ctx::getRawData);
+
+        ctx.reset();
+        assertEquals(0, ctx.getRawData().length);
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Lazy Headers And Query**
+     *
+     * For any set of query parameters, queryParams decodes the raw query string on first access,
+     * and the header loader runs at most once and only when headers are read.
+     */
+    @Property(tries = 100)
+    void headersAndQueryAreParsedOnFirstAccess(
+            @ForAll @Size(max = 5) Map<@AlphaChars @StringLength(min = 1, max = 8) String, @AlphaChars @Chars({' ', '&', '=', '+', '%', '中'}) @StringLength(max = 12) String> query,
+            @ForAll boolean readHeaders) throws Exception {
+        Map<String, String> params = new LinkedHashMap<>(query);
+        StringBuilder raw = new StringBuilder();
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            if (raw.length() > 0) raw.append('&');
+            raw.append(e.getKey()).append('=').append(URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8.name()));
+        }
+
+        AtomicInteger loads = new AtomicInteger();
+        Context ctx = new Context();
+        ctx.query = raw.toString();
+        ctx.setHeaderLoader(map -> {
+            loads.incrementAndGet();
+            map.put("X-Test", "1");
+        });
+
+        assertFalse(ctx.queryParams.isLoaded());
+        assertEquals(params, ctx.queryParams);
+        if (readHeaders) {
+            assertEquals("1", ctx.header("X-Test"));
+            assertEquals("1", ctx.headers.get("X-Test"));
+        }
+        assertEquals(readHeaders ? 1 : 0, loads.get());
+
+        ctx.reset();
+        assertTrue(ctx.headers.isEmpty());
+        ctx.query = "a=1&a=2&flag";
+        assertEquals("1", ctx.queryParam("a"));
+        assertEquals("", ctx.queryParam("flag"));
+        assertEquals(readHeaders ? 1 : 0, loads.get());
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Case-Insensitive Headers**
+     *
+     * For any header name and casing, lookups ignore case, add() keeps every value in order
+     * (repeated Set-Cookie is not overwritten) and put() replaces all values of that name.
+     */
+    @Property(tries = 100)
+    void headersAreCaseInsensitiveAndMultiValued(
+            @ForAll @AlphaChars @Chars('-') @StringLength(min = 1, max = 16) String name,
+            @ForAll @Size(min = 1, max = 5) java.util.List<@AlphaChars @StringLength(max = 8) String> values,
+            @ForAll boolean upper) {
+        Headers headers = new Headers(2);
+        headers.put("X-Other", "other");
+        for (int i = 0; i < values.size(); i++) {
+            String variant = i % 2 == 0 ? name : name.toUpperCase(Locale.ROOT);
+            headers.add(variant, values.get(i));
+        }
+
+        String lookup = upper ? name.toUpperCase(Locale.ROOT) : name.toLowerCase(Locale.ROOT);
+        if (!name.equalsIgnoreCase("X-Other")) {
+            assertEquals(values.get(0), headers.get(lookup));
+            assertEquals(values, headers.getAll(lookup));
+            assertEquals(values.size() + 1, headers.size());
+
+            headers.put(lookup, "replaced");
+            assertEquals(Arrays.asList("replaced"), headers.getAll(name));
+            assertEquals("other", headers.get("x-other"));
+            assertEquals("replaced", headers.remove(name));
+            assertFalse(headers.containsKey(lookup));
+            assertEquals(1, headers.size());
+        }
+
+        Context ctx = new Context();
+        ctx.setCookie("a", "1", 60);
+        ctx.setCookie("b", "2", 60);
+        ctx.text("ok");
+        assertEquals(2, ctx.getResponseHeaders().getAll("set-cookie").size());
+        assertEquals(Context.CT_TEXT, ctx.getResponseHeaders().get("content-type"));
+
+        // 常量名称使用预先计算的哈希，必须与逐字符计算的结果一致
+        Headers raw = new Headers();
+        String contentType = upper ? Headers.CONTENT_TYPE.toUpperCase(Locale.ROOT) : Headers.CONTENT_TYPE.toLowerCase(Locale.ROOT);
+        raw.add(contentType, Context.CT_JSON);
+        raw.add(new String(Headers.SET_COOKIE.toCharArray()), "a=1");
+        assertEquals(Context.CT_JSON, raw.get(Headers.CONTENT_TYPE));
+        assertEquals("a=1", raw.remove(Headers.SET_COOKIE));
+        raw.put(Headers.ACCEPT, "*/*");
+        assertEquals("*/*", raw.get("accept"));
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Streaming Multipart**
+     *
+     * For any binary file content (including CR/LF and boundary-like bytes) and any read chunking,
+     * getFiles() returns the exact bytes, spools files above the threshold to a temporary file,
+     * exposes plain fields through getForm() and deletes temporary files on reset().
+     */
+    @Property(tries = 100)
+    void multipartFilesRoundTripBytes(@ForAll @Size(max = 3000) byte[] content,
+                                      @ForAll @IntRange(min = 1, max = 2000) int threshold,
+                                      @ForAll @IntRange(min = 1, max = 64) int chunk,
+                                      @ForAll boolean preamble) throws Exception {
+        String boundary = "----LiteJavaBoundary7MA4YWxk";
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (preamble) body.write("ignored preamble\r\n".getBytes(StandardCharsets.US_ASCII));
+        body.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+                + "标题\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"a.bin\"\r\n"
+                + "Content-Type: application/x-test\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(content);
+        body.write(("\r\n--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; filename=\"unnamed.bin\"\r\n\r\n"
+                + "--" + boundary + "x\r\n"
+                + "--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        byte[] raw = body.toByteArray();
+
+        int savedThreshold = Context.multipartThreshold;
+        Context.multipartThreshold = threshold;
+        try {
+            Context ctx = new Context();
+            ctx.headers.put("Content-Type", "multipart/form-data; boundary=\"" + boundary + "\"");
+            ctx.setRequestBody(new ChunkedInputStream(raw, chunk), raw.length, 0);
+
+            Map<String, UploadedFile> files = ctx.getFiles();
+            assertEquals(1, files.size());
+            UploadedFile file = files.get("file");
+            assertEquals("a.bin", file.name);
+            assertEquals("application/x-test", file.contentType);
+            assertEquals(content.length, file.size);
+            assertArrayEquals(content, file.getBytes());
+            assertEquals(content.length <= threshold, file.isInMemory());
+            assertEquals("标题", ctx.getForm().get("title"));
+            assertSame(files, ctx.getFiles());
+
+            Path spooled = file.path();
+            ctx.reset();
+            if (spooled != null) assertFalse(Files.exists(spooled));
+        } finally {
+            Context.multipartThreshold = savedThreshold;
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Async Response**
+     *
+     * An async route returns from app.handle() without waiting for its future; the response
+     * written when the future completes is what the server sends.
+     */
+    @Property(tries = 50)
+    void asyncRouteDefersResponse(@ForAll @AlphaChars @StringLength(min = 1, max = 20) String body) throws Exception {
+        App app = new App();
+        CompletableFuture<Void> downstream = new CompletableFuture<>();
+        app.getAsync("/async", ctx -> downstream.thenRun(() -> ctx.status(202).text(body)));
+
+        Context ctx = new Context();
+        ctx.method = "GET";
+        ctx.path = "/async";
+        app.handle(ctx);
+
+        assertTrue(ctx.isDeferred());
+        assertFalse(ctx.getResponseFuture().isDone());
+        assertEquals(200, ctx.getResponseStatus());
+
+        downstream.complete(null);
+        assertTrue(ctx.getResponseFuture().isDone());
+        assertEquals(202, ctx.getResponseStatus());
+        assertEquals(body, new String(ctx.getResponseBody(), StandardCharsets.UTF_8));
+
+        ctx.reset();
+        assertFalse(ctx.isDeferred());
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Typed State**
+     *
+     * Values set through a StateKey and through ctx.state by the key's name are the same slot,
+     * names without a key keep working as plain map entries, keys created after the Context
+     * grow its slot array, and reset() clears everything for the next request.
+     */
+    @Property(tries = 100)
+    void typedStateSharesSlotsWithStateMap(@ForAll @AlphaChars @StringLength(min = 1, max = 12) String name,
+                                           @ForAll @AlphaChars @StringLength(min = 1, max = 12) String value,
+                                           @ForAll @IntRange(min = 0, max = 40) int extraKeys) {
+        Context ctx = new Context();
+        StateKey<String> key = StateKey.of("typed." + name);
+        assertSame(key, StateKey.of("typed." + name));
+        for (int i = 0; i < extraKeys; i++) {
+            StateKey.of("typed.extra." + i);
+        }
+        StateKey<Integer> late = StateKey.of("typed.late." + name + "." + extraKeys);
+
+        assertNull(ctx.get(key));
+        ctx.set(key, value);
+        ctx.set(late, value.length());
+        ctx.state.put("untyped." + name, value);
+        assertEquals(value, ctx.state.get("typed." + name));
+        assertEquals(value.length(), ctx.state.get(late.name));
+        assertEquals(value, ctx.state.get("untyped." + name));
+        assertEquals(3, ctx.state.size());
+
+        ctx.state.put(key.name, value + "!");
+        assertEquals(value + "!", ctx.get(key));
+        assertEquals(value.length(), ctx.state.remove(late.name));
+        assertNull(ctx.get(late));
+        assertEquals(Map.of(key.name, value + "!", "untyped." + name, value), new LinkedHashMap<>(ctx.state));
+
+        ctx.reset();
+        assertNull(ctx.get(key));
+        assertTrue(ctx.state.isEmpty());
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Parallel Fan-out**
+     *
+     * ctx.parallel runs every task at once (each waits for all the others), returns results in
+     * argument order with the request deadline bound on each task thread, and on the first
+     * failure or on timeout stops waiting immediately and interrupts the remaining tasks.
+     */
+    @Property(tries = 30)
+    void parallelRunsConcurrentlyAndFailsFast(@ForAll @IntRange(min = 1, max = 6) int count,
+                                              @ForAll @IntRange(min = -1, max = 5) int failing,
+                                              @ForAll boolean timeout) throws Exception {
+        App app = new App();
+        Context ctx = new Context();
+        ctx.app = app;
+        ctx.deadline(60_000);
+        boolean fails = failing >= 0 && failing < count;
+        CountDownLatch started = new CountDownLatch(count);
+        CountDownLatch interrupted = new CountDownLatch(fails || timeout ? count - (fails ? 1 : 0) : 0);
+        Callable<?>[] tasks = new Callable<?>[count];
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            tasks[i] = () -> {
+                started.countDown();
+                if (index == failing) {
+                    started.await(5, TimeUnit.SECONDS);
+                    throw new IllegalStateException("task " + index);
+                }
+                try {
+                    if (!started.await(5, TimeUnit.SECONDS)) return "not concurrent";
+                    if (fails || timeout) Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return index + "@" + Context.currentDeadline();
+            };
+        }
+
+        long begin = System.nanoTime();
+        try {
+            if (fails) {
+                IllegalStateException e = assertThrows(IllegalStateException.class, () -> ctx.parallel(tasks));
+                assertEquals("task " + failing, e.getMessage());
+            } else if (timeout) {
+                LiteJavaException e = assertThrows(LiteJavaException.class, () -> ctx.parallel(200, tasks));
+                assertEquals(504, e.statusCode);
+            } else {
+                List<Object> results = ctx.parallel(tasks);
+                for (int i = 0; i < count; i++) {
+                    assertEquals(i + "@" + ctx.deadline, results.get(i));
+                }
+            }
+            assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(5));
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS), "remaining tasks are cancelled");
+        } finally {
+            app.stop();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Parallel Fan-out**
+     *
+     * app.executor(factory) creates the task executor only when none is set; an executor created
+     * this way is shut down by app.stop(), while one set by the application is left running.
+     */
+    @Property(tries = 10)
+    void factoryExecutorIsOwnedByApp(@ForAll boolean preset) {
+        App app = new App();
+        ExecutorService own = preset ? Executors.newSingleThreadExecutor() : null;
+        app.executor = own;
+        AtomicInteger created = new AtomicInteger();
+        ExecutorService executor = app.executor(() -> {
+            created.incrementAndGet();
+            return Executors.newSingleThreadExecutor();
+        });
+        assertSame(executor, app.executor(Executors::newCachedThreadPool));
+        assertEquals(preset ? 0 : 1, created.get());
+
+        app.stop();
+        assertEquals(!preset, executor.isShutdown());
+        assertEquals(preset ? own : null, app.executor);
+        if (own != null) own.shutdown();
+    }
+
+    /** 每次最多返回 chunk 字节，模拟网络分片到达 */
+    private static class ChunkedInputStream extends FilterInputStream {
+        private final int chunk;
+
+        ChunkedInputStream(byte[] data, int chunk) {
+            super(new ByteArrayInputStream(data));
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+    }
+}
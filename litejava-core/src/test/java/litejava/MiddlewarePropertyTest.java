@@ -207,4 +207,69 @@ class MiddlewarePropertyTest {
         
         assertTrue(valueFound[0], "Value set by first middleware should be visible to second");
     }
+    
+    /**
+     * Global, group and route middlewares wrap the handler in that order;
+     * routes outside the group only see the global ones.
+     */
+    @Property(tries = 50)
+    void scopedMiddlewaresWrapHandlerInOrder(@ForAll @IntRange(min = 1, max = 4) int repeat) throws Exception {
+        List<String> trace = new ArrayList<>();
+        App app = new App();
+        app.use(middleware((ctx, next) -> { trace.add("global"); next.run(); }));
+        app.group("/admin", admin -> {
+            admin.use(middleware((ctx, next) -> { trace.add("group"); next.run(); }));
+            admin.get("/users", ctx -> trace.add("handler"))
+                .use(middleware((ctx, next) -> { trace.add("route"); next.run(); }));
+        });
+        app.get("/public", ctx -> trace.add("handler"));
+        
+        Context ctx = new Context();
+        for (int i = 0; i < repeat; i++) {
+            ctx.reset();
+            ctx.method = "GET";
+            ctx.path = "/admin/users";
+            app.handle(ctx);
+            assertEquals(Arrays.asList("global", "group", "route", "handler"), trace);
+            trace.clear();
+            
+            ctx.reset();
+            ctx.method = "GET";
+            ctx.path = "/public";
+            app.handle(ctx);
+            assertEquals(Arrays.asList("global", "handler"), trace);
+            trace.clear();
+        }
+    }
+    
+    /**
+     * A compiled chain is shared across requests and contexts without leaking state.
+     */
+    @Property(tries = 50)
+    void compiledChainIsReusable(
+            @ForAll @IntRange(min = 0, max = 6) int count,
+            @ForAll @IntRange(min = 0, max = 6) int abortAt) throws Exception {
+        List<MiddlewarePlugin> global = new ArrayList<>();
+        List<MiddlewarePlugin> route = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            (i < count / 2 ? global : route).add(middleware((ctx, next) -> {
+                ctx.state.put("depth", index + 1);
+                if (index == abortAt) ctx.abort();
+                next.run();
+            }));
+        }
+        MiddlewareChain chain = MiddlewareChain.compile(global, route, ctx -> ctx.state.put("handled", true));
+        
+        Context pooled = new Context();
+        for (int round = 0; round < 3; round++) {
+            Context ctx = round == 2 ? new Context() : pooled;
+            ctx.reset();
+            chain.execute(ctx);
+            
+            int expectedDepth = Math.min(count, abortAt + 1);
+            assertEquals(expectedDepth == 0 ? null : expectedDepth, ctx.state.get("depth"));
+            assertEquals(abortAt < count ? null : true, ctx.state.get("handled"));
+        }
+    }
 }
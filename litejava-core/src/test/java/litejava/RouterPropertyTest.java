@@ -171,4 +171,103 @@ class RouterPropertyTest {
         assertNotNull(matched, "Parameterized route should match");
         assertEquals(paramValue, matched.params.get(paramName));
     }
+    
+    /**
+     * Matching into a reused Context finds the same route as a fresh lookup, with
+     * static prefixes that force node splits, params and wildcards mixed together,
+     * and leaves no parameters behind from earlier requests or failed branches.
+     */
+    @Property(tries = 100)
+    void contextMatchingAgreesWithFreshLookup(
+            @ForAll @Size(min = 1, max = 8) List<@StringLength(min = 1, max = 4) @Chars({'a', 'b'}) String> statics,
+            @ForAll @AlphaChars @StringLength(min = 1, max = 8) String value) {
+        
+        RouterPlugin router = new RouterPlugin();
+        Map<String, Route> routes = new HashMap<>();
+        for (String segment : new LinkedHashSet<>(statics)) {
+            routes.put("/s/" + segment, router.get("/s/" + segment, ctx -> {}));
+        }
+        Route param = router.get("/s/:name/items/:id", ctx -> {});
+        Route wildcard = router.get("/files/*filepath", ctx -> {});
+        
+        Context ctx = new Context();
+        for (Map.Entry<String, Route> e : routes.entrySet()) {
+            assertSame(e.getValue(), match(router, ctx, "GET", e.getKey()));
+            assertTrue(ctx.params.isEmpty(), "Static route should not leave params");
+            assertNull(match(router, ctx, "POST", e.getKey()));
+        }
+        
+        String name = statics.get(0) + value;
+        assertSame(param, match(router, ctx, "GET", "/s/" + name + "/items/" + value));
+        assertEquals(2, ctx.params.size());
+        assertEquals(name, ctx.params.get("name"));
+        assertEquals(value, ctx.params.get("id"));
+        assertEquals(router.match("GET", "/s/" + name + "/items/" + value).params, new HashMap<>(ctx.params));
+        
+        assertNull(match(router, ctx, "GET", "/s/" + name + "/other"));
+        assertTrue(ctx.params.isEmpty(), "Failed branch should not leave params");
+        
+        assertSame(wildcard, match(router, ctx, "GET", "/files/" + value + "/a.txt"));
+        assertEquals(value + "/a.txt", ctx.wildcardPath);
+        assertEquals(value + "/a.txt", ctx.params.get("filepath"));
+    }
+    
+    /**
+     * The Allow header lists exactly the methods registered for a path (ANY expands to
+     * all standard methods), in standard order, and unknown paths have none.
+     */
+    @Property(tries = 100)
+    void allowHeaderListsRegisteredMethods(
+            @ForAll @Size(min = 1, max = 7) Set<@From("methods") String> methods,
+            @ForAll boolean any,
+            @ForAll @AlphaChars @StringLength(min = 1, max = 8) String id) throws Exception {
+        
+        List<String> standard = Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS");
+        RouterPlugin router = new RouterPlugin();
+        for (String method : methods) {
+            router.route(method, "/items/:id", ctx -> {});
+        }
+        if (any) router.any("/items/:id/raw", ctx -> {});
+        
+        String path = "/items/" + id;
+        StringBuilder expected = new StringBuilder();
+        for (String method : standard) {
+            if (!methods.contains(method)) continue;
+            if (expected.length() > 0) expected.append(", ");
+            expected.append(method);
+        }
+        assertEquals(expected.toString(), router.allow(path));
+        assertEquals(methods, router.getAllowedMethods(path));
+        assertTrue(router.hasPath(path));
+        assertEquals(any ? String.join(", ", standard) : null, router.allow(path + "/raw"));
+        assertNull(router.allow("/missing/" + id));
+        
+        for (String method : standard) {
+            assertEquals(methods.contains(method), router.match(method, path) != null, method);
+        }
+        
+        // 未注册 OPTIONS 时由 App 直接返回 Allow
+        if (!methods.contains("OPTIONS")) {
+            App app = new App();
+            app.use(router);
+            Context ctx = new Context();
+            ctx.method = "OPTIONS";
+            ctx.path = path;
+            app.handle(ctx);
+            assertEquals(204, ctx.getResponseStatus());
+            assertEquals(expected.toString(), ctx.getResponseHeaders().get("Allow"));
+        }
+    }
+    
+    @Provide
+    Arbitrary<String> methods() {
+        return Arbitraries.of("GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS");
+    }
+    
+    private static Route match(RouterPlugin router, Context ctx, String method, String path) {
+        ctx.reset();
+        ctx.method = method;
+        ctx.path = path;
+        return router.match(ctx);
+    }
 }
@@ -0,0 +1,123 @@
+package litejava.plugin;
+
+import litejava.App;
+import litejava.Context;
+import litejava.MiddlewarePlugin;
+import litejava.Next;
+import net.jqwik.api.*;
+import net.jqwik.api.constraints.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Property-based tests for BatchPlugin (批量请求).
+ */
+class BatchPluginPropertyTest {
+
+    /**
+     * **Feature: lite-java-framework, Property: Batch Requests**
+     *
+     * Independent GET sub-requests run concurrently (each handler waits for all the others),
+     * go through the global middleware, inherit the outer request headers and come back in order.
+     */
+    @Property(tries = 20)
+    void safeSubRequestsRunConcurrentlyInOrder(@ForAll @IntRange(min = 1, max = 8) int count,
+                                               @ForAll @AlphaChars @StringLength(min = 1, max = 8) String token) throws Exception {
+        App app = new App();
+        BatchPlugin batch = new BatchPlugin();
+        app.use(batch);
+        app.use(new MiddlewarePlugin() {
+            @Override
+            public void handle(Context ctx, Next next) throws Exception {
+                ctx.header("X-Seen", "1");
+                next.run();
+            }
+        });
+        CountDownLatch all = new CountDownLatch(count);
+        app.get("/items/:id", ctx -> {
+            all.countDown();
+            if (!all.await(5, TimeUnit.SECONDS)) {
+                ctx.status(500);
+            }
+            ctx.text(ctx.params.get("id") + ":" + ctx.queryParam("v") + ":" + ctx.header("Authorization"));
+        });
+
+        Context parent = new Context();
+        parent.app = app;
+        parent.headers.add("Authorization", token);
+        List<Map<String, Object>> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            requests.add(Map.of("path", "/items/" + i + "?v=" + (i * 2)));
+        }
+
+        Context[] subs = batch.dispatch(parent, requests);
+        try {
+            assertEquals(count, subs.length);
+            for (int i = 0; i < count; i++) {
+                assertEquals(200, subs[i].getResponseStatus());
+                assertEquals("1", subs[i].getResponseHeaders().get("X-Seen"));
+                assertEquals(i + ":" + (i * 2) + ":" + token, body(subs[i]));
+            }
+        } finally {
+            for (Context sub : subs) batch.release(sub);
+            batch.uninstall();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Batch Requests**
+     *
+     * A non-GET sub-request is a barrier: every read observes exactly the writes listed before it.
+     * Invalid entries and entries routed back to the batch endpoint fail on their own with 400.
+     */
+    @Property(tries = 50)
+    void writesAreOrderedBarriers(@ForAll @Size(min = 1, max = 12) List<Boolean> writes) throws Exception {
+        App app = new App();
+        BatchPlugin batch = new BatchPlugin();
+        app.use(batch);
+        AtomicInteger version = new AtomicInteger();
+        app.get("/version", ctx -> ctx.text(String.valueOf(version.get())));
+        app.post("/version", ctx -> {
+            Thread.sleep(1);
+            ctx.status(201).text(String.valueOf(version.incrementAndGet()));
+        });
+
+        Context parent = new Context();
+        parent.app = app;
+        List<Object> requests = new ArrayList<>();
+        for (boolean write : writes) {
+            Map<String, Object> request = new LinkedHashMap<>();
+            request.put("method", write ? "post" : "GET");
+            request.put("path", "/version");
+            requests.add(request);
+        }
+        requests.add(Map.of("method", "GET"));
+        requests.add(Map.of("method", "POST", "path", batch.path + "/"));
+
+        Context[] subs = batch.dispatch(parent, requests);
+        int expected = 0;
+        for (int i = 0; i < writes.size(); i++) {
+            if (writes.get(i)) {
+                expected++;
+                assertEquals(201, subs[i].getResponseStatus());
+            }
+            assertEquals(String.valueOf(expected), body(subs[i]));
+        }
+        assertEquals(400, subs[writes.size()].getResponseStatus());
+        assertEquals(400, subs[writes.size() + 1].getResponseStatus());
+        batch.uninstall();
+    }
+
+    private static String body(Context ctx) {
+        return new String(ctx.getResponseBody(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,942 @@
+package litejava.plugin;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import litejava.App;
+import litejava.Context;
+import litejava.MiddlewarePlugin;
+import litejava.Next;
+import litejava.ServerTiming;
+import litejava.exception.LiteJavaException;
+import litejava.jfr.Jfr;
+import net.jqwik.api.*;
+import net.jqwik.api.constraints.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Property-based tests for ServerPlugin admission control (准入控制), priority routes (优先路由),
+ * request deadlines (截止时间) and graceful shutdown (优雅停机).
+ */
+class ServerPluginPropertyTest {
+
+    /**
+     * **Feature: lite-java-framework, Property: Admission Control**
+     *
+     * With the only worker busy, requests beyond the queue capacity are rejected on the
+     * dispatching thread with 503 + Retry-After, and queued requests still run in order.
+     */
+    @Property(tries = 20)
+    void fullQueueRejectsWithServiceUnavailable(@ForAll @IntRange(min = 1, max = 4) int capacity,
+                                                @ForAll @IntRange(min = 0, max = 4) int overflow,
+                                                @ForAll @IntRange(min = 1, max = 120) int retryAfter) throws Exception {
+        ServerPlugin plugin = new ServerPlugin();
+        plugin.queueCapacity = capacity;
+        plugin.retryAfter = retryAfter;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+            plugin.createWorkQueue(), plugin.rejectWithServiceUnavailable());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        List<Integer> handled = new ArrayList<>();
+        List<Context> rejected = new ArrayList<>();
+        try {
+            pool.execute(plugin.timed(() -> {
+                busy.countDown();
+                awaitQuietly(release);
+            }));
+            busy.await();
+
+            CountDownLatch done = new CountDownLatch(capacity);
+            for (int i = 0; i < capacity + overflow; i++) {
+                final int index = i;
+                pool.execute(plugin.timed(() -> {
+                    Context ctx = new Context();
+                    if (plugin.shed(ctx, 0)) {
+                        rejected.add(ctx);
+                    } else {
+                        synchronized (handled) {
+                            handled.add(index);
+                        }
+                        done.countDown();
+                    }
+                }));
+            }
+            assertEquals(overflow, rejected.size());
+            for (Context ctx : rejected) {
+                assertEquals(503, ctx.getResponseStatus());
+                assertEquals(String.valueOf(retryAfter), ctx.getResponseHeaders().get("Retry-After"));
+                assertTrue(new String(ctx.getResponseBody(), StandardCharsets.UTF_8).contains("Service Unavailable"));
+            }
+
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < capacity; i++) expected.add(i);
+            assertEquals(expected, handled);
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Admission Control**
+     *
+     * A request is shed only when it waited longer than queueTimeout; a zero timeout never sheds.
+     */
+    @Property(tries = 50)
+    void queueTimeoutShedsOnlyStaleRequests(@ForAll @IntRange(min = 0, max = 1000) int timeoutMs,
+                                            @ForAll @IntRange(min = 0, max = 2000) int waitedMs) {
+        Assume.that(Math.abs(timeoutMs - waitedMs) > 5);
+        ServerPlugin plugin = new ServerPlugin();
+        plugin.queueTimeout = timeoutMs;
+        Context ctx = new Context();
+
+        boolean shed = plugin.shed(ctx, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(waitedMs));
+
+        assertEquals(timeoutMs > 0 && waitedMs > timeoutMs, shed);
+        assertEquals(shed ? 503 : 200, ctx.getResponseStatus());
+        assertFalse(plugin.shed(new Context(), 0), "requests outside timed() have no queue time");
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Priority Routes**
+     *
+     * A server classifies a request by the route it matches; the match is cached on the Context,
+     * so App.handle afterwards runs the same route without matching (and binding params) again.
+     */
+    @Property(tries = 50)
+    void priorityIsDecidedByMatchedRoute(@ForAll @AlphaChars @StringLength(min = 1, max = 10) String id,
+                                         @ForAll boolean probe) throws Exception {
+        App app = new App();
+        ServerPlugin server = new ServerPlugin();
+        server.app = app;
+        assertFalse(server.hasPriorityRoutes());
+        app.get("/health/:check", ctx -> ctx.text(ctx.params.get("check"))).priority();
+        app.get("/orders/:id", ctx -> ctx.text(ctx.params.get("id")));
+        assertTrue(server.hasPriorityRoutes());
+
+        Context ctx = request(server, (probe ? "/health/" : "/orders/") + id);
+        assertEquals(probe, server.isPriority(ctx));
+        assertSame(ctx.route, app.match(ctx));
+        assertEquals(1, ctx.params.size());
+
+        app.handle(ctx);
+        assertEquals(1, ctx.params.size());
+        assertEquals(id, new String(ctx.getResponseBody(), StandardCharsets.UTF_8));
+
+        server.releaseContext(ctx);
+        Context unmatched = request(server, "/missing/" + id);
+        assertFalse(server.isPriority(unmatched));
+        assertNull(unmatched.route);
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Request Deadlines**
+     *
+     * The deadline is the tighter of the route timeout and the remaining budget in the
+     * X-Request-Timeout header, which counts only from trusted (internal) callers; an already
+     * expired request fails with 504 before the handler runs, downstream timeouts are capped only
+     * while the handler runs, and an async response that outlives it ends in 504.
+     */
+    @Property(tries = 30)
+    void deadlineCapsHandlerAndAsyncResponses(@ForAll @IntRange(min = 1000, max = 60000) int routeTimeout,
+                                              @ForAll @IntRange(min = -5000, max = 60000) int headerOffset,
+                                              @ForAll boolean sendHeader,
+                                              @ForAll boolean trusted) throws Exception {
+        Assume.that(Math.abs(headerOffset) > 100 && Math.abs(headerOffset - routeTimeout) > 100);
+        App app = new App();
+        app.deadlineHeader = true;
+        ServerPlugin server = new ServerPlugin();
+        server.app = app;
+        AtomicLong seen = new AtomicLong(-1);
+        AtomicLong capped = new AtomicLong(-1);
+        app.get("/call", ctx -> {
+            seen.set(Context.currentDeadline());
+            capped.set(Context.capTimeout(Integer.MAX_VALUE));
+            ctx.text("ok");
+        }).timeout(routeTimeout);
+        app.getAsync("/wait", ctx -> new CompletableFuture<Void>()).timeout(50);
+
+        long now = System.currentTimeMillis();
+        Context ctx = request(server, "/call");
+        ctx.remoteAddr = trusted ? "10.1.2.3" : "203.0.113.7";
+        if (sendHeader) {
+            String value = String.valueOf(headerOffset);
+            ctx.setHeaderLoader(map -> map.add(Context.DEADLINE_HEADER, value),
+                name -> name.equalsIgnoreCase(Context.DEADLINE_HEADER) ? value : null);
+        }
+        boolean applied = sendHeader && trusted;
+        boolean expired = applied && headerOffset < 0;
+        if (expired) {
+            LiteJavaException e = assertThrows(LiteJavaException.class, () -> app.handle(ctx));
+            assertEquals(504, e.statusCode);
+            assertEquals(-1, seen.get(), "handler must not run after the deadline");
+        } else {
+            app.handle(ctx);
+            long expected = applied ? Math.min(now + routeTimeout, now + headerOffset) : now + routeTimeout;
+            assertTrue(Math.abs(expected - ctx.deadline) < 100);
+            assertEquals(ctx.deadline, seen.get());
+            assertTrue(capped.get() > 0 && capped.get() <= Math.min(routeTimeout, applied ? headerOffset : routeTimeout));
+            // 截止时间请求头直接从原始请求读取，不触发请求头的完整加载
+            assertEquals(!sendHeader, ctx.headers.isLoaded());
+        }
+        assertEquals(0, Context.currentDeadline());
+        assertEquals(1234, Context.capTimeout(1234));
+        server.releaseContext(ctx);
+
+        Context async = request(server, "/wait");
+        app.handle(async);
+        CountDownLatch done = new CountDownLatch(1);
+        assertTrue(server.deferResponse(async, done::countDown));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(504, async.getResponseStatus());
+        server.releaseContext(async);
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Request Deadlines**
+     *
+     * The deadline times out only the request it belongs to: when two requests defer on one
+     * shared future, the one with a route timeout ends in 504 while the shared future stays
+     * pending and still completes the other request normally.
+     */
+    @Property(tries = 5)
+    void deadlineDoesNotCompleteSharedFuture(@ForAll @IntRange(min = 20, max = 60) int routeTimeout) throws Exception {
+        App app = new App();
+        ServerPlugin server = new ServerPlugin();
+        server.app = app;
+        CompletableFuture<Void> shared = new CompletableFuture<>();
+        app.getAsync("/bounded", ctx -> shared).timeout(routeTimeout);
+        app.getAsync("/open", ctx -> shared.thenRun(() -> ctx.text("ok")));
+
+        Context bounded = request(server, "/bounded");
+        Context open = request(server, "/open");
+        app.handle(bounded);
+        app.handle(open);
+        CountDownLatch boundedDone = new CountDownLatch(1);
+        CountDownLatch openDone = new CountDownLatch(1);
+        assertTrue(server.deferResponse(bounded, boundedDone::countDown));
+        assertTrue(server.deferResponse(open, openDone::countDown));
+
+        assertTrue(boundedDone.await(5, TimeUnit.SECONDS));
+        assertEquals(504, bounded.getResponseStatus());
+        assertFalse(shared.isDone(), "the deadline must not complete the handler's future");
+        assertEquals(1, openDone.getCount());
+
+        shared.complete(null);
+        assertTrue(openDone.await(5, TimeUnit.SECONDS));
+        assertEquals(200, open.getResponseStatus());
+        assertEquals("ok", new String(open.getResponseBody(), StandardCharsets.UTF_8));
+        server.releaseContext(bounded);
+        server.releaseContext(open);
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Request Deadlines**
+     *
+     * After an async response ends in 504 the handler's own chain may still write to its Context
+     * (thenAccept(ctx::text)); the Context goes back to the pool only once that chain settles, so
+     * the late write never lands on the next request.
+     */
+    @Property(tries = 5)
+    void lateAsyncWriteDoesNotLeakIntoNextRequest(@ForAll @IntRange(min = 20, max = 60) int routeTimeout) throws Exception {
+        App app = new App();
+        ServerPlugin server = new ServerPlugin();
+        server.app = app;
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        app.getAsync("/slow", ctx -> upstream.thenAccept(ctx::text)).timeout(routeTimeout);
+        app.get("/next", ctx -> ctx.text("next"));
+
+        Context slow = request(server, "/slow");
+        app.handle(slow);
+        CountDownLatch done = new CountDownLatch(1);
+        assertTrue(server.deferResponse(slow, done::countDown));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(504, slow.getResponseStatus());
+        server.releaseContext(slow);
+        assertEquals(0, server.contextPool.size(), "released before the handler's chain settled");
+
+        Context next = request(server, "/next");
+        assertNotSame(slow, next);
+        app.handle(next);
+        upstream.complete("late");
+        assertEquals(200, next.getResponseStatus());
+        assertEquals("next", new String(next.getResponseBody(), StandardCharsets.UTF_8));
+        assertEquals(1, server.contextPool.size());
+        server.releaseContext(next);
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Priority Routes**
+     *
+     * With the JDK HttpServer split into dispatcher and worker threads, clients that stall half
+     * way through their request line hold as many dispatcher threads as there are cores, yet a
+     * health probe still gets a thread of its own and answers.
+     */
+    @Property(tries = 3)
+    void stalledClientsDoNotStarvePriorityRoutes() throws Exception {
+        App app = new App();
+        app.port = 0;
+        HttpServerPlugin server = new HttpServerPlugin();
+        app.use(server);
+        app.get("/health", ctx -> ctx.text("up")).priority();
+        server.start();
+        int port = server.server.getAddress().getPort();
+        int cores = Math.max(2, Runtime.getRuntime().availableProcessors());
+        List<Socket> stalled = new ArrayList<>();
+        try {
+            for (int i = 0; i < cores; i++) {
+                stalled.add(stall(port));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (((ThreadPoolExecutor) server.dispatcher).getActiveCount() < cores && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(cores, ((ThreadPoolExecutor) server.dispatcher).getActiveCount());
+
+            String response = get(server, "/health");
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertTrue(response.endsWith("up"), response);
+        } finally {
+            for (Socket socket : stalled) socket.close();
+            server.stop();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Admission Control**
+     *
+     * The JDK HttpServer dispatcher pool never queues: once every dispatcher thread is held by a
+     * stalled client, the next exchange is answered 503 instead of waiting, and the arrival time
+     * is stamped when the exchange is handed over, so the handler sees it.
+     */
+    @Property(tries = 3)
+    void fullDispatcherRejectsWithServiceUnavailable(@ForAll @IntRange(min = 1, max = 3) int ioThreads) throws Exception {
+        App app = new App();
+        app.port = 0;
+        HttpServerPlugin server = new HttpServerPlugin();
+        server.ioThreads = 1;
+        server.maxIoThreads = ioThreads;
+        app.use(server);
+        AtomicLong receivedAt = new AtomicLong();
+        app.get("/health", ctx -> ctx.text("up")).priority();
+        app.get("/orders", ctx -> {
+            receivedAt.set(ctx.receivedAt);
+            ctx.text("ok");
+        });
+        server.start();
+        int port = server.server.getAddress().getPort();
+        List<Socket> stalled = new ArrayList<>();
+        try {
+            long sentAt = System.currentTimeMillis();
+            String accepted = get(server, "/orders");
+            assertTrue(accepted.endsWith("ok"), accepted);
+            assertTrue(receivedAt.get() >= sentAt && receivedAt.get() <= System.currentTimeMillis());
+
+            for (int i = 0; i < ioThreads; i++) {
+                stalled.add(stall(port));
+            }
+            ThreadPoolExecutor dispatcher = (ThreadPoolExecutor) server.dispatcher;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (dispatcher.getActiveCount() < ioThreads && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(ioThreads, dispatcher.getActiveCount());
+
+            String rejected = get(server, "/health");
+            assertTrue(rejected.startsWith("HTTP/1.1 503"), rejected);
+            assertTrue(dispatcher.getQueue().isEmpty());
+        } finally {
+            for (Socket socket : stalled) socket.close();
+            server.stop();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Request Deadlines**
+     *
+     * The route timeout counts from arrival: a request that waited in the queue past it fails
+     * with 504 before the handler runs, a synchronous handler that overruns it still returns its
+     * finished response, and a header budget too large for a long timestamp never wraps into an
+     * expired deadline.
+     */
+    @Property(tries = 10)
+    void routeDeadlineCountsQueueTimeAndOverrun(@ForAll @IntRange(min = 20, max = 60) int routeTimeout,
+                                                @ForAll boolean queuedTooLong,
+                                                @ForAll boolean overrun,
+                                                @ForAll @LongRange(min = Long.MAX_VALUE / 2) long budget) throws Exception {
+        App app = new App();
+        app.deadlineHeader = true;
+        ServerPlugin server = new ServerPlugin();
+        server.app = app;
+        AtomicLong ran = new AtomicLong();
+        app.get("/slow", ctx -> {
+            ran.incrementAndGet();
+            if (overrun) Thread.sleep(routeTimeout + 30);
+            ctx.text("ok");
+        }).timeout(routeTimeout);
+
+        Context[] handled = new Context[1];
+        Exception[] failure = new Exception[1];
+        Runnable task = server.timed(() -> {
+            Context ctx = request(server, "/slow");
+            ctx.remoteAddr = "127.0.0.1";
+            String value = String.valueOf(budget);
+            ctx.setHeaderLoader(map -> map.add(Context.DEADLINE_HEADER, value),
+                name -> name.equalsIgnoreCase(Context.DEADLINE_HEADER) ? value : null);
+            handled[0] = ctx;
+            try {
+                app.handle(ctx);
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        });
+        if (queuedTooLong) Thread.sleep(routeTimeout + 30);
+        task.run();
+
+        Context ctx = handled[0];
+        assertTrue(ctx.deadline > ctx.receivedAt, "huge budget must not wrap into the past");
+        assertTrue(ctx.deadline - ctx.receivedAt <= routeTimeout);
+        if (queuedTooLong) {
+            assertTrue(failure[0] instanceof LiteJavaException);
+            assertEquals(504, ((LiteJavaException) failure[0]).statusCode);
+            assertEquals(0, ran.get());
+        } else {
+            assertNull(failure[0]);
+            assertEquals(1, ran.get());
+            assertEquals(overrun, ctx.isExpired());
+            assertEquals(200, ctx.getResponseStatus());
+            assertEquals("ok", new String(ctx.getResponseBody(), StandardCharsets.UTF_8));
+        }
+        server.releaseContext(ctx);
+
+        Context direct = new Context();
+        direct.deadline(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, direct.deadline);
+        assertFalse(direct.isExpired());
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Context Pool**
+     *
+     * server.leakDetection overrides the pool setting only when configured; a value set in code
+     * survives config(), also when server.contextPoolSize replaces the pool.
+     */
+    @Property(tries = 20)
+    void leakDetectionKeepsCodeValueUnlessConfigured(@ForAll boolean inCode,
+                                                     @ForAll("optionalFlag") Boolean configured,
+                                                     @ForAll boolean resize) {
+        App app = new App();
+        ServerPlugin server = new ServerPlugin();
+        server.app = app;
+        server.contextPool.leakDetection = inCode;
+        if (configured != null) app.conf.set("server", "leakDetection", configured);
+        if (resize) app.conf.set("server", "contextPoolSize", 16);
+        server.config();
+        assertEquals(configured != null ? configured : inCode, server.contextPool.leakDetection);
+    }
+
+    @Provide
+    Arbitrary<Boolean> optionalFlag() {
+        return Arbitraries.of(true, false).injectNull(0.3);
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Graceful Shutdown**
+     *
+     * gracefulStop stops accepting first, waits until every in-flight request has released its
+     * Context (async responses included), and only then stops the server; with responses that
+     * never finish it gives up at shutdownTimeout.
+     */
+    @Property(tries = 10)
+    void gracefulStopDrainsInFlightRequests(@ForAll @IntRange(min = 0, max = 5) int pending,
+                                            @ForAll boolean finish) throws Exception {
+        App app = new App();
+        app.shutdownTimeout = finish ? 5000 : 200;
+        List<String> events = new ArrayList<>();
+        ServerPlugin server = new ServerPlugin() {
+            @Override
+            public void stopAccepting() {
+                synchronized (events) { events.add("stopAccepting"); }
+            }
+
+            @Override
+            public void stop() {
+                synchronized (events) { events.add("stop"); }
+            }
+        };
+        server.app = app;
+        app.server = server;
+        app.getAsync("/slow", ctx -> new CompletableFuture<Void>());
+        app.get("/fast", ctx -> ctx.text("ok"));
+
+        // 与服务器插件相同的生命周期：借出 Context → app.handle → 发送响应后归还
+        Context fast = request(server, "/fast");
+        app.handle(fast);
+        server.releaseContext(fast);
+        List<Context> inFlight = new ArrayList<>();
+        for (int i = 0; i < pending; i++) {
+            Context ctx = request(server, "/slow");
+            app.handle(ctx);
+            assertTrue(server.deferResponse(ctx, () -> server.releaseContext(ctx)));
+            inFlight.add(ctx);
+        }
+        assertEquals(pending, server.inFlight());
+
+        Thread stopper = new Thread(app::gracefulStop);
+        long started = System.nanoTime();
+        stopper.start();
+        if (pending > 0) {
+            Thread.sleep(50);
+            assertTrue(stopper.isAlive());
+            synchronized (events) { assertEquals(List.of("stopAccepting"), events); }
+            if (finish) {
+                for (Context ctx : inFlight) {
+                    ctx.getResponseFuture().complete(null);
+                }
+            }
+        }
+        stopper.join(10_000);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertFalse(stopper.isAlive());
+        assertEquals(List.of("stopAccepting", "stop"), events);
+        assertEquals(finish ? 0 : pending, server.inFlight());
+        if (pending > 0 && !finish) {
+            assertTrue(elapsedMs >= app.shutdownTimeout);
+        } else {
+            assertTrue(elapsedMs < 5000);
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Graceful Shutdown**
+     *
+     * Requests still waiting in the worker queue (no Context acquired yet) count as in flight,
+     * so the drain waits for them; rejected overflow requests are counted until their 503 is sent.
+     */
+    @Property(tries = 20)
+    void drainWaitsForQueuedRequests(@ForAll @IntRange(min = 0, max = 4) int queued,
+                                     @ForAll @IntRange(min = 0, max = 2) int overflow) throws Exception {
+        App app = new App();
+        ServerPlugin server = new ServerPlugin();
+        server.app = app;
+        server.queueCapacity = 4;
+        app.get("/work", ctx -> ctx.text("ok"));
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+            server.createWorkQueue(), server.rejectWithServiceUnavailable());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        try {
+            pool.execute(server.timed(() -> {
+                busy.countDown();
+                awaitQuietly(release);
+            }));
+            busy.await();
+            for (int i = 0; i < queued; i++) {
+                pool.execute(server.timed(() -> {
+                    Context ctx = request(server, "/work");
+                    try {
+                        app.handle(ctx);
+                    } catch (Exception e) {
+                        app.handleError(ctx, e);
+                    } finally {
+                        server.releaseContext(ctx);
+                    }
+                }));
+            }
+            assertEquals(1 + queued, server.inFlight());
+            assertFalse(server.awaitInFlight(50));
+
+            release.countDown();
+            assertTrue(server.awaitInFlight(5000));
+            assertEquals(0, server.inFlight());
+
+            // 队列满被拒绝的请求在派发线程上就地返回 503，返回后不再计入
+            CountDownLatch hold = new CountDownLatch(1);
+            CountDownLatch held = new CountDownLatch(1);
+            pool.execute(server.timed(() -> {
+                held.countDown();
+                awaitQuietly(hold);
+            }));
+            held.await();
+            for (int i = 0; i < server.queueCapacity + overflow; i++) {
+                pool.execute(server.timed(() -> { }));
+            }
+            assertEquals(1 + server.queueCapacity, server.inFlight());
+            hold.countDown();
+            assertTrue(server.awaitInFlight(5000));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Server Timing**
+     *
+     * With timing on, each middleware is charged only its own time (not the chain after next()),
+     * the handler its own, and the Server-Timing header lists them in chain order; async responses
+     * get the header when the future completes. Every released Context is recorded in the stats.
+     */
+    @Property(tries = 10)
+    void serverTimingChargesEachPhase(@ForAll @IntRange(min = 0, max = 3) int before,
+                                      @ForAll @IntRange(min = 20, max = 30) int handlerMs,
+                                      @ForAll boolean header) throws Exception {
+        App app = new App();
+        app.timing = true;
+        app.timingHeader = header;
+        ServerPlugin server = new ServerPlugin();
+        server.app = app;
+        app.server = server;
+        app.use(new Slow(before));
+        app.use(new Quick());
+        app.get("/sync", ctx -> {
+            Thread.sleep(handlerMs);
+            ctx.text("ok");
+        });
+        CompletableFuture<Void> pending = new CompletableFuture<>();
+        app.getAsync("/async", ctx -> pending);
+
+        Context ctx = request(server, "/sync");
+        app.handle(ctx);
+        ServerTiming timing = ctx.timing;
+        assertTrue(timing.isActive());
+        assertEquals(2, timing.middlewareCount());
+        long ms = 1_000_000L;
+        assertTrue(timing.middlewareNanos(0) >= before * ms);
+        // 中间件只计自身耗时，不含 next() 之后的 handler
+        assertTrue(timing.middlewareNanos(0) < (before + handlerMs / 2) * ms);
+        assertTrue(timing.middlewareNanos(1) < handlerMs / 2 * ms);
+        assertTrue(timing.nanos(ServerTiming.HANDLER) >= handlerMs * ms);
+        assertTrue(timing.totalNanos() >= (before + handlerMs) * ms);
+        String value = ctx.getResponseHeaders().get("Server-Timing");
+        if (header) {
+            assertTrue(value.matches("route;dur=\\d+\\.\\d{3}, mw\\.Slow;dur=\\d+\\.\\d{3}, mw\\.Quick;dur=\\d+\\.\\d{3}, "
+                + "handler;dur=\\d+\\.\\d{3}, total;dur=\\d+\\.\\d{3}"), value);
+        } else {
+            assertNull(value);
+        }
+        server.releaseContext(ctx);
+        assertEquals(1, app.timingStats.count(ServerTiming.HANDLER));
+        assertEquals(1, app.timingStats.count(ServerTiming.WRITE));
+        assertEquals(0, app.timingStats.count(ServerTiming.JSON));
+        assertTrue(app.timingStats.percentileNanos(ServerTiming.HANDLER, 0.99) >= handlerMs * ms);
+
+        Context async = request(server, "/async");
+        app.handle(async);
+        assertTrue(server.deferResponse(async, () -> server.releaseContext(async)));
+        assertNull(async.getResponseHeaders().get("Server-Timing"));
+        Thread.sleep(handlerMs);
+        pending.complete(null);
+        assertEquals(2, app.timingStats.count(ServerTiming.HANDLER));
+
+        app.timing = false;
+        app.timingHeader = false;
+        Context off = request(server, "/sync");
+        app.handle(off);
+        assertFalse(off.timing.isActive());
+        assertNull(off.getResponseHeaders().get("Server-Timing"));
+        server.releaseContext(off);
+        assertEquals(2, app.timingStats.count(ServerTiming.HANDLER));
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: JFR Events**
+     *
+     * Without a recording no event is created for the request. While recording, each released
+     * request commits one litejava.Request event with the route template, status and size, and
+     * each middleware a litejava.Middleware event nested inside it.
+     */
+    @Property(tries = 3)
+    void jfrEventsOnlyWhileRecording(@ForAll @AlphaChars @StringLength(min = 1, max = 10) String id) throws Exception {
+        App app = new App();
+        ServerPlugin server = new ServerPlugin();
+        server.app = app;
+        app.server = server;
+        app.use(new Quick());
+        app.get("/users/:id", ctx -> ctx.status(201).text(ctx.params.get("id")));
+
+        Context off = request(server, "/users/" + id);
+        app.handle(off);
+        assertNull(off.jfr);
+        server.releaseContext(off);
+
+        Path file = Files.createTempFile("litejava", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("litejava.Request").withThreshold(Duration.ZERO);
+            recording.enable("litejava.Middleware").withThreshold(Duration.ZERO);
+            recording.enable("litejava.PluginCall").withThreshold(Duration.ZERO);
+            recording.start();
+            Context ctx = request(server, "/users/" + id);
+            app.handle(ctx);
+            assertNotNull(ctx.jfr);
+            server.releaseContext(ctx);
+            Jfr.endCall(Jfr.beginCall(), server, "get", "user:" + id);
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> requests = new ArrayList<>();
+            List<RecordedEvent> middlewares = new ArrayList<>();
+            List<RecordedEvent> calls = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                String name = event.getEventType().getName();
+                if (name.equals("litejava.Request")) requests.add(event);
+                if (name.equals("litejava.Middleware")) middlewares.add(event);
+                if (name.equals("litejava.PluginCall")) calls.add(event);
+                if (name.startsWith("litejava.")) {
+                    // 事件不采集调用栈，录制期间开销只有字段赋值
+                    assertNull(event.getStackTrace(), name);
+                }
+            }
+            assertEquals(1, requests.size());
+            RecordedEvent event = requests.get(0);
+            assertEquals("GET", event.getString("method"));
+            assertEquals("/users/" + id, event.getString("path"));
+            assertEquals("/users/:id", event.getString("route"));
+            assertEquals(201, event.getInt("status"));
+            assertEquals(id.getBytes(StandardCharsets.UTF_8).length, event.getLong("bytes"));
+            assertEquals(1, middlewares.size());
+            assertEquals(Quick.class.getName(), middlewares.get(0).getString("middleware"));
+            assertFalse(middlewares.get(0).getStartTime().isBefore(event.getStartTime()));
+            assertEquals(1, calls.size());
+            assertEquals("user:" + id, calls.get(0).getString("target"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Admission Control**
+     *
+     * With the JDK HttpServer's queue full, rejected exchanges are answered 503 off the dispatcher
+     * thread: a client that stalls half way through its headers does not hold up the 503 for the
+     * next one, and the accepted requests still complete.
+     */
+    @Property(tries = 3)
+    void rejectionDoesNotBlockDispatcher() throws Exception {
+        App app = new App();
+        app.port = 0;
+        HttpServerPlugin server = new HttpServerPlugin();
+        server.minThreads = 1;
+        server.maxThreads = 1;
+        server.queueCapacity = 1;
+        app.use(server);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        app.get("/slow", ctx -> {
+            busy.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            ctx.text("done");
+        });
+        server.start();
+        int port = server.server.getAddress().getPort();
+        List<Socket> accepted = new ArrayList<>();
+        try (Socket stalled = new Socket("127.0.0.1", port)) {
+            accepted.add(send(port, "/slow"));
+            assertTrue(busy.await(5, TimeUnit.SECONDS));
+            accepted.add(send(port, "/slow"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (((ThreadPoolExecutor) server.executor).getQueue().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // 只发请求行，不发请求头结束的空行：读取它的线程会一直阻塞
+            stalled.getOutputStream().write("GET /slow HTTP/1.1\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            stalled.getOutputStream().flush();
+            Thread.sleep(100);
+
+            String rejected = get(server, "/slow");
+            assertTrue(rejected.startsWith("HTTP/1.1 503"), rejected);
+
+            release.countDown();
+            for (Socket socket : accepted) {
+                String response = read(socket);
+                assertTrue(response.startsWith("HTTP/1.1 200"), response);
+                assertTrue(response.endsWith("done"), response);
+            }
+        } finally {
+            release.countDown();
+            for (Socket socket : accepted) socket.close();
+            server.stop();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Streaming Responses**
+     *
+     * A streamed response goes out chunked as the writer produces it and ends with the terminating
+     * chunk. When the writer fails part way the connection is cut without that chunk, so the client
+     * cannot take the truncated body for a complete one.
+     */
+    @Property(tries = 10)
+    void streamFailureAbortsInsteadOfEndingResponse(@ForAll @IntRange(min = 1, max = 10) int chunks,
+                                                    @ForAll @IntRange(min = 0, max = 12) int failAt) throws Exception {
+        App app = new App();
+        app.port = 0;
+        HttpServerPlugin server = new HttpServerPlugin();
+        app.use(server);
+        app.get("/stream", ctx -> ctx.stream(Context.CT_TEXT, out -> {
+            for (int i = 0; i < chunks; i++) {
+                if (i == failAt) {
+                    throw new IllegalStateException("writer failed");
+                }
+                out.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }));
+        server.start();
+        try {
+            String response = get(server, "/stream");
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertTrue(response.toLowerCase().contains("transfer-encoding: chunked"), response);
+            assertEquals(failAt >= chunks, response.endsWith("\r\n0\r\n\r\n"), response);
+            for (int i = 0; i < Math.min(chunks, failAt); i++) {
+                assertTrue(response.contains("line " + i + "\n"), response);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: File Responses**
+     *
+     * sendFile sends exactly the requested region of the file with a matching Content-Length,
+     * without reading it into the Context; ranges outside the file are rejected up front.
+     */
+    @Property(tries = 10)
+    void fileResponseSendsExactRegion(@ForAll @Size(min = 1, max = 4096) byte[] content,
+                                      @ForAll @IntRange(min = 0, max = 4096) int from,
+                                      @ForAll @IntRange(min = 0, max = 4096) int count) throws Exception {
+        int position = from % content.length;
+        int length = Math.min(count, content.length - position);
+        Path file = Files.createTempFile("litejava", ".bin");
+        Files.write(file, content);
+        App app = new App();
+        app.port = 0;
+        HttpServerPlugin server = new HttpServerPlugin();
+        app.use(server);
+        app.get("/file", ctx -> ctx.sendFile(file.toFile(), position, length, Context.CT_BINARY));
+        server.start();
+        try {
+            Context ctx = new Context();
+            ctx.sendFile(file.toFile(), position, length, Context.CT_BINARY);
+            assertTrue(ctx.isFileResponse());
+            assertEquals(0, ctx.getResponseBody().length);
+            assertThrows(IllegalArgumentException.class,
+                () -> ctx.sendFile(file.toFile(), position, content.length - position + 1, Context.CT_BINARY));
+            LiteJavaException missing = assertThrows(LiteJavaException.class,
+                () -> ctx.sendFile(new File(file + ".missing"), Context.CT_BINARY));
+            assertEquals(404, missing.statusCode);
+
+            byte[] response = get(server, "/file").getBytes(StandardCharsets.ISO_8859_1);
+            String head = new String(response, StandardCharsets.ISO_8859_1);
+            int bodyStart = head.indexOf("\r\n\r\n") + 4;
+            assertTrue(head.startsWith("HTTP/1.1 200"), head);
+            assertTrue(head.toLowerCase().contains("content-length: " + length), head);
+            assertArrayEquals(Arrays.copyOfRange(content, position, position + length),
+                Arrays.copyOfRange(response, bodyStart, response.length));
+        } finally {
+            server.stop();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * 用原始 socket 发送 GET（Connection: close），读到连接关闭为止，保留 chunked 编码等原始字节
+     */
+    private static String get(HttpServerPlugin server, String path) throws IOException {
+        try (Socket socket = send(server.server.getAddress().getPort(), path)) {
+            return read(socket);
+        }
+    }
+
+    /**
+     * 只发请求行，不发请求头结束的空行：读取它的线程会一直阻塞
+     */
+    private static Socket stall(int port) throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        socket.getOutputStream().write("GET /health HTTP/1.1\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        socket.getOutputStream().flush();
+        return socket;
+    }
+
+    private static Socket send(int port, String path) throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        socket.setSoTimeout(5000);
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+            .getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        return socket;
+    }
+
+    private static String read(Socket socket) throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        InputStream in = socket.getInputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            response.write(buffer, 0, n);
+        }
+        return new String(response.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    static class Slow extends MiddlewarePlugin {
+        final int millis;
+
+        Slow(int millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public void handle(Context ctx, Next next) throws Exception {
+            Thread.sleep(millis);
+            next.run();
+        }
+    }
+
+    static class Quick extends MiddlewarePlugin {
+        @Override
+        public void handle(Context ctx, Next next) throws Exception {
+            next.run();
+        }
+    }
+
+    private static Context request(ServerPlugin server, String path) {
+        Context ctx = server.acquireContext();
+        ctx.method = "GET";
+        ctx.path = path;
+        return ctx;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package litejava.plugin;
+
+import litejava.Context;
+import net.jqwik.api.*;
+import net.jqwik.api.constraints.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Property-based tests for StaticFilePlugin (静态文件插件).
+ */
+class StaticFilePluginPropertyTest {
+
+    /**
+     * **Feature: lite-java-framework, Property: Static Asset Conditional Requests**
+     *
+     * For any file content, a request carrying the returned ETag (or a later If-Modified-Since)
+     * gets 304, and changing the file invalidates the cached entry and its ETag.
+     */
+    @Property(tries = 30)
+    void conditionalRequestsAndInvalidation(@ForAll @Size(min = 1, max = 4096) byte[] content,
+                                            @ForAll @Size(min = 1, max = 4096) byte[] changed,
+                                            @ForAll boolean cached) throws Exception {
+        Assume.that(!Arrays.equals(content, changed));
+        Path dir = Files.createTempDirectory("static-test");
+        try {
+            Path file = dir.resolve("app.js");
+            Files.write(file, content);
+            file.toFile().setLastModified(1_700_000_000_000L);
+
+            StaticFilePlugin plugin = new StaticFilePlugin("/static", dir.toString(), true);
+            plugin.cacheCheckInterval = 0;
+            plugin.cacheMaxFileSize = cached ? 1024 * 1024 : 0;
+
+            Context first = serve(plugin, null, null);
+            assertEquals(200, first.getResponseStatus());
+            String etag = first.getResponseHeaders().get("ETag");
+            String lastModified = first.getResponseHeaders().get("Last-Modified");
+            assertNotNull(etag);
+            assertEquals("Tue, 14 Nov 2023 22:13:20 GMT", lastModified);
+            assertEquals(!cached, first.isFileResponse());
+            if (cached) {
+                assertArrayEquals(content, first.getResponseBody());
+            }
+
+            assertEquals(304, serve(plugin, etag, null).getResponseStatus());
+            assertEquals(304, serve(plugin, "\"other\", W/" + etag, null).getResponseStatus());
+            assertEquals(304, serve(plugin, null, lastModified).getResponseStatus());
+            assertEquals(200, serve(plugin, "\"other\"", null).getResponseStatus());
+            assertEquals(200, serve(plugin, null, "Mon, 13 Nov 2023 00:00:00 GMT").getResponseStatus());
+
+            Files.write(file, changed);
+            file.toFile().setLastModified(1_700_000_100_000L);
+            Context afterChange = serve(plugin, etag, null);
+            assertEquals(200, afterChange.getResponseStatus());
+            assertNotEquals(etag, afterChange.getResponseHeaders().get("ETag"));
+            if (cached) {
+                assertArrayEquals(changed, afterChange.getResponseBody());
+            }
+        } finally {
+            for (File f : dir.toFile().listFiles()) f.delete();
+            dir.toFile().delete();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Precompressed Static Variants**
+     *
+     * A sibling .gz/.br file is served only to clients that accept that encoding; with compress
+     * enabled and no sibling, the gzip body decompresses back to the original content.
+     */
+    @Property(tries = 30)
+    void precompressedVariantsFollowAcceptEncoding(@ForAll @Size(min = 1024, max = 4096) byte[] content,
+                                                   @ForAll @Size(min = 1, max = 512) byte[] gz,
+                                                   @ForAll boolean hasVariant) throws Exception {
+        Path dir = Files.createTempDirectory("static-test");
+        try {
+            Files.write(dir.resolve("app.js"), content);
+            if (hasVariant) {
+                Files.write(dir.resolve("app.js.gz"), gz);
+            }
+            StaticFilePlugin plugin = new StaticFilePlugin("/static", dir.toString(), true);
+            plugin.compress = true;
+
+            Context identity = serveEncoded(plugin, "app.js", "gzip;q=0, identity");
+            assertNull(identity.getResponseHeaders().get("Content-Encoding"));
+            assertEquals("Accept-Encoding", identity.getResponseHeaders().get("Vary"));
+            assertArrayEquals(content, identity.getResponseBody());
+
+            Context gzip = serveEncoded(plugin, "app.js", "br;q=0, gzip, deflate");
+            assertEquals("gzip", gzip.getResponseHeaders().get("Content-Encoding"));
+            assertEquals("application/javascript; charset=utf-8", gzip.getResponseHeaders().get("Content-Type"));
+            assertNotEquals(identity.getResponseHeaders().get("ETag"), gzip.getResponseHeaders().get("ETag"));
+            if (hasVariant) {
+                assertArrayEquals(gz, gzip.getResponseBody());
+            } else {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip.getResponseBody()))) {
+                    assertArrayEquals(content, readAll(in));
+                }
+                // 压缩结果随缓存复用
+                assertSame(gzip.getResponseBody(), serveEncoded(plugin, "app.js", "gzip").getResponseBody());
+            }
+        } finally {
+            for (File f : dir.toFile().listFiles()) f.delete();
+            dir.toFile().delete();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Static Range Requests**
+     *
+     * For any file and byte range, a single range returns exactly that slice with 206 (as a file
+     * slice when the file is not cached), multiple ranges are returned as multipart/byteranges
+     * in request order, and a range starting past the end gets 416.
+     */
+    @Property(tries = 50)
+    void rangeRequestsReturnRequestedSlices(@ForAll @Size(min = 1, max = 4096) byte[] content,
+                                           @ForAll @IntRange(min = 0, max = 5000) int a,
+                                           @ForAll @IntRange(min = 0, max = 5000) int b,
+                                           @ForAll boolean cached) throws Exception {
+        Path dir = Files.createTempDirectory("static-test");
+        try {
+            Files.write(dir.resolve("video.mp4"), content);
+            StaticFilePlugin plugin = new StaticFilePlugin("/static", dir.toString(), true);
+            plugin.cacheMaxFileSize = cached ? 1024 * 1024 : 0;
+            int size = content.length;
+            int start = Math.min(a, b);
+            int end = Math.max(a, b);
+
+            Context single = serveRange(plugin, "bytes=" + start + "-" + end);
+            if (start >= size) {
+                assertEquals(416, single.getResponseStatus());
+                assertEquals("bytes */" + size, single.getResponseHeaders().get("Content-Range"));
+                return;
+            }
+            int last = Math.min(end, size - 1);
+            byte[] expected = Arrays.copyOfRange(content, start, last + 1);
+            assertEquals(206, single.getResponseStatus());
+            assertEquals("bytes " + start + "-" + last + "/" + size, single.getResponseHeaders().get("Content-Range"));
+            assertEquals(!cached, single.isFileResponse());
+            assertArrayEquals(expected, body(single));
+
+            Context suffix = serveRange(plugin, "bytes=-" + (last - start + 1));
+            assertArrayEquals(Arrays.copyOfRange(content, size - (last - start + 1), size), body(suffix));
+
+            Context multi = serveRange(plugin, "bytes=" + start + "-" + last + ",0-0");
+            assertEquals(206, multi.getResponseStatus());
+            String contentType = multi.getResponseHeaders().get("Content-Type");
+            assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+            String boundary = contentType.substring(contentType.indexOf('=') + 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(("--" + boundary + "\r\nContent-Type: video/mp4\r\nContent-Range: bytes "
+                + start + "-" + last + "/" + size + "\r\n\r\n").getBytes());
+            out.write(expected);
+            out.write(("\r\n--" + boundary + "\r\nContent-Type: video/mp4\r\nContent-Range: bytes 0-0/"
+                + size + "\r\n\r\n").getBytes());
+            out.write(content[0]);
+            out.write(("\r\n--" + boundary + "--\r\n").getBytes());
+            assertArrayEquals(out.toByteArray(), body(multi));
+
+            Context mismatch = new Context();
+            mismatch.headers.put("Range", "bytes=" + start + "-" + end);
+            mismatch.headers.put("If-Range", "\"stale\"");
+            plugin.serveFile(mismatch, "video.mp4");
+            assertEquals(200, mismatch.getResponseStatus());
+        } finally {
+            for (File f : dir.toFile().listFiles()) f.delete();
+            dir.toFile().delete();
+        }
+    }
+
+    private Context serveRange(StaticFilePlugin plugin, String range) throws Exception {
+        Context ctx = new Context();
+        ctx.headers.put("Range", range);
+        plugin.serveFile(ctx, "video.mp4");
+        return ctx;
+    }
+
+    /** 读取任意类型响应（字节数组/文件片段/流式）的响应体 */
+    private static byte[] body(Context ctx) throws Exception {
+        if (ctx.isStreaming()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ctx.getResponseStream().write(out);
+            return out.toByteArray();
+        }
+        if (ctx.isFileResponse()) {
+            byte[] all = Files.readAllBytes(ctx.getResponseFile().toPath());
+            int from = (int) ctx.getResponseFilePosition();
+            return Arrays.copyOfRange(all, from, from + (int) ctx.getResponseFileLength());
+        }
+        return ctx.getResponseBody();
+    }
+
+    private Context serveEncoded(StaticFilePlugin plugin, String path, String acceptEncoding) throws Exception {
+        Context ctx = new Context();
+        ctx.headers.put("Accept-Encoding", acceptEncoding);
+        plugin.serveFile(ctx, path);
+        return ctx;
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+
+    private Context serve(StaticFilePlugin plugin, String ifNoneMatch, String ifModifiedSince) throws Exception {
+        Context ctx = new Context();
+        if (ifNoneMatch != null) ctx.headers.put("If-None-Match", ifNoneMatch);
+        if (ifModifiedSince != null) ctx.headers.put("If-Modified-Since", ifModifiedSince);
+        plugin.serveFile(ctx, "app.js");
+        return ctx;
+    }
+}
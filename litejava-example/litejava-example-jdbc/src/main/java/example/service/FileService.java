@@ -41,7 +41,7 @@ public class FileService {
         String filename = UUID.randomUUID().toString() + ext;
         Path filePath = Paths.get(uploadDir, filename);
         
-        Files.write(filePath, file.content);
+        file.saveTo(filePath.toString());
         
         return Map.of(
             "url", "/api/files/" + filename,
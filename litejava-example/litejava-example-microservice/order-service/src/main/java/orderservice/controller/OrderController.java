@@ -45,12 +45,12 @@ public class OrderController {
         ctx.ok(ListResult.of(orders));
     }
     
-    static void detail(Context ctx) {
+    static void detail(Context ctx) throws Exception {
         Map<String, Object> body = ctx.bindJSON();
         if (body.get("id") == null) BizException.paramRequired("id");
         
         Long id = ((Number) body.get("id")).longValue();
-        Order order = OrderService.findById(id);
+        Order order = OrderService.findById(ctx, id);
         if (order == null) BizException.error(Err.ORDER_NOT_FOUND, "订单不存在");
         
         ctx.ok(order);
@@ -2,6 +2,7 @@ package orderservice.service;
 
 import common.BizException;
 import common.Err;
+import litejava.Context;
 import litejava.plugins.transaction.SeataPlugin;
 import orderservice.G;
 import orderservice.model.Order;
@@ -21,14 +22,21 @@ public class OrderService {
         return G.orderMapper.findAll();
     }
     
-    public static Order findById(Long id) {
+    /**
+     * 订单详情：订单项（数据库）和用户信息（user-service）并发查询
+     */
+    @SuppressWarnings("unchecked")
+    public static Order findById(Context ctx, Long id) throws Exception {
         Order order = G.orderMapper.findById(id);
         if (order == null) {
             return null;
         }
         
-        order.items = G.orderItemMapper.findByOrderId(id);
-        order.user = UserClient.getUser(order.userId);
+        List<Object> results = ctx.parallel(
+            () -> G.orderItemMapper.findByOrderId(id),
+            () -> UserClient.getUser(order.userId));
+        order.items = (List<OrderItem>) results.get(0);
+        order.user = results.get(1);
         
         return order;
     }
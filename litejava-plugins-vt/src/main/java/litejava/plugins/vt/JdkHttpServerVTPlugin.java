@@ -1,49 +1,46 @@
 package litejava.plugins.vt;
 
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 import litejava.Context;
 import litejava.exception.LiteJavaException;
+import litejava.plugin.HttpServerPlugin.StreamBody;
 import litejava.plugin.ServerPlugin;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
  * JDK 内置 HttpServer + 虚拟线程 (Java 21+)
  * 最轻量的 Java HTTP 方案，无任何框架开销
+ * 
+ * <p>没有等待队列：server.queue.capacity 限制处理中的请求数。
  */
 public class JdkHttpServerVTPlugin extends ServerPlugin {
     
     private HttpServer server;
-    private final ObjectPool<Context> contextPool = new ObjectPool<>(
-        Context::new,
-        ctx -> {
-            ctx.app = null;
-            ctx.method = null;
-            ctx.path = null;
-            ctx.query = null;
-            ctx.remoteAddr = null;
-            ctx.wildcardPath = null;
-            ctx.headers.clear();
-            ctx.params.clear();
-            ctx.queryParams.clear();
-            ctx.state.clear();
-        }
-    );
     private static final String[] BODY_METHODS = {"POST", "PUT", "PATCH"};
     
+    @Override
+    public void config() {
+        super.config();
+        app.executor(Executors::newVirtualThreadPerTaskExecutor);
+    }
+    
     @Override
     public void start() {
         try {
             server = HttpServer.create(new InetSocketAddress(host, app.port), backlog);
-            server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            // 每个请求一个虚拟线程，没有等待队列；记录派发时间，调度延迟超过 queueTimeout 时由 shed() 拒绝
+            ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+            server.setExecutor(task -> executor.execute(timed(task)));
             server.createContext("/", this::handleRequest);
             server.start();
             app.log.info("JDK HttpServer (Virtual Threads) started on " + host + ":" + app.port);
@@ -59,18 +56,40 @@ public class JdkHttpServerVTPlugin extends ServerPlugin {
         }
     }
     
+    @Override
+    public void stopAccepting() {
+        HttpServer current = server;
+        if (current == null) return;
+        // stop(delay) 关闭监听端口后阻塞到已有交换完成，放到后台线程，随后的 stop() 关闭剩余连接
+        Thread drain = new Thread(() -> current.stop(Math.max(1, app.shutdownTimeout / 1000)), "litejava-server-drain");
+        drain.setDaemon(true);
+        drain.start();
+    }
+    
     private void handleRequest(HttpExchange exchange) {
-        Context ctx = contextPool.acquire();
-        ctx.app = app;
+        Context ctx = acquireContext();
         
         try {
             parseRequest(exchange, ctx);
-            app.handle(ctx);
+            // 没有等待队列：处理中的请求数达到上限时返回 503，调度延迟超过 queueTimeout 时由 shed() 拒绝
+            if (admit(ctx) && !shed(ctx, 0)) {
+                app.handle(ctx);
+            }
         } catch (Exception e) {
-            app.handleError(ctx, e);
+            handleError(ctx, e);
         } finally {
+            // 异步响应：future 完成后再发送响应并关闭 exchange
+            if (!deferResponse(ctx, () -> complete(exchange, ctx))) {
+                complete(exchange, ctx);
+            }
+        }
+    }
+    
+    private void complete(HttpExchange exchange, Context ctx) {
+        try {
             sendResponse(exchange, ctx);
-            contextPool.release(ctx);
+        } finally {
+            releaseContext(ctx);
         }
     }
     
@@ -78,37 +97,24 @@ public class JdkHttpServerVTPlugin extends ServerPlugin {
         ctx.method = exchange.getRequestMethod();
         URI uri = exchange.getRequestURI();
         ctx.path = uri.getPath();
-        ctx.query = uri.getQuery();
+        ctx.query = uri.getRawQuery();
         ctx.remoteAddr = exchange.getRemoteAddress().getAddress().getHostAddress();
         
-        // 解析 query 参数
-        if (ctx.query != null && !ctx.query.isEmpty()) {
-            parseQueryParams(ctx.query, ctx.queryParams);
-        }
+        // 请求头和查询参数在 handler 首次访问时才解析
+        Headers requestHeaders = exchange.getRequestHeaders();
+        ctx.setHeaderLoader(map -> {
+            for (Map.Entry<String, List<String>> entry : requestHeaders.entrySet()) {
+                for (String value : entry.getValue()) {
+                    map.add(entry.getKey(), value);
+                }
+            }
+        }, requestHeaders::getFirst);
         
         // 只有 POST/PUT/PATCH 才读取 body
         if (needsBody(ctx.method)) {
-            // 读取 Content-Type
-            List<String> ctList = exchange.getRequestHeaders().get("Content-Type");
-            if (ctList != null && !ctList.isEmpty()) {
-                ctx.headers.put("Content-Type", ctList.get(0));
-            }
-            
-            // 读取 body
-            try (InputStream is = exchange.getRequestBody()) {
-                ctx.setRequestBody(is.readAllBytes());
-            }
-        }
-    }
-    
-    private void parseQueryParams(String query, Map<String, String> params) {
-        for (String pair : query.split("&")) {
-            int idx = pair.indexOf('=');
-            if (idx > 0) {
-                String key = pair.substring(0, idx);
-                String value = idx < pair.length() - 1 ? pair.substring(idx + 1) : "";
-                params.put(key, value);
-            }
+            // body 延迟读取，未读取的部分由 exchange.close() 丢弃
+            long contentLength = parseContentLength(requestHeaders.getFirst("Content-Length"));
+            ctx.setRequestBody(exchange.getRequestBody(), contentLength, maxRequestSize);
         }
     }
     
@@ -124,11 +130,37 @@ public class JdkHttpServerVTPlugin extends ServerPlugin {
             // 设置响应头
             Map<String, String> headers = ctx.getResponseHeaders();
             for (Map.Entry<String, String> entry : headers.entrySet()) {
-                exchange.getResponseHeaders().set(entry.getKey(), entry.getValue());
+                exchange.getResponseHeaders().add(entry.getKey(), entry.getValue());
+            }
+            
+            if (ctx.isFileResponse()) {
+                // 长度 -1 表示无响应体（0 会被当作 chunked）
+                long length = ctx.getResponseFileLength();
+                exchange.sendResponseHeaders(ctx.getResponseStatus(), length > 0 ? length : -1);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    transferFile(ctx, os);
+                }
+                return;
+            }
+            
+            if (ctx.isStreaming()) {
+                StreamBody os = StreamBody.install(exchange);
+                // 长度 0 表示 chunked 传输编码
+                exchange.sendResponseHeaders(ctx.getResponseStatus(), 0);
+                try {
+                    writeStream(ctx, os);
+                } catch (IOException e) {
+                    // 中途失败时断开连接，不发送结束块
+                    os.abort();
+                    throw e;
+                }
+                os.close();
+                return;
             }
             
             byte[] body = ctx.getResponseBody();
-            exchange.sendResponseHeaders(ctx.getResponseStatus(), body.length);
+            // 空响应体（204/304 等）长度传 -1，0 会被当作 chunked（304 时 JDK 还会记录警告）
+            exchange.sendResponseHeaders(ctx.getResponseStatus(), body.length > 0 ? body.length : -1);
             
             if (body.length > 0) {
                 try (OutputStream os = exchange.getResponseBody()) {
@@ -15,9 +15,18 @@ import java.util.concurrent.Executors;
 /**
  * Jetty HTTP 服务器插件 - 虚拟线程版本 (Java 21+)
  * 继承 JettyServerPlugin，使用虚拟线程处理请求
+ * 
+ * <p>没有等待队列：server.queue.capacity 限制处理中的请求数，不支持 server.queue.timeout。
  */
 public class JettyVirtualThreadPlugin extends JettyServerPlugin {
     
+    @Override
+    public void config() {
+        super.config();
+        app.executor(Executors::newVirtualThreadPerTaskExecutor);
+        warnQueueTimeoutIgnored();
+    }
+    
     @Override
     public void start() {
         try {
@@ -52,18 +61,20 @@ public class JettyVirtualThreadPlugin extends JettyServerPlugin {
         @Override
         public void handle(String target, Request baseRequest, 
                           HttpServletRequest request, HttpServletResponse response) {
-            Context ctx = new Context();
-            ctx.app = app;
+            Context ctx = acquireContext();
             
             try {
                 parseRequest(request, ctx);
-                app.handle(ctx);
+                // 每个请求一个虚拟线程，没有等待队列：处理中的请求数达到上限时返回 503
+                if (admit(ctx)) {
+                    app.handle(ctx);
+                }
             } catch (Exception e) {
-                app.handleError(ctx, e);
+                handleError(ctx, e);
             }
             
-            sendResponse(response, ctx);
             baseRequest.setHandled(true);
+            complete(request, response, ctx);
         }
     }
 }
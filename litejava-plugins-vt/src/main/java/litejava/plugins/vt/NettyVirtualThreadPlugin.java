@@ -8,16 +8,27 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.*;
+import io.netty.util.ReferenceCountUtil;
 import litejava.Context;
 import litejava.exception.LiteJavaException;
 import litejava.plugin.ServerPlugin;
+import litejava.plugins.server.NettyChunkedOutputStream;
+import litejava.plugins.server.NettyContinueHandler;
+import litejava.plugins.server.NettyRequestBody;
 
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 
 /**
  * Netty HTTP 服务器插件 - 虚拟线程版本 (Java 21+)
  * 使用虚拟线程作为 EventLoop 执行器
+ * 
+ * <p>带请求体的请求在请求头到达后交给独立虚拟线程执行 handler，请求体由 {@link NettyRequestBody}
+ * 边接收边读取，不在内存中聚合。
+ * 
+ * <p>没有等待队列：server.queue.capacity 限制处理中的请求数，不支持 server.queue.timeout。
  */
 public class NettyVirtualThreadPlugin extends ServerPlugin {
     
@@ -25,21 +36,12 @@ public class NettyVirtualThreadPlugin extends ServerPlugin {
     private EventLoopGroup workerGroup;
     private Channel channel;
     
-    private final ObjectPool<Context> contextPool = new ObjectPool<>(
-        Context::new,
-        ctx -> {
-            ctx.app = null;
-            ctx.method = null;
-            ctx.path = null;
-            ctx.query = null;
-            ctx.remoteAddr = null;
-            ctx.wildcardPath = null;
-            ctx.headers.clear();
-            ctx.params.clear();
-            ctx.queryParams.clear();
-            ctx.state.clear();
-        }
-    );
+    @Override
+    public void config() {
+        super.config();
+        app.executor(Executors::newVirtualThreadPerTaskExecutor);
+        warnQueueTimeoutIgnored();
+    }
     
     @Override
     public void start() {
@@ -64,7 +66,7 @@ public class NettyVirtualThreadPlugin extends ServerPlugin {
                     protected void initChannel(SocketChannel ch) {
                         ch.pipeline()
                             .addLast(new HttpServerCodec())
-                            .addLast(new HttpObjectAggregator(maxRequestSize))
+                            .addLast(new NettyContinueHandler(app))
                             .addLast(new RequestHandler());
                     }
                 });
@@ -83,22 +85,96 @@ public class NettyVirtualThreadPlugin extends ServerPlugin {
         if (workerGroup != null) workerGroup.shutdownGracefully();
     }
     
-    private class RequestHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+    @Override
+    public void stopAccepting() {
+        // 只关闭监听 Channel，已建立的连接继续处理
+        if (channel != null) channel.close().syncUninterruptibly();
+    }
+    
+    private class RequestHandler extends ChannelInboundHandlerAdapter {
+        
+        /** 当前请求正在接收的请求体，没有请求体时为 null */
+        private NettyRequestBody body;
+        
+        /** 已开始处理请求：响应后关闭连接，之后到达的请求不再处理 */
+        private boolean started;
         
         @Override
-        protected void channelRead0(ChannelHandlerContext nettyCtx, FullHttpRequest request) {
-            Context ctx = contextPool.acquire();
-            ctx.app = app;
+        public void channelRead(ChannelHandlerContext nettyCtx, Object msg) {
+            try {
+                if (msg instanceof HttpRequest) {
+                    if (started) return;
+                    started = true;
+                    HttpRequest request = (HttpRequest) msg;
+                    if (!(msg instanceof FullHttpRequest) && hasBody(request)) {
+                        // handler 读取请求体时要等待后续 HttpContent，不能在 EventLoop 上执行
+                        NettyRequestBody requestBody = new NettyRequestBody(
+                            nettyCtx.channel(), HttpUtil.is100ContinueExpected(request));
+                        body = requestBody;
+                        Thread.ofVirtual().name("netty-vt-body").start(() -> handle(nettyCtx, request, requestBody));
+                    } else {
+                        handle(nettyCtx, request, null);
+                    }
+                } else if (msg instanceof HttpContent && body != null) {
+                    body.offer((HttpContent) msg);
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+        
+        private void handle(ChannelHandlerContext nettyCtx, HttpRequest request, NettyRequestBody body) {
+            Context ctx = acquireContext();
             
             try {
-                parseRequest(request, ctx);
-                app.handle(ctx);
+                parseRequest(request, body, ctx);
+                ctx.remoteAddr = hostAddress(nettyCtx.channel().remoteAddress());
+                // 没有等待队列：处理中的请求数达到上限时返回 503
+                if (admit(ctx)) {
+                    app.handle(ctx);
+                }
             } catch (Exception e) {
-                app.handleError(ctx, e);
+                // 错误处理本身失败时返回 500，仍然发送响应并归还 Context
+                handleError(ctx, e);
             }
             
-            sendResponse(nettyCtx, ctx);
-            contextPool.release(ctx);
+            if (ctx.isDeferred()) {
+                // 异步响应：future 完成后在回调线程发送
+                deferResponse(ctx, () -> respond(nettyCtx, body, ctx));
+                return;
+            }
+            
+            respond(nettyCtx, body, ctx);
+        }
+        
+        private void respond(ChannelHandlerContext nettyCtx, NettyRequestBody body, Context ctx) {
+            if (ctx.isStreaming()) {
+                // 写入器可能阻塞，交给独立虚拟线程，避免占用 EventLoop
+                Thread.ofVirtual().name("netty-vt-stream").start(() -> {
+                    try {
+                        sendStreamResponse(nettyCtx, ctx);
+                    } finally {
+                        if (body != null) body.close();
+                        releaseContext(ctx);
+                    }
+                });
+                return;
+            }
+            
+            try {
+                sendResponse(nettyCtx, ctx);
+            } finally {
+                if (body != null) body.close();
+                releaseContext(ctx);
+            }
+        }
+        
+        @Override
+        public void channelInactive(ChannelHandlerContext nettyCtx) throws Exception {
+            if (body != null) {
+                body.fail(new IOException("Connection closed before the request body was complete"));
+            }
+            super.channelInactive(nettyCtx);
         }
         
         @Override
@@ -107,31 +183,38 @@ public class NettyVirtualThreadPlugin extends ServerPlugin {
         }
     }
     
-    private void parseRequest(FullHttpRequest request, Context ctx) {
+    private static boolean hasBody(HttpRequest request) {
+        return HttpUtil.getContentLength(request, 0L) > 0 || HttpUtil.isTransferEncodingChunked(request);
+    }
+    
+    private void parseRequest(HttpRequest request, NettyRequestBody body, Context ctx) {
         ctx.method = request.method().name();
         
-        QueryStringDecoder decoder = new QueryStringDecoder(request.uri());
-        ctx.path = decoder.path();
-        ctx.query = request.uri().contains("?") ? 
-            request.uri().substring(request.uri().indexOf("?") + 1) : null;
+        String uri = request.uri();
+        int q = uri.indexOf('?');
+        ctx.path = new QueryStringDecoder(uri).path();
+        ctx.query = q >= 0 ? uri.substring(q + 1) : null;
         
-        for (Map.Entry<String, String> entry : request.headers()) {
-            ctx.headers.put(entry.getKey(), entry.getValue());
-        }
-        
-        decoder.parameters().forEach((k, v) -> {
-            if (!v.isEmpty()) ctx.queryParams.put(k, v.get(0));
-        });
+        // 请求头和查询参数在 handler 首次访问时才解析
+        HttpHeaders headers = request.headers();
+        ctx.setHeaderLoader(map -> {
+            for (Map.Entry<String, String> entry : headers) {
+                map.add(entry.getKey(), entry.getValue());
+            }
+        }, headers::get);
         
-        ByteBuf content = request.content();
-        if (content.readableBytes() > 0) {
-            byte[] body = new byte[content.readableBytes()];
-            content.readBytes(body);
-            ctx.setRequestBody(body);
+        // 请求体边接收边读取，不在内存中聚合
+        if (body != null) {
+            ctx.setRequestBody(body, HttpUtil.getContentLength(request, -1L), maxRequestSize);
         }
     }
     
     private void sendResponse(ChannelHandlerContext nettyCtx, Context ctx) {
+        if (ctx.isFileResponse()) {
+            sendFileResponse(nettyCtx, ctx);
+            return;
+        }
+        
         byte[] body = ctx.getResponseBody();
         ByteBuf content = Unpooled.wrappedBuffer(body);
         
@@ -143,9 +226,54 @@ public class NettyVirtualThreadPlugin extends ServerPlugin {
         
         response.headers().set(HttpHeaderNames.CONTENT_LENGTH, body.length);
         for (Map.Entry<String, String> entry : ctx.getResponseHeaders().entrySet()) {
-            response.headers().set(entry.getKey(), entry.getValue());
+            response.headers().add(entry.getKey(), entry.getValue());
         }
         
+        // 响应后关闭连接，显式告知客户端不要复用（请求体可能未读完）
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
         nettyCtx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
     }
+    
+    private void sendFileResponse(ChannelHandlerContext nettyCtx, Context ctx) {
+        HttpResponse response = new DefaultHttpResponse(
+            HttpVersion.HTTP_1_1,
+            HttpResponseStatus.valueOf(ctx.getResponseStatus())
+        );
+        for (Map.Entry<String, String> entry : ctx.getResponseHeaders().entrySet()) {
+            response.headers().add(entry.getKey(), entry.getValue());
+        }
+        long length = ctx.getResponseFileLength();
+        HttpUtil.setContentLength(response, length);
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        nettyCtx.write(response);
+        if (length > 0) {
+            // DefaultFileRegion 零拷贝传输（sendfile）
+            nettyCtx.write(new DefaultFileRegion(ctx.getResponseFile(), ctx.getResponseFilePosition(), length));
+        }
+        nettyCtx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT).addListener(ChannelFutureListener.CLOSE);
+    }
+    
+    private void sendStreamResponse(ChannelHandlerContext nettyCtx, Context ctx) {
+        HttpResponse response = new DefaultHttpResponse(
+            HttpVersion.HTTP_1_1,
+            HttpResponseStatus.valueOf(ctx.getResponseStatus())
+        );
+        for (Map.Entry<String, String> entry : ctx.getResponseHeaders().entrySet()) {
+            response.headers().add(entry.getKey(), entry.getValue());
+        }
+        HttpUtil.setTransferEncodingChunked(response, true);
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        nettyCtx.writeAndFlush(response);
+        
+        NettyChunkedOutputStream out = new NettyChunkedOutputStream(nettyCtx);
+        try {
+            writeStream(ctx, out);
+            out.close();
+            out.lastFuture().addListener(ChannelFutureListener.CLOSE);
+        } catch (IOException e) {
+            out.abort();
+            app.log.error("Stream response failed: " + e.getMessage());
+            nettyCtx.close();
+        }
+    }
 }
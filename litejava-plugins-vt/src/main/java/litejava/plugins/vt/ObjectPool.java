@@ -1,6 +1,7 @@
 package litejava.plugins.vt;
 
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -8,25 +9,25 @@ import java.util.function.Supplier;
  * 通用对象池 (类似 Go sync.Pool)
  * 
  * <pre>{@code
- * // 创建 Context 池
- * ObjectPool<Context> pool = new ObjectPool<>(Context::new, ctx -> {
- *     ctx.app = null;
- *     ctx.method = null;
- *     ctx.headers.clear();
- * });
+ * // 创建缓冲区池
+ * ObjectPool<StringBuilder> pool = new ObjectPool<>(StringBuilder::new, sb -> sb.setLength(0));
  * 
  * // 使用
- * Context ctx = pool.acquire();
+ * StringBuilder sb = pool.acquire();
  * try {
- *     // ... 处理请求
+ *     // ... 拼接响应
  * } finally {
- *     pool.release(ctx);
+ *     pool.release(sb);
  * }
  * }</pre>
+ * 
+ * <p>服务器插件的 Context 复用请使用 litejava-core 的 {@code ContextPool}（{@code ServerPlugin.acquireContext()}），
+ * 本类用于其他对象。池大小由原子计数维护，不调用 O(n) 的 {@code ConcurrentLinkedQueue.size()}。
  */
 public class ObjectPool<T> {
     
     private final ConcurrentLinkedQueue<T> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
     private final Supplier<T> factory;
     private final Consumer<T> resetter;
     private final int maxSize;
@@ -50,7 +51,9 @@ public class ObjectPool<T> {
      */
     public T acquire() {
         T obj = pool.poll();
-        return obj != null ? obj : factory.get();
+        if (obj == null) return factory.get();
+        size.decrementAndGet();
+        return obj;
     }
     
     /**
@@ -58,9 +61,12 @@ public class ObjectPool<T> {
      */
     public void release(T obj) {
         if (obj == null) return;
-        if (pool.size() < maxSize) {
+        // 先占位再入队，并发归还时不会超过 maxSize
+        if (size.incrementAndGet() <= maxSize) {
             resetter.accept(obj);
             pool.offer(obj);
+        } else {
+            size.decrementAndGet();
         }
         // 超过 maxSize 则丢弃，让 GC 回收
     }
@@ -69,13 +75,16 @@ public class ObjectPool<T> {
      * 当前池大小
      */
     public int size() {
-        return pool.size();
+        return size.get();
     }
     
     /**
      * 清空池
      */
     public void clear() {
-        pool.clear();
+        T obj;
+        while ((obj = pool.poll()) != null) {
+            size.decrementAndGet();
+        }
     }
 }
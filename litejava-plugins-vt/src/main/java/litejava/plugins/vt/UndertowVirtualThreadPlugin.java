@@ -2,22 +2,34 @@ package litejava.plugins.vt;
 
 import io.undertow.Undertow;
 import io.undertow.server.HttpServerExchange;
-import litejava.Context;
 import litejava.exception.LiteJavaException;
 import litejava.plugins.server.UndertowServerPlugin;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 /**
  * Undertow HTTP 服务器插件 - 虚拟线程版本 (Java 21+)
  * 继承 UndertowServerPlugin，使用虚拟线程处理请求
  */
 public class UndertowVirtualThreadPlugin extends UndertowServerPlugin {
     
+    private static final ThreadFactory VIRTUAL_FACTORY = Thread.ofVirtual().name("undertow-vt-", 0).factory();
+    private static final Executor VIRTUAL_EXECUTOR = task -> VIRTUAL_FACTORY.newThread(task).start();
+    
+    @Override
+    public void config() {
+        super.config();
+        app.executor(Executors::newVirtualThreadPerTaskExecutor);
+    }
+    
     @Override
     public void start() {
         try {
             Undertow.Builder builder = Undertow.builder()
                 .addHttpListener(app.port, host)
-                .setHandler(this::handleRequestWithVirtualThread);
+                .setHandler(rootHandler());
             
             if (ioThreads > 0) {
                 builder.setIoThreads(ioThreads);
@@ -34,22 +46,11 @@ public class UndertowVirtualThreadPlugin extends UndertowServerPlugin {
         }
     }
     
-    private void handleRequestWithVirtualThread(HttpServerExchange exchange) {
-        // 使用虚拟线程处理请求
-        Thread.startVirtualThread(() -> {
-            exchange.getRequestReceiver().receiveFullBytes((ex, body) -> {
-                Context ctx = new Context();
-                ctx.app = app;
-                
-                try {
-                    parseRequest(ex, body, ctx);
-                    app.handle(ctx);
-                } catch (Exception e) {
-                    app.handleError(ctx, e);
-                }
-                
-                sendResponse(ex, ctx);
-            });
-        });
+    /**
+     * 使用虚拟线程代替 Undertow 工作线程池处理请求
+     */
+    @Override
+    protected void dispatch(HttpServerExchange exchange, Runnable task) {
+        exchange.dispatch(VIRTUAL_EXECUTOR, task);
     }
 }
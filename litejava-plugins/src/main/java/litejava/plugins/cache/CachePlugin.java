@@ -30,6 +30,9 @@ import java.util.function.Supplier;
  * // 获取或加载
  * Book book = CachePlugin.instance.getOrLoad("book:1", () -> db.find(1));
  * }</pre>
+ * 
+ * <p>远程缓存（Redis、Memcache）的 get/set/del/exists/incr 在 JFR 录制开启时记录
+ * {@code litejava.PluginCall} 事件（见 {@link litejava.jfr.Jfr}）。
  */
 public abstract class CachePlugin extends Plugin {
     
@@ -1,5 +1,7 @@
 package litejava.plugins.cache;
 
+import litejava.jfr.Jfr;
+import litejava.jfr.PluginCallEvent;
 import net.spy.memcached.MemcachedClient;
 
 import java.net.InetSocketAddress;
@@ -76,29 +78,55 @@ public class MemcacheCachePlugin extends CachePlugin {
     @Override
     public void set(String key, Object value, int ttlSeconds) {
         String json = toJson(value);
-        client.set(key(key), ttlSeconds > 0 ? ttlSeconds : defaultTtl, json);
+        PluginCallEvent event = Jfr.beginCall();
+        try {
+            client.set(key(key), ttlSeconds > 0 ? ttlSeconds : defaultTtl, json);
+        } finally {
+            Jfr.endCall(event, this, "set", key);
+        }
     }
     
     @Override
     @SuppressWarnings("unchecked")
     public <T> T get(String key) {
-        Object value = client.get(key(key));
+        PluginCallEvent event = Jfr.beginCall();
+        Object value;
+        try {
+            value = client.get(key(key));
+        } finally {
+            Jfr.endCall(event, this, "get", key);
+        }
         return value != null ? (T) fromJson(value.toString()) : null;
     }
     
     @Override
     public void del(String key) {
-        client.delete(key(key));
+        PluginCallEvent event = Jfr.beginCall();
+        try {
+            client.delete(key(key));
+        } finally {
+            Jfr.endCall(event, this, "del", key);
+        }
     }
     
     @Override
     public boolean exists(String key) {
-        return client.get(key(key)) != null;
+        PluginCallEvent event = Jfr.beginCall();
+        try {
+            return client.get(key(key)) != null;
+        } finally {
+            Jfr.endCall(event, this, "exists", key);
+        }
     }
     
     @Override
     public long incr(String key) {
-        return client.incr(key(key), 1, 1);
+        PluginCallEvent event = Jfr.beginCall();
+        try {
+            return client.incr(key(key), 1, 1);
+        } finally {
+            Jfr.endCall(event, this, "incr", key);
+        }
     }
     
     // ==================== List 操作 (内存模拟，Memcache 不支持) ====================
@@ -1,5 +1,7 @@
 package litejava.plugins.cache;
 
+import litejava.jfr.Jfr;
+import litejava.jfr.PluginCallEvent;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
@@ -111,34 +113,46 @@ public class RedisCachePlugin extends CachePlugin {
     @Override
     public void set(String key, Object value, int ttlSeconds) {
         String json = (value instanceof String) ? (String) value : app.json.stringify(value);
+        PluginCallEvent event = Jfr.beginCall();
         try (Jedis jedis = pool.getResource()) {
             if (ttlSeconds > 0) {
                 jedis.setex(key, ttlSeconds, json);
             } else {
                 jedis.set(key, json);
             }
+        } finally {
+            Jfr.endCall(event, this, "set", key);
         }
     }
     
     @Override
     @SuppressWarnings("unchecked")
     public <T> T get(String key) {
+        PluginCallEvent event = Jfr.beginCall();
         try (Jedis jedis = pool.getResource()) {
             return (T) jedis.get(key);
+        } finally {
+            Jfr.endCall(event, this, "get", key);
         }
     }
     
     @Override
     public void del(String key) {
+        PluginCallEvent event = Jfr.beginCall();
         try (Jedis jedis = pool.getResource()) {
             jedis.del(key);
+        } finally {
+            Jfr.endCall(event, this, "del", key);
         }
     }
     
     @Override
     public boolean exists(String key) {
+        PluginCallEvent event = Jfr.beginCall();
         try (Jedis jedis = pool.getResource()) {
             return jedis.exists(key);
+        } finally {
+            Jfr.endCall(event, this, "exists", key);
         }
     }
     
@@ -236,8 +250,11 @@ public class RedisCachePlugin extends CachePlugin {
     
     @Override
     public long incr(String key) {
+        PluginCallEvent event = Jfr.beginCall();
         try (Jedis jedis = pool.getResource()) {
             return jedis.incr(key);
+        } finally {
+            Jfr.endCall(event, this, "incr", key);
         }
     }
     
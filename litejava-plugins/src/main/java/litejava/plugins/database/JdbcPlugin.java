@@ -2,11 +2,23 @@ package litejava.plugins.database;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import litejava.Context;
 import litejava.Plugin;
+import litejava.jfr.Jfr;
+import litejava.jfr.PluginCallEvent;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.CallableStatementCreator;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.jdbc.core.StatementCallback;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.SQLException;
+import java.sql.Statement;
+
 /**
  * JDBC 插件 - 基于 HikariCP + Spring JdbcTemplate
  * 
@@ -70,6 +82,14 @@ import org.springframework.transaction.support.TransactionTemplate;
  * app.use(secondary);
  * }</pre>
  * 
+ * <h2>请求截止时间</h2>
+ * <p>jdbcTemplate 执行的语句超时不超过当前请求的剩余时间（{@link litejava.Route#timeout(long)}
+ * 或受信任调用方的 X-Request-Timeout 请求头），截止时间已过时直接抛出 504，不再占用连接。
+ * 
+ * <h2>JFR 事件</h2>
+ * <p>JFR 录制开启时 jdbcTemplate 执行的每条语句记录一个 {@code litejava.PluginCall} 事件
+ * （SQL 与耗时，见 {@link litejava.jfr.Jfr}），可与 GC、锁等待放在同一时间轴上分析。
+ * 
  * <h2>vs 其他数据库插件</h2>
  * <ul>
  *   <li>JdbcPlugin - 轻量级，直接写 SQL，适合简单场景</li>
@@ -138,7 +158,43 @@ public class JdbcPlugin extends Plugin {
         HikariConfig config = createHikariConfig();
         
         dataSource = new HikariDataSource(config);
-        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource) {
+            @Override
+            protected void applyStatementSettings(Statement stmt) throws SQLException {
+                super.applyStatementSettings(stmt);
+                applyDeadline(stmt);
+            }
+            
+            @Override
+            public <T> T execute(StatementCallback<T> action) {
+                PluginCallEvent event = Jfr.beginCall();
+                try {
+                    return super.execute(action);
+                } finally {
+                    endCall(event, action);
+                }
+            }
+            
+            @Override
+            public <T> T execute(PreparedStatementCreator psc, PreparedStatementCallback<T> action) {
+                PluginCallEvent event = Jfr.beginCall();
+                try {
+                    return super.execute(psc, action);
+                } finally {
+                    endCall(event, psc);
+                }
+            }
+            
+            @Override
+            public <T> T execute(CallableStatementCreator csc, CallableStatementCallback<T> action) {
+                PluginCallEvent event = Jfr.beginCall();
+                try {
+                    return super.execute(csc, action);
+                } finally {
+                    endCall(event, csc);
+                }
+            }
+        };
         txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
         
         app.log.info("JdbcPlugin configured (" + configPrefix + ")");
@@ -156,6 +212,35 @@ public class JdbcPlugin extends Plugin {
         return config;
     }
     
+    /**
+     * 按当前请求的截止时间收紧语句超时（见 {@link Context#deadline(long)}），
+     * 调用方放弃后查询不再占用数据库连接。JDBC 超时以秒为单位，剩余时间向上取整。
+     */
+    public static void applyDeadline(Statement stmt) throws SQLException {
+        if (Context.currentDeadline() == 0) return;
+        int seconds = (Context.capTimeout(0) + 999) / 1000;
+        int current = stmt.getQueryTimeout();
+        if (current == 0 || seconds < current) {
+            stmt.setQueryTimeout(seconds);
+        }
+    }
+    
+    /**
+     * 提交 SQL 执行事件，操作取 SQL 的第一个关键字（SELECT、UPDATE 等）
+     */
+    private void endCall(PluginCallEvent event, Object statement) {
+        if (event == null) return;
+        String sql = statement instanceof SqlProvider ? ((SqlProvider) statement).getSql() : null;
+        String operation = "execute";
+        if (sql != null) {
+            String trimmed = sql.trim();
+            int end = 0;
+            while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) end++;
+            if (end > 0) operation = trimmed.substring(0, end).toUpperCase();
+        }
+        Jfr.endCall(event, this, operation, sql);
+    }
+    
     @Override
     public void uninstall() {
         if (dataSource != null) {
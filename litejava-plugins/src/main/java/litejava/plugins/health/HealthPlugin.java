@@ -14,6 +14,8 @@ import java.util.Map;
  * app.use(new HealthPlugin("/status")); // GET /status
  * }</pre>
  * 
+ * <p>探针路由注册为优先路由（{@link litejava.Route#priority()}），服务器满载时不排在业务请求之后。
+ * 
  * <h2>响应示例</h2>
  * <pre>{@code
  * {
@@ -43,6 +45,6 @@ public class HealthPlugin extends Plugin {
             health.put("env", app.env);
             health.put("timestamp", System.currentTimeMillis());
             ctx.ok(health);
-        });
+        }).priority();
     }
 }
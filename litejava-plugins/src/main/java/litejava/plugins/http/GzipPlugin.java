@@ -5,6 +5,7 @@ import litejava.MiddlewarePlugin;
 import litejava.Next;
 
 import java.io.ByteArrayOutputStream;
+import java.util.Map;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -58,6 +59,12 @@ public class GzipPlugin extends MiddlewarePlugin {
             return;
         }
         
+        // 已编码（如 StaticFilePlugin 的预压缩资源）或流式/文件响应不再压缩
+        Map<String, String> responseHeaders = ctx.getResponseHeaders();
+        if (responseHeaders.containsKey("Content-Encoding") || ctx.isStreaming() || ctx.isFileResponse()) {
+            return;
+        }
+        
         byte[] body = ctx.getResponseBody();
         if (body.length < minSize) {
             return;
@@ -65,8 +72,10 @@ public class GzipPlugin extends MiddlewarePlugin {
         
         byte[] compressed = compress(body);
         if (compressed.length < body.length) {
+            String contentType = responseHeaders.getOrDefault("Content-Type", Context.CT_BINARY);
             ctx.header("Content-Encoding", "gzip");
-            ctx.data(compressed);
+            ctx.header("Vary", "Accept-Encoding");
+            ctx.data(compressed, contentType);
         }
     }
     
@@ -1,6 +1,7 @@
 package litejava.plugins.http;
 
 import litejava.App;
+import litejava.Context;
 
 import java.io.*;
 import java.net.*;
@@ -20,6 +21,9 @@ import java.util.Map;
  * - JVM 默认保持 5 个空闲连接，每个连接存活 5 秒
  * - 可通过系统属性调整：http.maxConnections, http.keepAlive
  * 
+ * 在请求处理线程中调用时，连接/读取超时不超过当前请求的剩余时间，
+ * 并通过 X-Request-Timeout 请求头把剩余时间传给下游（见 {@link Context#deadline(long)}）。
+ * 
  * 如需更高性能，可使用 OkHttpClient 替代（需添加依赖）
  * 
  * 使用示例：
@@ -99,10 +103,18 @@ public class HttpClient {
     // ==================== 核心请求方法 ====================
     
     public String request(String method, String url, String body, String contentType) throws IOException {
+        // 超时不超过当前请求的剩余时间，截止时间传给下游服务
+        int connectMs = Context.capTimeout(connectTimeout);
+        int readMs = Context.capTimeout(readTimeout);
+        
         HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
         conn.setRequestMethod(method);
-        conn.setConnectTimeout(connectTimeout);
-        conn.setReadTimeout(readTimeout);
+        conn.setConnectTimeout(connectMs);
+        conn.setReadTimeout(readMs);
+        if (Context.currentDeadline() != 0) {
+            // 传剩余时间而不是时间戳，下游按自己的时钟换算
+            conn.setRequestProperty(Context.DEADLINE_HEADER, String.valueOf(Context.capTimeout(0)));
+        }
         
         if (contentType != null) {
             conn.setRequestProperty("Content-Type", contentType);
@@ -3,6 +3,7 @@ package litejava.plugins.http;
 import litejava.Context;
 import litejava.MiddlewarePlugin;
 import litejava.Next;
+import litejava.StateKey;
 
 import java.util.UUID;
 
@@ -29,12 +30,18 @@ import java.util.UUID;
  */
 public class RequestIdPlugin extends MiddlewarePlugin {
     
+    /** 请求ID 的默认状态键 */
+    public static final StateKey<String> REQUEST_ID = StateKey.of("requestId");
+    
     public String headerName = "X-Request-Id";
-    public String stateKey = "requestId";
+    public String stateKey = REQUEST_ID.name;
+    
+    private StateKey<String> key = REQUEST_ID;
     
     @Override
     public void config() {
         headerName = app.conf.getString("requestId", "headerName", headerName);
+        key = StateKey.of(stateKey);
     }
     
     @Override
@@ -45,7 +52,7 @@ public class RequestIdPlugin extends MiddlewarePlugin {
             requestId = generateId();
         }
         
-        ctx.state.put(stateKey, requestId);
+        ctx.set(key, requestId);
         ctx.header(headerName, requestId);
         
         next.run();
@@ -56,6 +63,6 @@ public class RequestIdPlugin extends MiddlewarePlugin {
     }
     
     public static String getId(Context ctx) {
-        return (String) ctx.state.get("requestId");
+        return ctx.get(REQUEST_ID);
     }
 }
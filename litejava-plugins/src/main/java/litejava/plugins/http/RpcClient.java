@@ -1,6 +1,7 @@
 package litejava.plugins.http;
 
 import litejava.App;
+import litejava.Context;
 import litejava.Plugin;
 import litejava.plugins.microservice.DiscoveryPlugin;
 import litejava.plugins.microservice.DiscoveryPlugin.ServiceInstance;
@@ -18,6 +19,7 @@ import java.util.concurrent.TimeUnit;
  * 2. 服务发现集成（自动从 Consul/Nacos 获取实例）
  * 3. 负载均衡（轮询）
  * 4. 自动传递 traceId、userId 等上下文
+ * 5. 传递请求剩余时间（X-Request-Timeout），调用超时不超过当前请求的剩余时间
  * 
  * 配置：
  * rpc:
@@ -228,7 +230,7 @@ public class RpcClient extends Plugin {
             builder.method(method.toUpperCase(), requestBody);
         }
         
-        try (Response response = client.newCall(builder.build()).execute()) {
+        try (Response response = newCall(builder.build()).execute()) {
             ResponseBody respBody = response.body();
             return new ProxyResponse(response.code(), respBody != null ? respBody.string() : "");
         }
@@ -250,12 +252,29 @@ public class RpcClient extends Plugin {
     // ==================== 核心执行方法 ====================
     
     private String execute(Request request) throws IOException {
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = newCall(request).execute()) {
             ResponseBody body = response.body();
             return body != null ? body.string() : "";
         }
     }
     
+    /**
+     * 在请求处理线程中调用时：整个调用的超时不超过当前请求的剩余时间，剩余时间通过请求头传给下游
+     */
+    private Call newCall(Request request) {
+        long deadline = Context.currentDeadline();
+        if (deadline == 0) {
+            return client.newCall(request);
+        }
+        int remaining = Context.capTimeout(0);
+        // 传剩余时间而不是时间戳，下游按自己的时钟换算
+        Call call = client.newCall(request.newBuilder()
+            .header(Context.DEADLINE_HEADER, String.valueOf(remaining))
+            .build());
+        call.timeout().timeout(remaining, TimeUnit.MILLISECONDS);
+        return call;
+    }
+    
     // ==================== JSON 工具 ====================
     
     @SuppressWarnings("unchecked")
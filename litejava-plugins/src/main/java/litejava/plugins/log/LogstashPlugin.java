@@ -3,6 +3,7 @@ package litejava.plugins.log;
 import litejava.Context;
 import litejava.MiddlewarePlugin;
 import litejava.Next;
+import litejava.plugins.tracing.TracingPlugin;
 
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
@@ -109,10 +110,10 @@ public class LogstashPlugin extends MiddlewarePlugin {
             log.put("duration", duration);
             
             // 链路追踪
-            Object traceId = ctx.state.get("traceId");
+            String traceId = ctx.get(TracingPlugin.TRACE_ID);
             if (traceId != null) log.put("traceId", traceId);
             
-            Object spanId = ctx.state.get("spanId");
+            String spanId = ctx.get(TracingPlugin.SPAN_ID);
             if (spanId != null) log.put("spanId", spanId);
             
             // 用户信息
@@ -5,9 +5,16 @@ import io.micrometer.core.instrument.binder.jvm.*;
 import io.micrometer.core.instrument.binder.system.*;
 import io.micrometer.prometheus.PrometheusConfig;
 import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.Collector;
 import litejava.Context;
 import litejava.MiddlewarePlugin;
 import litejava.Next;
+import litejava.ServerTiming;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Prometheus 指标插件 - 基于 Micrometer
@@ -30,9 +37,15 @@ import litejava.Next;
  * metrics.counter("orders_total", "type", "online").increment();
  * metrics.timer("api_latency").record(() -> doSomething());
  * 
- * // 访问 /metrics 获取 Prometheus 格式数据
+ * // 访问 /metrics 获取 Prometheus 格式数据（优先路由，服务器满载时也能及时采集）
  * }</pre>
  * 
+ * <p>开启 server.timing 时额外导出各请求阶段（route/mw/handler/json/write，见 {@link ServerTiming}）的
+ * 耗时直方图 http_server_phase_seconds，用于判断变慢发生在哪个阶段。桶计数是累计值，分位数按时间窗口计算：
+ * <pre>
+ * histogram_quantile(0.99, sum by (phase, le) (rate(http_server_phase_seconds_bucket[5m])))
+ * </pre>
+ * 
  * @see <a href="https://micrometer.io/docs">Micrometer Documentation</a>
  */
 public class MetricsPlugin extends MiddlewarePlugin {
@@ -44,6 +57,12 @@ public class MetricsPlugin extends MiddlewarePlugin {
     
     private Timer.Builder requestTimer;
     
+    private static final String PHASE_METRIC = "http_server_phase_seconds";
+    private static final List<String> PHASE_LABEL = Collections.singletonList("phase");
+    private static final List<String> PHASE_BUCKET_LABELS = Arrays.asList("phase", "le");
+    /** 导出的最大桶：2^24 微秒（约 16.8 秒），更慢的只计入 +Inf */
+    private static final int PHASE_MAX_BUCKET = 24;
+    
     public MetricsPlugin() {
         instance = this;
     }
@@ -63,10 +82,50 @@ public class MetricsPlugin extends MiddlewarePlugin {
         requestTimer = Timer.builder("http_server_requests_seconds")
             .description("HTTP request latency");
         
+        bindTiming(app.timingStats);
+        
         app.get(path, ctx -> {
             ctx.header("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
             ctx.text(registry.scrape());
-        });
+        }).priority();
+    }
+    
+    /**
+     * 导出请求阶段耗时直方图（未开启 timing 时计数为 0）
+     * 
+     * <p>Stats 的桶从不清零，只能导出累计计数由 Prometheus 按窗口求分位数；在进程内算出的分位数
+     * 是自启动以来的值，流量变化后几乎不动。桶边界每隔一个取一次（1µs、4µs ... 约 16.8s），保留 4 倍精度。
+     */
+    private void bindTiming(ServerTiming.Stats stats) {
+        new Collector() {
+            @Override
+            public List<MetricFamilySamples> collect() {
+                List<MetricFamilySamples.Sample> samples = new ArrayList<>();
+                for (int phase = 0; phase < ServerTiming.PHASES.length; phase++) {
+                    String name = ServerTiming.PHASES[phase];
+                    long[] buckets = stats.buckets(phase);
+                    long cumulative = 0;
+                    for (int i = 0; i < buckets.length; i++) {
+                        cumulative += buckets[i];
+                        // 第 i 个桶统计小于 2^i 微秒的耗时
+                        if (i <= PHASE_MAX_BUCKET && i % 2 == 0) {
+                            samples.add(phaseSample("_bucket", name, doubleToGoString((1L << i) / 1e6), cumulative));
+                        }
+                    }
+                    samples.add(phaseSample("_bucket", name, "+Inf", cumulative));
+                    samples.add(phaseSample("_count", name, null, cumulative));
+                    samples.add(phaseSample("_sum", name, null, stats.totalNanos(phase) / 1e9));
+                }
+                return Collections.singletonList(new MetricFamilySamples(PHASE_METRIC, Type.HISTOGRAM,
+                    "HTTP request phase latency", samples));
+            }
+        }.register(registry.getPrometheusRegistry());
+    }
+    
+    private static Collector.MetricFamilySamples.Sample phaseSample(String suffix, String phase, String le, double value) {
+        return le == null
+            ? new Collector.MetricFamilySamples.Sample(PHASE_METRIC + suffix, PHASE_LABEL, Collections.singletonList(phase), value)
+            : new Collector.MetricFamilySamples.Sample(PHASE_METRIC + suffix, PHASE_BUCKET_LABELS, Arrays.asList(phase, le), value);
     }
     
     @Override
@@ -23,7 +23,8 @@ import java.util.regex.Pattern;
  * <ul>
  *   <li>支持完整正则表达式</li>
  *   <li>支持参数格式约束：{@code /users/:id<\\d+>}</li>
- *   <li>O(n) 线性匹配，n 为路由数量</li>
+ *   <li>按首段分桶：首段为字面量的路由（如 {@code /admin/...}）只在请求首段相同时尝试，
+ *       首段含参数或通配符的路由对所有请求尝试；桶内保持注册顺序，匹配结果与逐条尝试一致</li>
  * </ul>
  * 
  * <h2>使用示例</h2>
@@ -42,7 +43,12 @@ import java.util.regex.Pattern;
  */
 public class RegexRouterPlugin extends RouterPlugin {
     
-    private final List<RegexRoute> regexRoutes = new ArrayList<>();
+    /** 首段为字面量的路由按首段分桶，每个桶按注册顺序并入了 {@link #dynamicRoutes} */
+    private final Map<String, List<RegexRoute>> buckets = new HashMap<>();
+    
+    /** 首段含参数或通配符的路由，所有请求都要尝试 */
+    private final List<RegexRoute> dynamicRoutes = new ArrayList<>();
+    
     private final List<Route> routeList = new ArrayList<>();
     private RegexRouterPlugin parent;
     
@@ -57,18 +63,40 @@ public class RegexRouterPlugin extends RouterPlugin {
     public Route route(String method, String path, Handler handler) {
         String fullPath = normalizePath(prefix + path);
         
-        RegexRouterPlugin root = getRegexRoot();
-        root.regexRoutes.add(new RegexRoute(method, fullPath, handler));
+        Route route = createRoute(method, fullPath, handler);
         
-        Route route = new Route(method, fullPath, handler);
+        RegexRouterPlugin root = getRegexRoot();
+        root.add(new RegexRoute(method, fullPath, route));
         root.routeList.add(route);
         
         return route;
     }
     
+    private void add(RegexRoute route) {
+        if (route.firstSegment != null) {
+            // 新桶先放入已注册的动态路由，保证桶内仍是注册顺序
+            buckets.computeIfAbsent(route.firstSegment, k -> new ArrayList<>(dynamicRoutes)).add(route);
+        } else {
+            dynamicRoutes.add(route);
+            for (List<RegexRoute> bucket : buckets.values()) {
+                bucket.add(route);
+            }
+        }
+    }
+    
+    /**
+     * 可能匹配 path 的路由（按注册顺序）：首段所在的桶，没有对应桶时只有动态路由
+     */
+    private List<RegexRoute> candidates(String path) {
+        if (path.isEmpty() || path.charAt(0) != '/') return dynamicRoutes;
+        int end = path.indexOf('/', 1);
+        List<RegexRoute> bucket = buckets.get(path.substring(1, end < 0 ? path.length() : end));
+        return bucket != null ? bucket : dynamicRoutes;
+    }
+    
     @Override
     public RouteMatch match(String method, String path) {
-        for (RegexRoute route : regexRoutes) {
+        for (RegexRoute route : candidates(path)) {
             if (!route.method.equals(method) && !route.method.equals("ANY")) {
                 continue;
             }
@@ -76,7 +104,8 @@ public class RegexRouterPlugin extends RouterPlugin {
             Matcher matcher = route.pattern.matcher(path);
             if (matcher.matches()) {
                 RouteMatch match = new RouteMatch();
-                match.handler = route.handler;
+                match.route = route.route;
+                match.handler = route.route.handler;
                 
                 // 提取参数
                 if (!route.paramNames.isEmpty()) {
@@ -100,7 +129,7 @@ public class RegexRouterPlugin extends RouterPlugin {
     
     @Override
     public boolean hasPath(String path) {
-        for (RegexRoute route : regexRoutes) {
+        for (RegexRoute route : candidates(path)) {
             if (route.pattern.matcher(path).matches()) {
                 return true;
             }
@@ -111,7 +140,7 @@ public class RegexRouterPlugin extends RouterPlugin {
     @Override
     public Set<String> getAllowedMethods(String path) {
         Set<String> methods = new LinkedHashSet<>();
-        for (RegexRoute route : regexRoutes) {
+        for (RegexRoute route : candidates(path)) {
             if (route.pattern.matcher(path).matches()) {
                 if ("ANY".equals(route.method)) {
                     methods.addAll(Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS"));
@@ -130,13 +159,14 @@ public class RegexRouterPlugin extends RouterPlugin {
     
     @Override
     public RouterPlugin group(String groupPrefix) {
-        return new RegexRouterPlugin(normalizePath(prefix + groupPrefix), getRegexRoot());
+        RegexRouterPlugin subRouter = new RegexRouterPlugin(normalizePath(prefix + groupPrefix), getRegexRoot());
+        subRouter.middlewares.addAll(middlewares);
+        return subRouter;
     }
     
     @Override
     public RouterPlugin group(String groupPrefix, Consumer<RouterPlugin> configure) {
-        RegexRouterPlugin subRouter = new RegexRouterPlugin(normalizePath(prefix + groupPrefix), getRegexRoot());
-        configure.accept(subRouter);
+        configure.accept(group(groupPrefix));
         return this;
     }
     
@@ -150,17 +180,23 @@ public class RegexRouterPlugin extends RouterPlugin {
     private static class RegexRoute {
         final String method;
         final String originalPath;
-        final Handler handler;
+        final Route route;
         final Pattern pattern;
         final List<String> paramNames;
         final String wildcardName;
+        /** 字面量首段，首段含参数或通配符时为 null */
+        final String firstSegment;
         
-        RegexRoute(String method, String path, Handler handler) {
+        RegexRoute(String method, String path, Route route) {
             this.method = method;
             this.originalPath = path;
-            this.handler = handler;
+            this.route = route;
             this.paramNames = new ArrayList<>();
             
+            int segmentEnd = path.indexOf('/', 1);
+            String segment = path.substring(1, segmentEnd < 0 ? path.length() : segmentEnd);
+            this.firstSegment = segment.indexOf(':') < 0 && segment.indexOf('*') < 0 ? segment : null;
+            
             String wildcardTemp = null;
             StringBuilder regex = new StringBuilder("^");
             int i = 0;
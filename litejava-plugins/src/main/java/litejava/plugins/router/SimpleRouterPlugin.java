@@ -33,8 +33,8 @@ import java.util.function.Consumer;
  */
 public class SimpleRouterPlugin extends RouterPlugin {
     
-    // method:path -> handler
-    private final Map<String, Handler> routes = new HashMap<>();
+    // method:path -> route
+    private final Map<String, Route> routes = new HashMap<>();
     private final List<Route> routeList = new ArrayList<>();
     
     public SimpleRouterPlugin() {}
@@ -51,10 +51,10 @@ public class SimpleRouterPlugin extends RouterPlugin {
         String fullPath = normalizePath(prefix + path);
         String key = method + ":" + fullPath;
         
-        SimpleRouterPlugin root = getSimpleRoot();
-        root.routes.put(key, handler);
+        Route route = createRoute(method, fullPath, handler);
         
-        Route route = new Route(method, fullPath, handler);
+        SimpleRouterPlugin root = getSimpleRoot();
+        root.routes.put(key, route);
         root.routeList.add(route);
         
         return route;
@@ -63,15 +63,16 @@ public class SimpleRouterPlugin extends RouterPlugin {
     @Override
     public RouteMatch match(String method, String path) {
         // 精确匹配
-        Handler handler = routes.get(method + ":" + path);
-        if (handler == null) {
-            handler = routes.get("ANY:" + path);
+        Route route = routes.get(method + ":" + path);
+        if (route == null) {
+            route = routes.get("ANY:" + path);
         }
         
-        if (handler == null) return null;
+        if (route == null) return null;
         
         RouteMatch match = new RouteMatch();
-        match.handler = handler;
+        match.route = route;
+        match.handler = route.handler;
         return match;
     }
     
@@ -108,13 +109,14 @@ public class SimpleRouterPlugin extends RouterPlugin {
     
     @Override
     public RouterPlugin group(String groupPrefix) {
-        return new SimpleRouterPlugin(normalizePath(prefix + groupPrefix), getSimpleRoot());
+        SimpleRouterPlugin subRouter = new SimpleRouterPlugin(normalizePath(prefix + groupPrefix), getSimpleRoot());
+        subRouter.middlewares.addAll(middlewares);
+        return subRouter;
     }
     
     @Override
     public RouterPlugin group(String groupPrefix, Consumer<RouterPlugin> configure) {
-        SimpleRouterPlugin subRouter = new SimpleRouterPlugin(normalizePath(prefix + groupPrefix), getSimpleRoot());
-        configure.accept(subRouter);
+        configure.accept(group(groupPrefix));
         return this;
     }
     
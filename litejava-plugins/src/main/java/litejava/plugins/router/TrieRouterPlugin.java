@@ -1,6 +1,8 @@
 package litejava.plugins.router;
 
+import litejava.Context;
 import litejava.Handler;
+import litejava.PathParams;
 import litejava.Route;
 import litejava.plugin.RouterPlugin;
 
@@ -20,6 +22,7 @@ import java.util.function.Consumer;
  * <p>特点：
  * <ul>
  *   <li>O(k) 匹配，k 为路径段数</li>
+ *   <li>在原始路径上按下标逐段扫描，不 split、不截取子串，匹配过程不分配对象</li>
  *   <li>支持路径参数 :id</li>
  *   <li>支持通配符 *filepath</li>
  *   <li>比 Radix Tree 简单，但内存占用稍高</li>
@@ -56,29 +59,47 @@ public class TrieRouterPlugin extends RouterPlugin {
     public Route route(String method, String path, Handler handler) {
         String fullPath = normalizePath(prefix + path);
         
-        TrieRouterPlugin root = getTrieRoot();
-        root.root.insert(fullPath, method, handler);
+        Route route = createRoute(method, fullPath, handler);
         
-        Route route = new Route(method, fullPath, handler);
+        TrieRouterPlugin root = getTrieRoot();
+        root.root.insert(fullPath, 0, method, route);
         root.routeList.add(route);
         
         return route;
     }
     
+    @Override
+    public Route match(Context ctx) {
+        int base = ctx.params.size();
+        Route route = root.search(ctx.path, 0, ctx.method, ctx.params, base);
+        if (route == null) {
+            ctx.params.truncate(base);
+        } else if (route.wildcard) {
+            ctx.wildcardPath = ctx.params.valueAt(ctx.params.size() - 1);
+        }
+        return route;
+    }
+    
     @Override
     public RouteMatch match(String method, String path) {
-        Map<String, String> params = new HashMap<>();
-        String[] wildcardHolder = new String[2];
-        
-        Handler handler = root.search(path, method, params, wildcardHolder);
-        if (handler == null) return null;
+        PathParams params = new PathParams(4);
+        Route route = root.search(path, 0, method, params, 0);
+        if (route == null) return null;
         
         RouteMatch match = new RouteMatch();
-        match.handler = handler;
-        match.params = params.isEmpty() ? null : params;
-        if (wildcardHolder[0] != null) {
-            match.wildcardName = wildcardHolder[0];
-            match.wildcardValue = wildcardHolder[1];
+        match.route = route;
+        match.handler = route.handler;
+        int count = params.size();
+        if (route.wildcard) {
+            count--;
+            match.wildcardName = params.nameAt(count);
+            match.wildcardValue = params.valueAt(count);
+        }
+        if (count > 0) {
+            match.params = new HashMap<>(4);
+            for (int i = 0; i < count; i++) {
+                match.params.put(params.nameAt(i), params.valueAt(i));
+            }
         }
         return match;
     }
@@ -100,13 +121,14 @@ public class TrieRouterPlugin extends RouterPlugin {
     
     @Override
     public RouterPlugin group(String groupPrefix) {
-        return new TrieRouterPlugin(normalizePath(prefix + groupPrefix), getTrieRoot());
+        TrieRouterPlugin subRouter = new TrieRouterPlugin(normalizePath(prefix + groupPrefix), getTrieRoot());
+        subRouter.middlewares.addAll(middlewares);
+        return subRouter;
     }
     
     @Override
     public RouterPlugin group(String groupPrefix, Consumer<RouterPlugin> configure) {
-        TrieRouterPlugin subRouter = new TrieRouterPlugin(normalizePath(prefix + groupPrefix), getTrieRoot());
-        configure.accept(subRouter);
+        configure.accept(group(groupPrefix));
         return this;
     }
     
@@ -116,41 +138,55 @@ public class TrieRouterPlugin extends RouterPlugin {
     
     /**
      * Trie 节点
+     * 
+     * <p>路径段用 [start, end) 下标表示，静态子节点存放在紧凑数组中按长度和内容逐个比较
+     * （同一层的子节点通常只有几个，比 HashMap 查找更快，且不需要为请求路径截取子串）。
      */
     private static class TrieNode {
-        Map<String, TrieNode> children = new HashMap<>();
+        private static final String[] NO_KEYS = new String[0];
+        private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+        
+        String[] keys = NO_KEYS;
+        TrieNode[] children = NO_CHILDREN;
         TrieNode paramChild;
         String paramName;
         TrieNode wildcardChild;
         String wildcardName;
-        Map<String, Handler> handlers;
+        Map<String, Route> handlers;
         
-        void insert(String path, String method, Handler handler) {
-            String[] segments = path.split("/");
+        void insert(String path, int start, String method, Route handler) {
             TrieNode current = this;
+            int len = path.length();
             
-            for (String segment : segments) {
-                if (segment.isEmpty()) continue;
+            while ((start = skipSlashes(path, start)) < len) {
+                int end = segmentEnd(path, start);
+                char c = path.charAt(start);
                 
-                if (segment.startsWith(":")) {
+                if (c == ':') {
                     // 参数节点
                     if (current.paramChild == null) {
                         current.paramChild = new TrieNode();
-                        current.paramName = segment.substring(1);
+                        current.paramName = path.substring(start + 1, end);
                     }
                     current = current.paramChild;
-                } else if (segment.startsWith("*")) {
+                } else if (c == '*') {
                     // 通配符节点
                     if (current.wildcardChild == null) {
                         current.wildcardChild = new TrieNode();
-                        current.wildcardName = segment.length() > 1 ? segment.substring(1) : "wildcard";
+                        current.wildcardName = end - start > 1 ? path.substring(start + 1, end) : "wildcard";
                     }
                     current = current.wildcardChild;
                     break; // 通配符后面不再有路径
                 } else {
                     // 静态节点
-                    current = current.children.computeIfAbsent(segment, k -> new TrieNode());
+                    TrieNode child = current.child(path, start, end);
+                    if (child == null) {
+                        child = new TrieNode();
+                        current.addChild(path.substring(start, end), child);
+                    }
+                    current = child;
                 }
+                start = end;
             }
             
             if (current.handlers == null) {
@@ -159,79 +195,86 @@ public class TrieRouterPlugin extends RouterPlugin {
             current.handlers.put(method, handler);
         }
         
-        Handler search(String path, String method, Map<String, String> params, String[] wildcardHolder) {
-            String[] segments = path.split("/");
-            return searchRecursive(segments, 0, method, params, wildcardHolder);
-        }
-        
-        private Handler searchRecursive(String[] segments, int index, String method, 
-                                        Map<String, String> params, String[] wildcardHolder) {
-            // 跳过空段
-            while (index < segments.length && segments[index].isEmpty()) {
-                index++;
-            }
+        Route search(String path, int start, String method, PathParams params, int slot) {
+            int len = path.length();
+            start = skipSlashes(path, start);
             
             // 到达末尾
-            if (index >= segments.length) {
+            if (start >= len) {
                 return getHandler(method);
             }
             
-            String segment = segments[index];
+            int end = segmentEnd(path, start);
             
             // 1. 优先匹配静态路径
-            TrieNode staticChild = children.get(segment);
+            TrieNode staticChild = child(path, start, end);
             if (staticChild != null) {
-                Handler h = staticChild.searchRecursive(segments, index + 1, method, params, wildcardHolder);
+                Route h = staticChild.search(path, end, method, params, slot);
                 if (h != null) return h;
             }
             
             // 2. 尝试参数匹配
             if (paramChild != null) {
-                params.put(paramName, segment);
-                Handler h = paramChild.searchRecursive(segments, index + 1, method, params, wildcardHolder);
+                params.set(slot, paramName, path, start, end);
+                Route h = paramChild.search(path, end, method, params, slot + 1);
                 if (h != null) return h;
-                params.remove(paramName);
+                params.truncate(slot);
             }
             
-            // 3. 尝试通配符匹配
+            // 3. 尝试通配符匹配：剩余的非空段，以 / 连接
             if (wildcardChild != null) {
-                StringBuilder remaining = new StringBuilder();
-                for (int i = index; i < segments.length; i++) {
-                    if (!segments[i].isEmpty()) {
-                        if (remaining.length() > 0) remaining.append("/");
-                        remaining.append(segments[i]);
-                    }
+                Route h = wildcardChild.getHandler(method);
+                if (h != null) {
+                    setRemaining(path, start, params, slot);
                 }
-                wildcardHolder[0] = wildcardName;
-                wildcardHolder[1] = remaining.toString();
-                return wildcardChild.getHandler(method);
+                return h;
             }
             
             return null;
         }
         
+        /**
+         * 通配符取值：路径中没有连续或结尾的 / 时直接引用原路径区间，否则拼接非空段
+         */
+        private void setRemaining(String path, int start, PathParams params, int slot) {
+            int end = path.length();
+            while (end > start && path.charAt(end - 1) == '/') end--;
+            int doubleSlash = path.indexOf("//", start);
+            if (doubleSlash < 0 || doubleSlash >= end) {
+                params.set(slot, wildcardName, path, start, end);
+                return;
+            }
+            StringBuilder remaining = new StringBuilder(end - start);
+            int i = start;
+            while ((i = skipSlashes(path, i)) < end) {
+                int segmentEnd = segmentEnd(path, i);
+                if (remaining.length() > 0) remaining.append('/');
+                remaining.append(path, i, segmentEnd);
+                i = segmentEnd;
+            }
+            String value = remaining.toString();
+            params.set(slot, wildcardName, value, 0, value.length());
+        }
+        
         boolean hasPath(String path) {
-            String[] segments = path.split("/");
-            return hasPathRecursive(segments, 0);
+            return hasPath(path, 0);
         }
         
-        private boolean hasPathRecursive(String[] segments, int index) {
-            while (index < segments.length && segments[index].isEmpty()) {
-                index++;
-            }
+        private boolean hasPath(String path, int start) {
+            start = skipSlashes(path, start);
             
-            if (index >= segments.length) {
+            if (start >= path.length()) {
                 return handlers != null;
             }
             
-            String segment = segments[index];
+            int end = segmentEnd(path, start);
             
-            TrieNode staticChild = children.get(segment);
-            if (staticChild != null && staticChild.hasPathRecursive(segments, index + 1)) {
+            TrieNode staticChild = child(path, start, end);
+            if (staticChild != null && staticChild.hasPath(path, end)) {
                 return true;
             }
             
-            if (paramChild != null && paramChild.hasPathRecursive(segments, index + 1)) {
+            if (paramChild != null && paramChild.hasPath(path, end)) {
                 return true;
             }
             
@@ -240,56 +283,81 @@ public class TrieRouterPlugin extends RouterPlugin {
         
         Set<String> getAllowedMethods(String path) {
             Set<String> methods = new LinkedHashSet<>();
-            String[] segments = path.split("/");
-            collectMethods(segments, 0, methods);
+            collectMethods(path, 0, methods);
             return methods;
         }
         
-        private void collectMethods(String[] segments, int index, Set<String> methods) {
-            while (index < segments.length && segments[index].isEmpty()) {
-                index++;
-            }
+        private void collectMethods(String path, int start, Set<String> methods) {
+            start = skipSlashes(path, start);
             
-            if (index >= segments.length) {
-                if (handlers != null) {
-                    for (String m : handlers.keySet()) {
-                        if ("ANY".equals(m)) {
-                            methods.addAll(Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS"));
-                        } else {
-                            methods.add(m);
-                        }
-                    }
-                }
+            if (start >= path.length()) {
+                collectHandlerMethods(handlers, methods);
                 return;
             }
             
-            String segment = segments[index];
+            int end = segmentEnd(path, start);
             
-            TrieNode staticChild = children.get(segment);
+            TrieNode staticChild = child(path, start, end);
             if (staticChild != null) {
-                staticChild.collectMethods(segments, index + 1, methods);
+                staticChild.collectMethods(path, end, methods);
             }
             
             if (paramChild != null) {
-                paramChild.collectMethods(segments, index + 1, methods);
+                paramChild.collectMethods(path, end, methods);
             }
             
-            if (wildcardChild != null && wildcardChild.handlers != null) {
-                for (String m : wildcardChild.handlers.keySet()) {
-                    if ("ANY".equals(m)) {
-                        methods.addAll(Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS"));
-                    } else {
-                        methods.add(m);
-                    }
+            if (wildcardChild != null) {
+                collectHandlerMethods(wildcardChild.handlers, methods);
+            }
+        }
+        
+        private static void collectHandlerMethods(Map<String, Route> handlers, Set<String> methods) {
+            if (handlers == null) return;
+            for (String m : handlers.keySet()) {
+                if ("ANY".equals(m)) {
+                    methods.addAll(Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS"));
+                } else {
+                    methods.add(m);
                 }
             }
         }
         
-        private Handler getHandler(String method) {
+        private Route getHandler(String method) {
             if (handlers == null) return null;
-            Handler h = handlers.get(method);
+            Route h = handlers.get(method);
             if (h == null) h = handlers.get("ANY");
             return h;
         }
+        
+        /**
+         * 查找与 path[start, end) 相同的静态子节点
+         */
+        private TrieNode child(String path, int start, int end) {
+            int len = end - start;
+            String[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++) {
+                String key = keys[i];
+                if (key.length() == len && path.regionMatches(start, key, 0, len)) return children[i];
+            }
+            return null;
+        }
+        
+        private void addChild(String key, TrieNode child) {
+            int n = keys.length;
+            keys = Arrays.copyOf(keys, n + 1);
+            children = Arrays.copyOf(children, n + 1);
+            keys[n] = key;
+            children[n] = child;
+        }
+        
+        private static int skipSlashes(String path, int start) {
+            while (start < path.length() && path.charAt(start) == '/') start++;
+            return start;
+        }
+        
+        private static int segmentEnd(String path, int start) {
+            int end = path.indexOf('/', start);
+            return end < 0 ? path.length() : end;
+        }
     }
 }
@@ -3,6 +3,7 @@ package litejava.plugins.security;
 import litejava.Context;
 import litejava.MiddlewarePlugin;
 import litejava.Next;
+import litejava.StateKey;
 
 import java.util.HashSet;
 import java.util.Map;
@@ -44,13 +45,16 @@ import java.util.function.Function;
  * 
  * // 在 Handler 中获取认证信息
  * app.get("/api/me", ctx -> {
- *     Map<String, Object> user = (Map) ctx.state.get("auth");
+ *     Map<String, Object> user = ctx.get(AuthPlugin.AUTH);  // 或 ctx.state.get("auth")
  *     ctx.ok(user);
  * });
  * }</pre>
  */
 public class AuthPlugin extends MiddlewarePlugin {
     
+    /** 认证信息的默认状态键 */
+    public static final StateKey<Map<String, Object>> AUTH = StateKey.of("auth");
+    
     /** 默认实例 */
     public static AuthPlugin instance;
     
@@ -70,7 +74,9 @@ public class AuthPlugin extends MiddlewarePlugin {
     public String tokenPrefix = "Bearer ";
     
     /** 认证信息存储到 ctx.state 的 key，默认 "auth" */
-    public String stateKey = "auth";
+    public String stateKey = AUTH.name;
+    
+    private StateKey<Map<String, Object>> key = AUTH;
     
     /** 未认证时的错误消息 */
     public String unauthorizedMessage = "Unauthorized";
@@ -125,6 +131,7 @@ public class AuthPlugin extends MiddlewarePlugin {
         // 从配置文件读取其他配置
         headerName = app.conf.getString("auth", "headerName", headerName);
         tokenPrefix = app.conf.getString("auth", "tokenPrefix", tokenPrefix);
+        key = StateKey.of(stateKey);
     }
     
     @Override
@@ -151,7 +158,7 @@ public class AuthPlugin extends MiddlewarePlugin {
         // 认证
         if (authenticator == null) {
             // 没有设置认证函数，只检查 token 是否存在
-            ctx.state.put(stateKey, Map.of("token", token));
+            ctx.set(key, Map.of("token", token));
             next.run();
             return;
         }
@@ -163,7 +170,7 @@ public class AuthPlugin extends MiddlewarePlugin {
         }
         
         // 存储认证信息
-        ctx.state.put(stateKey, authInfo);
+        ctx.set(key, authInfo);
         next.run();
     }
     
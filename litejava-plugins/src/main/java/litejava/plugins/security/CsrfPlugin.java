@@ -3,6 +3,7 @@ package litejava.plugins.security;
 import litejava.Context;
 import litejava.MiddlewarePlugin;
 import litejava.Next;
+import litejava.StateKey;
 
 import java.util.Map;
 import java.util.Set;
@@ -35,6 +36,9 @@ import java.util.UUID;
  */
 public class CsrfPlugin extends MiddlewarePlugin {
     
+    /** 当前请求的 CSRF token（供模板渲染表单隐藏字段） */
+    public static final StateKey<String> CSRF_TOKEN = StateKey.of("csrfToken");
+    
     private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
     public String headerName = "X-CSRF-Token";
     public String paramName = "_csrf";
@@ -49,8 +53,7 @@ public class CsrfPlugin extends MiddlewarePlugin {
     
     @Override
     public void handle(Context ctx, Next next) throws Exception {
-        @SuppressWarnings("unchecked")
-        Map<String, Object> session = (Map<String, Object>) ctx.state.get("session");
+        Map<String, Object> session = SessionPlugin.get(ctx);
         
         if (session == null) {
             throw new IllegalStateException("CsrfPlugin requires SessionPlugin");
@@ -62,7 +65,7 @@ public class CsrfPlugin extends MiddlewarePlugin {
             token = UUID.randomUUID().toString();
             session.put(sessionKey, token);
         }
-        ctx.state.put("csrfToken", token);
+        ctx.set(CSRF_TOKEN, token);
         
         // 安全方法不检查
         if (SAFE_METHODS.contains(ctx.method)) {
@@ -86,6 +89,6 @@ public class CsrfPlugin extends MiddlewarePlugin {
     }
     
     public static String getToken(Context ctx) {
-        return (String) ctx.state.get("csrfToken");
+        return ctx.get(CSRF_TOKEN);
     }
 }
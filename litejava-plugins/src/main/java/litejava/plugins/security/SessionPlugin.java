@@ -3,6 +3,7 @@ package litejava.plugins.security;
 import litejava.Context;
 import litejava.MiddlewarePlugin;
 import litejava.Next;
+import litejava.StateKey;
 
 import java.util.Map;
 import java.util.UUID;
@@ -32,6 +33,12 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class SessionPlugin extends MiddlewarePlugin {
     
+    /** 当前请求的 Session ID */
+    public static final StateKey<String> SESSION_ID = StateKey.of("sessionId");
+    
+    /** 当前请求的 Session 数据 */
+    public static final StateKey<Map<String, Object>> SESSION = StateKey.of("session");
+    
     public final Map<String, Map<String, Object>> sessions = new ConcurrentHashMap<>();
     
     // 默认配置
@@ -66,8 +73,8 @@ public class SessionPlugin extends MiddlewarePlugin {
             ctx.header("Set-Cookie", cookie.toString());
         }
         
-        ctx.state.put("sessionId", sessionId);
-        ctx.state.put("session", sessions.get(sessionId));
+        ctx.set(SESSION_ID, sessionId);
+        ctx.set(SESSION, sessions.get(sessionId));
         
         next.run();
     }
@@ -85,8 +92,7 @@ public class SessionPlugin extends MiddlewarePlugin {
         return null;
     }
     
-    @SuppressWarnings("unchecked")
     public static Map<String, Object> get(Context ctx) {
-        return (Map<String, Object>) ctx.state.get("session");
+        return ctx.get(SESSION);
     }
 }
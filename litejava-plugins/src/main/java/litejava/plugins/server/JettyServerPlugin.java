@@ -3,17 +3,27 @@ package litejava.plugins.server;
 import litejava.*;
 import litejava.exception.LiteJavaException;
 import litejava.plugin.ServerPlugin;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.NetworkConnector;
 import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Jetty HTTP 服务器插件 - Jetty 11 (Jakarta Servlet)
@@ -21,6 +31,14 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class JettyServerPlugin extends ServerPlugin {
     
     public Server server;
+    
+    /**
+     * 业务线程池：Jetty 线程只解析请求，优先路由就地处理，其余请求以 Servlet 异步模式交给此线程池排队。
+     * server.queue.* 的排队上限和排队超时作用在这一层，超出时返回 503 + Retry-After；
+     * Jetty 自己的线程池保持默认配置（其任务队列里还有连接和 IO 任务，不能按请求拒绝）
+     */
+    public ThreadPoolExecutor workers;
+    
     public int minThreads = 8;
     public int maxThreads = 200;
     public int idleTimeout = 60000;
@@ -28,24 +46,8 @@ public class JettyServerPlugin extends ServerPlugin {
     // 需要读取 body 的方法
     private static final String[] BODY_METHODS = {"POST", "PUT", "PATCH"};
     
-    // Context 对象池
-    private final ConcurrentLinkedQueue<Context> contextPool = new ConcurrentLinkedQueue<>();
-    private static final int POOL_MAX_SIZE = 1024;
-    
-    protected Context acquireContext() {
-        Context ctx = contextPool.poll();
-        if (ctx == null) {
-            ctx = new Context();
-        }
-        ctx.app = app;
-        return ctx;
-    }
-    
-    protected void releaseContext(Context ctx) {
-        if (ctx == null || contextPool.size() >= POOL_MAX_SIZE) return;
-        ctx.reset();
-        contextPool.offer(ctx);
-    }
+    /** 文件响应每次读取的块大小（缓冲区取自连接器的 ByteBufferPool） */
+    private static final int FILE_CHUNK_SIZE = 64 * 1024;
     
     @Override
     public void config() {
@@ -67,6 +69,11 @@ public class JettyServerPlugin extends ServerPlugin {
             connector.setPort(app.port);
             server.addConnector(connector);
             
+            // 核心线程数取 maxThreads 并允许超时回收：先扩到 maxThreads 再排队（有界队列下 ThreadPoolExecutor 只在队列满时才扩容）
+            workers = new ThreadPoolExecutor(maxThreads, maxThreads, idleTimeout, TimeUnit.MILLISECONDS,
+                createWorkQueue(), rejectWithServiceUnavailable());
+            workers.allowCoreThreadTimeOut(true);
+            
             server.setHandler(new JettyHandler());
             server.start();
             
@@ -85,6 +92,24 @@ public class JettyServerPlugin extends ServerPlugin {
                 // ignore
             }
         }
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+    
+    @Override
+    public void stopAccepting() {
+        if (server == null) return;
+        // 关闭监听端口，已建立的连接继续处理
+        for (Connector connector : server.getConnectors()) {
+            if (connector instanceof NetworkConnector) {
+                try {
+                    ((NetworkConnector) connector).close();
+                } catch (Exception e) {
+                    // ignore
+                }
+            }
+        }
     }
     
     private class JettyHandler extends AbstractHandler {
@@ -92,16 +117,69 @@ public class JettyServerPlugin extends ServerPlugin {
         public void handle(String target, Request baseRequest, 
                           HttpServletRequest request, HttpServletResponse response) {
             Context ctx = acquireContext();
+            baseRequest.setHandled(true);
             
             try {
                 parseRequest(request, ctx);
-                app.handle(ctx);
             } catch (Exception e) {
-                app.handleError(ctx, e);
-            } finally {
-                sendResponse(response, ctx);
-                baseRequest.setHandled(true);
-                releaseContext(ctx);
+                handleError(ctx, e);
+                complete(request, response, ctx);
+                return;
+            }
+            
+            if (!isPriority(ctx)) {
+                // 普通请求：开启异步模式释放 Jetty 线程，在业务线程池排队处理
+                AsyncContext async = request.startAsync();
+                async.setTimeout(0);
+                workers.execute(timed(() -> process(request, response, ctx)));
+                return;
+            }
+            process(request, response, ctx);
+        }
+    }
+    
+    /**
+     * 执行 app.handle 并发送响应
+     */
+    protected void process(HttpServletRequest request, HttpServletResponse response, Context ctx) {
+        try {
+            if (!shed(ctx, 0)) {
+                app.handle(ctx);
+            }
+        } catch (Exception e) {
+            handleError(ctx, e);
+        } finally {
+            complete(request, response, ctx);
+        }
+    }
+    
+    /**
+     * 发送响应并归还 Context
+     * 
+     * <p>异步响应时开启 Servlet 异步模式释放 Jetty 线程，future 完成后在 Jetty 线程池发送响应并 complete()。
+     * 请求已在异步模式（在业务线程池处理）时沿用同一个 AsyncContext。
+     */
+    protected void complete(HttpServletRequest request, HttpServletResponse response, Context ctx) {
+        AsyncContext started = request.isAsyncStarted() ? request.getAsyncContext() : null;
+        if (ctx.isDeferred()) {
+            AsyncContext async = started != null ? started : request.startAsync();
+            async.setTimeout(0);
+            deferResponse(ctx, () -> async.start(() -> {
+                try {
+                    sendResponse(response, ctx);
+                } finally {
+                    releaseContext(ctx);
+                    async.complete();
+                }
+            }));
+            return;
+        }
+        try {
+            sendResponse(response, ctx);
+        } finally {
+            releaseContext(ctx);
+            if (started != null) {
+                started.complete();
             }
         }
     }
@@ -119,43 +197,22 @@ public class JettyServerPlugin extends ServerPlugin {
         ctx.query = request.getQueryString();
         ctx.remoteAddr = request.getRemoteAddr();
         
-        // 只有有 query string 时才解析参数
-        if (ctx.query != null && !ctx.query.isEmpty()) {
-            Map<String, String[]> params = request.getParameterMap();
-            for (Map.Entry<String, String[]> entry : params.entrySet()) {
-                String[] v = entry.getValue();
-                if (v.length > 0) ctx.queryParams.put(entry.getKey(), v[0]);
+        // 请求头和查询参数在 handler 首次访问时才解析
+        ctx.setHeaderLoader(map -> {
+            Enumeration<String> names = request.getHeaderNames();
+            while (names.hasMoreElements()) {
+                String name = names.nextElement();
+                Enumeration<String> values = request.getHeaders(name);
+                while (values.hasMoreElements()) {
+                    map.add(name, values.nextElement());
+                }
             }
-        }
+        }, request::getHeader);
         
-        // 只有 POST/PUT/PATCH 才读取 body
+        // 只有 POST/PUT/PATCH 才设置 body
         if (needsBody(ctx.method)) {
-            String contentType = request.getContentType();
-            if (contentType != null) {
-                ctx.headers.put("Content-Type", contentType);
-            }
-            
-            int contentLength = request.getContentLength();
-            if (contentLength > 0) {
-                byte[] body = new byte[contentLength];
-                InputStream is = request.getInputStream();
-                int offset = 0;
-                while (offset < contentLength) {
-                    int read = is.read(body, offset, contentLength - offset);
-                    if (read == -1) break;
-                    offset += read;
-                }
-                ctx.setRequestBody(body);
-            } else if (contentLength < 0) {
-                ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
-                InputStream is = request.getInputStream();
-                byte[] buffer = new byte[4096];
-                int len;
-                while ((len = is.read(buffer)) != -1) {
-                    bos.write(buffer, 0, len);
-                }
-                ctx.setRequestBody(bos.toByteArray());
-            }
+            // body 延迟读取，handler 未读取时由 Jetty 负责丢弃
+            ctx.setRequestBody(request.getInputStream(), request.getContentLengthLong(), maxRequestSize);
         }
     }
     
@@ -166,17 +223,71 @@ public class JettyServerPlugin extends ServerPlugin {
             Map<String, String> headers = ctx.getResponseHeaders();
             if (!headers.isEmpty()) {
                 for (Map.Entry<String, String> entry : headers.entrySet()) {
-                    response.setHeader(entry.getKey(), entry.getValue());
+                    response.addHeader(entry.getKey(), entry.getValue());
                 }
             }
             
+            if (ctx.isFileResponse()) {
+                sendFile(response, ctx);
+                return;
+            }
+            
+            if (ctx.isStreaming()) {
+                // 不设置 Content-Length，Jetty 自动使用 chunked 传输编码
+                writeStream(ctx, response.getOutputStream());
+                return;
+            }
+            
             byte[] body = ctx.getResponseBody();
             if (body.length > 0) {
                 response.setContentLength(body.length);
                 response.getOutputStream().write(body);
             }
         } catch (Exception e) {
-            // ignore
+            if ((ctx.isStreaming() || ctx.isFileResponse()) && response instanceof Response) {
+                // 响应已提交，中断连接避免客户端收到截断但"完整"的响应
+                app.log.error("Stream response failed: " + e.getMessage());
+                ((Response) response).getHttpChannel().abort(e);
+            }
+        }
+    }
+    
+    /**
+     * 发送文件响应：按区间定位读取到固定大小的池化直接缓冲区后写出
+     * 
+     * <p>内存占用与文件大小无关，也不为每个请求建立内存映射。
+     */
+    protected void sendFile(HttpServletResponse response, Context ctx) throws Exception {
+        long length = ctx.getResponseFileLength();
+        response.setContentLengthLong(length);
+        if (!(response instanceof Response)) {
+            transferFile(ctx, response.getOutputStream());
+            return;
+        }
+        
+        Response jettyResponse = (Response) response;
+        HttpOutput out = jettyResponse.getHttpOutput();
+        ByteBufferPool pool = jettyResponse.getHttpChannel().getByteBufferPool();
+        ByteBuffer buffer = pool.acquire(FILE_CHUNK_SIZE, true);
+        try (FileChannel file = FileChannel.open(ctx.getResponseFile().toPath(), StandardOpenOption.READ)) {
+            long position = ctx.getResponseFilePosition();
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear();
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+                int n = file.read(buffer, position);
+                if (n <= 0) {
+                    throw new EOFException("File truncated while sending: " + ctx.getResponseFile());
+                }
+                buffer.flip();
+                out.write(buffer);
+                position += n;
+                remaining -= n;
+            }
+        } finally {
+            pool.release(buffer);
         }
     }
 }
@@ -0,0 +1,112 @@
+package litejava.plugins.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Netty chunked 响应输出流 - 把 {@link litejava.StreamWriter} 的写入转换为 HttpContent
+ *
+ * <p>写入的数据先累积到 8KB 缓冲区，写满或 flush() 时作为一个 chunk 发送，
+ * close() 发送 LastHttpContent 结束响应。
+ *
+ * <p>必须在 EventLoop 之外的线程使用：当 Channel 不可写（发送缓冲区已满，客户端读取较慢）时，
+ * 会阻塞等待当前 chunk 写出，避免生成速度快于网络时数据在堆外内存中无限堆积。
+ */
+public class NettyChunkedOutputStream extends OutputStream {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final ChannelHandlerContext ctx;
+    private ByteBuf buffer;
+    private ChannelFuture lastFuture;
+    private boolean closed;
+
+    public NettyChunkedOutputStream(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer().writeByte(b);
+        if (!buffer.isWritable()) flush();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            ByteBuf buf = buffer();
+            int n = Math.min(len, buf.writableBytes());
+            buf.writeBytes(b, off, n);
+            off += n;
+            len -= n;
+            if (!buf.isWritable()) flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (buffer == null || !buffer.isReadable()) return;
+        ChannelFuture future = ctx.writeAndFlush(new DefaultHttpContent(buffer));
+        buffer = null;
+        if (!ctx.channel().isWritable()) {
+            await(future);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        flush();
+        closed = true;
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+        lastFuture = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+    }
+
+    /**
+     * 最后一次写出（LastHttpContent）的 Future，close() 之后可用，用于非 Keep-Alive 时关闭连接
+     */
+    public ChannelFuture lastFuture() {
+        return lastFuture;
+    }
+
+    /**
+     * 放弃输出（写入器异常时调用），释放缓冲区，不发送 LastHttpContent
+     */
+    public void abort() {
+        closed = true;
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+    }
+
+    private ByteBuf buffer() {
+        if (buffer == null) {
+            buffer = ctx.alloc().buffer(CHUNK_SIZE, CHUNK_SIZE);
+        }
+        return buffer;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (!ctx.channel().isActive()) throw new IOException("Connection closed");
+    }
+
+    private static void await(ChannelFuture future) throws IOException {
+        future.awaitUninterruptibly();
+        if (!future.isSuccess()) {
+            throw new IOException("Failed to write chunk", future.cause());
+        }
+    }
+}
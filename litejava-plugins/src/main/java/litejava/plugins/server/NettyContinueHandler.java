@@ -0,0 +1,65 @@
+package litejava.plugins.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.*;
+import io.netty.util.ReferenceCountUtil;
+import litejava.App;
+import litejava.Context;
+
+/**
+ * Expect: 100-continue 预路由 - 放在 HttpServerCodec 之后、请求处理器之前
+ *
+ * <p>先按请求行匹配路由：没有匹配的路由时不回 100 Continue，以空请求体把请求交给 app（返回 404/405），
+ * 客户端不必发送请求体；请求标记为 Connection: close，响应后关闭连接，
+ * 客户端不等 100 Continue 就发出的请求体直接丢弃，不会被当作下一个请求解析。
+ *
+ * <p>匹配到路由的请求原样传递，handler 首次读取请求体时由 {@link NettyRequestBody} 回 100 Continue。
+ */
+public class NettyContinueHandler extends ChannelInboundHandlerAdapter {
+
+    private final App app;
+
+    /** 正在丢弃被拒绝请求的请求体 */
+    private boolean discarding;
+
+    public NettyContinueHandler(App app) {
+        this.app = app;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (discarding && msg instanceof HttpContent) {
+            discarding = !(msg instanceof LastHttpContent);
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        if (msg instanceof HttpRequest && !(msg instanceof FullHttpRequest)) {
+            HttpRequest head = (HttpRequest) msg;
+            if (head.decoderResult().isSuccess() && HttpUtil.is100ContinueExpected(head) && !routable(head)) {
+                discarding = true;
+                ctx.fireChannelRead(withoutBody(head));
+                return;
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    private boolean routable(HttpRequest head) {
+        Context probe = new Context();
+        probe.method = head.method().name();
+        probe.path = new QueryStringDecoder(head.uri()).path();
+        return app.match(probe) != null;
+    }
+
+    private static FullHttpRequest withoutBody(HttpRequest head) {
+        HttpHeaders headers = head.headers().copy();
+        headers.remove(HttpHeaderNames.EXPECT);
+        headers.remove(HttpHeaderNames.TRANSFER_ENCODING);
+        headers.set(HttpHeaderNames.CONTENT_LENGTH, 0);
+        headers.set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        return new DefaultFullHttpRequest(head.protocolVersion(), head.method(), head.uri(),
+            Unpooled.EMPTY_BUFFER, headers, EmptyHttpHeaders.INSTANCE);
+    }
+}
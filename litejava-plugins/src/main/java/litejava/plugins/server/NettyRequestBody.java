@@ -0,0 +1,160 @@
+package litejava.plugins.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+
+/**
+ * Netty 流式请求体 - 把 EventLoop 收到的 HttpContent 交给 handler 线程按需读取
+ *
+ * <p>代替 HttpObjectAggregator：请求头到达后立即路由和执行 handler，请求体不在内存中聚合。
+ * 未读取的数据最多缓存 64KB，超过时暂停从连接读取（autoRead），handler 读走一半后恢复，
+ * 内存占用与请求体大小无关；大小限制由 {@link litejava.Context#bodyStream()} 按 maxRequestSize 执行。
+ *
+ * <p>请求带 Expect: 100-continue 时，handler 首次读取请求体才回 100 Continue，
+ * 不读取请求体就返回的请求（认证失败、413 等）不会让客户端发送请求体。
+ *
+ * <p>{@link #offer} 和 {@link #fail} 在 EventLoop 调用；读取必须在 EventLoop 之外的线程，
+ * 否则等待后续 HttpContent 时会阻塞 EventLoop 本身。
+ */
+public class NettyRequestBody extends InputStream {
+
+    private static final int HIGH_WATER_MARK = 64 * 1024;
+    private static final int LOW_WATER_MARK = HIGH_WATER_MARK / 2;
+
+    private final Channel channel;
+    private final ArrayDeque<ByteBuf> chunks = new ArrayDeque<>();
+    private boolean expectContinue;
+    private int buffered;
+    private boolean paused;
+    private boolean complete;
+    private boolean closed;
+    private IOException failure;
+
+    public NettyRequestBody(Channel channel, boolean expectContinue) {
+        this.channel = channel;
+        this.expectContinue = expectContinue;
+    }
+
+    /**
+     * 追加收到的请求体数据（EventLoop 调用，msg 由调用方释放）
+     */
+    public synchronized void offer(HttpContent content) {
+        ByteBuf data = content.content();
+        if (!closed && data.isReadable()) {
+            chunks.add(data.retain());
+            buffered += data.readableBytes();
+            if (buffered >= HIGH_WATER_MARK && !paused) {
+                paused = true;
+                channel.config().setAutoRead(false);
+            }
+        }
+        if (content instanceof LastHttpContent) {
+            complete = true;
+        }
+        notifyAll();
+    }
+
+    /**
+     * 连接在请求体接收完之前关闭（EventLoop 调用），唤醒等待中的读取
+     */
+    public synchronized void fail(IOException cause) {
+        if (complete) return;
+        failure = cause;
+        release();
+        notifyAll();
+    }
+
+    /**
+     * 请求体是否已全部到达（未全部到达时响应后不能复用连接）
+     */
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * 是否因缓存已满暂停了连接读取（此时由读取方恢复 autoRead）
+     */
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (closed) throw new IOException("Stream closed");
+        if (expectContinue) {
+            expectContinue = false;
+            if (!complete) {
+                channel.writeAndFlush(new DefaultFullHttpResponse(
+                    HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE, Unpooled.EMPTY_BUFFER));
+            }
+        }
+        while (chunks.isEmpty()) {
+            if (complete) return -1;
+            if (failure != null) throw failure;
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading request body", e);
+            }
+            if (closed) throw new IOException("Stream closed");
+        }
+        ByteBuf head = chunks.peek();
+        int n = Math.min(len, head.readableBytes());
+        head.readBytes(b, off, n);
+        if (!head.isReadable()) {
+            chunks.poll().release();
+        }
+        buffered -= n;
+        if (paused && buffered <= LOW_WATER_MARK) {
+            paused = false;
+            channel.config().setAutoRead(true);
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized int available() {
+        return buffered;
+    }
+
+    /**
+     * 结束读取（响应发出后由服务器调用），丢弃尚未读取和之后到达的数据
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        release();
+        notifyAll();
+    }
+
+    private void release() {
+        ByteBuf chunk;
+        while ((chunk = chunks.poll()) != null) {
+            chunk.release();
+        }
+        buffered = 0;
+        if (paused) {
+            paused = false;
+            channel.config().setAutoRead(true);
+        }
+    }
+}
@@ -8,12 +8,17 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.*;
+import io.netty.util.ReferenceCountUtil;
 import litejava.*;
 import litejava.exception.LiteJavaException;
 import litejava.plugin.ServerPlugin;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 /**
@@ -36,8 +41,13 @@ import java.util.function.Supplier;
  * server.threads.worker=0       # 0 = CPU cores * 2
  * server.maxRequestSize=10485760
  * server.backlog=1024
+ * server.queue.capacity=1024    # 处理中的请求数上限（含未完成的异步/流式响应），超出时返回 503
  * }</pre>
  * 
+ * <p>没有请求体的请求在 EventLoop 上直接执行 handler；带请求体的请求在请求头到达后
+ * 交给 streamExecutor 执行，请求体由 {@link NettyRequestBody} 边接收边读取，不在内存中聚合。
+ * 没有等待队列，不支持 server.queue.timeout。
+ * 
  * <h2>使用</h2>
  * <pre>{@code
  * app.use(new NettyServerPlugin());
@@ -49,34 +59,19 @@ public class NettyServerPlugin extends ServerPlugin {
     public EventLoopGroup workerGroup;
     public Channel channel;
     
+    /** 阻塞任务执行器（读取请求体的 handler、流式响应写入器，不能在 EventLoop 上执行），为 null 时启动时创建 */
+    public ExecutorService streamExecutor;
+    
     // Netty 特有配置
     public int bossThreads = 1;
     public int workerThreads = 0;  // 0 = Netty 默认 (CPU cores * 2)
     
-    // Context 对象池 (类似 Gin sync.Pool)
-    private final ConcurrentLinkedQueue<Context> contextPool = new ConcurrentLinkedQueue<>();
-    private static final int POOL_MAX_SIZE = 1024;
-    
-    protected Context acquireContext() {
-        Context ctx = contextPool.poll();
-        if (ctx == null) {
-            ctx = new Context();
-        }
-        ctx.app = app;
-        return ctx;
-    }
-    
-    protected void releaseContext(Context ctx) {
-        if (ctx == null || contextPool.size() >= POOL_MAX_SIZE) return;
-        ctx.reset();
-        contextPool.offer(ctx);
-    }
-    
     @Override
     public void config() {
         super.config();
         bossThreads = app.conf.getInt("server.threads", "boss", bossThreads);
         workerThreads = app.conf.getInt("server.threads", "worker", workerThreads);
+        warnQueueTimeoutIgnored();
     }
     
     @Override
@@ -85,6 +80,15 @@ public class NettyServerPlugin extends ServerPlugin {
         workerGroup = workerThreads > 0 ? 
             new NioEventLoopGroup(workerThreads) : new NioEventLoopGroup();
         
+        if (streamExecutor == null) {
+            AtomicInteger seq = new AtomicInteger();
+            streamExecutor = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "netty-stream-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
@@ -98,7 +102,7 @@ public class NettyServerPlugin extends ServerPlugin {
                     protected void initChannel(SocketChannel ch) {
                         ch.pipeline()
                             .addLast(new HttpServerCodec())
-                            .addLast(new HttpObjectAggregator(maxRequestSize))
+                            .addLast(new NettyContinueHandler(app))
                             .addLast(createHandler());
                     }
                 });
@@ -115,44 +119,56 @@ public class NettyServerPlugin extends ServerPlugin {
         if (channel != null) channel.close();
         if (bossGroup != null) bossGroup.shutdownGracefully();
         if (workerGroup != null) workerGroup.shutdownGracefully();
+        if (streamExecutor != null) streamExecutor.shutdown();
+    }
+    
+    @Override
+    public void stopAccepting() {
+        // 只关闭监听 Channel，已建立的连接继续处理
+        if (channel != null) channel.close().syncUninterruptibly();
     }
     
     /**
      * 创建请求处理器，子类可覆盖以实现虚拟线程版本
      */
-    protected SimpleChannelInboundHandler<FullHttpRequest> createHandler() {
+    protected ChannelInboundHandler createHandler() {
         return new RequestHandler();
     }
     
     /**
      * 解析 HTTP 请求
      */
-    protected void parseRequest(FullHttpRequest request, Context ctx) {
+    protected void parseRequest(HttpRequest request, NettyRequestBody body, Context ctx) {
         ctx.method = request.method().name();
         
-        QueryStringDecoder decoder = new QueryStringDecoder(request.uri());
-        ctx.path = decoder.path();
-        ctx.query = request.uri().contains("?") ? 
-            request.uri().substring(request.uri().indexOf("?") + 1) : null;
-        
-        for (Map.Entry<String, String> entry : request.headers()) {
-            ctx.headers.put(entry.getKey(), entry.getValue());
-        }
+        String uri = request.uri();
+        int q = uri.indexOf('?');
+        ctx.path = new QueryStringDecoder(uri).path();
+        ctx.query = q >= 0 ? uri.substring(q + 1) : null;
         
-        decoder.parameters().forEach((k, v) -> {
-            if (!v.isEmpty()) ctx.queryParams.put(k, v.get(0));
-        });
+        // 请求头和查询参数在 handler 首次访问时才解析
+        HttpHeaders headers = request.headers();
+        ctx.setHeaderLoader(map -> {
+            for (Map.Entry<String, String> entry : headers) {
+                map.add(entry.getKey(), entry.getValue());
+            }
+        }, headers::get);
         
-        ByteBuf content = request.content();
-        byte[] body = new byte[content.readableBytes()];
-        content.readBytes(body);
-        ctx.setRequestBody(body);
+        // 请求体边接收边读取，不在内存中聚合
+        if (body != null) {
+            ctx.setRequestBody(body, HttpUtil.getContentLength(request, -1L), maxRequestSize);
+        }
     }
     
     /**
      * 发送 HTTP 响应 (支持 Keep-Alive)
      */
-    protected void sendResponse(ChannelHandlerContext nettyCtx, FullHttpRequest request, Context ctx) {
+    protected void sendResponse(ChannelHandlerContext nettyCtx, boolean keepAlive, Context ctx) {
+        if (ctx.isFileResponse()) {
+            sendFileResponse(nettyCtx, keepAlive, ctx);
+            return;
+        }
+        
         byte[] body = ctx.getResponseBody();
         ByteBuf content = Unpooled.wrappedBuffer(body);
         
@@ -164,34 +180,194 @@ public class NettyServerPlugin extends ServerPlugin {
         
         response.headers().set(HttpHeaderNames.CONTENT_LENGTH, body.length);
         for (Map.Entry<String, String> entry : ctx.getResponseHeaders().entrySet()) {
-            response.headers().set(entry.getKey(), entry.getValue());
+            response.headers().add(entry.getKey(), entry.getValue());
         }
         
         // 支持 HTTP Keep-Alive
-        boolean keepAlive = HttpUtil.isKeepAlive(request);
         if (keepAlive) {
             response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
             nettyCtx.writeAndFlush(response);
         } else {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
             nettyCtx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
         }
     }
     
-    private class RequestHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+    /**
+     * 发送文件响应：DefaultFileRegion 零拷贝传输（sendfile），文件内容不进入 JVM 内存
+     */
+    protected void sendFileResponse(ChannelHandlerContext nettyCtx, boolean keepAlive, Context ctx) {
+        HttpResponse response = new DefaultHttpResponse(
+            HttpVersion.HTTP_1_1,
+            HttpResponseStatus.valueOf(ctx.getResponseStatus())
+        );
+        for (Map.Entry<String, String> entry : ctx.getResponseHeaders().entrySet()) {
+            response.headers().add(entry.getKey(), entry.getValue());
+        }
+        long length = ctx.getResponseFileLength();
+        HttpUtil.setContentLength(response, length);
+        
+        response.headers().set(HttpHeaderNames.CONNECTION,
+            keepAlive ? HttpHeaderValues.KEEP_ALIVE : HttpHeaderValues.CLOSE);
+        nettyCtx.write(response);
+        if (length > 0) {
+            nettyCtx.write(new DefaultFileRegion(ctx.getResponseFile(), ctx.getResponseFilePosition(), length));
+        }
+        ChannelFuture last = nettyCtx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        if (!keepAlive) {
+            last.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+    
+    /**
+     * 发送流式响应（chunked），在 streamExecutor 线程执行
+     */
+    protected void sendStreamResponse(ChannelHandlerContext nettyCtx, boolean keepAlive, Context ctx) {
+        HttpResponse response = new DefaultHttpResponse(
+            HttpVersion.HTTP_1_1,
+            HttpResponseStatus.valueOf(ctx.getResponseStatus())
+        );
+        for (Map.Entry<String, String> entry : ctx.getResponseHeaders().entrySet()) {
+            response.headers().add(entry.getKey(), entry.getValue());
+        }
+        HttpUtil.setTransferEncodingChunked(response, true);
+        response.headers().set(HttpHeaderNames.CONNECTION,
+            keepAlive ? HttpHeaderValues.KEEP_ALIVE : HttpHeaderValues.CLOSE);
+        nettyCtx.writeAndFlush(response);
+        
+        NettyChunkedOutputStream out = new NettyChunkedOutputStream(nettyCtx);
+        try {
+            writeStream(ctx, out);
+            out.close();
+        } catch (IOException e) {
+            out.abort();
+            app.log.error("Stream response failed: " + e.getMessage());
+            nettyCtx.close();
+            return;
+        }
+        if (!keepAlive) {
+            out.lastFuture().addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+    
+    private class RequestHandler extends ChannelInboundHandlerAdapter {
+        
+        /** 当前请求正在接收的请求体，没有请求体时为 null */
+        private NettyRequestBody body;
+        
+        /** 当前请求的响应尚未发出 */
+        private boolean busy;
+        
+        /** HTTP pipelining：上一个响应发出前到达的后续请求，按顺序处理 */
+        private final ArrayDeque<Object> pipelined = new ArrayDeque<>();
         
         @Override
-        protected void channelRead0(ChannelHandlerContext nettyCtx, FullHttpRequest request) {
+        public void channelRead(ChannelHandlerContext nettyCtx, Object msg) {
+            if ((busy && msg instanceof HttpRequest) || !pipelined.isEmpty()) {
+                pipelined.add(msg);
+                nettyCtx.channel().config().setAutoRead(false);
+                return;
+            }
+            dispatch(nettyCtx, msg);
+        }
+        
+        private void dispatch(ChannelHandlerContext nettyCtx, Object msg) {
+            try {
+                if (msg instanceof HttpRequest) {
+                    HttpRequest request = (HttpRequest) msg;
+                    busy = true;
+                    if (!(msg instanceof FullHttpRequest) && hasBody(request)) {
+                        // handler 读取请求体时要等待后续 HttpContent，不能在 EventLoop 上执行
+                        NettyRequestBody requestBody = new NettyRequestBody(
+                            nettyCtx.channel(), HttpUtil.is100ContinueExpected(request));
+                        body = requestBody;
+                        streamExecutor.execute(() -> handle(nettyCtx, request, requestBody));
+                    } else {
+                        body = null;
+                        handle(nettyCtx, request, null);
+                    }
+                } else if (msg instanceof HttpContent && body != null) {
+                    body.offer((HttpContent) msg);
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+        
+        private void handle(ChannelHandlerContext nettyCtx, HttpRequest request, NettyRequestBody body) {
             Context ctx = acquireContext();
             
             try {
-                parseRequest(request, ctx);
-                app.handle(ctx);
+                parseRequest(request, body, ctx);
+                ctx.remoteAddr = hostAddress(nettyCtx.channel().remoteAddress());
+                // 没有等待队列：处理中的请求数达到上限时返回 503
+                if (admit(ctx)) {
+                    app.handle(ctx);
+                }
             } catch (Exception e) {
-                app.handleError(ctx, e);
+                // 错误处理本身失败时返回 500，仍然发送响应并归还 Context
+                handleError(ctx, e);
+            }
+            
+            if (ctx.isDeferred()) {
+                // 异步响应：立即返回，future 完成后在回调线程 writeAndFlush
+                deferResponse(ctx, () -> respond(nettyCtx, request, body, ctx));
+                return;
             }
             
-            sendResponse(nettyCtx, request, ctx);
+            respond(nettyCtx, request, body, ctx);
+        }
+        
+        private void respond(ChannelHandlerContext nettyCtx, HttpRequest request, NettyRequestBody body, Context ctx) {
+            // 请求体没有全部到达时关闭连接，不再接收剩余的数据
+            boolean keepAlive = HttpUtil.isKeepAlive(request) && (body == null || body.isComplete());
+            if (ctx.isStreaming()) {
+                streamExecutor.execute(() -> {
+                    try {
+                        sendStreamResponse(nettyCtx, keepAlive, ctx);
+                    } finally {
+                        finish(nettyCtx, body, ctx);
+                    }
+                });
+                return;
+            }
+            
+            try {
+                sendResponse(nettyCtx, keepAlive, ctx);
+            } finally {
+                finish(nettyCtx, body, ctx);
+            }
+        }
+        
+        private void finish(ChannelHandlerContext nettyCtx, NettyRequestBody body, Context ctx) {
+            if (body != null) body.close();
             releaseContext(ctx);
+            nettyCtx.executor().execute(() -> resume(nettyCtx));
+        }
+        
+        /**
+         * 响应已发出（EventLoop 执行）：继续处理排队的后续请求
+         */
+        private void resume(ChannelHandlerContext nettyCtx) {
+            busy = false;
+            while (!busy && !pipelined.isEmpty()) {
+                dispatch(nettyCtx, pipelined.poll());
+            }
+            if (pipelined.isEmpty() && (body == null || !body.isPaused())) {
+                nettyCtx.channel().config().setAutoRead(true);
+            }
+        }
+        
+        @Override
+        public void channelInactive(ChannelHandlerContext nettyCtx) throws Exception {
+            if (body != null) {
+                body.fail(new IOException("Connection closed before the request body was complete"));
+            }
+            Object msg;
+            while ((msg = pipelined.poll()) != null) {
+                ReferenceCountUtil.release(msg);
+            }
+            super.channelInactive(nettyCtx);
         }
         
         @Override
@@ -200,4 +376,11 @@ public class NettyServerPlugin extends ServerPlugin {
             ctx.close();
         }
     }
+    
+    /**
+     * 请求是否带有请求体（Content-Length &gt; 0 或 chunked）
+     */
+    protected static boolean hasBody(HttpRequest request) {
+        return HttpUtil.getContentLength(request, 0L) > 0 || HttpUtil.isTransferEncodingChunked(request);
+    }
 }
@@ -1,17 +1,26 @@
 package litejava.plugins.server;
 
+import io.undertow.Handlers;
 import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.GracefulShutdownHandler;
 import io.undertow.util.HeaderMap;
+import io.undertow.util.HeaderValues;
 import io.undertow.util.HttpString;
 import litejava.*;
 import litejava.exception.LiteJavaException;
 import litejava.plugin.ServerPlugin;
 
+import org.xnio.IoUtils;
+import org.xnio.channels.Channels;
+import org.xnio.channels.StreamSinkChannel;
+
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Deque;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Undertow HTTP 服务器插件 - 轻量高性能服务器
@@ -32,6 +41,8 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * server.threads.io=0           # 0 = CPU cores
  * server.threads.worker=0       # 0 = CPU cores * 8
  * server.maxRequestSize=10485760
+ * server.queue.capacity=1024    # 等待工作线程的请求数上限，超出时在 IO 线程返回 503
+ * server.queue.timeout=0        # 排队超时（毫秒），超时的请求返回 503
  * }</pre>
  * 
  * <h2>使用</h2>
@@ -43,28 +54,15 @@ public class UndertowServerPlugin extends ServerPlugin {
     
     public Undertow server;
     
+    /** 根 Handler 外层的优雅停机 Handler（{@link #rootHandler()} 创建），停机后新请求返回 503，并统计进行中的请求 */
+    public GracefulShutdownHandler shutdown;
+    
     // Undertow 特有配置
     public int ioThreads = 0;      // 0 = Undertow 默认 (CPU cores)
     public int workerThreads = 0;  // 0 = Undertow 默认 (CPU cores * 8)
     
-    // Context 对象池
-    private final ConcurrentLinkedQueue<Context> contextPool = new ConcurrentLinkedQueue<>();
-    private static final int POOL_MAX_SIZE = 1024;
-    
-    protected Context acquireContext() {
-        Context ctx = contextPool.poll();
-        if (ctx == null) {
-            ctx = new Context();
-        }
-        ctx.app = app;
-        return ctx;
-    }
-    
-    protected void releaseContext(Context ctx) {
-        if (ctx == null || contextPool.size() >= POOL_MAX_SIZE) return;
-        ctx.reset();
-        contextPool.offer(ctx);
-    }
+    /** 已调用 {@link #stopAccepting()} */
+    private volatile boolean stopping;
     
     @Override
     public void config() {
@@ -78,7 +76,7 @@ public class UndertowServerPlugin extends ServerPlugin {
         try {
             Undertow.Builder builder = Undertow.builder()
                 .addHttpListener(app.port, host)
-                .setHandler(this::handleRequest);
+                .setHandler(rootHandler());
             
             if (ioThreads > 0) {
                 builder.setIoThreads(ioThreads);
@@ -102,46 +100,130 @@ public class UndertowServerPlugin extends ServerPlugin {
         }
     }
     
-    private void handleRequest(HttpServerExchange exchange) {
+    /**
+     * 创建根 Handler：{@link #handleRequest} 外包一层 GracefulShutdownHandler（子类的 start() 也应使用）
+     */
+    protected HttpHandler rootHandler() {
+        GracefulShutdownHandler graceful = Handlers.gracefulShutdown(this::handleRequest);
+        shutdown = graceful;
+        return exchange -> {
+            if (stopping) {
+                // 停机中不再复用连接，keep-alive 客户端发完当前请求后改连其他实例
+                exchange.setPersistent(false);
+            }
+            graceful.handleRequest(exchange);
+        };
+    }
+    
+    /**
+     * 停止接收新请求：之后到达的请求返回 503 并关闭连接，进行中的请求照常完成
+     * 
+     * <p>Undertow 没有只关闭监听 socket 的公开接口（ListenerInfo.suspend() 会同时关闭已建立的连接，
+     * 丢弃尚未发出的响应），因此端口保持监听，直到 {@link #stop()}。
+     */
+    @Override
+    public void stopAccepting() {
+        stopping = true;
+        if (shutdown != null) {
+            shutdown.shutdown();
+        }
+    }
+    
+    /**
+     * 等待 GracefulShutdownHandler 统计的请求（包括尚未发出的异步响应）全部结束，再等待其余进行中的请求
+     */
+    @Override
+    public boolean awaitInFlight(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        if (shutdown != null) {
+            try {
+                if (!shutdown.awaitShutdown(timeoutMillis)) return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return super.awaitInFlight(Math.max(0, deadline - System.currentTimeMillis()));
+    }
+    
+    /**
+     * 处理 HTTP 请求（Undertow 根 Handler）
+     */
+    protected void handleRequest(HttpServerExchange exchange) {
         if (exchange.isInIoThread()) {
-            exchange.dispatch(this::handleRequest);
+            if (!enqueue()) {
+                // 等待工作线程的请求已达上限，在 IO 线程直接返回 503（非阻塞发送）
+                Context ctx = acquireContext();
+                reject(ctx);
+                complete(exchange, ctx);
+                return;
+            }
+            dispatch(exchange, timed(() -> {
+                dequeue();
+                handleRequest(exchange);
+            }));
             return;
         }
         
-        exchange.getRequestReceiver().receiveFullBytes((ex, body) -> {
-            Context ctx = acquireContext();
-            
-            try {
-                parseRequest(ex, body, ctx);
+        // 阻塞模式：请求体通过 InputStream 延迟读取，流式响应也需要阻塞输出流
+        exchange.startBlocking();
+        Context ctx = acquireContext();
+        
+        try {
+            parseRequest(exchange, ctx);
+            if (!shed(ctx, 0)) {
                 app.handle(ctx);
-            } catch (Exception e) {
-                app.handleError(ctx, e);
-            } finally {
-                sendResponse(ex, ctx);
-                releaseContext(ctx);
             }
-        });
+        } catch (Exception e) {
+            handleError(ctx, e);
+        } finally {
+            // 异步响应：工作线程立即返回（exchange 由发送响应时结束），future 完成后再派发回工作线程发送
+            if (!deferResponse(ctx, () -> dispatch(exchange, () -> complete(exchange, ctx)))) {
+                complete(exchange, ctx);
+            }
+        }
+    }
+    
+    /**
+     * 发送响应并归还 Context
+     */
+    protected void complete(HttpServerExchange exchange, Context ctx) {
+        try {
+            sendResponse(exchange, ctx);
+        } finally {
+            releaseContext(ctx);
+        }
+    }
+    
+    /**
+     * 把请求派发到工作线程执行，子类可覆盖以使用其他执行器（如虚拟线程）
+     */
+    protected void dispatch(HttpServerExchange exchange, Runnable task) {
+        exchange.dispatch(task);
     }
     
     /**
      * 解析 HTTP 请求
      */
-    protected void parseRequest(HttpServerExchange exchange, byte[] body, Context ctx) {
+    protected void parseRequest(HttpServerExchange exchange, Context ctx) {
         ctx.method = exchange.getRequestMethod().toString();
         ctx.path = exchange.getRequestPath();
         ctx.query = exchange.getQueryString();
+        ctx.remoteAddr = hostAddress(exchange.getSourceAddress());
         
+        // 请求头和查询参数在 handler 首次访问时才解析
         HeaderMap headers = exchange.getRequestHeaders();
-        headers.getHeaderNames().forEach(name -> {
-            ctx.headers.put(name.toString(), headers.getFirst(name));
-        });
-        
-        Map<String, Deque<String>> params = exchange.getQueryParameters();
-        params.forEach((k, v) -> {
-            if (!v.isEmpty()) ctx.queryParams.put(k, v.getFirst());
-        });
+        ctx.setHeaderLoader(map -> {
+            for (HeaderValues values : headers) {
+                String name = values.getHeaderName().toString();
+                for (String value : values) {
+                    map.add(name, value);
+                }
+            }
+        }, headers::getFirst);
         
-        ctx.setRequestBody(body);
+        // 请求体延迟读取，未读取的部分在 exchange 结束时丢弃
+        ctx.setRequestBody(exchange.getInputStream(), exchange.getRequestContentLength(), maxRequestSize);
     }
     
     /**
@@ -151,10 +233,45 @@ public class UndertowServerPlugin extends ServerPlugin {
         exchange.setStatusCode(ctx.getResponseStatus());
         
         for (Map.Entry<String, String> entry : ctx.getResponseHeaders().entrySet()) {
-            exchange.getResponseHeaders().put(new HttpString(entry.getKey()), entry.getValue());
+            exchange.getResponseHeaders().add(new HttpString(entry.getKey()), entry.getValue());
+        }
+        
+        if (ctx.isFileResponse()) {
+            sendFile(exchange, ctx);
+            return;
+        }
+        
+        if (ctx.isStreaming()) {
+            // 未设置 Content-Length 时 Undertow 使用 chunked 传输编码
+            try {
+                writeStream(ctx, exchange.getOutputStream());
+                exchange.endExchange();
+            } catch (IOException e) {
+                app.log.error("Stream response failed: " + e.getMessage());
+                IoUtils.safeClose(exchange.getConnection());
+            }
+            return;
         }
         
         byte[] body = ctx.getResponseBody();
         exchange.getResponseSender().send(ByteBuffer.wrap(body));
     }
+    
+    /**
+     * 发送文件响应：FileChannel 直接传输到响应通道，底层使用 sendfile
+     */
+    protected void sendFile(HttpServerExchange exchange, Context ctx) {
+        exchange.setResponseContentLength(ctx.getResponseFileLength());
+        try (FileChannel file = FileChannel.open(ctx.getResponseFile().toPath(), StandardOpenOption.READ)) {
+            // 响应头未写出前 Undertow 会按通道当前位置读取文件，先定位到起始偏移
+            file.position(ctx.getResponseFilePosition());
+            StreamSinkChannel channel = exchange.getResponseChannel();
+            Channels.transferBlocking(channel, file, ctx.getResponseFilePosition(), ctx.getResponseFileLength());
+            Channels.shutdownWritesBlocking(channel);
+            exchange.endExchange();
+        } catch (IOException e) {
+            app.log.error("File response failed: " + e.getMessage());
+            IoUtils.safeClose(exchange.getConnection());
+        }
+    }
 }
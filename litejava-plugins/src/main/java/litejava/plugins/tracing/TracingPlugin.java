@@ -3,6 +3,7 @@ package litejava.plugins.tracing;
 import litejava.Context;
 import litejava.MiddlewarePlugin;
 import litejava.Next;
+import litejava.StateKey;
 import litejava.plugins.http.HttpClient;
 
 import java.util.Map;
@@ -25,6 +26,15 @@ import java.util.concurrent.Executors;
  */
 public class TracingPlugin extends MiddlewarePlugin {
     
+    /** 当前请求的 traceId（也可通过 ctx.state.get("traceId") 读取） */
+    public static final StateKey<String> TRACE_ID = StateKey.of("traceId");
+    
+    /** 当前请求的 spanId */
+    public static final StateKey<String> SPAN_ID = StateKey.of("spanId");
+    
+    /** 上游传来的 spanId，没有时为 null */
+    public static final StateKey<String> PARENT_SPAN_ID = StateKey.of("parentSpanId");
+    
     public boolean enabled = true;
     public String endpoint = "http://localhost:9411/api/v2/spans";
     public String serviceName = "unknown";
@@ -66,9 +76,9 @@ public class TracingPlugin extends MiddlewarePlugin {
         String spanId = generateId();
         
         // 存入 context，供后续使用
-        ctx.state.put("traceId", traceId);
-        ctx.state.put("spanId", spanId);
-        ctx.state.put("parentSpanId", parentSpanId);
+        ctx.set(TRACE_ID, traceId);
+        ctx.set(SPAN_ID, spanId);
+        ctx.set(PARENT_SPAN_ID, parentSpanId);
         
         // 设置响应头，方便前端调试
         ctx.header("X-Trace-Id", traceId);
@@ -133,15 +143,15 @@ public class TracingPlugin extends MiddlewarePlugin {
      * 获取当前请求的 traceId（供日志使用）
      */
     public static String getTraceId(Context ctx) {
-        Object traceId = ctx.state.get("traceId");
-        return traceId != null ? traceId.toString() : "-";
+        String traceId = ctx.get(TRACE_ID);
+        return traceId != null ? traceId : "-";
     }
     
     /**
      * 获取当前请求的 spanId
      */
     public static String getSpanId(Context ctx) {
-        Object spanId = ctx.state.get("spanId");
-        return spanId != null ? spanId.toString() : "-";
+        String spanId = ctx.get(SPAN_ID);
+        return spanId != null ? spanId : "-";
     }
 }
@@ -0,0 +1,124 @@
+package litejava.plugins.router;
+
+import litejava.Route;
+import litejava.plugin.RouterPlugin;
+import net.jqwik.api.*;
+import net.jqwik.api.constraints.*;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Property-based tests for RegexRouterPlugin (first-segment buckets).
+ */
+class RegexRouterPropertyTest {
+    
+    /**
+     * For any set of routes and any request, the bucketed router picks the same route
+     * (first registered match) with the same params as trying every pattern in order.
+     */
+    @Property(tries = 200)
+    void bucketedMatchingAgreesWithLinearScan(
+            @ForAll @Size(min = 1, max = 12) List<@From("routes") String> paths,
+            @ForAll @Size(min = 1, max = 12) List<@From("methods") String> methods,
+            @ForAll @Size(min = 1, max = 20) List<@From("requests") String> requests) {
+        
+        RegexRouterPlugin router = new RegexRouterPlugin();
+        List<LinearRoute> linear = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            String method = methods.get(i % methods.size());
+            Route route = router.route(method, paths.get(i), ctx -> {});
+            linear.add(new LinearRoute(method, route));
+        }
+        
+        for (String path : requests) {
+            for (String method : Arrays.asList("GET", "POST")) {
+                RouterPlugin.RouteMatch expected = matchLinear(linear, method, path);
+                RouterPlugin.RouteMatch actual = router.match(method, path);
+                if (expected == null) {
+                    assertNull(actual, method + " " + path);
+                } else {
+                    assertNotNull(actual, method + " " + path);
+                    assertSame(expected.route, actual.route, method + " " + path);
+                    assertEquals(expected.params, actual.params, method + " " + path);
+                    assertEquals(expected.wildcardValue, actual.wildcardValue, method + " " + path);
+                }
+            }
+            boolean anyMatch = linear.stream().anyMatch(r -> r.pattern.matcher(path).matches());
+            assertEquals(anyMatch, router.hasPath(path), path);
+        }
+    }
+    
+    @Provide
+    Arbitrary<String> routes() {
+        Arbitrary<String> segment = Arbitraries.of("a", "b", "ab", "users", ":id", ":name");
+        Arbitrary<String> wildcard = Arbitraries.of("", "/*rest");
+        return Combinators.combine(segment.list().ofMinSize(0).ofMaxSize(3), wildcard)
+            .as((segments, tail) -> "/" + String.join("/", segments) + tail);
+    }
+    
+    @Provide
+    Arbitrary<String> methods() {
+        return Arbitraries.of("GET", "POST", "ANY");
+    }
+    
+    @Provide
+    Arbitrary<String> requests() {
+        Arbitrary<String> segment = Arbitraries.of("a", "b", "ab", "users", "42", "x y", "");
+        return segment.list().ofMinSize(0).ofMaxSize(4).map(segments -> "/" + String.join("/", segments));
+    }
+    
+    // ==================== 线性参考实现 ====================
+    
+    private static RouterPlugin.RouteMatch matchLinear(List<LinearRoute> routes, String method, String path) {
+        for (LinearRoute route : routes) {
+            if (!route.method.equals(method) && !route.method.equals("ANY")) continue;
+            Matcher matcher = route.pattern.matcher(path);
+            if (!matcher.matches()) continue;
+            
+            RouterPlugin.RouteMatch match = new RouterPlugin.RouteMatch();
+            match.route = route.route;
+            if (!route.names.isEmpty()) {
+                match.params = new HashMap<>();
+                for (int i = 0; i < route.names.size(); i++) {
+                    match.params.put(route.names.get(i), matcher.group(i + 1));
+                }
+            }
+            if (route.route.wildcard) {
+                match.wildcardValue = matcher.group(route.names.size());
+            }
+            return match;
+        }
+        return null;
+    }
+    
+    private static class LinearRoute {
+        final String method;
+        final Route route;
+        final Pattern pattern;
+        final List<String> names = new ArrayList<>();
+        
+        LinearRoute(String method, Route route) {
+            this.method = method;
+            this.route = route;
+            StringBuilder regex = new StringBuilder("^");
+            for (String part : route.path.split("(?=/)")) {
+                String segment = part.substring(1);
+                regex.append('/');
+                if (segment.startsWith(":")) {
+                    names.add(segment.substring(1));
+                    regex.append("([^/]+)");
+                } else if (segment.startsWith("*")) {
+                    names.add(segment.substring(1));
+                    regex.append("(.*)");
+                } else if (!segment.isEmpty()) {
+                    regex.append(Pattern.quote(segment));
+                }
+            }
+            this.pattern = Pattern.compile(regex.append('$').toString());
+        }
+    }
+}
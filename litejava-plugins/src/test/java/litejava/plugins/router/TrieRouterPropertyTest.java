@@ -0,0 +1,106 @@
+package litejava.plugins.router;
+
+import litejava.Context;
+import litejava.Route;
+import litejava.plugin.RouterPlugin;
+import net.jqwik.api.*;
+import net.jqwik.api.constraints.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Property-based tests for TrieRouterPlugin (in-place segment scanning).
+ */
+class TrieRouterPropertyTest {
+    
+    /**
+     * For any set of routes and any request made of whole segments, the trie router
+     * matches the same route with the same params as the default RouterPlugin.
+     */
+    @Property(tries = 200)
+    void trieMatchingAgreesWithRouterPlugin(
+            @ForAll @Size(min = 1, max = 12) List<@From("routes") String> paths,
+            @ForAll @Size(min = 1, max = 12) List<@From("methods") String> methods,
+            @ForAll @Size(min = 1, max = 20) List<@From("requests") String> requests) {
+        
+        TrieRouterPlugin trie = new TrieRouterPlugin();
+        RouterPlugin radix = new RouterPlugin();
+        for (int i = 0; i < paths.size(); i++) {
+            String method = methods.get(i % methods.size());
+            trie.route(method, paths.get(i), ctx -> {});
+            radix.route(method, paths.get(i), ctx -> {});
+        }
+        
+        Context ctx = new Context();
+        for (String path : requests) {
+            for (String method : Arrays.asList("GET", "POST")) {
+                String label = method + " " + path;
+                RouterPlugin.RouteMatch expected = radix.match(method, path);
+                RouterPlugin.RouteMatch actual = trie.match(method, path);
+                if (expected == null) {
+                    assertNull(actual, label);
+                } else {
+                    assertNotNull(actual, label);
+                    assertEquals(expected.route.toString(), actual.route.toString(), label);
+                    assertEquals(expected.params, actual.params, label);
+                    assertEquals(expected.wildcardName, actual.wildcardName, label);
+                    assertEquals(expected.wildcardValue, actual.wildcardValue, label);
+                }
+                
+                ctx.reset();
+                ctx.method = method;
+                ctx.path = path;
+                Route route = trie.match(ctx);
+                assertSame(actual == null ? null : actual.route, route, label);
+                if (route == null) {
+                    assertTrue(ctx.params.isEmpty(), label);
+                } else {
+                    assertEquals(expected.wildcardValue, ctx.wildcardPath, label);
+                }
+            }
+            assertEquals(radix.hasPath(path), trie.hasPath(path), path);
+            assertEquals(radix.getAllowedMethods(path), trie.getAllowedMethods(path), path);
+        }
+    }
+    
+    /**
+     * Wildcard values skip empty segments, as before the in-place scanning.
+     */
+    @Property(tries = 100)
+    void wildcardJoinsNonEmptySegments(
+            @ForAll @Size(min = 1, max = 4) List<@AlphaChars @StringLength(min = 1, max = 5) String> segments,
+            @ForAll @IntRange(min = 1, max = 3) int slashes) {
+        
+        TrieRouterPlugin trie = new TrieRouterPlugin();
+        trie.get("/files/*filepath", ctx -> {});
+        
+        String separator = String.join("", Collections.nCopies(slashes, "/"));
+        String path = "/files" + separator + String.join(separator, segments) + separator;
+        
+        RouterPlugin.RouteMatch match = trie.match("GET", path);
+        assertNotNull(match, path);
+        assertEquals("filepath", match.wildcardName);
+        assertEquals(String.join("/", segments), match.wildcardValue, path);
+    }
+    
+    @Provide
+    Arbitrary<String> routes() {
+        Arbitrary<String> segment = Arbitraries.of("users", "posts", "files", ":id", ":name");
+        Arbitrary<String> wildcard = Arbitraries.of("", "/*rest");
+        return Combinators.combine(segment.list().ofMinSize(0).ofMaxSize(3), wildcard)
+            .as((segments, tail) -> "/" + String.join("/", segments) + tail);
+    }
+    
+    @Provide
+    Arbitrary<String> methods() {
+        return Arbitraries.of("GET", "POST", "ANY");
+    }
+    
+    @Provide
+    Arbitrary<String> requests() {
+        Arbitrary<String> segment = Arbitraries.of("users", "posts", "files", "42", "abc");
+        return segment.list().ofMinSize(0).ofMaxSize(4).map(segments -> "/" + String.join("/", segments));
+    }
+}
@@ -0,0 +1,429 @@
+package litejava.plugins.server;
+
+import litejava.App;
+import litejava.plugin.HttpServerPlugin;
+import litejava.plugin.ServerPlugin;
+import net.jqwik.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round-trip tests for the server plugins over a real socket (Netty / Jetty / Undertow).
+ */
+class ServerPluginRoundTripTest {
+
+    /**
+     * **Feature: lite-java-framework, Property: Graceful Shutdown**
+     *
+     * After stopAccepting() Undertow answers new requests with 503 while a request already in
+     * progress still gets its response over its open connection, and awaitInFlight() returns
+     * once it is done.
+     */
+    @Property(tries = 3)
+    void undertowStopAcceptingDrainsInFlightRequests() throws Exception {
+        App app = new App();
+        UndertowServerPlugin server = new UndertowServerPlugin();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        app.get("/ping", ctx -> ctx.text("pong"));
+        app.get("/slow", ctx -> {
+            busy.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            ctx.text("done");
+        });
+        start(app, server);
+        try (Socket inProgress = send(app.port, "/slow")) {
+            assertTrue(get(app.port, "/ping").endsWith("pong"));
+            assertTrue(busy.await(5, TimeUnit.SECONDS));
+
+            server.stopAccepting();
+            String rejected = get(app.port, "/ping");
+            assertTrue(rejected.startsWith("HTTP/1.1 503"), rejected);
+            assertFalse(server.awaitInFlight(50), "returned while /slow was still running");
+
+            release.countDown();
+            String response = read(inProgress);
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertTrue(response.endsWith("done"), response);
+            assertTrue(server.awaitInFlight(5000));
+        } finally {
+            release.countDown();
+            server.stop();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Admission Control**
+     *
+     * Jetty honours server.queue.capacity without priority routes: with every worker busy and the
+     * queue full, the next request gets 503 + Retry-After, and the accepted ones still complete.
+     */
+    @Property(tries = 3)
+    void jettyFullQueueRejectsWithServiceUnavailable() throws Exception {
+        App app = new App();
+        JettyServerPlugin server = new JettyServerPlugin();
+        server.minThreads = 2;
+        server.maxThreads = 4;
+        server.queueCapacity = 1;
+        server.retryAfter = 7;
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(server.maxThreads);
+        app.get("/slow", ctx -> {
+            busy.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            ctx.text("done");
+        });
+        start(app, server);
+        List<Socket> accepted = new ArrayList<>();
+        try {
+            for (int i = 0; i < server.maxThreads; i++) {
+                accepted.add(send(app.port, "/slow"));
+            }
+            assertTrue(busy.await(5, TimeUnit.SECONDS));
+            accepted.add(send(app.port, "/slow"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.workers.getQueue().size() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            String rejected = get(app.port, "/slow");
+            assertTrue(rejected.startsWith("HTTP/1.1 503"), rejected);
+            assertTrue(rejected.contains("Retry-After: 7"), rejected);
+
+            release.countDown();
+            for (Socket socket : accepted) {
+                String response = read(socket);
+                assertTrue(response.startsWith("HTTP/1.1 200"), response);
+                assertTrue(response.endsWith("done"), response);
+            }
+        } finally {
+            release.countDown();
+            for (Socket socket : accepted) socket.close();
+            server.stop();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Admission Control**
+     *
+     * Netty has no wait queue, so server.queue.capacity bounds the requests in progress: with
+     * one async response pending and a capacity of one, the next request gets 503 + Retry-After,
+     * and once the pending response is sent the slot is free again.
+     */
+    @Property(tries = 3)
+    void nettyCapacityBoundsRequestsInProgress() throws Exception {
+        App app = new App();
+        NettyServerPlugin server = new NettyServerPlugin();
+        server.queueCapacity = 1;
+        server.retryAfter = 7;
+        CompletableFuture<Void> pending = new CompletableFuture<>();
+        app.getAsync("/wait", ctx -> pending.thenRun(() -> ctx.text("done")));
+        app.get("/ping", ctx -> ctx.text("pong"));
+        start(app, server);
+        try (Socket waiting = send(app.port, "/wait")) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.inFlight() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            String rejected = get(app.port, "/ping");
+            assertTrue(rejected.startsWith("HTTP/1.1 503"), rejected);
+            assertTrue(rejected.contains("Retry-After: 7"), rejected);
+
+            pending.complete(null);
+            String response = read(waiting);
+            assertTrue(response.endsWith("done"), response);
+            deadline = System.currentTimeMillis() + 2000;
+            while (server.inFlight() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(get(app.port, "/ping").endsWith("pong"));
+        } finally {
+            pending.complete(null);
+            server.stop();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Request Body**
+     *
+     * Netty routes an Expect: 100-continue request before reading its body: an unrouted path
+     * gets its 404 instead of 100 Continue, while a routed one is told to continue and its body
+     * arrives intact.
+     */
+    @Property(tries = 5)
+    void nettyAnswersExpectContinueBeforeReadingBody(@ForAll boolean routed) throws Exception {
+        App app = new App();
+        NettyServerPlugin server = new NettyServerPlugin();
+        app.post("/upload", ctx -> ctx.text("got " + ctx.getRawData().length));
+        // 默认 404 使用 ctx.json，测试不注册 JsonPlugin
+        app.noRoute(ctx -> ctx.status(404).text("Not Found"));
+        start(app, server);
+        try (Socket socket = new Socket("127.0.0.1", app.port)) {
+            socket.setSoTimeout(2000);
+            OutputStream out = socket.getOutputStream();
+            String path = routed ? "/upload" : "/missing";
+            out.write(("POST " + path + " HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n"
+                + "Expect: 100-continue\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+
+            String interim = readHead(socket.getInputStream());
+            if (!routed) {
+                assertTrue(interim.startsWith("HTTP/1.1 404"), interim);
+                return;
+            }
+            assertTrue(interim.startsWith("HTTP/1.1 100"), interim);
+            out.write("hello".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            String response = read(socket);
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertTrue(response.endsWith("got 5"), response);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Request Body**
+     *
+     * Netty hands a request to its handler as soon as the head arrives and streams the body to it:
+     * the handler starts before the client has sent the rest, a body far larger than the read-ahead
+     * buffer arrives intact, and a request pipelined behind it is answered after it.
+     */
+    @Property(tries = 4)
+    void nettyStreamsRequestBodyToHandler(@ForAll boolean chunked) throws Exception {
+        int size = 1024 * 1024;
+        App app = new App();
+        NettyServerPlugin server = new NettyServerPlugin();
+        CountDownLatch routed = new CountDownLatch(1);
+        app.post("/upload", ctx -> {
+            routed.countDown();
+            InputStream in = ctx.bodyStream();
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            boolean intact = true;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    intact &= buffer[i] == (byte) ((total + i) % 251);
+                }
+                total += n;
+            }
+            ctx.text("got " + total + (intact ? " intact" : " corrupt") + ";");
+        });
+        app.get("/ping", ctx -> ctx.text("pong"));
+        start(app, server);
+        try (Socket socket = new Socket("127.0.0.1", app.port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /upload HTTP/1.1\r\nHost: localhost\r\n"
+                + (chunked ? "Transfer-Encoding: chunked" : "Content-Length: " + size) + "\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+            byte[] body = new byte[size];
+            for (int i = 0; i < size; i++) {
+                body[i] = (byte) (i % 251);
+            }
+            int first = 1024;
+            writeBody(out, body, 0, first, chunked);
+            out.flush();
+            assertTrue(routed.await(5, TimeUnit.SECONDS), "handler did not start before the body was complete");
+
+            writeBody(out, body, first, size - first, chunked);
+            if (chunked) {
+                out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            }
+            out.write("GET /ping HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            String response = read(socket);
+            int upload = response.indexOf("got " + size + " intact;");
+            assertTrue(upload > 0, response);
+            assertTrue(response.indexOf("pong") > upload, response);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Request Body**
+     *
+     * Netty refuses a Content-Length over server.maxRequestSize with 413 without waiting for the
+     * body, and returns the Context.
+     */
+    @Property(tries = 3)
+    void nettyRefusesOversizedBodyBeforeItIsSent() throws Exception {
+        App app = new App();
+        NettyServerPlugin server = new NettyServerPlugin();
+        server.maxRequestSize = 1024;
+        app.post("/upload", ctx -> ctx.text("got " + ctx.getRawData().length));
+        start(app, server);
+        try (Socket socket = new Socket("127.0.0.1", app.port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("POST /upload HTTP/1.1\r\nHost: localhost\r\n"
+                + "Content-Length: 4096\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            String head = readHead(socket.getInputStream());
+            assertTrue(head.startsWith("HTTP/1.1 413"), head);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: File Response**
+     *
+     * A file region spanning several send chunks arrives byte-for-byte on every server, starting
+     * at the requested position and stopping after the requested length.
+     */
+    @Property(tries = 8)
+    void serverSendsExactFileRegion(@ForAll("servers") String kind) throws Exception {
+        byte[] content = new byte[300 * 1024];
+        new Random(kind.hashCode()).nextBytes(content);
+        Path file = Files.createTempFile("litejava-region", ".bin");
+        Files.write(file, content);
+        int position = 1234;
+        int length = 200 * 1024 + 17;
+        App app = new App();
+        ServerPlugin server = server(kind);
+        app.get("/file", ctx -> ctx.sendFile(file.toFile(), position, length, "application/octet-stream"));
+        start(app, server);
+        try {
+            byte[] response = get(app.port, "/file").getBytes(StandardCharsets.ISO_8859_1);
+            String head = new String(response, StandardCharsets.ISO_8859_1);
+            assertTrue(head.startsWith("HTTP/1.1 200"), head.substring(0, Math.min(head.length(), 200)));
+            int bodyStart = head.indexOf("\r\n\r\n") + 4;
+            assertArrayEquals(Arrays.copyOfRange(content, position, position + length),
+                Arrays.copyOfRange(response, bodyStart, response.length));
+        } finally {
+            server.stop();
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * **Feature: lite-java-framework, Property: Error Handling**
+     *
+     * When app.handleError itself fails (no JsonPlugin for its JSON body), every server still
+     * answers 500 and returns the Context, so the in-flight count drops back to zero.
+     */
+    @Property(tries = 8)
+    void serverAnswersInternalErrorWhenErrorHandlerFails(@ForAll("servers") String kind) throws Exception {
+        App app = new App();
+        ServerPlugin server = server(kind);
+        app.get("/boom", ctx -> {
+            throw new IllegalStateException("boom");
+        });
+        start(app, server);
+        try {
+            String response = get(app.port, "/boom");
+            assertTrue(response.startsWith("HTTP/1.1 500"), kind + ": " + response);
+            assertTrue(response.endsWith("{\"error\":\"Internal Server Error\"}"), kind + ": " + response);
+            // 连接可能在服务器归还 Context 之前关闭
+            long deadline = System.currentTimeMillis() + 2000;
+            while (server.inFlight() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, server.inFlight(), kind);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Provide
+    Arbitrary<String> servers() {
+        return Arbitraries.of("jdk", "netty", "jetty", "undertow");
+    }
+
+    static ServerPlugin server(String kind) {
+        switch (kind) {
+            case "jdk": return new HttpServerPlugin();
+            case "netty": return new NettyServerPlugin();
+            case "jetty": return new JettyServerPlugin();
+            default: return new UndertowServerPlugin();
+        }
+    }
+
+    // ==================== 工具方法 ====================
+
+    /** 读到空行为止（响应行和响应头） */
+    static void writeBody(OutputStream out, byte[] body, int off, int len, boolean chunked) throws IOException {
+        if (!chunked) {
+            out.write(body, off, len);
+            return;
+        }
+        for (int end = off + len; off < end; off += 8192) {
+            int n = Math.min(8192, end - off);
+            out.write((Integer.toHexString(n) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.write(body, off, n);
+            out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+    static String readHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            head.append((char) c);
+            if (head.length() >= 4 && head.lastIndexOf("\r\n\r\n") == head.length() - 4) break;
+        }
+        return head.toString();
+    }
+
+    static void start(App app, ServerPlugin server) throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            app.port = probe.getLocalPort();
+        }
+        server.host = "127.0.0.1";
+        app.use(server);
+        server.start();
+    }
+
+    /**
+     * 用原始 socket 发送 GET（Connection: close），读到连接关闭为止，保留 chunked 编码等原始字节
+     */
+    static String get(int port, String path) throws IOException {
+        try (Socket socket = send(port, path)) {
+            socket.setSoTimeout(2000);
+            return read(socket);
+        }
+    }
+
+    static Socket send(int port, String path) throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        socket.setSoTimeout(5000);
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+            .getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        return socket;
+    }
+
+    static String read(Socket socket) throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        InputStream in = socket.getInputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            response.write(buffer, 0, n);
+        }
+        if (response.size() == 0) {
+            throw new IOException("Connection closed without a response");
+        }
+        return new String(response.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+}